@@ -33,7 +33,7 @@ import java.util.concurrent.ExecutorService;
 @SuppressWarnings("UnstableApiUsage")
 public final class InMemoryAdapter<Key extends Message, Model extends Message>
         implements ModelAdapter<Key, Model, EncodedModel, EncodedModel> {
-    /** Specifies the format to use. One of `BINARY`, `JSON`, or `TEXT`. */
+    /** Specifies the default format to use. One of the {@link EncodingMode} values. */
     private static final EncodingMode FORMAT = EncodingMode.BINARY;
 
     /** Driver for this in-memory adapter. */
@@ -45,6 +45,27 @@ public final class InMemoryAdapter<Key extends Message, Model extends Message>
     /** Cache to use for model interactions through this adapter (optional). */
     private final @Nonnull Optional<CacheDriver<Key, Model>> cache;
 
+    /** Write-behind buffer, present only when a cache is present. */
+    private final @Nonnull Optional<WriteBehindBuffer<Key, Model>> writeBehind;
+
+    /** Refresh-ahead tracker, present only when a cache is present. */
+    private final @Nonnull Optional<CacheRefresher<Key, Model>> refresher;
+
+    /** Cache latency tracker, present only when a cache is present. */
+    private final @Nonnull Optional<CacheLatencyTracker> cacheLatency;
+
+    /** Cache circuit breaker, present only when a cache is present. */
+    private final @Nonnull Optional<CacheCircuitBreaker> cacheBreaker;
+
+    /** Hot key tracker and near-cache, present only when a cache is present. */
+    private final @Nonnull Optional<HotKeyTracker<Model>> hotKeys;
+
+    /** Write combiner, used only for writes which specify a combining window. */
+    private final @Nonnull WriteCombiner<Key, Model> writeCombiner;
+
+    /** Existence filter for stored IDs, shared with storage. Not authoritative until it is first rebuilt. */
+    private final @Nonnull ExistenceFilter existence;
+
     /**
      * Private constructor - create an in-memory adapter from scratch.
      *
@@ -61,6 +82,13 @@ public final class InMemoryAdapter<Key extends Message, Model extends Message>
         this.cache = cache;
         this.codec = codec;
         this.driver = InMemoryDriver.acquire(codec, executorService);
+        this.writeBehind = cache.map((cacheDriver) -> WriteBehindBuffer.create(driver, cacheDriver, executorService));
+        this.refresher = cache.map((cacheDriver) -> CacheRefresher.create(driver, cacheDriver, executorService));
+        this.cacheLatency = cache.map((cacheDriver) -> CacheLatencyTracker.create());
+        this.cacheBreaker = cache.map((cacheDriver) -> CacheCircuitBreaker.create());
+        this.hotKeys = cache.map((cacheDriver) -> HotKeyTracker.create());
+        this.writeCombiner = WriteCombiner.create(executorService);
+        this.existence = driver.existence();
     }
 
     /**
@@ -109,9 +137,37 @@ public final class InMemoryAdapter<Key extends Message, Model extends Message>
             @Nonnull M instance,
             @Nonnull Optional<CacheDriver<K, M>> cache,
             @Nonnull ListeningScheduledExecutorService executorService) throws InvalidModelType {
+        return acquire(keyInstance, instance, cache, FORMAT, executorService);
+    }
+
+    /**
+     * Acquire an instance of the {@link InMemoryAdapter}, specialized for the provided empty model instance, which holds
+     * records in the provided {@link EncodingMode}, and optionally specifying a {@link CacheDriver} to use.
+     *
+     * <p>Compressed modes (for instance, {@code BINARY_GZIP}) trade CPU time on reads and writes for a smaller memory
+     * footprint, and are worthwhile for large, text-heavy records. Records below the codec's compression threshold are
+     * held uncompressed either way. Masked updates are only merged in place for uncompressed binary records; if a merge
+     * grows such a record to the codec's compression threshold or beyond, the merged record is compressed before it is
+     * stored, just as if it had been written whole.</p>
+     *
+     * @param keyInstance Empty instance of the key type for <pre>instance</pre>.
+     * @param instance Empty model instance with which to spawn new builders, and resolve type information.
+     * @param cache Cache driver to use for read-path code in the adapter.
+     * @param mode Encoding mode in which to hold records.
+     * @param executorService Executor to use for callbacks and model codec activities.
+     * @param <M> Type of model for which an {@link InMemoryAdapter} is being requested.
+     * @return Instance of an in-memory data adapter for the provided model.
+     * @throws InvalidModelType If the specified model is not meant to be used for storage.
+     */
+    public static @Nonnull <K extends Message, M extends Message> InMemoryAdapter<K, M> acquire(
+            @Nonnull K keyInstance,
+            @Nonnull M instance,
+            @Nonnull Optional<CacheDriver<K, M>> cache,
+            @Nonnull EncodingMode mode,
+            @Nonnull ListeningScheduledExecutorService executorService) throws InvalidModelType {
         return new InMemoryAdapter<>(
                 keyInstance,
-                ProtoModelCodec.forModel(instance, FORMAT),
+                ProtoModelCodec.forModel(instance, mode),
                 cache,
                 executorService);
     }
@@ -134,4 +190,55 @@ public final class InMemoryAdapter<Key extends Message, Model extends Message>
     public @Nonnull InMemoryDriver<Key, Model> engine() {
         return this.driver;
     }
-}
\ No newline at end of file
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<WriteBehindBuffer<Key, Model>> writeBehind() {
+        return this.writeBehind;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<CacheRefresher<Key, Model>> refresher() {
+        return this.refresher;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<CacheLatencyTracker> cacheLatency() {
+        return this.cacheLatency;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<CacheCircuitBreaker> cacheBreaker() {
+        return this.cacheBreaker;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<HotKeyTracker<Model>> hotKeys() {
+        return this.hotKeys;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<WriteCombiner<Key, Model>> writeCombiner() {
+        return Optional.of(this.writeCombiner);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<ExistenceFilter> existence() {
+        return Optional.of(this.existence);
+    }
+
+    /**
+     * Rebuild the {@link #existence()} filter from the IDs of this model type currently held in in-memory storage,
+     * after which reads for IDs which were never written return empty without a storage lookup. The filter is kept by
+     * storage and shared between adapters for the same model type, so writes which bypass this adapter are seen too.
+     */
+    public void rebuildExistence() {
+        this.existence.rebuild(driver.storedIds());
+    }
+}
@@ -38,6 +38,9 @@ import java.util.concurrent.TimeUnit;
 @ThreadSafe
 @SuppressWarnings("UnstableApiUsage")
 public final class InMemoryCache<K extends Message, M extends Message> implements CacheDriver<K, M> {
+    /** Time-to-live for cached instances, in hours. */
+    private final static long TTL_HOURS = 1;
+
     /** Static in-memory instance cache. */
     private final static @Nonnull InMemoryCaching CACHE = new InMemoryCaching();
 
@@ -51,7 +54,7 @@ public final class InMemoryCache<K extends Message, M extends Message> implement
             inMemoryCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(2)
                 .maximumSize(50)
-                .expireAfterWrite(1, TimeUnit.HOURS)
+                .expireAfterWrite(TTL_HOURS, TimeUnit.HOURS)
                 .weakKeys()
                 .recordStats()
                 .build();
@@ -115,6 +118,12 @@ public final class InMemoryCache<K extends Message, M extends Message> implement
         return ReactiveFuture.wrap(executor.submit(() -> CACHE.acquire().invalidate(id)), executor);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<Long> entryTTLMillis() {
+        return Optional.of(TimeUnit.HOURS.toMillis(TTL_HOURS));
+    }
+
     /** {@inheritDoc} */
     @Override
     public @Nonnull ReactiveFuture flush(@Nonnull ListeningScheduledExecutorService executor) {
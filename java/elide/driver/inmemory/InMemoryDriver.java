@@ -12,8 +12,14 @@
  */
 package elide.driver.inmemory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
 import com.google.protobuf.Message;
 import elide.model.*;
 import elide.runtime.jvm.Logging;
@@ -24,10 +30,16 @@ import tools.elide.core.DatapointType;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static elide.model.ModelMetadata.*;
@@ -38,6 +50,13 @@ import static elide.model.ModelMetadata.*;
  * simple testing and mocking purposes. Please do not use this in production. The in-memory data engine does not support
  * queries, persistence, or nearly anything except get/put/delete.
  *
+ * <p>For crash recovery in tests and local tooling, a {@link WriteAheadLog} may be attached to the shared storage via
+ * {@link #attachLog(Path)}, after which writes are logged according to their {@link WriteOptions#durability()}.</p>
+ *
+ * <p>Every stored record carries a version and a last-update time (see {@link InMemoryRecord}), which are exposed via
+ * {@link #retrieveVersioned(Message, FetchOptions)} and enforced on writes and deletes which carry preconditions (see
+ * {@link OperationOptions#expectedVersion()}).</p>
+ *
  * @param <Model> Model/message type which we are storing with this driver.
  */
 @SuppressWarnings("UnstableApiUsage")
@@ -59,7 +78,10 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         private final static InMemoryStorage INSTANCE;
 
         /** Backing storage map. */
-        private final @Nonnull ConcurrentMap<Object, EncodedModel> storageMap;
+        private final @Nonnull SnapshotStorage storageMap;
+
+        /** Write-ahead log for the storage map, if one is attached. */
+        private volatile @Nullable WriteAheadLog log = null;
 
         static {
             INSTANCE = new InMemoryStorage();
@@ -67,14 +89,19 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
 
         /** Private constructor. Acquire via {@link #acquire()}. */
         private InMemoryStorage() {
-            storageMap = new ConcurrentSkipListMap<>();
+            storageMap = new SnapshotStorage();
         }
 
         /** @return In-memory storage window singleton. */
         @CanIgnoreReturnValue
-        private static @Nonnull ConcurrentMap<Object, EncodedModel> acquire() {
+        private static @Nonnull SnapshotStorage acquire() {
             return INSTANCE.storageMap;
         }
+
+        /** @return Write-ahead log attached to in-memory storage, or {@code null} if there is none. */
+        private static @Nullable WriteAheadLog log() {
+            return INSTANCE.log;
+        }
     }
 
     /**
@@ -112,6 +139,89 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         return new InMemoryDriver<>(codec, executorService);
     }
 
+    /**
+     * Attach a write-ahead log to in-memory storage, using default settings. See
+     * {@link #attachLog(Path, WriteOptions.Durability, long)}.
+     *
+     * @param directory Directory holding log and snapshot files.
+     * @return Attached write-ahead log.
+     * @throws IOException If the log cannot be read or created.
+     */
+    public static @Nonnull WriteAheadLog attachLog(@Nonnull Path directory) throws IOException {
+        return attachLog(directory, WriteAheadLog.DEFAULT_DURABILITY, WriteAheadLog.DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * Attach a write-ahead log to in-memory storage, which is shared by all in-memory drivers. Records held in the log
+     * are recovered into storage first; from then on, every write and delete is logged, according to its
+     * {@link WriteOptions#durability()}, or {@code defaultDurability} if it specifies none.
+     *
+     * @param directory Directory holding log and snapshot files.
+     * @param defaultDurability Durability for writes which do not specify one.
+     * @param snapshotEvery Count of logged entries after which a snapshot is taken, and the log truncated.
+     * @return Attached write-ahead log.
+     * @throws IOException If the log cannot be read or created.
+     * @throws IllegalStateException If a log is already attached.
+     */
+    public static @Nonnull WriteAheadLog attachLog(@Nonnull Path directory,
+                                                   @Nonnull WriteOptions.Durability defaultDurability,
+                                                   long snapshotEvery) throws IOException {
+        synchronized (InMemoryStorage.class) {
+            if (InMemoryStorage.INSTANCE.log != null)
+                throw new IllegalStateException("A write-ahead log is already attached to in-memory storage.");
+            final WriteAheadLog log = WriteAheadLog.open(directory, InMemoryStorage.acquire(), defaultDurability,
+                    snapshotEvery, WriteAheadLog.DEFAULT_COMMIT_DELAY_MICROS, TimeUnit.MICROSECONDS);
+            InMemoryStorage.INSTANCE.log = log;
+            return log;
+        }
+    }
+
+    /**
+     * Detach and close the write-ahead log attached to in-memory storage, if any, once every logged entry is synced.
+     * Records stay in storage, but later changes are no longer logged.
+     *
+     * @throws IOException If the log cannot be synced or closed.
+     */
+    public static void detachLog() throws IOException {
+        final WriteAheadLog log;
+        synchronized (InMemoryStorage.class) {
+            log = InMemoryStorage.INSTANCE.log;
+            InMemoryStorage.INSTANCE.log = null;
+        }
+        if (log != null) log.close();
+    }
+
+    /**
+     * Export a snapshot of in-memory storage, which is shared by all in-memory drivers, for a later warm start via
+     * {@link #importSnapshot(Path, ExecutorService)}. The snapshot is a consistent view of storage as of the moment this
+     * call begins, taken without pausing writers. Shards are written in parallel.
+     *
+     * @param directory Directory to hold the snapshot. Any previous snapshot in the directory is replaced.
+     * @param shards Count of shard files to write, in parallel.
+     * @param executor Executor to write shards on.
+     * @return Count of records exported.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static long exportSnapshot(@Nonnull Path directory,
+                                      int shards,
+                                      @Nonnull ExecutorService executor) throws IOException {
+        return InMemorySnapshot.export(InMemoryStorage.acquire(), directory, shards, executor);
+    }
+
+    /**
+     * Import a snapshot written by {@link #exportSnapshot(Path, int, ExecutorService)} into in-memory storage. Shards are
+     * memory-mapped and read in parallel. Records already in storage are replaced by those in the snapshot, if any; if a
+     * write-ahead log is attached, imported records are not logged until the next checkpoint.
+     *
+     * @param directory Directory holding the snapshot.
+     * @param executor Executor to read shards on.
+     * @return Count of records imported.
+     * @throws IOException If the snapshot is missing, incomplete, or corrupt.
+     */
+    public static long importSnapshot(@Nonnull Path directory, @Nonnull ExecutorService executor) throws IOException {
+        return InMemorySnapshot.load(directory, InMemoryStorage.acquire(), executor);
+    }
+
     // -- Getters -- //
     /** {@inheritDoc} */
     @Override
@@ -125,6 +235,32 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         return this.executorService;
     }
 
+    /**
+     * Resolve the existence filter for this driver's model type. Storage is shared between all in-memory drivers, and
+     * keeps the filter up to date on every write to records of the type, including writes which do not go through this
+     * driver, write-ahead log replay, and snapshot imports.
+     *
+     * @return Existence filter shared by all in-memory drivers for this model type.
+     */
+    @Nonnull ExistenceFilter existence() {
+        return InMemoryStorage.acquire().existence(modelType());
+    }
+
+    /**
+     * Snapshot the IDs of all records of this driver's model type held in in-memory storage. Every write which
+     * completed before this call is reflected.
+     *
+     * @return IDs of all stored records of this model type.
+     */
+    @Nonnull List<Object> storedIds() {
+        return InMemoryStorage.acquire().storedIds(modelType());
+    }
+
+    /** @return Fully-qualified name of this driver's model type. */
+    private @Nonnull String modelType() {
+        return codec.instance().getDescriptorForType().getFullName();
+    }
+
     // -- API: Fetch -- //
     /** {@inheritDoc} */
     @Override
@@ -138,30 +274,100 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         if (logging.isDebugEnabled())
             logging.debug(format("Retrieving model at ID '%s' from in-memory storage.", id));
 
-        return ReactiveFuture.wrap(this.executorService.submit(() -> {
-            if (logging.isTraceEnabled())
-                logging.trace(format("Began async task to retrieve model at ID '%s' from in-memory storage.", id));
-
-            EncodedModel data = InMemoryStorage.acquire().get(id);
-            if (data != null) {
-                if (logging.isTraceEnabled())
-                    logging.trace(format("Model found at ID '%s'. Sending to deserializer...", id));
-
-                var deserialized = this.codec.deserialize(data);
-                if (logging.isDebugEnabled())
-                    logging.debug(format("Found and deserialized model at ID '%s'. Record follows:\n%s", id, deserialized));
-                if (logging.isInfoEnabled())
-                    logging.info(format("Retrieved record at ID '%s' from in-memory storage.", id));
-
-                // we found encoded data at the provided key. inflate it with the codec.
-                return Optional.of(spliceKey(applyMask(deserialized, options), Optional.of(key)));
-            } else {
-                if (logging.isWarnEnabled())
-                    logging.warn(format("Model not found at ID '%s'.", id));
-
-                // the model was not found.
-                return Optional.empty();
+        return ReactiveFuture.wrap(this.executorService.submit(() -> readRecord(key, id, options)),
+                options.executorService().orElse(this.executorService));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The in-memory driver reads the whole batch in a single task on its executor.</p>
+     */
+    @Override
+    public @Nonnull List<ReactiveFuture<Optional<Model>>> retrieveAll(final @Nonnull List<Key> keys,
+                                                                      final @Nonnull FetchOptions options) {
+        Objects.requireNonNull(options, "Cannot fetch models without `options`.");
+        final List<SettableFuture<Optional<Model>>> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) results.add(SettableFuture.create());
+
+        if (logging.isDebugEnabled())
+            logging.debug(format("Retrieving batch of %s models from in-memory storage.", keys.size()));
+
+        this.executorService.execute(() -> {
+            for (int i = 0; i < keys.size(); i++) {
+                try {
+                    final Key key = Objects.requireNonNull(keys.get(i), "Cannot fetch model with `null` for key.");
+                    enforceRole(key, DatapointType.OBJECT_KEY);
+                    final Object id = id(key).orElseThrow(
+                            () -> new IllegalArgumentException("Cannot fetch model with empty key."));
+                    results.get(i).set(readRecord(key, id, options));
+                } catch (Exception err) {
+                    results.get(i).setException(err);
+                }
             }
+        });
+        return wrapAll(results, options.executorService().orElse(this.executorService));
+    }
+
+    /**
+     * Read a single record from in-memory storage, on the calling thread.
+     *
+     * @param key Key for the record.
+     * @param id ID for the record, resolved from {@code key}.
+     * @param options Options for the read.
+     * @return Record, if found.
+     */
+    private @Nonnull Optional<Model> readRecord(@Nonnull Key key,
+                                                @Nonnull Object id,
+                                                @Nonnull FetchOptions options)
+            throws ModelInflateException, IOException {
+        if (logging.isTraceEnabled())
+            logging.trace(format("Began async task to retrieve model at ID '%s' from in-memory storage.", id));
+
+        InMemoryRecord stored = InMemoryStorage.acquire().get(id);
+        if (stored != null) {
+            if (logging.isTraceEnabled())
+                logging.trace(format("Model found at ID '%s'. Sending to deserializer...", id));
+
+            var deserialized = this.codec.deserialize(stored.data());
+            if (logging.isDebugEnabled())
+                logging.debug(format("Found and deserialized model at ID '%s'. Record follows:\n%s", id, deserialized));
+            if (logging.isInfoEnabled())
+                logging.info(format("Retrieved record at ID '%s' from in-memory storage.", id));
+
+            // we found encoded data at the provided key. inflate it with the codec.
+            return Optional.of(spliceKey(applyMask(deserialized, options), Optional.of(key)));
+        } else {
+            if (logging.isWarnEnabled())
+                logging.warn(format("Model not found at ID '%s'.", id));
+
+            // the model was not found.
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The in-memory driver versions every record it stores (see {@link InMemoryRecord}), and enforces version and
+     * update-time preconditions on every write and delete.</p>
+     */
+    @Override
+    public @Nonnull ReactiveFuture<Optional<Versioned<Model>>> retrieveVersioned(final @Nonnull Key key,
+                                                                                 final @Nonnull FetchOptions options) {
+        Objects.requireNonNull(key, "Cannot fetch model with `null` for key.");
+        Objects.requireNonNull(options, "Cannot fetch model without `options`.");
+        enforceRole(key, DatapointType.OBJECT_KEY);
+        final var id = id(key).orElseThrow(() -> new IllegalArgumentException("Cannot fetch model with empty key."));
+
+        if (logging.isDebugEnabled())
+            logging.debug(format("Retrieving versioned model at ID '%s' from in-memory storage.", id));
+
+        return ReactiveFuture.wrap(this.executorService.submit(() -> {
+            final InMemoryRecord stored = InMemoryStorage.acquire().get(id);
+            if (stored == null) return Optional.<Versioned<Model>>empty();
+            final Model model = spliceKey(applyMask(this.codec.deserialize(stored.data()), options), Optional.of(key));
+            return Optional.of(Versioned.of(model, stored.version(), stored.updatedAtMicros()));
         }), options.executorService().orElse(this.executorService));
     }
 
@@ -183,53 +389,362 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         if (logging.isDebugEnabled())
             logging.debug(format("Persisting model at ID '%s' using in-memory storage.", targetId));
 
-        return ReactiveFuture.wrap(this.executorService.submit(() -> {
-            WriteOptions.WriteDisposition writeMode = (
-                    key == null ? WriteOptions.WriteDisposition.MUST_NOT_EXIST : options.writeMode()
-                            .orElse(WriteOptions.WriteDisposition.BLIND));
+        return ReactiveFuture.wrap(
+                Futures.submitAsync(() -> writeRecord(key, targetKey, targetId, model, options), this.executorService),
+                options.executorService().orElse(this.executorService));
+    }
 
-            if (logging.isTraceEnabled())
-                logging.trace(format(
-                        "Began async task to write model at ID '%s' to in-memory storage. Write disposition: '%s'.",
-                        targetId,
-                        writeMode.name()));
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The in-memory driver writes the whole batch, in order, in a single task on its executor.</p>
+     */
+    @Override
+    public @Nonnull List<ReactiveFuture<Model>> persistAll(final @Nonnull List<Key> keys,
+                                                           final @Nonnull List<Model> models,
+                                                           final @Nonnull WriteOptions options) {
+        Objects.requireNonNull(options, "Cannot persist models without `options`.");
+        if (keys.size() != models.size())
+            throw new IllegalArgumentException("Bulk persist requires exactly one key per record.");
+        final List<SettableFuture<Model>> results = new ArrayList<>(models.size());
+        for (int i = 0; i < models.size(); i++) results.add(SettableFuture.create());
 
-            // enforce write mode
+        if (logging.isDebugEnabled())
+            logging.debug(format("Persisting batch of %s models using in-memory storage.", models.size()));
+
+        this.executorService.execute(() -> {
+            for (int i = 0; i < models.size(); i++) {
+                try {
+                    final Key key = Objects.requireNonNull(keys.get(i), "Cannot bulk-persist model without a key.");
+                    final Model model = Objects.requireNonNull(models.get(i), "Cannot persist `null` model.");
+                    enforceRole(key, DatapointType.OBJECT_KEY);
+                    //noinspection OptionalGetWithoutIsPresent
+                    results.get(i).setFuture(writeRecord(key, key, id(key).get(), model, options));
+                } catch (Exception err) {
+                    results.get(i).setException(err);
+                }
+            }
+        });
+        return wrapAll(results, options.executorService().orElse(this.executorService));
+    }
+
+    /**
+     * Write a single record to in-memory storage, on the calling thread, enforcing its write disposition. If a
+     * write-ahead log is attached, the write is logged, and the returned future waits for the requested durability.
+     *
+     * @param key Key for the record, as provided by the caller (if any).
+     * @param targetKey Key to write the record at, generated if the caller provided none.
+     * @param targetId ID to write the record at, resolved from {@code targetKey}.
+     * @param model Record to write.
+     * @param options Options for the write.
+     * @return Future for the written record, with its key spliced in.
+     * @throws ModelWriteConflict If the write disposition cannot be satisfied.
+     */
+    private @Nonnull ListenableFuture<Model> writeRecord(@Nullable Key key,
+                                       @Nonnull Key targetKey,
+                                       @Nonnull Object targetId,
+                                       @Nonnull Model model,
+                                       @Nonnull WriteOptions options) throws ModelDeflateException, IOException {
+        WriteOptions.WriteDisposition writeMode = (
+                key == null ? WriteOptions.WriteDisposition.MUST_NOT_EXIST : options.writeMode()
+                        .orElse(WriteOptions.WriteDisposition.BLIND));
+
+        if (logging.isTraceEnabled())
+            logging.trace(format(
+                    "Began async task to write model at ID '%s' to in-memory storage. Write disposition: '%s'.",
+                    targetId,
+                    writeMode.name()));
+
+        // serialize once, then swap the record in (through the log, if there is one), retrying if another write lands
+        // in between. the write mode and any preconditions are enforced against the record being replaced.
+        final EncodedModel encoded = codec.serialize(model);
+        final SnapshotStorage storage = InMemoryStorage.acquire();
+        Optional<ListenableFuture<Void>> durable = Optional.empty();
+        while (durable.isEmpty()) {
+            final InMemoryRecord current = storage.get(targetId);
             boolean conflictFailure = false;
             switch (writeMode) {
-                case MUST_NOT_EXIST: conflictFailure = InMemoryStorage.acquire().containsKey(targetId); break;
-                case MUST_EXIST: conflictFailure = !InMemoryStorage.acquire().containsKey(targetId); break;
+                case MUST_NOT_EXIST: conflictFailure = current != null; break;
+                case MUST_EXIST: conflictFailure = current == null; break;
                 case BLIND: break;
             }
             if (conflictFailure) {
                 logging.error(format("Encountered conflict failure: key collision at ID '%s'.", targetId));
                 throw new ModelWriteConflict(targetId, model, writeMode);
             }
+            enforcePreconditions(targetId, model, current, options);
+            durable = swapRecord(storage, targetId, current, InMemoryRecord.next(encoded, current), options);
+        }
+
+        if (logging.isTraceEnabled())
+            logging.trace(format(
+                    "No conflict failure encountered, model was written at ID '%s'.",
+                    targetId));
+
+        var rval = ModelMetadata.<Model, Key>spliceKey(model, Optional.of(targetKey));
+        if (logging.isInfoEnabled())
+            logging.info(format(
+                    "Wrote record to in-memory storage at ID '%s'.",
+                    targetId));
+        if (logging.isDebugEnabled())
+            logging.debug(format(
+                    "Returning written model at ID '%s' after write to in-memory storage. Record follows:\n%s",
+                    targetId,
+                    rval));
+
+        return Futures.transform(durable.get(), (ignored) -> rval, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Wrap a batch of per-record futures for return to callers.
+     *
+     * @param results Per-record futures.
+     * @param executor Executor to dispatch callbacks on.
+     * @param <R> Result type for each record.
+     * @return Wrapped futures, in the same order.
+     */
+    private static @Nonnull <R> List<ReactiveFuture<R>> wrapAll(@Nonnull List<SettableFuture<R>> results,
+                                                                @Nonnull Executor executor) {
+        final List<ReactiveFuture<R>> wrapped = new ArrayList<>(results.size());
+        for (SettableFuture<R> result : results) wrapped.add(ReactiveFuture.wrap(result, executor));
+        return wrapped;
+    }
 
-            // if we make it this far, we're ready to write. serialize and put.
-            InMemoryStorage
-                    .acquire()
-                    .put(targetId, codec.serialize(model));
+    // -- API: Modify -- //
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The in-memory driver makes this atomic per key with a compare-and-swap loop on the stored record: if another
+     * write lands between reading the record and swapping in the result, {@code function} is applied again to the newer
+     * record.</p>
+     */
+    @Override
+    public @Nonnull ReactiveFuture<Model> modify(final @Nonnull Key key,
+                                                 final @Nonnull UnaryOperator<Model> function,
+                                                 final @Nonnull WriteOptions options) {
+        Objects.requireNonNull(key, "Cannot modify model with `null` for key.");
+        Objects.requireNonNull(function, "Cannot modify model without a `function`.");
+        Objects.requireNonNull(options, "Cannot modify model without `options`.");
+        enforceRole(key, DatapointType.OBJECT_KEY);
+        if (!WriteOptions.WriteDisposition.MUST_EXIST.equals(
+                options.writeMode().orElse(WriteOptions.WriteDisposition.MUST_EXIST)))
+            throw new IllegalArgumentException(
+                    "Operation failed: Write options for `modify` must specify `MUST_EXIST` write disposition.");
+        final var id = id(key).orElseThrow(() -> new IllegalArgumentException("Cannot modify model with empty key."));
 
+        if (logging.isDebugEnabled())
+            logging.debug(format("Modifying model at ID '%s' in in-memory storage.", id));
+
+        return ReactiveFuture.wrap(
+                Futures.submitAsync(() -> modifyRecord(key, id, function, options), this.executorService),
+                options.executorService().orElse(this.executorService));
+    }
+
+    /**
+     * Read, modify, and swap a single record in in-memory storage, on the calling thread, retrying until the swap wins.
+     *
+     * @param key Key for the record.
+     * @param id ID for the record, resolved from {@code key}.
+     * @param function Computes the new record from the current one.
+     * @param options Options for the write.
+     * @return Future for the record as finally stored, with its key spliced in.
+     * @throws ModelWriteConflict If the record does not exist.
+     */
+    private @Nonnull ListenableFuture<Model> modifyRecord(@Nonnull Key key,
+                                                          @Nonnull Object id,
+                                                          @Nonnull UnaryOperator<Model> function,
+                                                          @Nonnull WriteOptions options)
+            throws ModelInflateException, ModelDeflateException, IOException {
+        final SnapshotStorage storage = InMemoryStorage.acquire();
+        for (int attempt = 1; ; attempt++) {
+            final InMemoryRecord current = storage.get(id);
+            if (current == null) {
+                logging.error(format("Encountered conflict failure: no record to modify at ID '%s'.", id));
+                throw new ModelWriteConflict(id, codec.instance(), WriteOptions.WriteDisposition.MUST_EXIST);
+            }
+            enforcePreconditions(id, codec.instance(), current, options);
+            final Model before = ModelMetadata.<Model, Key>spliceKey(
+                    codec.deserialize(current.data()), Optional.of(key));
+            final Model after = Objects.requireNonNull(function.apply(before), "Cannot modify a record into `null`.");
+            if (after == before) return Futures.immediateFuture(before);
+
+            final InMemoryRecord next = InMemoryRecord.next(codec.serialize(after), current);
+            final Optional<ListenableFuture<Void>> durable = swapRecord(storage, id, current, next, options);
+            if (durable.isPresent()) {
+                final Model written = ModelMetadata.<Model, Key>spliceKey(after, Optional.of(key));
+                return Futures.transform(durable.get(), (ignored) -> written, MoreExecutors.directExecutor());
+            }
+
+            // another write landed first. try again, against the newer record.
             if (logging.isTraceEnabled())
-                logging.trace(format(
-                        "No conflict failure encountered, model was written at ID '%s'.",
-                        targetId));
+                logging.trace(format("Lost race to modify model at ID '%s' (attempt %s). Retrying.", id, attempt));
+        }
+    }
 
-            var rval = ModelMetadata.<Model, Key>spliceKey(model, Optional.of(targetKey));
-            if (logging.isInfoEnabled())
-                logging.info(format(
-                        "Wrote record to in-memory storage at ID '%s'.",
-                        targetId));
-            if (logging.isDebugEnabled())
-                logging.debug(format(
-                        "Returning written model at ID '%s' after write to in-memory storage. Record follows:\n%s",
-                        targetId,
-                        rval));
+    /**
+     * Swap {@code next} into in-memory storage at {@code id}, if the record stored there is still {@code expected}. If
+     * a write-ahead log is attached, the swap is logged.
+     *
+     * @param storage In-memory storage map.
+     * @param id ID of the record to swap.
+     * @param expected Record which must still be stored for the swap to happen, or {@code null} if there must be none.
+     * @param next Record to store in its place.
+     * @param options Options for the write.
+     * @return Future which completes once the swap is as durable as requested, or empty if the swap lost a race.
+     */
+    private static @Nonnull Optional<ListenableFuture<Void>> swapRecord(@Nonnull SnapshotStorage storage,
+                                                                       @Nonnull Object id,
+                                                                       @Nullable InMemoryRecord expected,
+                                                                       @Nonnull InMemoryRecord next,
+                                                                       @Nonnull WriteOptions options)
+            throws IOException {
+        final WriteAheadLog log = InMemoryStorage.log();
+        if (log != null) return log.replace(id, expected, next, options.durability());
+        if (!WriteAheadLog.swap(storage, id, expected, next)) return Optional.empty();
+        return Optional.of(Futures.immediateFuture(null));
+    }
 
-            return rval;
+    /**
+     * Determine whether {@code options} carry any version or update-time preconditions.
+     *
+     * @param options Options for the operation.
+     * @return Whether any precondition is present.
+     */
+    private static boolean hasPreconditions(@Nonnull OperationOptions options) {
+        return options.expectedVersion().isPresent() ||
+                options.updatedAtMicros().isPresent() ||
+                options.updatedAtSeconds().isPresent();
+    }
 
-        }), options.executorService().orElse(this.executorService));
+    /**
+     * Enforce the version and update-time preconditions carried by {@code options} (if any) against the record stored
+     * at {@code id}. Every precondition requires the record to exist.
+     *
+     * @param id ID of the record.
+     * @param model Model being written, or an empty instance, for error reporting.
+     * @param current Record currently stored at {@code id}, if any.
+     * @param options Options for the operation.
+     * @throws ModelWriteConflict If any precondition is not met.
+     */
+    private static void enforcePreconditions(@Nonnull Object id,
+                                             @Nonnull Message model,
+                                             @Nullable InMemoryRecord current,
+                                             @Nonnull OperationOptions options) {
+        final Optional<Long> version = options.expectedVersion();
+        final Optional<Long> micros = options.updatedAtMicros();
+        final Optional<Long> seconds = options.updatedAtSeconds();
+        String failed = null;
+        if (version.isPresent() && (current == null || current.version() != version.get())) {
+            failed = format("version == %s", version.get());
+        } else if (micros.isPresent() && (current == null || current.updatedAtMicros() > micros.get())) {
+            failed = format("not modified since %s (microseconds)", micros.get());
+        } else if (seconds.isPresent() &&
+                (current == null || TimeUnit.MICROSECONDS.toSeconds(current.updatedAtMicros()) > seconds.get())) {
+            failed = format("not modified since %s (seconds)", seconds.get());
+        }
+        if (failed != null) {
+            logging.error(format("Encountered conflict failure: precondition '%s' not met at ID '%s'.", failed, id));
+            throw new ModelWriteConflict(id, model, failed);
+        }
+    }
+
+    // -- API: Update -- //
+    /**
+     * {@inheritDoc}
+     *
+     * <p>When the update mask names only top-level fields, the in-memory driver merges the update straight into the
+     * stored bytes (see {@link MaskedMerge}): masked fields are cut out of the encoded record and the new values are
+     * appended, so the rest of the record is never decoded or re-encoded to apply the merge. The merged record is
+     * swapped in atomically per key, as with {@link #modify}. Other masks are merged on decoded records.</p>
+     */
+    @Override
+    public @Nonnull ReactiveFuture<Model> update(final @Nonnull Key key,
+                                                 final @Nonnull Model model,
+                                                 final @Nonnull UpdateOptions options) {
+        Objects.requireNonNull(key, "Cannot update model with `null` for key.");
+        Objects.requireNonNull(model, "Cannot update `null` model.");
+        Objects.requireNonNull(options, "Cannot update model without `options`.");
+        final Optional<FieldMask> mask = options.updateMask();
+        final Optional<List<FieldDescriptor>> fields = mask.isPresent() && mask.get().getPathsCount() > 0 ?
+                MaskedMerge.topLevelFields(model.getDescriptorForType(), mask.get()) : Optional.empty();
+        if (fields.isEmpty()) return PersistenceDriver.super.update(key, model, options);
+
+        enforceRole(key, DatapointType.OBJECT_KEY);
+        if (!WriteOptions.WriteDisposition.MUST_EXIST.equals(
+                options.writeMode().orElse(WriteOptions.WriteDisposition.MUST_EXIST)))
+            throw new IllegalArgumentException(
+                    "Operation failed: Write options for `update` must specify `MUST_EXIST` write disposition.");
+        final var id = id(key).orElseThrow(() -> new IllegalArgumentException("Cannot update model with empty key."));
+
+        if (logging.isDebugEnabled())
+            logging.debug(format("Merging masked update into model at ID '%s' in in-memory storage.", id));
+
+        return ReactiveFuture.wrap(
+                Futures.submitAsync(() -> updateRecord(key, id, model, mask.get(), fields.get(), options),
+                        this.executorService),
+                options.executorService().orElse(this.executorService));
+    }
+
+    /**
+     * Merge a masked update into a single record in in-memory storage, on the calling thread, retrying until the swap
+     * wins. Records stored in binary form are merged on the wire; others are decoded and merged.
+     *
+     * @param key Key for the record.
+     * @param id ID for the record, resolved from {@code key}.
+     * @param model Record carrying the new values for masked fields.
+     * @param mask Update mask.
+     * @param fields Top-level fields named by {@code mask}.
+     * @param options Options for the write.
+     * @return Future for the merged record, with its key spliced in.
+     * @throws ModelWriteConflict If the record does not exist.
+     */
+    private @Nonnull ListenableFuture<Model> updateRecord(@Nonnull Key key,
+                                                          @Nonnull Object id,
+                                                          @Nonnull Model model,
+                                                          @Nonnull FieldMask mask,
+                                                          @Nonnull List<FieldDescriptor> fields,
+                                                          @Nonnull WriteOptions options)
+            throws ModelInflateException, ModelDeflateException, IOException {
+        final SnapshotStorage storage = InMemoryStorage.acquire();
+        for (int attempt = 1; ; attempt++) {
+            final InMemoryRecord current = storage.get(id);
+            if (current == null) {
+                logging.error(format("Encountered conflict failure: no record to update at ID '%s'.", id));
+                throw new ModelWriteConflict(id, model, WriteOptions.WriteDisposition.MUST_EXIST);
+            }
+            enforcePreconditions(id, model, current, options);
+            final EncodedModel stored = current.data();
+            final EncodedModel merged = EncodingMode.BINARY.equals(stored.getDataMode()) ?
+                    compress(EncodedModel.wrap(stored.getType(), EncodingMode.BINARY,
+                            MaskedMerge.merge(stored.getRawBytes(), model, fields))) :
+                    codec.serialize(mergeMasked(codec.deserialize(stored), model, mask));
+
+            final Optional<ListenableFuture<Void>> durable =
+                    swapRecord(storage, id, current, InMemoryRecord.next(merged, current), options);
+            if (durable.isPresent()) {
+                // the merged record is only decoded once it is stored, to hand back to the caller.
+                final Model written = ModelMetadata.<Model, Key>spliceKey(codec.deserialize(merged), Optional.of(key));
+                return Futures.transform(durable.get(), (ignored) -> written, MoreExecutors.directExecutor());
+            }
+
+            // another write landed first. try again, against the newer record.
+            if (logging.isTraceEnabled())
+                logging.trace(format("Lost race to update model at ID '%s' (attempt %s). Retrying.", id, attempt));
+        }
+    }
+
+    /**
+     * Compress a record merged in place on the wire, if the codec compresses records and the merge has grown the record
+     * past the codec's compression threshold. Records merged in place skip {@link ModelCodec#serialize(Message)}, which
+     * would otherwise make that check.
+     *
+     * @param merged Record merged in uncompressed binary form.
+     * @return Record as it should be stored.
+     * @throws IOException If the record cannot be compressed.
+     */
+    private @Nonnull EncodedModel compress(@Nonnull EncodedModel merged) throws IOException {
+        if (codec instanceof ProtoModelCodec) return ((ProtoModelCodec<?>) codec).compress(merged);
+        return merged;
     }
 
     // -- API: Delete -- //
@@ -246,18 +761,38 @@ public final class InMemoryDriver<Key extends Message, Model extends Message>
         if (logging.isDebugEnabled())
             logging.debug(format("Deleting model at ID '%s' from in-memory storage.", targetId));
 
-        return ReactiveFuture.wrap(this.executorService.submit(() -> {
+        return ReactiveFuture.wrap(Futures.submitAsync(() -> {
             if (logging.isTraceEnabled())
                 logging.trace(format("Began async task to delete model at ID '%s' from in-memory storage.", targetId));
 
-            InMemoryStorage
-                    .acquire()
-                    .remove(targetId);
+            final WriteAheadLog log = InMemoryStorage.log();
+            final SnapshotStorage storage = InMemoryStorage.acquire();
+            ListenableFuture<Void> durable = null;
+            if (!hasPreconditions(options)) {
+                if (log != null) {
+                    durable = log.remove(targetId, Optional.empty());
+                } else {
+                    storage.remove(targetId);
+                    durable = Futures.immediateFuture(null);
+                }
+            }
+            while (durable == null) {
+                // conditional delete: check preconditions against the stored record, and remove it only if it is
+                // still the same record once we get there.
+                final InMemoryRecord current = storage.get(targetId);
+                enforcePreconditions(targetId, codec.instance(), current, options);
+                Objects.requireNonNull(current, "Preconditions must require an existing record.");
+                if (log != null) {
+                    durable = log.removeIf(targetId, current, Optional.empty()).orElse(null);
+                } else if (storage.remove(targetId, current)) {
+                    durable = Futures.immediateFuture(null);
+                }
+            }
 
             if (logging.isInfoEnabled())
                 logging.info(format("Model at ID '%s' deleted from in-memory storage.", targetId));
 
-            return key;
-        }));
+            return Futures.transform(durable, (ignored) -> key, MoreExecutors.directExecutor());
+        }, this.executorService));
     }
 }
\ No newline at end of file
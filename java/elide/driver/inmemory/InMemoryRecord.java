@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import elide.model.EncodedModel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.time.Instant;
+
+
+/**
+ * Record held in in-memory storage: an encoded model, along with the version and update time assigned to it when it
+ * was written. Versions start at {@code 1} when a record is created, and go up by one with every write after that.
+ * Update times are in microseconds since the epoch, and go up strictly with every write to the same record, even if
+ * the clock does not.
+ *
+ * <p>Records compare by identity, so that a compare-and-swap against storage only succeeds against the very record it
+ * read, never against an equal record written since.</p>
+ */
+@Immutable
+public final class InMemoryRecord {
+    /** Encoded model held by this record. */
+    private final @Nonnull EncodedModel data;
+
+    /** Version of the record. */
+    private final long version;
+
+    /** Time the record was written, in microseconds since the epoch. */
+    private final long updatedAtMicros;
+
+    /**
+     * Private constructor. Acquire via {@link #of(EncodedModel, long, long)} or
+     * {@link #next(EncodedModel, InMemoryRecord)}.
+     */
+    private InMemoryRecord(@Nonnull EncodedModel data, long version, long updatedAtMicros) {
+        this.data = data;
+        this.version = version;
+        this.updatedAtMicros = updatedAtMicros;
+    }
+
+    /**
+     * Wrap an encoded model with an explicit version and update time, for instance when recovering storage.
+     *
+     * @param data Encoded model.
+     * @param version Version of the record.
+     * @param updatedAtMicros Time the record was written, in microseconds since the epoch.
+     * @return Record holding the encoded model.
+     */
+    public static @Nonnull InMemoryRecord of(@Nonnull EncodedModel data, long version, long updatedAtMicros) {
+        return new InMemoryRecord(data, version, updatedAtMicros);
+    }
+
+    /**
+     * Wrap an encoded model as the next write after {@code previous}, or as a new record if there is none.
+     *
+     * @param data Encoded model.
+     * @param previous Record being replaced, if any.
+     * @return Record holding the encoded model, with the next version and update time.
+     */
+    public static @Nonnull InMemoryRecord next(@Nonnull EncodedModel data, @Nullable InMemoryRecord previous) {
+        final Instant now = Instant.now();
+        final long micros = Math.addExact(Math.multiplyExact(now.getEpochSecond(), 1_000_000L), now.getNano() / 1_000);
+        if (previous == null) return new InMemoryRecord(data, 1, micros);
+        return new InMemoryRecord(data, previous.version + 1, Math.max(micros, previous.updatedAtMicros + 1));
+    }
+
+    /** @return Encoded model held by this record. */
+    public @Nonnull EncodedModel data() {
+        return data;
+    }
+
+    /** @return Version of the record, starting at {@code 1}. */
+    public long version() {
+        return version;
+    }
+
+    /** @return Time the record was written, in microseconds since the epoch. */
+    public long updatedAtMicros() {
+        return updatedAtMicros;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "InMemoryRecord{" +
+                "version=" + version +
+                ", updatedAtMicros=" + updatedAtMicros +
+                ", data=" + data +
+                '}';
+    }
+}
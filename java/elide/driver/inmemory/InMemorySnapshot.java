@@ -0,0 +1,455 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import elide.model.EncodedModel;
+import elide.model.EncodingMode;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
+
+/**
+ * Exports and imports snapshots of in-memory storage, for warm starts. A snapshot is a directory holding a manifest and
+ * a set of shard files; shards are written and read in parallel, one task per shard, and read through memory maps.
+ *
+ * <p>Each shard is a sequence of length-delimited records, each a varint length followed by a message in Protocol
+ * Buffers wire format, equivalent to:</p>
+ * <pre>
+ *   message SnapshotRecord {
+ *     string type = 1;
+ *     oneof id {
+ *       string string_id = 2;
+ *       int64 long_id = 3;
+ *       int32 int_id = 4;
+ *     }
+ *     string mode = 5;
+ *     bytes data = 6;
+ *     int64 version = 7;
+ *     int64 updated_at_micros = 8;
+ *   }
+ * </pre>
+ *
+ * <p>An export is a consistent point-in-time view of storage, taken through a {@link SnapshotStorage.Capture} rather
+ * than by pausing writers. Shard files are named after the export which wrote them, and the manifest is renamed into
+ * place only once every shard is durable, so a crash mid-export leaves the previous snapshot intact; shards which no
+ * manifest refers to are deleted after a successful export.</p>
+ */
+final class InMemorySnapshot {
+    /** Private logging pipe. */
+    private static final Logger logging = Logging.logger(InMemorySnapshot.class);
+
+    /** Name of the manifest file within a snapshot directory. */
+    private static final String MANIFEST = "MANIFEST";
+
+    /** Magic number at the start of a manifest. */
+    private static final int MAGIC = 0x454c534e;
+
+    /** Current manifest format version. */
+    private static final int VERSION = 1;
+
+    /** Field numbers for {@code SnapshotRecord}. */
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_STRING_ID = 2;
+    private static final int FIELD_LONG_ID = 3;
+    private static final int FIELD_INT_ID = 4;
+    private static final int FIELD_MODE = 5;
+    private static final int FIELD_DATA = 6;
+    private static final int FIELD_VERSION = 7;
+    private static final int FIELD_UPDATED_AT = 8;
+
+    /** Wire types used by {@code SnapshotRecord}. */
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_DELIMITED = 2;
+
+    private InMemorySnapshot() { /* Disallow instantiation. */ }
+
+    // -- Export -- //
+
+    /**
+     * Export a consistent snapshot of {@code storage} to {@code directory}, writing {@code shards} shard files in
+     * parallel on {@code executor}. Writers are never paused; the snapshot reflects storage as of the moment this call
+     * begins.
+     *
+     * @param storage Storage to export.
+     * @param directory Directory to hold the snapshot. Created if it does not exist.
+     * @param shards Count of shard files to write, in parallel.
+     * @param executor Executor to write shards on.
+     * @return Count of records exported.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    static long export(@Nonnull SnapshotStorage storage,
+                       @Nonnull Path directory,
+                       int shards,
+                       @Nonnull ExecutorService executor) throws IOException {
+        if (shards < 1) throw new IllegalArgumentException("Snapshot must have at least one shard.");
+        Files.createDirectories(directory);
+        final String stamp = Long.toString(System.nanoTime(), 36);
+        final String[] names = new String[shards];
+        final long[] counts = new long[shards];
+
+        try (SnapshotStorage.Capture capture = storage.capture()) {
+            final Object[] ids = storage.keySet().toArray();
+
+            // records which were removed after the capture began may be missing from the ID list. they are recovered
+            // from the capture, and written to the last shard.
+            final List<Map.Entry<Object, InMemoryRecord>> missing = new ArrayList<>();
+            for (Map.Entry<Object, InMemoryRecord> replaced : capture.replaced().entrySet()) {
+                if (Arrays.binarySearch(ids, replaced.getKey()) < 0) missing.add(replaced);
+            }
+
+            final int per = (ids.length + shards - 1) / shards;
+            final List<Future<Long>> tasks = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                final int from = Math.min(ids.length, shard * per);
+                final int to = Math.min(ids.length, from + per);
+                final Path file = directory.resolve(format("shard-%s-%04d.pb", stamp, shard));
+                final List<Map.Entry<Object, InMemoryRecord>> extra = shard == shards - 1 ? missing : List.of();
+                names[shard] = file.getFileName().toString();
+                tasks.add(executor.submit(() -> writeShard(file, storage, capture, ids, from, to, extra)));
+            }
+            for (int shard = 0; shard < shards; shard++) counts[shard] = await(tasks.get(shard));
+        }
+
+        writeManifest(directory, names, counts);
+        final Set<String> live = new HashSet<>(Arrays.asList(names));
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>)files::iterator) {
+                final String name = file.getFileName().toString();
+                if (name.startsWith("shard-") && !live.contains(name)) Files.deleteIfExists(file);
+            }
+        }
+
+        long total = 0;
+        for (long count : counts) total += count;
+        if (logging.isInfoEnabled())
+            logging.info(format("Exported %s records in %s shards to '%s'.", total, shards, directory));
+        return total;
+    }
+
+    /**
+     * Write one shard of a snapshot: the records at {@code ids[from, to)}, as of when the capture began, followed by any
+     * {@code extra} records.
+     *
+     * @return Count of records written.
+     */
+    private static long writeShard(@Nonnull Path file,
+                                   @Nonnull SnapshotStorage storage,
+                                   @Nonnull SnapshotStorage.Capture capture,
+                                   @Nonnull Object[] ids,
+                                   int from,
+                                   int to,
+                                   @Nonnull List<Map.Entry<Object, InMemoryRecord>> extra) throws IOException {
+        long count = 0;
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            for (int i = from; i < to; i++) {
+                final InMemoryRecord current = storage.get(ids[i]);
+                final InMemoryRecord value = capture.valueAt(ids[i], current);
+                if (value == null) continue;
+                writeRecord(out, record, ids[i], value);
+                count++;
+            }
+            for (Map.Entry<Object, InMemoryRecord> entry : extra) {
+                writeRecord(out, record, entry.getKey(), entry.getValue());
+                count++;
+            }
+            out.flush();
+            channel.force(true);
+        }
+        return count;
+    }
+
+    /**
+     * Write a single length-delimited {@code SnapshotRecord}.
+     *
+     * @param out Stream to write to.
+     * @param record Scratch buffer, reused between records.
+     * @param id ID of the record.
+     * @param stored Stored record.
+     * @throws IOException If the record cannot be written, or its ID is of an unsupported type.
+     */
+    private static void writeRecord(@Nonnull OutputStream out,
+                                    @Nonnull ByteArrayOutputStream record,
+                                    @Nonnull Object id,
+                                    @Nonnull InMemoryRecord stored) throws IOException {
+        final EncodedModel value = stored.data();
+        record.reset();
+        writeString(record, FIELD_TYPE, value.getType());
+        if (id instanceof String) {
+            writeString(record, FIELD_STRING_ID, (String)id);
+        } else if (id instanceof Long) {
+            writeVarint(record, (FIELD_LONG_ID << 3) | WIRE_VARINT);
+            writeVarint(record, (Long)id);
+        } else if (id instanceof Integer) {
+            writeVarint(record, (FIELD_INT_ID << 3) | WIRE_VARINT);
+            writeVarint(record, (Integer)id);
+        } else {
+            throw new IOException(format("Cannot snapshot record ID of type '%s'.", id.getClass().getName()));
+        }
+        writeString(record, FIELD_MODE, value.getDataMode().name());
+        writeBytes(record, FIELD_DATA, value.getRawBytes().toByteArray());
+        writeVarint(record, (FIELD_VERSION << 3) | WIRE_VARINT);
+        writeVarint(record, stored.version());
+        writeVarint(record, (FIELD_UPDATED_AT << 3) | WIRE_VARINT);
+        writeVarint(record, stored.updatedAtMicros());
+        writeVarint(out, record.size());
+        record.writeTo(out);
+    }
+
+    /** Write a length-delimited string field. */
+    private static void writeString(@Nonnull OutputStream out, int field, @Nonnull String value) throws IOException {
+        writeBytes(out, field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write a length-delimited bytes field. */
+    private static void writeBytes(@Nonnull OutputStream out, int field, @Nonnull byte[] value) throws IOException {
+        writeVarint(out, (field << 3) | WIRE_DELIMITED);
+        writeVarint(out, value.length);
+        out.write(value);
+    }
+
+    /** Write an unsigned varint. Negative values take ten bytes, as in Protocol Buffers. */
+    private static void writeVarint(@Nonnull OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    /**
+     * Write the manifest for an export, via a temporary file which is synced and renamed into place.
+     *
+     * @param directory Snapshot directory.
+     * @param names Shard file names.
+     * @param counts Record counts, per shard.
+     * @throws IOException If the manifest cannot be written.
+     */
+    private static void writeManifest(@Nonnull Path directory,
+                                      @Nonnull String[] names,
+                                      @Nonnull long[] counts) throws IOException {
+        final Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeLong(counts[i]);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // -- Import -- //
+
+    /**
+     * Import the snapshot held in {@code directory} into {@code storage}, reading every shard in parallel on
+     * {@code executor}. Records already in storage are replaced by those in the snapshot, if any.
+     *
+     * @param directory Snapshot directory, as written by {@link #export}.
+     * @param storage Storage to import into.
+     * @param executor Executor to read shards on.
+     * @return Count of records imported.
+     * @throws IOException If the snapshot is missing, incomplete, or corrupt.
+     */
+    static long load(@Nonnull Path directory,
+                     @Nonnull ConcurrentMap<Object, InMemoryRecord> storage,
+                     @Nonnull ExecutorService executor) throws IOException {
+        final String[] names;
+        final long[] counts;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve(MANIFEST)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an in-memory snapshot manifest.");
+            final int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(format("Unsupported in-memory snapshot version %s.", version));
+            final int shards = in.readInt();
+            names = new String[shards];
+            counts = new long[shards];
+            for (int i = 0; i < shards; i++) {
+                names[i] = in.readUTF();
+                counts[i] = in.readLong();
+            }
+        }
+
+        final List<Future<Long>> tasks = new ArrayList<>(names.length);
+        for (String name : names) tasks.add(executor.submit(() -> readShard(directory.resolve(name), storage)));
+        long total = 0;
+        for (int shard = 0; shard < names.length; shard++) {
+            final long count = await(tasks.get(shard));
+            if (count != counts[shard])
+                throw new IOException(format("Snapshot shard '%s' holds %s records, but the manifest expects %s.",
+                        names[shard], count, counts[shard]));
+            total += count;
+        }
+        if (logging.isInfoEnabled())
+            logging.info(format("Imported %s records in %s shards from '%s'.", total, names.length, directory));
+        return total;
+    }
+
+    /**
+     * Read one shard of a snapshot into storage, through a read-only memory map.
+     *
+     * @param file Shard file.
+     * @param storage Storage to read into.
+     * @return Count of records read.
+     * @throws IOException If the shard cannot be read, or is corrupt.
+     */
+    private static long readShard(@Nonnull Path file,
+                                  @Nonnull ConcurrentMap<Object, InMemoryRecord> storage) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(format("Snapshot shard '%s' is too large to map; export more shards.", file));
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long count = 0;
+        while (buffer.hasRemaining()) {
+            final int length = (int)readVarint(buffer);
+            if (length < 0 || length > buffer.remaining())
+                throw new IOException(format("Snapshot shard '%s' is truncated.", file));
+            final int end = buffer.position() + length;
+            readRecord(buffer, end, storage);
+            buffer.position(end);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Read a single {@code SnapshotRecord} into storage. Unknown fields are skipped.
+     *
+     * @param buffer Buffer positioned at the start of the record.
+     * @param end Position just past the end of the record.
+     * @param storage Storage to read into.
+     * @throws IOException If the record is corrupt, or incomplete.
+     */
+    private static void readRecord(@Nonnull ByteBuffer buffer,
+                                   int end,
+                                   @Nonnull ConcurrentMap<Object, InMemoryRecord> storage) throws IOException {
+        String type = null;
+        Object id = null;
+        EncodingMode mode = EncodingMode.BINARY;
+        byte[] data = null;
+        long version = 1;
+        long updatedAtMicros = 0;
+        while (buffer.position() < end) {
+            final int tag = (int)readVarint(buffer);
+            switch (tag >>> 3) {
+                case FIELD_TYPE: type = new String(readDelimited(buffer), StandardCharsets.UTF_8); break;
+                case FIELD_STRING_ID: id = new String(readDelimited(buffer), StandardCharsets.UTF_8); break;
+                case FIELD_LONG_ID: id = readVarint(buffer); break;
+                case FIELD_INT_ID: id = (int)readVarint(buffer); break;
+                case FIELD_MODE:
+                    mode = EncodingMode.valueOf(new String(readDelimited(buffer), StandardCharsets.UTF_8));
+                    break;
+                case FIELD_DATA: data = readDelimited(buffer); break;
+                case FIELD_VERSION: version = readVarint(buffer); break;
+                case FIELD_UPDATED_AT: updatedAtMicros = readVarint(buffer); break;
+                default: skip(buffer, tag & 0x7);
+            }
+        }
+        if (type == null || id == null || data == null)
+            throw new IOException("Snapshot record is missing its type, ID, or data.");
+        storage.put(id, InMemoryRecord.of(EncodedModel.wrap(type, mode, data), version, updatedAtMicros));
+    }
+
+    /** @return Bytes of a length-delimited field, copied out of the buffer. */
+    private static @Nonnull byte[] readDelimited(@Nonnull ByteBuffer buffer) throws IOException {
+        final int length = (int)readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Snapshot field is truncated.");
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    /** Skip a field of an unknown number, by wire type. */
+    private static void skip(@Nonnull ByteBuffer buffer, int wireType) throws IOException {
+        switch (wireType) {
+            case WIRE_VARINT: readVarint(buffer); break;
+            case 1: buffer.position(buffer.position() + 8); break;
+            case WIRE_DELIMITED: readDelimited(buffer); break;
+            case 5: buffer.position(buffer.position() + 4); break;
+            default: throw new IOException(format("Unsupported wire type %s in snapshot record.", wireType));
+        }
+    }
+
+    /** @return Unsigned varint read from the buffer. */
+    private static long readVarint(@Nonnull ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) throw new IOException("Snapshot varint is truncated.");
+            final byte b = buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Snapshot varint is malformed.");
+    }
+
+    /**
+     * Wait for a shard task, unwrapping its failure.
+     *
+     * @param task Shard task.
+     * @return Count of records the task handled.
+     * @throws IOException If the task failed, or the wait was interrupted.
+     */
+    private static long await(@Nonnull Future<Long> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for snapshot shard.", ie);
+        } catch (ExecutionException ee) {
+            final @Nullable Throwable cause = ee.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            throw new IOException("Snapshot shard failed.", cause);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Merges partial updates into encoded records at the Protocol Buffers wire level, without decoding the stored record.
+ *
+ * <p>Only masks which name top-level fields are supported. Each masked field is cut out of the stored bytes, by
+ * skipping over its (possibly many) occurrences, and the new values are appended once the scan is done. Because every
+ * occurrence of a masked field is dropped, the appended values never merge with stale ones; fields the mask does not
+ * name, including unknown fields, are copied through byte-for-byte.</p>
+ */
+@Immutable
+final class MaskedMerge {
+    private MaskedMerge() { /* disallow construction */ }
+
+    /**
+     * Resolve the fields named by {@code mask}, if every path in it names a top-level field of {@code descriptor}.
+     *
+     * @param descriptor Descriptor for the model type.
+     * @param mask Update mask to resolve.
+     * @return Masked fields, or empty if the mask names nested or unknown fields.
+     */
+    static @Nonnull Optional<List<FieldDescriptor>> topLevelFields(@Nonnull Descriptor descriptor,
+                                                                   @Nonnull FieldMask mask) {
+        final List<FieldDescriptor> fields = new ArrayList<>(mask.getPathsCount());
+        for (String path : mask.getPathsList()) {
+            final FieldDescriptor field = path.indexOf('.') < 0 ? descriptor.findFieldByName(path) : null;
+            if (field == null) return Optional.empty();
+            fields.add(field);
+        }
+        return Optional.of(fields);
+    }
+
+    /**
+     * Merge the masked {@code fields} of {@code update} into the encoded {@code stored} record. Masked fields which are
+     * not set on {@code update} are cleared.
+     *
+     * @param stored Stored record, in Protocol Buffers binary format.
+     * @param update Record carrying the new values for masked fields.
+     * @param fields Masked fields, as resolved by {@link #topLevelFields(Descriptor, FieldMask)}.
+     * @return Merged record, in Protocol Buffers binary format.
+     * @throws IOException If the stored record is malformed.
+     */
+    static @Nonnull byte[] merge(@Nonnull ByteString stored,
+                                 @Nonnull Message update,
+                                 @Nonnull List<FieldDescriptor> fields) throws IOException {
+        final int[] masked = new int[fields.size()];
+        final Message.Builder values = update.newBuilderForType();
+        for (int i = 0; i < masked.length; i++) {
+            final FieldDescriptor field = fields.get(i);
+            masked[i] = field.getNumber();
+            if (field.isRepeated() ? update.getRepeatedFieldCount(field) > 0 : update.hasField(field))
+                values.setField(field, update.getField(field));
+        }
+        final Message appended = values.buildPartial();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(stored.size() + appended.getSerializedSize());
+        final CodedInputStream in = stored.newCodedInput();
+        int kept = 0;
+        while (true) {
+            final int start = in.getTotalBytesRead();
+            final int tag = in.readTag();
+            if (tag == 0) break;
+            final boolean drop = contains(masked, WireFormat.getTagFieldNumber(tag));
+            if (drop && start > kept) stored.substring(kept, start).writeTo(out);
+            in.skipField(tag);
+            if (drop) kept = in.getTotalBytesRead();
+        }
+        if (kept < stored.size()) stored.substring(kept, stored.size()).writeTo(out);
+        appended.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Check whether a (small) set of field numbers contains {@code number}.
+     *
+     * @param numbers Field numbers to search.
+     * @param number Field number to find.
+     * @return Whether the number is present.
+     */
+    private static boolean contains(@Nonnull int[] numbers, int number) {
+        for (int candidate : numbers) {
+            if (candidate == number) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Fixed-size region of memory outside the Java heap, which stores opaque byte blobs by key. The region is either a
+ * direct buffer ({@link #allocate(int)}) or a memory-mapped file ({@link #map(Path, int)}).
+ *
+ * <p>Space is handed out as a ring: each write is appended at the head, wrapping to the start of the region when the
+ * end is reached, and reclaiming the oldest entries it overlaps. This makes the region behave as a FIFO cache, with no
+ * fragmentation and no per-entry allocation. The index of live entries is held on-heap, and is small relative to the
+ * entries themselves.</p>
+ */
+@ThreadSafe
+public final class OffHeapRegion {
+    /** Backing memory for the region. */
+    @GuardedBy("this")
+    private final @Nonnull ByteBuffer region;
+
+    /** Total size of the region, in bytes. */
+    private final int capacity;
+
+    /** Index of live entries, by key. */
+    @GuardedBy("this")
+    private final @Nonnull Map<Object, Slot> index = new HashMap<>();
+
+    /** All slots in the region, in write order, including those which have since been removed. */
+    @GuardedBy("this")
+    private final @Nonnull ArrayDeque<Slot> order = new ArrayDeque<>();
+
+    /** Offset at which the next write will begin. */
+    @GuardedBy("this")
+    private int head = 0;
+
+    /** Count of bytes held by live entries. */
+    @GuardedBy("this")
+    private long liveBytes = 0;
+
+    /** Count of live entries reclaimed to make room for new writes. */
+    @GuardedBy("this")
+    private long reclaimCount = 0;
+
+    /** Describes a span of the region holding one entry. */
+    private static final class Slot {
+        private final @Nonnull Object key;
+        private final int offset;
+        private final int length;
+        private final long expiresAt;
+
+        private Slot(@Nonnull Object key, int offset, int length, long expiresAt) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Private constructor. Acquire via {@link #allocate(int)} or {@link #map(Path, int)}.
+     *
+     * @param region Backing memory for the region.
+     */
+    private OffHeapRegion(@Nonnull ByteBuffer region) {
+        this.region = region;
+        this.capacity = region.capacity();
+    }
+
+    /**
+     * Allocate a region of direct (off-heap) memory.
+     *
+     * @param capacity Size of the region, in bytes.
+     * @return Off-heap region of the requested size.
+     */
+    public static @Nonnull OffHeapRegion allocate(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Off-heap region capacity must be positive.");
+        return new OffHeapRegion(ByteBuffer.allocateDirect(capacity));
+    }
+
+    /**
+     * Map a region of the provided file into memory. The file is created if it does not exist, and grown to the
+     * requested size if necessary. Contents of the file are not interpreted; the region always starts empty.
+     *
+     * @param file File to map.
+     * @param capacity Size of the region, in bytes.
+     * @return Memory-mapped region of the requested size.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static @Nonnull OffHeapRegion map(@Nonnull Path file, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("Off-heap region capacity must be positive.");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new OffHeapRegion(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * Store {@code data} under {@code key}, replacing any existing entry for the key. Entries larger than the region
+     * itself are rejected.
+     *
+     * @param key Key to store the entry under.
+     * @param data Bytes to store.
+     * @param expiresAt Time (in epoch milliseconds) after which the entry should no longer be returned.
+     * @return Whether the entry was stored.
+     */
+    public synchronized boolean put(@Nonnull Object key, @Nonnull byte[] data, long expiresAt) {
+        removeLocked(key);
+        if (span(data.length) > capacity) return false;
+
+        int offset = reserveLocked(span(data.length));
+        ByteBuffer target = region.duplicate();
+        target.position(offset);
+        target.put(data);
+
+        Slot slot = new Slot(key, offset, data.length, expiresAt);
+        index.put(key, slot);
+        order.addLast(slot);
+        liveBytes += data.length;
+        return true;
+    }
+
+    /**
+     * Copy the entry stored under {@code key} back onto the heap, if it is present and not expired.
+     *
+     * @param key Key to look up.
+     * @param now Current time, in epoch milliseconds.
+     * @return Entry bytes, or {@code null} if there is no live entry for the key.
+     */
+    public synchronized @Nullable byte[] get(@Nonnull Object key, long now) {
+        Slot slot = index.get(key);
+        if (slot == null) return null;
+        if (slot.expiresAt <= now) {
+            removeLocked(key);
+            return null;
+        }
+        byte[] data = new byte[slot.length];
+        ByteBuffer source = region.duplicate();
+        source.position(slot.offset);
+        source.get(data);
+        return data;
+    }
+
+    /**
+     * Remove the entry stored under {@code key}, if any. The space is reclaimed once the ring wraps around to it.
+     *
+     * @param key Key to remove.
+     * @return Whether an entry was removed.
+     */
+    public synchronized boolean remove(@Nonnull Object key) {
+        return removeLocked(key);
+    }
+
+    /** Remove all entries from the region. */
+    public synchronized void clear() {
+        index.clear();
+        order.clear();
+        head = 0;
+        liveBytes = 0;
+    }
+
+    /** @return Count of live entries in the region. */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** @return Count of bytes held by live entries in the region. */
+    public synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    /** @return Count of live entries reclaimed, so far, to make room for new writes. */
+    public synchronized long reclaimCount() {
+        return reclaimCount;
+    }
+
+    /** @return Total size of the region, in bytes. */
+    public int capacity() {
+        return capacity;
+    }
+
+    // -- Internals -- //
+
+    /**
+     * Remove the live entry for {@code key}, if any. Must be called while holding the region's monitor.
+     *
+     * @param key Key to remove.
+     * @return Whether an entry was removed.
+     */
+    @GuardedBy("this")
+    private boolean removeLocked(@Nonnull Object key) {
+        Slot slot = index.remove(key);
+        if (slot == null) return false;
+        liveBytes -= slot.length;
+        return true;
+    }
+
+    /**
+     * Reserve {@code length} bytes at the head of the ring, reclaiming any older slots the span overlaps. Must be
+     * called while holding the region's monitor.
+     *
+     * @param length Count of bytes to reserve.
+     * @return Offset of the reserved span.
+     */
+    @GuardedBy("this")
+    private int reserveLocked(int length) {
+        if (head + length > capacity) {
+            // the tail past the head holds the oldest slots, from the previous pass. drop them and wrap.
+            while (!order.isEmpty() && order.peekFirst().offset >= head) reclaimLocked(order.pollFirst());
+            head = 0;
+        }
+        while (!order.isEmpty()) {
+            Slot oldest = order.peekFirst();
+            if (oldest.offset >= head + length || oldest.offset + span(oldest.length) <= head) break;
+            reclaimLocked(order.pollFirst());
+        }
+        int offset = head;
+        head += length;
+        return offset;
+    }
+
+    /**
+     * Compute the span of the ring consumed by an entry. Empty entries still occupy one byte, so that every slot has a
+     * distinct position in the ring.
+     *
+     * @param length Length of the entry, in bytes.
+     * @return Span of the ring to reserve.
+     */
+    private static int span(int length) {
+        return Math.max(1, length);
+    }
+
+    /**
+     * Reclaim a slot whose span is about to be overwritten, dropping it from the index if it is still live.
+     *
+     * @param slot Slot to reclaim.
+     */
+    @GuardedBy("this")
+    private void reclaimLocked(@Nonnull Slot slot) {
+        if (index.get(slot.key) == slot) {
+            index.remove(slot.key);
+            liveBytes -= slot.length;
+            reclaimCount++;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import elide.model.EncodedModel;
+import elide.model.EncodingMode;
+import elide.model.ExistenceFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Storage map for in-memory records, which can capture a consistent point-in-time view of itself without pausing
+ * writers. While a {@link Capture} is open, the first write to each record saves the value it replaces, so that readers
+ * of the capture can still see every record as it was when the capture began.
+ *
+ * <p>Only {@link #put}, {@link #putIfAbsent}, {@link #remove(Object)}, {@link #remove(Object, Object)}, and
+ * {@link #replace(Object, InMemoryRecord, InMemoryRecord)} are tracked; other mutators bypass an open capture, and
+ * should not be used on in-memory storage. Writes take a shared lock, which is only held exclusively for the instant it
+ * takes to open or close a capture.</p>
+ *
+ * <p>The same tracked writes also keep an {@link ExistenceFilter} per model type up to date (see {@link #existence}),
+ * so that the filter sees every write to storage, whether it comes from an adapter, a bare driver, write-ahead log
+ * replay, or a snapshot import. Removals are not applied to the filters; see {@link ExistenceFilter} for why.</p>
+ */
+@ThreadSafe
+final class SnapshotStorage extends ConcurrentSkipListMap<Object, InMemoryRecord> {
+    private static final long serialVersionUID = 1L;
+
+    /** Count of lock stripes which order writes to the same record while a capture is open. */
+    private static final int STRIPES = 64;
+
+    /** Marks a record which did not exist when a capture began. */
+    private static final InMemoryRecord ABSENT =
+            InMemoryRecord.of(EncodedModel.wrap("", EncodingMode.BINARY, new byte[0]), 0, 0);
+
+    /** Guards opening and closing captures against writes which are in flight. */
+    private final transient ReentrantReadWriteLock captureLock = new ReentrantReadWriteLock();
+
+    /** Locks which order writes to the same record while a capture is open. */
+    private final transient Object[] stripes = new Object[STRIPES];
+
+    /** Capture which is currently open, if any. */
+    private transient volatile @Nullable Capture capture = null;
+
+    /** Existence filters for stored IDs, by fully-qualified model type name. */
+    private final transient ConcurrentHashMap<String, ExistenceFilter> existence = new ConcurrentHashMap<>();
+
+    /** Point-in-time view of the storage map, from when the capture began, until it is closed. */
+    final class Capture implements AutoCloseable {
+        /** Values replaced since the capture began, by record ID; {@link #ABSENT} if the record did not exist. */
+        private final @Nonnull ConcurrentHashMap<Object, InMemoryRecord> before = new ConcurrentHashMap<>();
+
+        /**
+         * Resolve the value of a record as of when the capture began. {@code current} must be read from storage before
+         * this method is called, so that a write which lands in between is always caught by the capture.
+         *
+         * @param id ID of the record.
+         * @param current Value of the record, read from storage just before this call.
+         * @return Value of the record when the capture began, or {@code null} if it did not exist.
+         */
+        @Nullable InMemoryRecord valueAt(@Nonnull Object id, @Nullable InMemoryRecord current) {
+            final InMemoryRecord prior = before.get(id);
+            if (prior == null) return current;
+            return prior == ABSENT ? null : prior;
+        }
+
+        /**
+         * Collect records which existed when the capture began, but which have since been removed or replaced. Together
+         * with the records still in storage, these cover every record which existed when the capture began.
+         *
+         * @return Replaced records, by ID.
+         */
+        @Nonnull Map<Object, InMemoryRecord> replaced() {
+            final Map<Object, InMemoryRecord> replaced = new HashMap<>();
+            for (Map.Entry<Object, InMemoryRecord> entry : before.entrySet())
+                if (entry.getValue() != ABSENT) replaced.put(entry.getKey(), entry.getValue());
+            return replaced;
+        }
+
+        /** Close the capture, after which writes no longer save replaced values. */
+        @Override
+        public void close() {
+            captureLock.writeLock().lock();
+            try {
+                if (capture == this) capture = null;
+            } finally {
+                captureLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** Create an empty storage map. */
+    SnapshotStorage() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Object();
+    }
+
+    /**
+     * Open a capture of the storage map as it is right now. Only one capture may be open at a time.
+     *
+     * @return Open capture, which must be closed once it is no longer needed.
+     * @throws IllegalStateException If a capture is already open.
+     */
+    @Nonnull Capture capture() {
+        captureLock.writeLock().lock();
+        try {
+            if (capture != null) throw new IllegalStateException("A capture of in-memory storage is already open.");
+            final Capture opened = new Capture();
+            capture = opened;
+            return opened;
+        } finally {
+            captureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve the existence filter for records of the provided model type, creating it if needed. A new filter is not
+     * authoritative until it is rebuilt from {@link #storedIds(String)}; from the moment it exists, it sees every
+     * tracked write to records of its type.
+     *
+     * @param type Fully-qualified name of the model type.
+     * @return Existence filter for the type, shared by every driver for it.
+     */
+    @Nonnull ExistenceFilter existence(@Nonnull String type) {
+        return existence.computeIfAbsent(type, (ignored) -> ExistenceFilter.create());
+    }
+
+    /**
+     * Snapshot the IDs of all stored records of the provided model type. Every write which completed before this call
+     * is reflected.
+     *
+     * @param type Fully-qualified name of the model type.
+     * @return IDs of stored records of that type.
+     */
+    @Nonnull List<Object> storedIds(@Nonnull String type) {
+        final List<Object> ids = new ArrayList<>();
+        for (Map.Entry<Object, InMemoryRecord> entry : entrySet())
+            if (type.equals(entry.getValue().data().getType())) ids.add(entry.getKey());
+        return ids;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InMemoryRecord put(@Nonnull Object id, @Nonnull InMemoryRecord value) {
+        recordPresent(id, value);
+        captureLock.readLock().lock();
+        try {
+            final Capture open = capture;
+            if (open == null) return super.put(id, value);
+            synchronized (stripe(id)) {
+                save(open, id);
+                return super.put(id, value);
+            }
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InMemoryRecord putIfAbsent(@Nonnull Object id, @Nonnull InMemoryRecord value) {
+        recordPresent(id, value);
+        captureLock.readLock().lock();
+        try {
+            final Capture open = capture;
+            if (open == null) return super.putIfAbsent(id, value);
+            synchronized (stripe(id)) {
+                save(open, id);
+                return super.putIfAbsent(id, value);
+            }
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InMemoryRecord remove(@Nonnull Object id) {
+        captureLock.readLock().lock();
+        try {
+            final Capture open = capture;
+            if (open == null) return super.remove(id);
+            synchronized (stripe(id)) {
+                save(open, id);
+                return super.remove(id);
+            }
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(@Nonnull Object id, @Nonnull Object expected) {
+        captureLock.readLock().lock();
+        try {
+            final Capture open = capture;
+            if (open == null) return super.remove(id, expected);
+            synchronized (stripe(id)) {
+                save(open, id);
+                return super.remove(id, expected);
+            }
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean replace(@Nonnull Object id, @Nonnull InMemoryRecord expected, @Nonnull InMemoryRecord value) {
+        recordPresent(id, value);
+        captureLock.readLock().lock();
+        try {
+            final Capture open = capture;
+            if (open == null) return super.replace(id, expected, value);
+            synchronized (stripe(id)) {
+                save(open, id);
+                return super.replace(id, expected, value);
+            }
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Save the current value of a record into a capture, unless an earlier write already saved one. Must be called while
+     * holding the record's stripe lock.
+     *
+     * @param open Open capture.
+     * @param id ID of the record about to be written.
+     */
+    private void save(@Nonnull Capture open, @Nonnull Object id) {
+        if (open.before.containsKey(id)) return;
+        final InMemoryRecord current = super.get(id);
+        open.before.put(id, current != null ? current : ABSENT);
+    }
+
+    /**
+     * Record a write in the existence filter for the written record's type, if there is one. This happens before the
+     * write lands, so that a reader which sees the record never finds it missing from the filter.
+     *
+     * @param id ID of the record about to be written.
+     * @param value Value about to be written.
+     */
+    private void recordPresent(@Nonnull Object id, @Nonnull InMemoryRecord value) {
+        final ExistenceFilter filter = existence.get(value.data().getType());
+        if (filter != null) filter.recordPresent(id);
+    }
+
+    /** @return Lock stripe for a record ID. */
+    private @Nonnull Object stripe(@Nonnull Object id) {
+        return stripes[Math.floorMod(id.hashCode(), STRIPES)];
+    }
+}
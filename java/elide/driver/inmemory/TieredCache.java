@@ -0,0 +1,564 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.protobuf.Message;
+import elide.model.*;
+import elide.runtime.jvm.Logging;
+import elide.runtime.jvm.ReactiveFuture;
+import org.slf4j.Logger;
+import tools.elide.core.data.CompressionMode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Defines a two-tier {@link CacheDriver}: a small on-heap tier (L1) holding parsed model instances, backed by a larger
+ * {@link OffHeapRegion} (L2) holding serialized models outside the Java heap.
+ *
+ * <p>Writes land in L1. When L1 evicts an entry for size, the entry is serialized and demoted to L2, rather than being
+ * dropped. A read which misses L1 but hits L2 parses the model and promotes it back to L1. This keeps the hot working
+ * set free of parsing cost, while the warm set is held without adding to garbage collection pressure. The L2 region
+ * may be plain direct memory, or a memory-mapped file.</p>
+ *
+ * <p>Off-heap entries are prefixed with a single byte holding the {@link CompressionMode} of the serialized model, so
+ * codecs which compress large records (see {@link EncodingMode#BINARY_GZIP}) can be used to stretch the L2 tier.</p>
+ *
+ * <p>Each entry carries the deadline set when it was written through both tiers: demotion and promotion never extend
+ * an entry's lifetime. Entries also carry a write stamp, which is checked against explicit evictions (and flushes)
+ * before an entry moves between tiers, so a demotion or promotion racing with an eviction cannot resurrect the evicted
+ * value.</p>
+ *
+ * <p>Both tiers are sized independently, in entries for L1 and in bytes for L2. Hit and miss counts are kept per tier,
+ * and are available via {@link #stats()}.</p>
+ *
+ * @param <K> Type of key used with the cache and model.
+ * @param <M> Type of model supported by this cache facade.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class TieredCache<K extends Message, M extends Message> implements CacheDriver<K, M> {
+    /** Private logging pipe. */
+    private static final @Nonnull Logger logging = Logging.logger(TieredCache.class);
+
+    /** Default max count of entries held on-heap. */
+    public static final long DEFAULT_L1_SIZE = 50;
+
+    /** Default size of the off-heap region, in bytes. */
+    public static final int DEFAULT_L2_CAPACITY = 16 * 1024 * 1024;
+
+    /** Default time-to-live for cached entries, in seconds. */
+    public static final long DEFAULT_TTL_SECONDS = 3600;
+
+    /** Count of explicit eviction stamps kept per on-heap entry, before the oldest are folded into the floor. */
+    private static final long EVICTION_STAMPS_PER_ENTRY = 16;
+
+    /** Size of the header on off-heap entries: compression tag, write stamp, and deadline. */
+    private static final int HEADER_SIZE = 1 + Long.BYTES + Long.BYTES;
+
+    /** Codec used to serialize models for the off-heap tier. */
+    private final @Nonnull ModelCodec<M, EncodedModel, EncodedModel> codec;
+
+    /** Fully-qualified type name of the model, used to re-wrap off-heap bytes. */
+    private final @Nonnull String modelType;
+
+    /** Time-to-live for entries in either tier, in milliseconds. */
+    private final long ttlMillis;
+
+    /** On-heap tier of parsed models. */
+    private final @Nonnull Cache<Object, Entry<M>> l1;
+
+    /** Off-heap tier of serialized models. */
+    private final @Nonnull OffHeapRegion l2;
+
+    /** Count of reads satisfied by L1. */
+    private final @Nonnull AtomicLong l1Hits = new AtomicLong(0);
+
+    /** Count of reads satisfied by L2. */
+    private final @Nonnull AtomicLong l2Hits = new AtomicLong(0);
+
+    /** Count of reads which missed both tiers. */
+    private final @Nonnull AtomicLong misses = new AtomicLong(0);
+
+    /** Count of entries moved from L1 to L2. */
+    private final @Nonnull AtomicLong demotions = new AtomicLong(0);
+
+    /** Count of entries which failed to serialize, or did not fit, on their way to L2. */
+    private final @Nonnull AtomicLong demotionFailures = new AtomicLong(0);
+
+    /** Source of write stamps, which order cache writes against evictions. */
+    private final @Nonnull AtomicLong clock = new AtomicLong(0);
+
+    /** Guards moves between tiers against concurrent evictions. */
+    private final @Nonnull Object tierLock = new Object();
+
+    /**
+     * Stamp of the latest explicit eviction, by ID. Kept for one TTL, after which older entries have expired, and
+     * bounded in count. Stamps dropped for size raise {@link #evictionFloor}.
+     */
+    @GuardedBy("tierLock")
+    private final @Nonnull Cache<Object, Long> evictions;
+
+    /** Highest eviction stamp dropped for size. Entries written before this stamp may not move between tiers. */
+    @GuardedBy("tierLock")
+    private long evictionFloor = 0;
+
+    /** Stamp of the latest flush. Entries written at or before this stamp may not move between tiers. */
+    @GuardedBy("tierLock")
+    private long flushStamp = 0;
+
+    /** Cached model, with the write stamp and absolute deadline it carries through both tiers. */
+    @Immutable
+    private static final class Entry<M> {
+        private final @Nonnull M model;
+        private final long stamp;
+        private final long expiresAt;
+
+        private Entry(@Nonnull M model, long stamp, long expiresAt) {
+            this.model = model;
+            this.stamp = stamp;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Point-in-time snapshot of per-tier cache statistics. */
+    @Immutable
+    public static final class Stats {
+        private final long l1Hits;
+        private final long l2Hits;
+        private final long misses;
+        private final long demotions;
+        private final long demotionFailures;
+        private final long l1Size;
+        private final int l2Size;
+        private final long l2Bytes;
+        private final long l2Reclaimed;
+
+        private Stats(long l1Hits, long l2Hits, long misses, long demotions, long demotionFailures,
+                      long l1Size, int l2Size, long l2Bytes, long l2Reclaimed) {
+            this.l1Hits = l1Hits;
+            this.l2Hits = l2Hits;
+            this.misses = misses;
+            this.demotions = demotions;
+            this.demotionFailures = demotionFailures;
+            this.l1Size = l1Size;
+            this.l2Size = l2Size;
+            this.l2Bytes = l2Bytes;
+            this.l2Reclaimed = l2Reclaimed;
+        }
+
+        /** @return Count of reads satisfied by the on-heap tier. */
+        public long getL1Hits() {
+            return l1Hits;
+        }
+
+        /** @return Count of reads which missed the on-heap tier. */
+        public long getL1Misses() {
+            return l2Hits + misses;
+        }
+
+        /** @return Count of reads satisfied by the off-heap tier. */
+        public long getL2Hits() {
+            return l2Hits;
+        }
+
+        /** @return Count of reads which missed the off-heap tier (and, therefore, the cache as a whole). */
+        public long getL2Misses() {
+            return misses;
+        }
+
+        /** @return Total count of reads against the cache. */
+        public long getRequestCount() {
+            return l1Hits + l2Hits + misses;
+        }
+
+        /** @return Ratio of all reads satisfied by the on-heap tier, or {@code 1.0} if there have been no reads. */
+        public double getL1HitRatio() {
+            long requests = getRequestCount();
+            return requests == 0 ? 1.0 : (double) l1Hits / requests;
+        }
+
+        /** @return Ratio of on-heap misses satisfied by the off-heap tier, or {@code 1.0} if there have been none. */
+        public double getL2HitRatio() {
+            long requests = getL1Misses();
+            return requests == 0 ? 1.0 : (double) l2Hits / requests;
+        }
+
+        /** @return Ratio of all reads satisfied by either tier, or {@code 1.0} if there have been no reads. */
+        public double getHitRatio() {
+            long requests = getRequestCount();
+            return requests == 0 ? 1.0 : (double) (l1Hits + l2Hits) / requests;
+        }
+
+        /** @return Count of entries demoted from the on-heap tier to the off-heap tier. */
+        public long getDemotionCount() {
+            return demotions;
+        }
+
+        /** @return Count of entries dropped on their way to the off-heap tier. */
+        public long getDemotionFailureCount() {
+            return demotionFailures;
+        }
+
+        /** @return Approximate count of entries held on-heap. */
+        public long getL1Size() {
+            return l1Size;
+        }
+
+        /** @return Count of entries held off-heap. */
+        public int getL2Size() {
+            return l2Size;
+        }
+
+        /** @return Count of bytes held off-heap. */
+        public long getL2Bytes() {
+            return l2Bytes;
+        }
+
+        /** @return Count of off-heap entries overwritten to make room for newer ones. */
+        public long getL2ReclaimCount() {
+            return l2Reclaimed;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return format("TieredCache.Stats{l1Hits=%s, l2Hits=%s, misses=%s, l1HitRatio=%.3f, l2HitRatio=%.3f, " +
+                    "demotions=%s, l1Size=%s, l2Size=%s, l2Bytes=%s}",
+                l1Hits, l2Hits, misses, getL1HitRatio(), getL2HitRatio(), demotions, l1Size, l2Size, l2Bytes);
+        }
+    }
+
+    /**
+     * Private constructor. Acquire via one of the static {@code acquire} methods.
+     *
+     * @param codec Codec used to serialize models for the off-heap tier.
+     * @param l1Size Max count of entries held on-heap.
+     * @param l2 Off-heap region to demote entries into.
+     * @param ttl Time-to-live for cached entries.
+     * @param ttlUnit Unit of time for {@code ttl}.
+     */
+    private TieredCache(@Nonnull ModelCodec<M, EncodedModel, EncodedModel> codec,
+                        long l1Size,
+                        @Nonnull OffHeapRegion l2,
+                        long ttl,
+                        @Nonnull TimeUnit ttlUnit) {
+        this.codec = codec;
+        this.modelType = codec.instance().getDescriptorForType().getFullName();
+        this.ttlMillis = ttlUnit.toMillis(ttl);
+        this.l2 = l2;
+        this.l1 = CacheBuilder.newBuilder()
+            .concurrencyLevel(2)
+            .maximumSize(l1Size)
+            .expireAfterWrite(ttl, ttlUnit)
+            .removalListener(this::onL1Removal)
+            .build();
+        this.evictions = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(1, l1Size) * EVICTION_STAMPS_PER_ENTRY)
+            .expireAfterWrite(ttl, ttlUnit)
+            .removalListener(this::onEvictionStampRemoval)
+            .build();
+    }
+
+    /**
+     * Acquire a two-tier cache for the provided model type, with default tier sizes and a private off-heap region.
+     *
+     * @param instance Default instance of the model to be cached.
+     * @param <K> Generic type for the key associated with model type {@code M}.
+     * @param <M> Generic model type managed by this cache.
+     * @return Instance of the acquired cache engine.
+     */
+    public static @Nonnull <K extends Message, M extends Message> TieredCache<K, M> acquire(@Nonnull M instance) {
+        return acquire(instance, DEFAULT_L1_SIZE, OffHeapRegion.allocate(DEFAULT_L2_CAPACITY));
+    }
+
+    /**
+     * Acquire a two-tier cache for the provided model type, with the provided tier sizes and the default TTL.
+     *
+     * @param instance Default instance of the model to be cached.
+     * @param l1Size Max count of entries held on-heap.
+     * @param l2 Off-heap region to demote entries into. See {@link OffHeapRegion#allocate(int)} and
+     *           {@link OffHeapRegion#map(java.nio.file.Path, int)}.
+     * @param <K> Generic type for the key associated with model type {@code M}.
+     * @param <M> Generic model type managed by this cache.
+     * @return Instance of the acquired cache engine.
+     */
+    public static @Nonnull <K extends Message, M extends Message> TieredCache<K, M> acquire(@Nonnull M instance,
+                                                                                          long l1Size,
+                                                                                          @Nonnull OffHeapRegion l2) {
+        return acquire(ProtoModelCodec.forModel(instance, EncodingMode.BINARY), l1Size, l2,
+            DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acquire a two-tier cache using the provided codec for the off-heap tier, and the provided sizes and TTL.
+     *
+     * @param codec Codec used to serialize models for the off-heap tier.
+     * @param l1Size Max count of entries held on-heap.
+     * @param l2 Off-heap region to demote entries into.
+     * @param ttl Time-to-live for cached entries, in either tier.
+     * @param ttlUnit Unit of time for {@code ttl}.
+     * @param <K> Generic type for the key associated with model type {@code M}.
+     * @param <M> Generic model type managed by this cache.
+     * @return Instance of the acquired cache engine.
+     */
+    public static @Nonnull <K extends Message, M extends Message> TieredCache<K, M> acquire(
+            @Nonnull ModelCodec<M, EncodedModel, EncodedModel> codec,
+            long l1Size,
+            @Nonnull OffHeapRegion l2,
+            long ttl,
+            @Nonnull TimeUnit ttlUnit) {
+        if (l1Size < 1) throw new IllegalArgumentException("L1 cache size must be positive.");
+        if (ttl < 1) throw new IllegalArgumentException("Cache TTL must be positive.");
+        return new TieredCache<>(codec, l1Size, l2, ttl, ttlUnit);
+    }
+
+    /** @return Point-in-time snapshot of per-tier statistics for this cache. */
+    public @Nonnull Stats stats() {
+        return new Stats(
+            l1Hits.get(),
+            l2Hits.get(),
+            misses.get(),
+            demotions.get(),
+            demotionFailures.get(),
+            l1.size(),
+            l2.size(),
+            l2.liveBytes(),
+            l2.reclaimCount());
+    }
+
+    // -- Tier Management -- //
+
+    /**
+     * Demote entries which L1 evicts for size into L2, with their original deadline. Entries removed explicitly,
+     * replaced, or expired are dropped, as are entries evicted or flushed since they were written.
+     *
+     * @param notification Removal notification from the on-heap cache.
+     */
+    private void onL1Removal(@Nonnull RemovalNotification<Object, Entry<M>> notification) {
+        if (notification.getCause() != RemovalCause.SIZE) return;
+        Object id = notification.getKey();
+        Entry<M> entry = notification.getValue();
+        if (id == null || entry == null || entry.expiresAt <= System.currentTimeMillis()) return;
+
+        try {
+            byte[] data = tagged(codec.serialize(entry.model), entry);
+            boolean stored;
+            synchronized (tierLock) {
+                if (isStale(id, entry.stamp)) return;
+                stored = l2.put(id, data, entry.expiresAt);
+            }
+            if (stored) {
+                demotions.incrementAndGet();
+                return;
+            }
+            if (logging.isDebugEnabled())
+                logging.debug(format("Entry '%s' (%s bytes) does not fit off-heap tier.", id, data.length));
+        } catch (ModelDeflateException | IOException err) {
+            logging.warn(format("Failed to demote cached entry '%s' off-heap: %s", id, err.getMessage()));
+        }
+        demotionFailures.incrementAndGet();
+    }
+
+    /**
+     * Fold eviction stamps dropped for size into the eviction floor, so that entries written before them still may not
+     * move between tiers. This trades some demotions and promotions for a bounded count of stamps. Called while holding
+     * the tier lock, as stamps are only written under it.
+     *
+     * @param notification Removal notification from the eviction stamp cache.
+     */
+    @GuardedBy("tierLock")
+    private void onEvictionStampRemoval(@Nonnull RemovalNotification<Object, Long> notification) {
+        Long stamp = notification.getValue();
+        if (notification.getCause() == RemovalCause.SIZE && stamp != null)
+            evictionFloor = Math.max(evictionFloor, stamp);
+    }
+
+    /**
+     * Determine whether an entry written at {@code stamp} has since been evicted or flushed. Must be called while
+     * holding the tier lock.
+     *
+     * @param id ID of the entry.
+     * @param stamp Write stamp of the entry.
+     * @return Whether the entry may no longer move between tiers.
+     */
+    @GuardedBy("tierLock")
+    private boolean isStale(@Nonnull Object id, long stamp) {
+        if (stamp <= flushStamp || stamp < evictionFloor) return true;
+        Long evicted = evictions.getIfPresent(id);
+        return evicted != null && evicted > stamp;
+    }
+
+    /**
+     * Prefix serialized model data with its compression tag, write stamp, and deadline, for storage in the off-heap
+     * tier.
+     *
+     * @param encoded Serialized model.
+     * @param entry Cache entry the model was taken from.
+     * @return Tagged bytes to store off-heap.
+     */
+    private static @Nonnull byte[] tagged(@Nonnull EncodedModel encoded, @Nonnull Entry<?> entry) {
+        final byte[] raw = encoded.getRawBytes().toByteArray();
+        return ByteBuffer.allocate(HEADER_SIZE + raw.length)
+            .put((byte) encoded.getDataMode().compression().getNumber())
+            .putLong(entry.stamp)
+            .putLong(entry.expiresAt)
+            .put(raw)
+            .array();
+    }
+
+    /**
+     * Re-wrap tagged bytes from the off-heap tier as a cache entry, inflating the model in the mode indicated by the
+     * tag, and restoring the stamp and deadline it was demoted with.
+     *
+     * @param data Tagged bytes from the off-heap tier.
+     * @return Cache entry.
+     * @throws ModelInflateException If the model cannot be parsed.
+     * @throws IOException If the tag does not hold a known compression mode.
+     */
+    private @Nonnull Entry<M> untagged(@Nonnull byte[] data) throws ModelInflateException, IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        final byte tag = buffer.get();
+        final CompressionMode compression = CompressionMode.forNumber(tag);
+        if (compression == null) throw new IOException(format("Unknown compression tag %s off-heap.", tag));
+        final long stamp = buffer.getLong();
+        final long expiresAt = buffer.getLong();
+        final byte[] raw = new byte[buffer.remaining()];
+        buffer.get(raw);
+        M model = codec.deserialize(EncodedModel.wrap(
+            modelType,
+            EncodingMode.BINARY.withCompression(compression),
+            raw));
+        return new Entry<>(model, stamp, expiresAt);
+    }
+
+    /**
+     * Resolve a cached model by ID, checking L1 and then L2. L2 hits are promoted back to L1, keeping their deadline,
+     * unless the entry was evicted while it was being parsed.
+     *
+     * @param id ID of the model to resolve.
+     * @return Cached model, if found in either tier.
+     * @throws ModelInflateException If the off-heap copy cannot be parsed.
+     * @throws IOException If some IO error occurs while parsing the off-heap copy.
+     */
+    private @Nonnull Optional<M> resolve(@Nonnull Object id) throws ModelInflateException, IOException {
+        final long now = System.currentTimeMillis();
+        Entry<M> cached = l1.getIfPresent(id);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                l1Hits.incrementAndGet();
+                return Optional.of(cached.model);
+            }
+            l1.asMap().remove(id, cached);
+        }
+
+        byte[] data = l2.get(id, now);
+        if (data == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        Entry<M> inflated = untagged(data);
+
+        synchronized (tierLock) {
+            if (isStale(id, inflated.stamp)) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            l2Hits.incrementAndGet();
+
+            // a concurrent write may have landed in L1 since we looked; if so, it is newer than our off-heap copy.
+            Entry<M> existing = l1.asMap().putIfAbsent(id, inflated);
+            if (existing != null) return Optional.of(existing.model);
+            l2.remove(id);
+        }
+        return Optional.of(inflated.model);
+    }
+
+    // -- API: Cache Driver -- //
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull ReactiveFuture put(@Nonnull Message key,
+                                       @Nonnull Message model,
+                                       @Nonnull ListeningScheduledExecutorService executor) {
+        final Object id = (
+            ModelMetadata.id(key).orElseThrow(() -> new IllegalArgumentException("Cannot add to cache with empty key.")));
+
+        return ReactiveFuture.wrap(executor.submit(() -> {
+            //noinspection unchecked
+            l1.put(id, new Entry<>((M)model, clock.incrementAndGet(), System.currentTimeMillis() + ttlMillis));
+            l2.remove(id);
+        }), executor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull ReactiveFuture<Optional<M>> fetch(@Nonnull K key,
+                                                      @Nonnull FetchOptions options,
+                                                      @Nonnull ListeningScheduledExecutorService executor) {
+        final Object id = (
+            ModelMetadata.id(key).orElseThrow(() -> new IllegalArgumentException("Cannot fetch empty key.")));
+
+        return ReactiveFuture.wrap(options.executorService().orElse(executor).submit(() -> resolve(id)), executor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull ReactiveFuture evict(@Nonnull K key, @Nonnull ListeningScheduledExecutorService executor) {
+        final Object id = (
+            ModelMetadata.id(key).orElseThrow(() -> new IllegalArgumentException("Cannot expire with empty key.")));
+
+        return ReactiveFuture.wrap(executor.submit(() -> {
+            synchronized (tierLock) {
+                evictions.put(id, clock.incrementAndGet());
+                l1.invalidate(id);
+                l2.remove(id);
+            }
+        }), executor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull Optional<Long> entryTTLMillis() {
+        return Optional.of(ttlMillis);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nonnull ReactiveFuture flush(@Nonnull ListeningScheduledExecutorService executor) {
+        return ReactiveFuture.wrap(executor.submit(() -> {
+            synchronized (tierLock) {
+                flushStamp = clock.incrementAndGet();
+                l1.invalidateAll();
+                l1.cleanUp();
+                l2.clear();
+                evictions.invalidateAll();
+            }
+        }), executor);
+    }
+}
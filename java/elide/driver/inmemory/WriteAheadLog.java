@@ -0,0 +1,906 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import elide.model.EncodedModel;
+import elide.model.EncodingMode;
+import elide.model.WriteOptions.Durability;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+
+
+/**
+ * Write-ahead log for in-memory storage, which makes the contents of a storage map recoverable after a crash. Every
+ * change to the map is applied in memory and appended to a log file; a single writer thread drains appended entries in
+ * groups, writing each group with one call and syncing it to disk with one {@code fsync}, so that concurrent writers
+ * share the cost of each sync (<i>group commit</i>).
+ *
+ * <p>Each write picks a {@link Durability} level: {@code NONE} skips the log, {@code ASYNC} completes as soon as the
+ * entry is queued, {@code GROUP_COMMIT} completes once a sync covering the entry finishes (waiting up to
+ * {@code commitDelay} for other entries to share it), and {@code SYNC} completes once the entry is synced, without
+ * waiting for others. Changes are visible to readers as soon as they are applied in memory, before they are durable.
+ * The log is fail-stop: once a write or sync fails, the log is closed, and every entry not yet written, or appended
+ * later, fails with the error, since replay would not recover anything written after a torn entry.</p>
+ *
+ * <p>The log is split into numbered generations. A checkpoint (run explicitly, or once a generation holds
+ * {@code snapshotEvery} entries) starts a new generation, writes a snapshot of the whole map in the background, and then
+ * deletes older generations. Snapshots are taken without blocking writers: replaying log entries is idempotent, so a
+ * snapshot which already includes some changes from its own generation is corrected when that generation is
+ * replayed. On {@link #open}, the newest complete snapshot is loaded, and every later generation is replayed in order,
+ * stopping at the first torn or corrupt entry in each file.</p>
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class WriteAheadLog implements AutoCloseable {
+    /** Private logging pipe. */
+    private static final Logger logging = Logging.logger(WriteAheadLog.class);
+
+    /** Default durability for writes which do not specify one. */
+    public static final Durability DEFAULT_DURABILITY = Durability.GROUP_COMMIT;
+
+    /** Default count of entries in a log generation, after which a checkpoint is taken. */
+    public static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+    /** Default time to wait for other entries to share a group commit, in microseconds. */
+    public static final long DEFAULT_COMMIT_DELAY_MICROS = 200;
+
+    /** Maximum count of entries written in a single group. */
+    private static final int MAX_GROUP = 1024;
+
+    /** Largest entry accepted during replay, in bytes. Anything larger is treated as corruption. */
+    private static final int MAX_ENTRY = 1 << 30;
+
+    /** Log file names, by generation. */
+    private static final Pattern LOG_FILE = Pattern.compile("wal-(\\d+)\\.log");
+
+    /** Snapshot file names, by generation. */
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    /** Operation codes for log entries. */
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    /** Type tags for record IDs. */
+    private static final byte ID_STRING = 'S';
+    private static final byte ID_LONG = 'L';
+    private static final byte ID_INT = 'I';
+
+    /** Entry queued for the writer thread: either a framed log record, or a control marker. */
+    private static final class Entry {
+        private final @Nullable byte[] frame;
+        private final @Nonnull Durability durability;
+        private final @Nullable SettableFuture<Void> result;
+        private final boolean checkpoint;
+
+        private Entry(@Nullable byte[] frame,
+                      @Nonnull Durability durability,
+                      @Nullable SettableFuture<Void> result,
+                      boolean checkpoint) {
+            this.frame = frame;
+            this.durability = durability;
+            this.result = result;
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    /** Marker which tells the writer thread to stop, once everything queued ahead of it is written. */
+    private static final Entry STOP = new Entry(null, Durability.SYNC, null, false);
+
+    /** Directory holding log and snapshot files. */
+    private final @Nonnull Path directory;
+
+    /** Storage map which this log makes durable. */
+    private final @Nonnull ConcurrentMap<Object, InMemoryRecord> storage;
+
+    /** Durability for writes which do not specify one. */
+    private final @Nonnull Durability defaultDurability;
+
+    /** Count of entries in a log generation, after which a checkpoint is taken. */
+    private final long snapshotEvery;
+
+    /** Time to wait for other entries to share a group commit, in nanoseconds. */
+    private final long commitDelayNanos;
+
+    /** Entries waiting for the writer thread. */
+    private final @Nonnull BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    /** Lock which orders in-memory changes with their log entries, so that the log replays in the same order. */
+    private final Object appendLock = new Object();
+
+    /** Thread which writes and syncs the log. */
+    private final @Nonnull Thread writer;
+
+    /**
+     * Single background thread which writes snapshots. Snapshots run one at a time and in order, so that an older
+     * snapshot never deletes the files a newer one needs, and the writer thread never waits on them.
+     */
+    private final @Nonnull ExecutorService snapshotter = Executors.newSingleThreadExecutor((task) -> {
+        final Thread thread = new Thread(task, "elide-wal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Channel for the current log generation. Only touched by the writer thread. */
+    private @Nonnull FileChannel channel;
+
+    /** Current log generation. Only written by the writer thread. */
+    private volatile long generation;
+
+    /** Count of entries in the current log generation. Only touched by the writer thread. */
+    private long generationEntries = 0;
+
+    /** Whether the log has been closed to new entries. */
+    @GuardedBy("appendLock")
+    private boolean closed = false;
+
+    /** Whether {@link #close()} has been called. Also set by the writer thread if it is interrupted. */
+    @GuardedBy("appendLock")
+    private boolean released = false;
+
+    /** Write failure which stopped the log, if any. Once set, the log refuses every new entry. */
+    @GuardedBy("appendLock")
+    private @Nullable IOException failure = null;
+
+    /** Count of entries appended to the log. */
+    private final @Nonnull AtomicLong appendCount = new AtomicLong(0);
+
+    /** Count of groups written by the writer thread. */
+    private final @Nonnull AtomicLong groupCount = new AtomicLong(0);
+
+    /** Count of syncs issued by the writer thread. */
+    private final @Nonnull AtomicLong syncCount = new AtomicLong(0);
+
+    /** Count of snapshots completed. */
+    private final @Nonnull AtomicLong snapshotCount = new AtomicLong(0);
+
+    /** Count of entries replayed when the log was opened. */
+    private final long replayedCount;
+
+    /**
+     * Private constructor. Acquire via {@link #open(Path, ConcurrentMap)} or
+     * {@link #open(Path, ConcurrentMap, Durability, long, long, TimeUnit)}.
+     */
+    private WriteAheadLog(@Nonnull Path directory,
+                          @Nonnull ConcurrentMap<Object, InMemoryRecord> storage,
+                          @Nonnull Durability defaultDurability,
+                          long snapshotEvery,
+                          long commitDelayNanos,
+                          long generation,
+                          long replayedCount) throws IOException {
+        this.directory = directory;
+        this.storage = storage;
+        this.defaultDurability = defaultDurability;
+        this.snapshotEvery = snapshotEvery;
+        this.commitDelayNanos = commitDelayNanos;
+        this.generation = generation;
+        this.replayedCount = replayedCount;
+        this.channel = openGeneration(directory, generation);
+        this.writer = new Thread(this::runWriter, "elide-wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Open the write-ahead log held in {@code directory}, using default settings. See
+     * {@link #open(Path, ConcurrentMap, Durability, long, long, TimeUnit)}.
+     *
+     * @param directory Directory holding log and snapshot files. Created if it does not exist.
+     * @param storage Storage map to recover into, and to make durable from now on.
+     * @return Open write-ahead log.
+     * @throws IOException If the log cannot be read or created.
+     */
+    public static @Nonnull WriteAheadLog open(@Nonnull Path directory,
+                                              @Nonnull ConcurrentMap<Object, InMemoryRecord> storage)
+            throws IOException {
+        return open(directory, storage, DEFAULT_DURABILITY, DEFAULT_SNAPSHOT_EVERY, DEFAULT_COMMIT_DELAY_MICROS,
+                TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Open the write-ahead log held in {@code directory}. The newest complete snapshot is loaded into {@code storage},
+     * and every later log generation is replayed on top of it. New entries are then written to a fresh generation.
+     *
+     * @param directory Directory holding log and snapshot files. Created if it does not exist.
+     * @param storage Storage map to recover into, and to make durable from now on.
+     * @param defaultDurability Durability for writes which do not specify one.
+     * @param snapshotEvery Count of entries in a log generation, after which a checkpoint is taken.
+     * @param commitDelay Time to wait for other entries to share a group commit.
+     * @param unit Time units for {@code commitDelay}.
+     * @return Open write-ahead log.
+     * @throws IOException If the log cannot be read or created.
+     */
+    public static @Nonnull WriteAheadLog open(@Nonnull Path directory,
+                                              @Nonnull ConcurrentMap<Object, InMemoryRecord> storage,
+                                              @Nonnull Durability defaultDurability,
+                                              long snapshotEvery,
+                                              long commitDelay,
+                                              @Nonnull TimeUnit unit) throws IOException {
+        if (snapshotEvery < 1) throw new IllegalArgumentException("Snapshot interval must be positive.");
+        if (commitDelay < 0) throw new IllegalArgumentException("Commit delay cannot be negative.");
+        Files.createDirectories(directory);
+
+        final TreeSet<Long> logs = generations(directory, LOG_FILE);
+        final TreeSet<Long> snapshots = generations(directory, SNAPSHOT_FILE);
+        long replayed = 0;
+        long from = Long.MIN_VALUE;
+        if (!snapshots.isEmpty()) {
+            from = snapshots.last();
+            replayed += replay(snapshotFile(directory, from), storage);
+        }
+        for (long gen : logs.tailSet(from, true)) replayed += replay(logFile(directory, gen), storage);
+
+        final long last = Math.max(logs.isEmpty() ? 0 : logs.last(), snapshots.isEmpty() ? 0 : snapshots.last());
+        if (logging.isInfoEnabled())
+            logging.info(format("Recovered %s entries from write-ahead log at '%s'.", replayed, directory));
+        return new WriteAheadLog(directory, storage, defaultDurability, snapshotEvery, unit.toNanos(commitDelay),
+                last + 1, replayed);
+    }
+
+    // -- API -- //
+
+    /**
+     * Store {@code model} under {@code id} in the storage map, and log the change.
+     *
+     * @param id ID of the record. Must be a {@link String}, {@link Long}, or {@link Integer}.
+     * @param model Record to store.
+     * @param durability Durability for the write, or empty to use the default.
+     * @return Future which completes once the write is as durable as requested.
+     * @throws IOException If the record ID cannot be logged.
+     */
+    public @Nonnull ListenableFuture<Void> put(@Nonnull Object id,
+                                               @Nonnull InMemoryRecord model,
+                                               @Nonnull Optional<Durability> durability) throws IOException {
+        final Durability level = durability.orElse(defaultDurability);
+        if (level == Durability.NONE) {
+            storage.put(id, model);
+            return Futures.immediateFuture(null);
+        }
+        final byte[] frame = frame(OP_PUT, id, model);
+        synchronized (appendLock) {
+            ensureOpen();
+            storage.put(id, model);
+            return enqueue(frame, level);
+        }
+    }
+
+    /**
+     * Replace the record stored under {@code id} in the storage map, if it still holds {@code expected}, and log the
+     * change. Nothing is logged if the record no longer holds {@code expected}.
+     *
+     * @param id ID of the record. Must be a {@link String}, {@link Long}, or {@link Integer}.
+     * @param expected Record which must still be stored for the replacement to happen, or {@code null} if there must
+     *                 be no record stored.
+     * @param model Record to store in its place.
+     * @param durability Durability for the write, or empty to use the default.
+     * @return Future which completes once the write is as durable as requested, or empty if the record no longer holds
+     *         {@code expected}.
+     * @throws IOException If the record ID cannot be logged.
+     */
+    public @Nonnull Optional<ListenableFuture<Void>> replace(@Nonnull Object id,
+                                                             @Nullable InMemoryRecord expected,
+                                                             @Nonnull InMemoryRecord model,
+                                                             @Nonnull Optional<Durability> durability)
+            throws IOException {
+        final Durability level = durability.orElse(defaultDurability);
+        if (level == Durability.NONE) {
+            if (!swap(storage, id, expected, model)) return Optional.empty();
+            return Optional.of(Futures.immediateFuture(null));
+        }
+        final byte[] frame = frame(OP_PUT, id, model);
+        synchronized (appendLock) {
+            ensureOpen();
+            if (!swap(storage, id, expected, model)) return Optional.empty();
+            return Optional.of(enqueue(frame, level));
+        }
+    }
+
+    /**
+     * Swap {@code model} into a storage map under {@code id}, if the map still holds {@code expected} there.
+     *
+     * @param storage Storage map.
+     * @param id ID of the record.
+     * @param expected Record which must still be stored, or {@code null} if there must be no record stored.
+     * @param model Record to store in its place.
+     * @return Whether the swap happened.
+     */
+    static boolean swap(@Nonnull ConcurrentMap<Object, InMemoryRecord> storage,
+                        @Nonnull Object id,
+                        @Nullable InMemoryRecord expected,
+                        @Nonnull InMemoryRecord model) {
+        if (expected == null) return storage.putIfAbsent(id, model) == null;
+        return storage.replace(id, expected, model);
+    }
+
+    /**
+     * Remove the record stored under {@code id} from the storage map, and log the change.
+     *
+     * @param id ID of the record. Must be a {@link String}, {@link Long}, or {@link Integer}.
+     * @param durability Durability for the removal, or empty to use the default.
+     * @return Future which completes once the removal is as durable as requested.
+     * @throws IOException If the record ID cannot be logged.
+     */
+    public @Nonnull ListenableFuture<Void> remove(@Nonnull Object id,
+                                                  @Nonnull Optional<Durability> durability) throws IOException {
+        final Durability level = durability.orElse(defaultDurability);
+        if (level == Durability.NONE) {
+            storage.remove(id);
+            return Futures.immediateFuture(null);
+        }
+        final byte[] frame = frame(OP_REMOVE, id, null);
+        synchronized (appendLock) {
+            ensureOpen();
+            storage.remove(id);
+            return enqueue(frame, level);
+        }
+    }
+
+    /**
+     * Remove the record stored under {@code id} from the storage map, if it still holds {@code expected}, and log the
+     * change. Nothing is logged if the record no longer holds {@code expected}.
+     *
+     * @param id ID of the record. Must be a {@link String}, {@link Long}, or {@link Integer}.
+     * @param expected Record which must still be stored for the removal to happen.
+     * @param durability Durability for the removal, or empty to use the default.
+     * @return Future which completes once the removal is as durable as requested, or empty if the record no longer
+     *         holds {@code expected}.
+     * @throws IOException If the record ID cannot be logged.
+     */
+    public @Nonnull Optional<ListenableFuture<Void>> removeIf(@Nonnull Object id,
+                                                              @Nonnull InMemoryRecord expected,
+                                                              @Nonnull Optional<Durability> durability)
+            throws IOException {
+        final Durability level = durability.orElse(defaultDurability);
+        if (level == Durability.NONE) {
+            if (!storage.remove(id, expected)) return Optional.empty();
+            return Optional.of(Futures.immediateFuture(null));
+        }
+        final byte[] frame = frame(OP_REMOVE, id, null);
+        synchronized (appendLock) {
+            ensureOpen();
+            if (!storage.remove(id, expected)) return Optional.empty();
+            return Optional.of(enqueue(frame, level));
+        }
+    }
+
+    /**
+     * Start a new log generation, snapshot the storage map, and delete older generations once the snapshot is durable.
+     *
+     * @return Future which completes once the snapshot is durable and older generations are deleted.
+     */
+    public @Nonnull ListenableFuture<Void> checkpoint() {
+        final SettableFuture<Void> result = SettableFuture.create();
+        synchronized (appendLock) {
+            if (failure != null) return Futures.immediateFailedFuture(failed());
+            if (closed) throw new IllegalStateException("Write-ahead log is closed.");
+            queue.add(new Entry(null, Durability.SYNC, result, true));
+        }
+        return result;
+    }
+
+    /**
+     * Close the log to new entries, wait for every queued entry to be written and synced, and release the log file.
+     * Changes made to the storage map after this call are no longer logged.
+     *
+     * @throws IOException If the log cannot be synced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (released) return;
+            released = true;
+            if (!closed) {
+                closed = true;
+                queue.add(STOP);
+            }
+        }
+        try {
+            writer.join();
+            snapshotter.shutdown();
+            //noinspection ResultOfMethodCallIgnored
+            snapshotter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing write-ahead log.", ie);
+        }
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // -- Metrics -- //
+
+    /** @return Current log generation. */
+    public long generation() {
+        return generation;
+    }
+
+    /** @return Count of entries appended to the log since it was opened. */
+    public long appendCount() {
+        return appendCount.get();
+    }
+
+    /** @return Count of groups written since the log was opened. */
+    public long groupCount() {
+        return groupCount.get();
+    }
+
+    /** @return Count of syncs issued since the log was opened. */
+    public long syncCount() {
+        return syncCount.get();
+    }
+
+    /** @return Count of snapshots completed since the log was opened. */
+    public long snapshotCount() {
+        return snapshotCount.get();
+    }
+
+    /** @return Count of entries replayed when the log was opened. */
+    public long replayedCount() {
+        return replayedCount;
+    }
+
+    // -- Internals: Writer -- //
+
+    /**
+     * Throw if the log has been closed, or stopped by a write failure. Must be called while holding
+     * {@link #appendLock}.
+     *
+     * @throws IOException If a write failure stopped the log.
+     */
+    @GuardedBy("appendLock")
+    private void ensureOpen() throws IOException {
+        if (failure != null) throw failed();
+        if (closed) throw new IllegalStateException("Write-ahead log is closed.");
+    }
+
+    /** @return Exception for an entry refused or dropped because a write failure stopped the log. */
+    @GuardedBy("appendLock")
+    private @Nonnull IOException failed() {
+        return new IOException("Write-ahead log stopped after a write failure.", failure);
+    }
+
+    /**
+     * Queue a framed entry for the writer thread. Must be called while holding {@link #appendLock}.
+     *
+     * @param frame Framed entry.
+     * @param level Durability requested for the entry.
+     * @return Future which completes once the entry is as durable as requested.
+     */
+    @GuardedBy("appendLock")
+    private @Nonnull ListenableFuture<Void> enqueue(@Nonnull byte[] frame, @Nonnull Durability level) {
+        appendCount.incrementAndGet();
+        if (level == Durability.ASYNC) {
+            queue.add(new Entry(frame, level, null, false));
+            return Futures.immediateFuture(null);
+        }
+        final SettableFuture<Void> result = SettableFuture.create();
+        queue.add(new Entry(frame, level, result, false));
+        return result;
+    }
+
+    /**
+     * Writer thread body: drain queued entries in groups, until the log is closed. If the writer is interrupted, the
+     * log is closed to new entries, and every entry still queued fails instead of waiting forever.
+     */
+    private void runWriter() {
+        final List<Entry> group = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                gather(group);
+            } catch (InterruptedException ie) {
+                logging.warn("Write-ahead log writer was interrupted. Entries still queued will not be written.");
+                abandon(group, null);
+                return;
+            }
+            running = writeGroup(group);
+            group.clear();
+        }
+    }
+
+    /**
+     * Close the log to new entries, and fail every entry which will no longer be written: those gathered into the
+     * current group, and those still queued behind it.
+     *
+     * @param group Entries gathered, but not written.
+     * @param cause Write failure which stopped the log, or {@code null} if the writer was interrupted.
+     */
+    private void abandon(@Nonnull List<Entry> group, @Nullable IOException cause) {
+        final IOException error;
+        synchronized (appendLock) {
+            closed = true;
+            failure = cause;
+            queue.drainTo(group);
+            error = cause != null ?
+                    failed() :
+                    new IOException("Write-ahead log writer stopped before the entry was written.");
+        }
+        for (Entry entry : group) if (entry.result != null) entry.result.setException(error);
+        group.clear();
+    }
+
+    /**
+     * Block until at least one entry is queued, then gather more entries into the same group. If the first entry asks
+     * for group commit, wait up to {@link #commitDelayNanos} for others to join it, unless one of them asks for an
+     * immediate sync.
+     *
+     * @param group Group to fill.
+     * @throws InterruptedException If the log is closing.
+     */
+    private void gather(@Nonnull List<Entry> group) throws InterruptedException {
+        final Entry first = queue.take();
+        group.add(first);
+        if (first.durability == Durability.GROUP_COMMIT && commitDelayNanos > 0) {
+            final long deadline = System.nanoTime() + commitDelayNanos;
+            while (group.size() < MAX_GROUP) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                final Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) break;
+                group.add(next);
+                if (next.durability == Durability.SYNC || next.checkpoint || next == STOP) break;
+            }
+        }
+        queue.drainTo(group, MAX_GROUP - group.size());
+    }
+
+    /**
+     * Write a group of entries to the log, syncing if any entry asks for it, and complete their futures. A checkpoint
+     * marker ends the entries written to the current generation; entries after it go to the next one.
+     *
+     * <p>The log is fail-stop: if a write or sync fails, the log file may end in a torn entry, and replay stops there,
+     * so nothing written after it could be recovered. The log is closed instead, and every entry not yet written, in
+     * this group or queued behind it, fails with the write error.</p>
+     *
+     * @param group Entries to write, in order.
+     * @return Whether the writer should keep running, which is {@code false} once the stop marker is reached, or once
+     *         a write fails.
+     */
+    private boolean writeGroup(@Nonnull List<Entry> group) {
+        int start = 0;
+        for (int i = 0; i < group.size(); i++) {
+            final Entry entry = group.get(i);
+            if (entry == STOP) {
+                // nothing is queued behind the stop marker, because the log is closed before it is queued.
+                final IOException failed = flush(group.subList(start, i));
+                if (failed != null) abandon(new ArrayList<>(group.subList(i, group.size())), failed);
+                return false;
+            } else if (entry.checkpoint) {
+                final IOException failed = flush(group.subList(start, i));
+                if (failed != null) {
+                    abandon(new ArrayList<>(group.subList(i, group.size())), failed);
+                    return false;
+                }
+                startCheckpoint(entry.result);
+                start = i + 1;
+            }
+        }
+        final IOException failed = flush(group.subList(start, group.size()));
+        if (failed != null) {
+            abandon(new ArrayList<>(), failed);
+            return false;
+        }
+        if (generationEntries >= snapshotEvery) startCheckpoint(null);
+        return true;
+    }
+
+    /**
+     * Write entries to the current log generation in one call, sync if any of them asks for it, and complete them. If
+     * the write or sync fails, the entries fail with the error, and the error is returned so the log can be stopped.
+     *
+     * @param entries Entries to write, none of which is a checkpoint marker.
+     * @return Write failure, or {@code null} if the entries were written.
+     */
+    private @Nullable IOException flush(@Nonnull List<Entry> entries) {
+        if (entries.isEmpty()) return null;
+        int size = 0;
+        boolean sync = false;
+        for (Entry entry : entries) {
+            //noinspection ConstantConditions
+            size += entry.frame.length;
+            sync |= entry.durability != Durability.ASYNC;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Entry entry : entries) buffer.put(entry.frame);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            if (sync) {
+                channel.force(false);
+                syncCount.incrementAndGet();
+            }
+            groupCount.incrementAndGet();
+            generationEntries += entries.size();
+            for (Entry entry : entries) if (entry.result != null) entry.result.set(null);
+            return null;
+        } catch (IOException ioe) {
+            logging.error(format("Failed to write %s entries to write-ahead log, closing the log: '%s'.",
+                    entries.size(), ioe.getMessage()));
+            for (Entry entry : entries) if (entry.result != null) entry.result.setException(ioe);
+            return ioe;
+        }
+    }
+
+    /**
+     * Switch to a new log generation, and queue a snapshot of the storage map on the background snapshot thread, behind
+     * any earlier snapshot. Once the snapshot is durable, older generations are deleted.
+     *
+     * @param waiter Future to complete once the snapshot is durable, if any.
+     */
+    private void startCheckpoint(@Nullable SettableFuture<Void> waiter) {
+        final long next = generation + 1;
+        try {
+            final FileChannel previous = channel;
+            channel = openGeneration(directory, next);
+            previous.force(false);
+            previous.close();
+        } catch (IOException ioe) {
+            logging.error(format("Failed to start write-ahead log generation %s: '%s'.", next, ioe.getMessage()));
+            if (waiter != null) waiter.setException(ioe);
+            return;
+        }
+        generation = next;
+        generationEntries = 0;
+
+        snapshotter.execute(() -> {
+            try {
+                writeSnapshot(next);
+                snapshotCount.incrementAndGet();
+                if (waiter != null) waiter.set(null);
+            } catch (IOException ioe) {
+                logging.error(format("Failed to write snapshot for generation %s: '%s'.", next, ioe.getMessage()));
+                if (waiter != null) waiter.setException(ioe);
+            }
+        });
+    }
+
+    /**
+     * Write a snapshot of the storage map for a generation, then delete every older generation and snapshot. The
+     * snapshot is written to a temporary file, synced, and then renamed into place, so that a crash never leaves a
+     * partial snapshot behind.
+     *
+     * @param gen Generation whose log replays on top of the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private void writeSnapshot(long gen) throws IOException {
+        final Path temp = directory.resolve(format("snapshot-%s.tmp", gen));
+        long count = 0;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16);
+            for (Map.Entry<Object, InMemoryRecord> record : storage.entrySet()) {
+                stream.write(frame(OP_PUT, record.getKey(), record.getValue()));
+                count++;
+            }
+            stream.flush();
+            out.force(true);
+        }
+        Files.move(temp, snapshotFile(directory, gen), StandardCopyOption.ATOMIC_MOVE);
+        for (long old : generations(directory, LOG_FILE).headSet(gen)) Files.deleteIfExists(logFile(directory, old));
+        for (long old : generations(directory, SNAPSHOT_FILE).headSet(gen))
+            Files.deleteIfExists(snapshotFile(directory, old));
+        if (logging.isDebugEnabled())
+            logging.debug(format("Wrote snapshot of %s records for write-ahead log generation %s.", count, gen));
+    }
+
+    // -- Internals: Files -- //
+
+    /**
+     * Open the log file for a generation, for appending.
+     *
+     * @param directory Directory holding log files.
+     * @param gen Generation to open.
+     * @return Channel positioned at the end of the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    private static @Nonnull FileChannel openGeneration(@Nonnull Path directory, long gen) throws IOException {
+        return FileChannel.open(logFile(directory, gen),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /** @return Path to the log file for a generation. */
+    private static @Nonnull Path logFile(@Nonnull Path directory, long gen) {
+        return directory.resolve(format("wal-%s.log", gen));
+    }
+
+    /** @return Path to the snapshot file for a generation. */
+    private static @Nonnull Path snapshotFile(@Nonnull Path directory, long gen) {
+        return directory.resolve(format("snapshot-%s.bin", gen));
+    }
+
+    /**
+     * List the generations present in a directory, for files matching a pattern.
+     *
+     * @param directory Directory to list.
+     * @param pattern File name pattern, whose first group is the generation.
+     * @return Generations present, in ascending order.
+     * @throws IOException If the directory cannot be listed.
+     */
+    private static @Nonnull TreeSet<Long> generations(@Nonnull Path directory,
+                                                      @Nonnull Pattern pattern) throws IOException {
+        final TreeSet<Long> found = new TreeSet<>();
+        try (var files = Files.list(directory)) {
+            files.forEach((file) -> {
+                final Matcher match = pattern.matcher(file.getFileName().toString());
+                if (match.matches()) found.add(Long.parseLong(match.group(1)));
+            });
+        }
+        return found;
+    }
+
+    // -- Internals: Encoding -- //
+
+    /**
+     * Frame a log entry: a length prefix and a CRC32 checksum, followed by the operation, the record ID, and (for puts)
+     * the encoded record, with its version and update time.
+     *
+     * @param op Operation code.
+     * @param id ID of the record.
+     * @param record Record, for puts.
+     * @return Framed entry.
+     * @throws IOException If the record ID is of an unsupported type.
+     */
+    private static @Nonnull byte[] frame(byte op, @Nonnull Object id, @Nullable InMemoryRecord record)
+            throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        final DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(op);
+        if (id instanceof String) {
+            data.writeByte(ID_STRING);
+            data.writeUTF((String)id);
+        } else if (id instanceof Long) {
+            data.writeByte(ID_LONG);
+            data.writeLong((Long)id);
+        } else if (id instanceof Integer) {
+            data.writeByte(ID_INT);
+            data.writeInt((Integer)id);
+        } else {
+            throw new IOException(format("Cannot log record ID of type '%s'.", id.getClass().getName()));
+        }
+        if (record != null) {
+            final EncodedModel model = record.data();
+            final byte[] raw = model.getRawBytes().toByteArray();
+            data.writeUTF(model.getType());
+            data.writeUTF(model.getDataMode().name());
+            data.writeInt(raw.length);
+            data.write(raw);
+            data.writeLong(record.version());
+            data.writeLong(record.updatedAtMicros());
+        }
+        data.flush();
+
+        final byte[] payload = body.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final ByteBuffer framed = ByteBuffer.allocate(payload.length + 8);
+        framed.putInt(payload.length);
+        framed.putInt((int)crc.getValue());
+        framed.put(payload);
+        return framed.array();
+    }
+
+    /**
+     * Replay a log or snapshot file into a storage map, stopping at the end of the file, or at the first torn or corrupt
+     * entry.
+     *
+     * @param file File to replay.
+     * @param storage Storage map to replay into.
+     * @return Count of entries replayed.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long replay(@Nonnull Path file,
+                               @Nonnull ConcurrentMap<Object, InMemoryRecord> storage) throws IOException {
+        long count = 0;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            final DataInputStream in = new DataInputStream(stream);
+            while (true) {
+                final int length;
+                final int checksum;
+                final byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_ENTRY) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException eof) {
+                    break;
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int)crc.getValue() != checksum) break;
+                apply(payload, storage);
+                count++;
+            }
+        }
+        if (logging.isDebugEnabled())
+            logging.debug(format("Replayed %s entries from '%s'.", count, file.getFileName()));
+        return count;
+    }
+
+    /**
+     * Apply a single entry's payload to a storage map.
+     *
+     * @param payload Entry payload, without its frame.
+     * @param storage Storage map to apply to.
+     * @throws IOException If the payload is malformed.
+     */
+    private static void apply(@Nonnull byte[] payload,
+                              @Nonnull ConcurrentMap<Object, InMemoryRecord> storage) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = in.readByte();
+        final byte tag = in.readByte();
+        final Object id;
+        switch (tag) {
+            case ID_STRING: id = in.readUTF(); break;
+            case ID_LONG: id = in.readLong(); break;
+            case ID_INT: id = in.readInt(); break;
+            default: throw new IOException(format("Unrecognized record ID tag '%s' in write-ahead log.", tag));
+        }
+        if (op == OP_REMOVE) {
+            storage.remove(id);
+            return;
+        }
+        final String type = in.readUTF();
+        final EncodingMode mode = EncodingMode.valueOf(in.readUTF());
+        final byte[] raw = new byte[in.readInt()];
+        in.readFully(raw);
+        final long version = in.readLong();
+        final long updatedAtMicros = in.readLong();
+        storage.put(id, InMemoryRecord.of(EncodedModel.wrap(type, mode, raw), version, updatedAtMicros));
+    }
+}
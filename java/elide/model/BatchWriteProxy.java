@@ -0,0 +1,413 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+
+/**
+ * {@link WriteProxy} which buffers writes, rather than performing each one as it is issued, and then commits them to a
+ * {@link Backend} in batches. This turns the many individual writes produced by persisting a deep
+ * {@link CollapsedMessage} into a handful of batch requests (for instance, Firestore's {@code BatchWrite}).
+ *
+ * <p>Buffered writes are committed by {@link #flush()}, which splits them into batches of at most {@code maxBatch}
+ * writes. Batch write APIs generally reject more than one write to the same document per batch, so repeated writes to
+ * one reference are spread across successive <i>rounds</i>: the first write to each reference goes in the first round,
+ * the second in the second, and so on. Rounds are committed one after another, preserving the order of writes to each
+ * reference, and the batches within a round are committed concurrently on the provided executor.</p>
+ *
+ * <p>If a batch fails, every later write to any reference held by that batch is skipped, rather than committed out of
+ * order on top of a write which never landed. The future returned by {@link #flush()} never fails because of a failed
+ * batch; instead, it yields a {@link Report} describing the outcome of every batch, and listing the writes which were
+ * skipped, so that callers may retry or surface only what failed.</p>
+ *
+ * @param <Reference> Reference type used by the backend to address documents.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class BatchWriteProxy<Reference> implements WriteProxy<Reference> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(BatchWriteProxy.class);
+
+  /** Default maximum count of writes in a batch, which matches Firestore's limit for batch writes. */
+  public static final int DEFAULT_MAX_BATCH = 500;
+
+  /** Backend which resolves references and commits batches of writes, such as a database client. */
+  public interface Backend<Reference> {
+    /**
+     * Prepare a database reference, based on the provided `path` and transaction-wide `prefix`.
+     *
+     * @see WriteProxy#ref(String, String) For the semantics of paths and prefixes.
+     * @param path Path to prep a database reference for.
+     * @param prefix Transaction-wide prefix for this reference.
+     * @return Prepped database reference corresponding to the provided `path`.
+     */
+    @Nonnull Reference ref(@Nonnull String path, @Nullable String prefix);
+
+    /**
+     * Commit a batch of writes to underlying storage. Batches never hold more than one write to the same reference.
+     *
+     * @param batch Writes to commit together.
+     * @throws Exception If the batch could not be committed.
+     */
+    void commit(@Nonnull List<Mutation<Reference>> batch) throws Exception;
+  }
+
+  /** Describes one buffered write. */
+  @Immutable
+  public static final class Mutation<Reference> {
+    private final @Nonnull Reference reference;
+    private final @Nonnull ModelSerializer.WriteDisposition disposition;
+    private final @Nonnull SerializedModel data;
+
+    private Mutation(@Nonnull Reference reference,
+                     @Nonnull ModelSerializer.WriteDisposition disposition,
+                     @Nonnull SerializedModel data) {
+      this.reference = reference;
+      this.disposition = disposition;
+      this.data = data;
+    }
+
+    /** @return Reference which this write targets. */
+    public @Nonnull Reference getReference() {
+      return reference;
+    }
+
+    /** @return Disposition (strategy) for this write. */
+    public @Nonnull ModelSerializer.WriteDisposition getDisposition() {
+      return disposition;
+    }
+
+    /** @return Serialized data for this write. */
+    public @Nonnull SerializedModel getData() {
+      return data;
+    }
+  }
+
+  /** Describes the outcome of committing one batch. */
+  @Immutable
+  public static final class BatchResult {
+    private final int round;
+    private final int index;
+    private final int size;
+    private final @Nullable Throwable error;
+
+    private BatchResult(int round, int index, int size, @Nullable Throwable error) {
+      this.round = round;
+      this.index = index;
+      this.size = size;
+      this.error = error;
+    }
+
+    /** @return Round in which this batch was committed, starting at zero. */
+    public int getRound() {
+      return round;
+    }
+
+    /** @return Position of this batch within its round, starting at zero. */
+    public int getIndex() {
+      return index;
+    }
+
+    /** @return Count of writes in this batch. */
+    public int getSize() {
+      return size;
+    }
+
+    /** @return Whether the batch was committed successfully. */
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    /** @return Error which caused the batch to fail, if it failed. */
+    public @Nonnull Optional<Throwable> getError() {
+      return Optional.ofNullable(error);
+    }
+  }
+
+  /**
+   * Describes the outcome of a {@link #flush()}: one result for each batch, in the order the batches were built, and
+   * the writes which were never attempted because an earlier write to the same reference failed.
+   */
+  @Immutable
+  public static final class Report {
+    private final @Nonnull List<BatchResult> batches;
+    private final @Nonnull List<Mutation<?>> skipped;
+
+    private Report(@Nonnull List<BatchResult> batches, @Nonnull List<Mutation<?>> skipped) {
+      this.batches = ImmutableList.copyOf(batches);
+      this.skipped = ImmutableList.copyOf(skipped);
+    }
+
+    /** @return Results for every batch, ordered by round, then by position within the round. */
+    public @Nonnull List<BatchResult> getBatches() {
+      return batches;
+    }
+
+    /** @return Writes which were not attempted, because an earlier write to the same reference failed. */
+    public @Nonnull List<Mutation<?>> getSkipped() {
+      return skipped;
+    }
+
+    /** @return Whether every batch was committed successfully, and no write was skipped. */
+    public boolean isSuccess() {
+      return skipped.isEmpty() && batches.stream().allMatch(BatchResult::isSuccess);
+    }
+
+    /** @return Results for batches which failed. */
+    public @Nonnull List<BatchResult> failures() {
+      final List<BatchResult> failed = new ArrayList<>();
+      for (BatchResult batch : batches) if (!batch.isSuccess()) failed.add(batch);
+      return failed;
+    }
+
+    /** @return Count of writes committed successfully. */
+    public int committedCount() {
+      int count = 0;
+      for (BatchResult batch : batches) if (batch.isSuccess()) count += batch.getSize();
+      return count;
+    }
+  }
+
+  /** Backend which commits the batches. */
+  private final @Nonnull Backend<Reference> backend;
+
+  /** Executor on which batches are committed. */
+  private final @Nonnull ListeningExecutorService executor;
+
+  /** Maximum count of writes in a batch. */
+  private final int maxBatch;
+
+  /** Writes buffered since the last flush, in the order they were issued. */
+  @GuardedBy("this")
+  private @Nonnull List<Mutation<Reference>> pending = new ArrayList<>();
+
+  /**
+   * Private constructor. Acquire via {@link #wrap(Backend, ListeningExecutorService)} or
+   * {@link #wrap(Backend, ListeningExecutorService, int)}.
+   *
+   * @param backend Backend which commits the batches.
+   * @param executor Executor on which batches are committed.
+   * @param maxBatch Maximum count of writes in a batch.
+   */
+  private BatchWriteProxy(@Nonnull Backend<Reference> backend,
+                          @Nonnull ListeningExecutorService executor,
+                          int maxBatch) {
+    if (maxBatch < 1) throw new IllegalArgumentException("Batches must hold at least one write.");
+    this.backend = backend;
+    this.executor = executor;
+    this.maxBatch = maxBatch;
+  }
+
+  /**
+   * Create a batching write proxy for the provided backend, with the default batch size.
+   *
+   * @param backend Backend which commits the batches.
+   * @param executor Executor on which batches are committed.
+   * @param <R> Reference type used by the backend.
+   * @return Batching write proxy.
+   */
+  public static @Nonnull <R> BatchWriteProxy<R> wrap(@Nonnull Backend<R> backend,
+                                                     @Nonnull ListeningExecutorService executor) {
+    return wrap(backend, executor, DEFAULT_MAX_BATCH);
+  }
+
+  /**
+   * Create a batching write proxy for the provided backend, with a custom batch size, which should match the backend's
+   * limit on writes per batch.
+   *
+   * @param backend Backend which commits the batches.
+   * @param executor Executor on which batches are committed.
+   * @param maxBatch Maximum count of writes in a batch.
+   * @param <R> Reference type used by the backend.
+   * @return Batching write proxy.
+   */
+  public static @Nonnull <R> BatchWriteProxy<R> wrap(@Nonnull Backend<R> backend,
+                                                     @Nonnull ListeningExecutorService executor,
+                                                     int maxBatch) {
+    return new BatchWriteProxy<>(backend, executor, maxBatch);
+  }
+
+  // -- Interface: WriteProxy -- //
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull Reference ref(@Nonnull String path, @Nullable String prefix) {
+    return backend.ref(path, prefix);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void put(@Nonnull Reference reference, @Nonnull SerializedModel message) {
+    buffer(reference, ModelSerializer.WriteDisposition.BLIND, message);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void create(@Nonnull Reference reference, @Nonnull SerializedModel message) {
+    buffer(reference, ModelSerializer.WriteDisposition.CREATE, message);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void update(@Nonnull Reference reference, @Nonnull SerializedModel message) {
+    buffer(reference, ModelSerializer.WriteDisposition.UPDATE, message);
+  }
+
+  // -- API -- //
+
+  /** @return Count of writes buffered since the last flush. */
+  public synchronized int pendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Commit all buffered writes, in batches. Rounds of batches are committed one after another, and the batches in each
+   * round are committed concurrently. Writes to a reference held by a failed batch are skipped in later rounds.
+   *
+   * @return Future for a report describing the outcome of every batch.
+   */
+  public @Nonnull ListenableFuture<Report> flush() {
+    final List<Mutation<Reference>> writes;
+    synchronized (this) {
+      writes = pending;
+      pending = new ArrayList<>();
+    }
+
+    final List<List<Mutation<Reference>>> rounds = plan(writes);
+    if (logging.isTraceEnabled())
+      logging.trace(format("Flushing %s writes in %s rounds.", writes.size(), rounds.size()));
+
+    // rounds run one after another, so these are only ever touched by one round at a time.
+    final Set<Reference> failed = new HashSet<>();
+    final List<Mutation<?>> skipped = new ArrayList<>();
+    ListenableFuture<List<BatchResult>> chain = Futures.immediateFuture(new ArrayList<>());
+    for (int round = 0; round < rounds.size(); round++) {
+      final int roundIndex = round;
+      final List<Mutation<Reference>> roundWrites = rounds.get(round);
+      chain = Futures.transformAsync(chain, done -> {
+        final List<Mutation<Reference>> attempted = new ArrayList<>(roundWrites.size());
+        for (Mutation<Reference> write : roundWrites) {
+          if (failed.contains(write.reference)) skipped.add(write);
+          else attempted.add(write);
+        }
+        if (attempted.size() < roundWrites.size())
+          logging.warn(format("Skipping %s writes in round %s, which follow failed writes to the same reference.",
+            roundWrites.size() - attempted.size(), roundIndex));
+
+        final List<List<Mutation<Reference>>> batches = batches(attempted);
+        final List<ListenableFuture<BatchResult>> results = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) results.add(commit(roundIndex, i, batches.get(i)));
+        return Futures.transform(Futures.allAsList(results), committed -> {
+          for (int i = 0; i < committed.size(); i++) {
+            if (!committed.get(i).isSuccess())
+              for (Mutation<Reference> write : batches.get(i)) failed.add(write.reference);
+          }
+          done.addAll(committed);
+          return done;
+        }, MoreExecutors.directExecutor());
+      }, MoreExecutors.directExecutor());
+    }
+    return Futures.transform(chain, done -> new Report(done, skipped), MoreExecutors.directExecutor());
+  }
+
+  // -- Internals -- //
+
+  /**
+   * Buffer a write until the next flush.
+   *
+   * @param reference Reference which the write targets.
+   * @param disposition Disposition (strategy) for the write.
+   * @param data Serialized data for the write.
+   */
+  private synchronized void buffer(@Nonnull Reference reference,
+                                   @Nonnull ModelSerializer.WriteDisposition disposition,
+                                   @Nonnull SerializedModel data) {
+    pending.add(new Mutation<>(reference, disposition, data));
+  }
+
+  /**
+   * Split writes into rounds. The n-th write to each reference goes into round n, preserving issue order.
+   *
+   * @param writes Writes to split, in the order they were issued.
+   * @return Writes for each round.
+   */
+  private @Nonnull List<List<Mutation<Reference>>> plan(@Nonnull List<Mutation<Reference>> writes) {
+    final Map<Reference, Integer> seen = new HashMap<>();
+    final List<List<Mutation<Reference>>> rounds = new ArrayList<>();
+    for (Mutation<Reference> write : writes) {
+      final int round = seen.merge(write.reference, 1, Integer::sum) - 1;
+      if (round == rounds.size()) rounds.add(new ArrayList<>());
+      rounds.get(round).add(write);
+    }
+    return rounds;
+  }
+
+  /**
+   * Cut the writes for one round into batches of at most {@code maxBatch} writes, preserving issue order.
+   *
+   * @param writes Writes to cut, none of which share a reference.
+   * @return Batches of writes.
+   */
+  private @Nonnull List<List<Mutation<Reference>>> batches(@Nonnull List<Mutation<Reference>> writes) {
+    final List<List<Mutation<Reference>>> batches = new ArrayList<>((writes.size() + maxBatch - 1) / maxBatch);
+    for (int start = 0; start < writes.size(); start += maxBatch)
+      batches.add(writes.subList(start, Math.min(writes.size(), start + maxBatch)));
+    return batches;
+  }
+
+  /**
+   * Commit one batch on the executor, capturing its outcome rather than failing.
+   *
+   * @param round Round the batch belongs to.
+   * @param index Position of the batch within its round.
+   * @param batch Writes to commit.
+   * @return Future for the batch's result, which always succeeds.
+   */
+  private @Nonnull ListenableFuture<BatchResult> commit(int round,
+                                                        int index,
+                                                        @Nonnull List<Mutation<Reference>> batch) {
+    return executor.submit(() -> {
+      try {
+        backend.commit(batch);
+        return new BatchResult(round, index, batch.size(), null);
+      } catch (Exception err) {
+        logging.warn(format(
+          "Failed to commit batch %s of round %s (%s writes). Error: '%s'.", index, round, batch.size(),
+          err.getMessage()));
+        return new BatchResult(round, index, batch.size(), err);
+      }
+    });
+  }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import elide.runtime.jvm.Logging;
+import elide.runtime.jvm.ReactiveFuture;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static java.lang.String.format;
+
+
+/**
+ * Opt-in micro-batching layer, which wraps any {@link PersistenceDriver} and coalesces individual single-key
+ * {@link #retrieve(Message, FetchOptions)} and {@link #persist(Message, Message, WriteOptions)} calls into bulk
+ * {@link PersistenceDriver#retrieveAll(List, FetchOptions)} and
+ * {@link PersistenceDriver#persistAll(List, List, WriteOptions)} calls on the wrapped driver.
+ *
+ * <p>Operations are collected until either the batch holds {@code maxBatch} operations, or {@code maxDelay} has passed
+ * since the first operation in the batch, whichever comes first. Each caller still gets its own future, which completes
+ * (or fails) independently of the others in the batch.</p>
+ *
+ * <p>Only operations which share the same options <i>instance</i> are batched together, since the bulk calls apply one
+ * set of options to the whole batch; callers should share options instances (such as {@link FetchOptions#DEFAULTS})
+ * to benefit. Writes without a key are not batched, since the wrapped driver must generate their keys. Deletes, updates,
+ * modifications, versioned reads, and bulk calls made directly on this driver are not batched either; they go straight
+ * to the wrapped driver, so that its own atomicity and version tracking still apply.</p>
+ *
+ * <p>Single-key operations on the same key are applied in the order they are issued. A read, write, or delete of a key
+ * with a write (or delete) still outstanding first dispatches any pending batch holding that write, then waits for it
+ * to complete, and is then issued to the wrapped driver on its own, outside of any batch. Bulk calls made directly on
+ * this driver are not ordered against single-key operations.</p>
+ *
+ * <p>Counts of batches and operations, the reason for each flush, and the distribution of batch sizes are available as
+ * metrics.</p>
+ *
+ * @param <Key> Key type, instances of which uniquely address instances of {@code Model}.
+ * @param <Model> Model type which the wrapped driver stores.
+ * @param <ReadIntermediate> Intermediate record format used by the wrapped driver when de-serializing model instances.
+ * @param <WriteIntermediate> Intermediate record format used by the wrapped driver when serializing model instances.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class BatchingDriver<Key extends Message, Model extends Message, ReadIntermediate, WriteIntermediate>
+  implements PersistenceDriver<Key, Model, ReadIntermediate, WriteIntermediate> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(BatchingDriver.class);
+
+  /** Default maximum count of operations in a batch. */
+  public static final int DEFAULT_MAX_BATCH = 64;
+
+  /** Default maximum time to hold the first operation in a batch, before the batch is dispatched. */
+  public static final long DEFAULT_MAX_DELAY = 2;
+
+  /** Time units for {@link #DEFAULT_MAX_DELAY}. */
+  public static final TimeUnit DEFAULT_MAX_DELAY_UNIT = TimeUnit.MILLISECONDS;
+
+  /** Count of buckets in the batch size histogram. Bucket {@code i} counts batches of size {@code [2^i, 2^(i+1))}. */
+  private static final int HISTOGRAM_BUCKETS = 31;
+
+  /** Pending batch of operations, which share one options instance. */
+  private static final class Batch<K, M, R, O> {
+    private final @Nonnull O options;
+    private final @Nonnull List<K> keys = new ArrayList<>();
+    private final @Nonnull List<M> models = new ArrayList<>();
+    private final @Nonnull List<SettableFuture<R>> results = new ArrayList<>();
+    private @Nullable ScheduledFuture<?> timer = null;
+
+    private Batch(@Nonnull O options) {
+      this.options = options;
+    }
+  }
+
+  /** Driver which performs the bulk operations. */
+  private final @Nonnull PersistenceDriver<Key, Model, ReadIntermediate, WriteIntermediate> delegate;
+
+  /** Maximum count of operations in a batch. */
+  private final int maxBatch;
+
+  /** Maximum time to hold the first operation in a batch, in nanoseconds. */
+  private final long maxDelayNanos;
+
+  /** Pending read batches, by options instance. */
+  @GuardedBy("this")
+  private final @Nonnull Map<FetchOptions, Batch<Key, Void, Optional<Model>, FetchOptions>> reads =
+    new IdentityHashMap<>();
+
+  /** Pending write batches, by options instance. */
+  @GuardedBy("this")
+  private final @Nonnull Map<WriteOptions, Batch<Key, Model, Model, WriteOptions>> writes = new IdentityHashMap<>();
+
+  /** Latest outstanding single-key write or delete, by key. Cleared once it completes. */
+  @GuardedBy("this")
+  private final @Nonnull Map<Key, ListenableFuture<?>> outstanding = new HashMap<>();
+
+  /** Count of batches dispatched. */
+  private final @Nonnull AtomicLong batchCount = new AtomicLong(0);
+
+  /** Count of operations dispatched in batches. */
+  private final @Nonnull AtomicLong operationCount = new AtomicLong(0);
+
+  /** Count of batches dispatched because they filled up. */
+  private final @Nonnull AtomicLong sizeFlushCount = new AtomicLong(0);
+
+  /** Count of batches dispatched because their delay elapsed. */
+  private final @Nonnull AtomicLong delayFlushCount = new AtomicLong(0);
+
+  /** Histogram of batch sizes, by power of two. */
+  private final @Nonnull AtomicLongArray batchSizes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+  /**
+   * Private constructor. Acquire via {@link #wrap(PersistenceDriver)} or
+   * {@link #wrap(PersistenceDriver, int, long, TimeUnit)}.
+   *
+   * @param delegate Driver which performs the bulk operations.
+   * @param maxBatch Maximum count of operations in a batch.
+   * @param maxDelayNanos Maximum time to hold the first operation in a batch, in nanoseconds.
+   */
+  private BatchingDriver(@Nonnull PersistenceDriver<Key, Model, ReadIntermediate, WriteIntermediate> delegate,
+                         int maxBatch,
+                         long maxDelayNanos) {
+    if (maxBatch < 1) throw new IllegalArgumentException("Batches must hold at least one operation.");
+    if (maxDelayNanos < 0) throw new IllegalArgumentException("Batch delay cannot be negative.");
+    this.delegate = delegate;
+    this.maxBatch = maxBatch;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  /**
+   * Wrap a driver with a batching layer, using default settings.
+   *
+   * @param delegate Driver to wrap.
+   * @param <K> Key type for the driver.
+   * @param <M> Model type for the driver.
+   * @param <R> Read intermediate type for the driver.
+   * @param <W> Write intermediate type for the driver.
+   * @return Batching driver.
+   */
+  public static @Nonnull <K extends Message, M extends Message, R, W> BatchingDriver<K, M, R, W> wrap(
+      @Nonnull PersistenceDriver<K, M, R, W> delegate) {
+    return wrap(delegate, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY, DEFAULT_MAX_DELAY_UNIT);
+  }
+
+  /**
+   * Wrap a driver with a batching layer, using custom settings. Larger batches and longer delays trade per-operation
+   * latency for fewer, larger calls to the wrapped driver.
+   *
+   * @param delegate Driver to wrap.
+   * @param maxBatch Maximum count of operations in a batch.
+   * @param maxDelay Maximum time to hold the first operation in a batch, before the batch is dispatched.
+   * @param unit Time units for {@code maxDelay}.
+   * @param <K> Key type for the driver.
+   * @param <M> Model type for the driver.
+   * @param <R> Read intermediate type for the driver.
+   * @param <W> Write intermediate type for the driver.
+   * @return Batching driver.
+   */
+  public static @Nonnull <K extends Message, M extends Message, R, W> BatchingDriver<K, M, R, W> wrap(
+      @Nonnull PersistenceDriver<K, M, R, W> delegate,
+      int maxBatch,
+      long maxDelay,
+      @Nonnull TimeUnit unit) {
+    return new BatchingDriver<>(delegate, maxBatch, unit.toNanos(maxDelay));
+  }
+
+  // -- Components -- //
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ListeningScheduledExecutorService executorService() {
+    return delegate.executorService();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ModelCodec<Model, WriteIntermediate, ReadIntermediate> codec() {
+    return delegate.codec();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull Key generateKey(@Nonnull Message instance) {
+    return delegate.generateKey(instance);
+  }
+
+  // -- API -- //
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Optional<Model>> retrieve(@Nonnull Key key, @Nonnull FetchOptions options) {
+    final ListenableFuture<?> prior = barrier(key, null);
+    if (prior == null) return enqueue(reads, options, key, null, options.executorService(), this::dispatchReads);
+    return after(prior, () -> delegate.retrieve(key, options), options.executorService());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull List<ReactiveFuture<Optional<Model>>> retrieveAll(@Nonnull List<Key> keys,
+                                                                    @Nonnull FetchOptions options) {
+    return delegate.retrieveAll(keys, options);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Optional<Versioned<Model>>> retrieveVersioned(@Nonnull Key key,
+                                                                               @Nonnull FetchOptions options) {
+    final ListenableFuture<?> prior = barrier(key, null);
+    if (prior == null) return delegate.retrieveVersioned(key, options);
+    return after(prior, () -> delegate.retrieveVersioned(key, options), options.executorService());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Model> persist(@Nullable Key key,
+                                                @Nonnull Model model,
+                                                @Nonnull WriteOptions options) {
+    if (key == null) return delegate.persist(null, model, options);
+    return sequenced(key, options.executorService(), (prior) -> prior == null ?
+      enqueue(writes, options, key, model, options.executorService(), this::dispatchWrites) :
+      after(prior, () -> delegate.persist(key, model, options), options.executorService()));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull List<ReactiveFuture<Model>> persistAll(@Nonnull List<Key> keys,
+                                                         @Nonnull List<Model> models,
+                                                         @Nonnull WriteOptions options) {
+    return delegate.persistAll(keys, models, options);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Model> update(@Nonnull Key key,
+                                               @Nonnull Model model,
+                                               @Nonnull UpdateOptions options) {
+    return sequenced(key, options.executorService(), (prior) -> prior == null ?
+      delegate.update(key, model, options) :
+      after(prior, () -> delegate.update(key, model, options), options.executorService()));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Model> modify(@Nonnull Key key,
+                                               @Nonnull UnaryOperator<Model> function,
+                                               @Nonnull WriteOptions options) {
+    return sequenced(key, options.executorService(), (prior) -> prior == null ?
+      delegate.modify(key, function, options) :
+      after(prior, () -> delegate.modify(key, function, options), options.executorService()));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull ReactiveFuture<Key> delete(@Nonnull Key key, @Nonnull DeleteOptions options) {
+    return sequenced(key, options.executorService(), (prior) -> prior == null ?
+      delegate.delete(key, options) :
+      after(prior, () -> delegate.delete(key, options), options.executorService()));
+  }
+
+  /** Dispatch all pending batches right away, without waiting for them to fill up or for their delay to elapse. */
+  public void flush() {
+    final List<Batch<Key, Void, Optional<Model>, FetchOptions>> readBatches;
+    final List<Batch<Key, Model, Model, WriteOptions>> writeBatches;
+    synchronized (this) {
+      readBatches = new ArrayList<>(reads.values());
+      writeBatches = new ArrayList<>(writes.values());
+      reads.clear();
+      writes.clear();
+    }
+    for (Batch<Key, Void, Optional<Model>, FetchOptions> batch : readBatches) dispatchReads(batch);
+    for (Batch<Key, Model, Model, WriteOptions> batch : writeBatches) dispatchWrites(batch);
+  }
+
+  // -- Internals -- //
+
+  /**
+   * Resolve the outstanding write or delete which an operation on {@code key} must wait for, if any. If that write is
+   * still held in a pending batch, the batch is dispatched right away, on the calling thread, so the wait is short.
+   *
+   * <p>If the operation is itself a write or delete, {@code successor} is recorded as the latest outstanding operation
+   * on the key in the same critical section, so that no later operation can slip in between the check and the record,
+   * and be issued ahead of it.</p>
+   *
+   * @param key Key for the operation about to be issued.
+   * @param successor Future standing in for the operation about to be issued, if it is a write or delete.
+   * @return Outstanding operation on the key, or {@code null} if the operation may be issued right away.
+   */
+  private @Nullable ListenableFuture<?> barrier(@Nonnull Key key, @Nullable ListenableFuture<?> successor) {
+    final ListenableFuture<?> prior;
+    Batch<Key, Model, Model, WriteOptions> holding = null;
+    synchronized (this) {
+      prior = outstanding.get(key);
+      if (successor != null) outstanding.put(key, successor);
+      if (prior == null) return null;
+      final Iterator<Batch<Key, Model, Model, WriteOptions>> batches = writes.values().iterator();
+      while (holding == null && batches.hasNext()) {
+        final Batch<Key, Model, Model, WriteOptions> batch = batches.next();
+        if (batch.keys.contains(key)) {
+          batches.remove();
+          holding = batch;
+        }
+      }
+    }
+    if (holding != null) {
+      if (holding.timer != null) holding.timer.cancel(false);
+      if (logging.isTraceEnabled())
+        logging.trace(format("Dispatching pending batch early, to order an operation on key '%s'.", key));
+      dispatchWrites(holding);
+    }
+    return prior;
+  }
+
+  /**
+   * Issue an operation once an earlier operation on the same key completes, whether or not it succeeded.
+   *
+   * @param prior Earlier operation to wait for.
+   * @param operation Operation to issue to the wrapped driver.
+   * @param callbackExecutor Executor requested for callbacks on the operation, if any.
+   * @param <R> Result type for the operation.
+   * @return Future for the operation's result.
+   */
+  private @Nonnull <R> ReactiveFuture<R> after(@Nonnull ListenableFuture<?> prior,
+                                               @Nonnull AsyncCallable<R> operation,
+                                               @Nonnull Optional<ListeningScheduledExecutorService> callbackExecutor) {
+    final Executor executor = callbackExecutor.isPresent() ? callbackExecutor.get() : executorService();
+    return ReactiveFuture.wrap(Futures.whenAllComplete(prior).callAsync(operation, executorService()), executor);
+  }
+
+  /**
+   * Issue a write or delete in order with other operations on its key, and record it as the latest outstanding
+   * operation on the key until it completes. The record is made in the same critical section as the check for an
+   * earlier operation (see {@link #barrier}), before the operation is issued, and is cleared before the caller sees
+   * the operation complete, so that an operation issued afterwards is batched as usual.
+   *
+   * @param key Key for the operation.
+   * @param callbackExecutor Executor requested for callbacks on the operation, if any.
+   * @param issue Issues the operation, given the earlier operation it must wait for, or {@code null} if there is none.
+   * @param <R> Result type for the operation.
+   * @return Future for the operation's result.
+   */
+  private @Nonnull <R> ReactiveFuture<R> sequenced(
+      @Nonnull Key key,
+      @Nonnull Optional<ListeningScheduledExecutorService> callbackExecutor,
+      @Nonnull Function<ListenableFuture<?>, ReactiveFuture<R>> issue) {
+    final SettableFuture<Object> slot = SettableFuture.create();
+    final ListenableFuture<?> prior = barrier(key, slot);
+    slot.addListener(() -> {
+      synchronized (this) {
+        outstanding.remove(key, slot);
+      }
+    }, MoreExecutors.directExecutor());
+    final ReactiveFuture<R> operation;
+    try {
+      operation = issue.apply(prior);
+    } catch (RuntimeException err) {
+      slot.setException(err);
+      throw err;
+    }
+    final SettableFuture<R> result = SettableFuture.create();
+    operation.addListener(() -> {
+      synchronized (this) {
+        outstanding.remove(key, slot);
+      }
+      result.setFuture(operation);
+    }, MoreExecutors.directExecutor());
+    slot.setFuture(result);
+    final Executor executor = callbackExecutor.isPresent() ? callbackExecutor.get() : executorService();
+    return ReactiveFuture.wrap(result, executor);
+  }
+
+  /**
+   * Add an operation to the pending batch for its options, starting a new batch (and its delay timer) if there is none.
+   * If the batch fills up as a result, it is dispatched right away, on the calling thread.
+   *
+   * @param pending Pending batches of this kind of operation.
+   * @param options Options for the operation.
+   * @param key Key for the operation.
+   * @param model Record for the operation, if it is a write.
+   * @param callbackExecutor Executor requested for callbacks on the operation, if any.
+   * @param dispatcher Dispatches a batch of this kind of operation.
+   * @param <M> Record type for the operation.
+   * @param <R> Result type for the operation.
+   * @param <O> Options type for the operation.
+   * @return Future for the operation's result.
+   */
+  private @Nonnull <M, R, O> ReactiveFuture<R> enqueue(@Nonnull Map<O, Batch<Key, M, R, O>> pending,
+                                                       @Nonnull O options,
+                                                       @Nonnull Key key,
+                                                       @Nullable M model,
+                                                       @Nonnull Optional<ListeningScheduledExecutorService> callbackExecutor,
+                                                       @Nonnull Consumer<Batch<Key, M, R, O>> dispatcher) {
+    final SettableFuture<R> result = SettableFuture.create();
+    Batch<Key, M, R, O> full = null;
+    synchronized (this) {
+      Batch<Key, M, R, O> batch = pending.get(options);
+      if (batch == null) {
+        final Batch<Key, M, R, O> started = new Batch<>(options);
+        started.timer = executorService().schedule(
+          () -> flushOnDelay(pending, started, dispatcher), maxDelayNanos, TimeUnit.NANOSECONDS);
+        pending.put(options, started);
+        batch = started;
+      }
+      batch.keys.add(key);
+      batch.models.add(model);
+      batch.results.add(result);
+      if (batch.results.size() >= maxBatch) {
+        pending.remove(options);
+        full = batch;
+      }
+    }
+    if (full != null) {
+      if (full.timer != null) full.timer.cancel(false);
+      sizeFlushCount.incrementAndGet();
+      dispatcher.accept(full);
+    }
+    final Executor executor = callbackExecutor.isPresent() ? callbackExecutor.get() : executorService();
+    return ReactiveFuture.wrap(result, executor);
+  }
+
+  /**
+   * Dispatch a batch once its delay has elapsed, unless it was already dispatched because it filled up.
+   *
+   * @param pending Pending batches of this kind of operation.
+   * @param batch Batch whose delay elapsed.
+   * @param dispatcher Dispatches a batch of this kind of operation.
+   */
+  private <M, R, O> void flushOnDelay(@Nonnull Map<O, Batch<Key, M, R, O>> pending,
+                                      @Nonnull Batch<Key, M, R, O> batch,
+                                      @Nonnull Consumer<Batch<Key, M, R, O>> dispatcher) {
+    synchronized (this) {
+      if (pending.get(batch.options) != batch) return;
+      pending.remove(batch.options);
+    }
+    delayFlushCount.incrementAndGet();
+    dispatcher.accept(batch);
+  }
+
+  /**
+   * Dispatch a batch of reads to the wrapped driver, as one bulk read.
+   *
+   * @param batch Batch to dispatch.
+   */
+  private void dispatchReads(@Nonnull Batch<Key, Void, Optional<Model>, FetchOptions> batch) {
+    recordBatch(batch.results.size());
+    try {
+      complete(batch.results, delegate.retrieveAll(batch.keys, batch.options));
+    } catch (RuntimeException err) {
+      for (SettableFuture<Optional<Model>> result : batch.results) result.setException(err);
+    }
+  }
+
+  /**
+   * Dispatch a batch of writes to the wrapped driver, as one bulk write.
+   *
+   * @param batch Batch to dispatch.
+   */
+  private void dispatchWrites(@Nonnull Batch<Key, Model, Model, WriteOptions> batch) {
+    recordBatch(batch.results.size());
+    try {
+      complete(batch.results, delegate.persistAll(batch.keys, batch.models, batch.options));
+    } catch (RuntimeException err) {
+      for (SettableFuture<Model> result : batch.results) result.setException(err);
+    }
+  }
+
+  /**
+   * Complete each caller's future from the matching result of a bulk operation.
+   *
+   * @param results Callers' futures.
+   * @param outcomes Results of the bulk operation, in the same order.
+   * @param <R> Result type for each operation.
+   */
+  private static <R> void complete(@Nonnull List<SettableFuture<R>> results,
+                                   @Nonnull List<? extends ReactiveFuture<R>> outcomes) {
+    if (outcomes.size() != results.size())
+      throw new IllegalStateException(format(
+        "Bulk operation returned %s results for %s operations.", outcomes.size(), results.size()));
+    for (int i = 0; i < results.size(); i++) results.get(i).setFuture(outcomes.get(i));
+  }
+
+  /**
+   * Record a dispatched batch in the metrics.
+   *
+   * @param size Count of operations in the batch.
+   */
+  private void recordBatch(int size) {
+    batchCount.incrementAndGet();
+    operationCount.addAndGet(size);
+    batchSizes.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size)));
+    if (logging.isTraceEnabled())
+      logging.trace(format("Dispatching batch of %s operations.", size));
+  }
+
+  // -- Metrics -- //
+
+  /** @return Count of batches dispatched to the wrapped driver. */
+  public long batchCount() {
+    return batchCount.get();
+  }
+
+  /** @return Count of operations dispatched to the wrapped driver in batches. */
+  public long operationCount() {
+    return operationCount.get();
+  }
+
+  /** @return Count of batches dispatched because they filled up. */
+  public long sizeFlushCount() {
+    return sizeFlushCount.get();
+  }
+
+  /** @return Count of batches dispatched because their delay elapsed. */
+  public long delayFlushCount() {
+    return delayFlushCount.get();
+  }
+
+  /** @return Mean count of operations per dispatched batch, or zero if none were dispatched. */
+  public double meanBatchSize() {
+    final long batches = batchCount.get();
+    return batches == 0 ? 0.0 : (double)operationCount.get() / batches;
+  }
+
+  /**
+   * @return Distribution of batch sizes, as a map from the smallest size in each bucket (a power of two) to the count of
+   *         batches in that bucket. Only buckets holding at least one batch are included.
+   */
+  public @Nonnull Map<Integer, Long> batchSizeHistogram() {
+    final Map<Integer, Long> histogram = new LinkedHashMap<>();
+    for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+      final long count = batchSizes.get(i);
+      if (count > 0) histogram.put(1 << i, count);
+    }
+    return histogram;
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.base.Ticker;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Circuit breaker which guards the cache layer of a {@link ModelAdapter}. Cache fetch outcomes (success, or failure by
+ * error or timeout) are tracked over a sliding window of recent calls. Once the failure rate in the window crosses a
+ * threshold, the breaker <i>opens</i>, and reads bypass the cache entirely, going straight to the adapter's engine.
+ *
+ * <p>After a cool-down period, the breaker becomes <i>half-open</i>, and lets a small number of probe reads through to
+ * the cache. If all of them succeed, the breaker <i>closes</i> and normal operation resumes; if any of them fails, the
+ * breaker opens again for another cool-down period. This keeps a sick cache from adding its timeout to every read.
+ * Cache puts and evictions issued by writes are tracked the same way, and while the breaker is open, writes issue their
+ * eviction without waiting for it.</p>
+ *
+ * <p>The current state, and counts of each state transition, are available as metrics.</p>
+ */
+@ThreadSafe
+public final class CacheCircuitBreaker {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(CacheCircuitBreaker.class);
+
+  /** Default count of recent calls to derive the failure rate from. */
+  public static final int DEFAULT_WINDOW = 50;
+
+  /** Default count of calls required in the window before the breaker may open. */
+  public static final int DEFAULT_MIN_CALLS = 20;
+
+  /** Default failure rate at which the breaker opens. */
+  public static final double DEFAULT_FAILURE_THRESHOLD = 0.5;
+
+  /** Default time to wait in the open state before probing the cache again. */
+  public static final long DEFAULT_OPEN_DURATION = 10;
+
+  /** Time units for {@link #DEFAULT_OPEN_DURATION}. */
+  public static final TimeUnit DEFAULT_OPEN_DURATION_UNIT = TimeUnit.SECONDS;
+
+  /** Default count of successful probes required to close the breaker again. */
+  public static final int DEFAULT_PROBES = 3;
+
+  /** Describes the states of the breaker. */
+  public enum State {
+    /** The cache is healthy, and all reads try it first. */
+    CLOSED("Closed"),
+
+    /** The cache is unhealthy, and all reads bypass it. */
+    OPEN("Open"),
+
+    /** The cache is being probed with a limited number of reads, to see whether it has recovered. */
+    HALF_OPEN("Half-Open");
+
+    /** Pretty label for this state. */
+    private final @Nonnull String label;
+
+    State(@Nonnull String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("State(%s - %s)", this.name(), this.label);
+    }
+
+    /** @return Human-readable label for this state. */
+    public @Nonnull String getLabel() {
+      return label;
+    }
+  }
+
+  /** Outcomes of recent calls, as a ring, where {@code true} marks a failure. */
+  @GuardedBy("this")
+  private final boolean[] window;
+
+  /** Count of calls required in the window before the breaker may open. */
+  private final int minCalls;
+
+  /** Failure rate at which the breaker opens. */
+  private final double failureThreshold;
+
+  /** Time to wait in the open state before probing, in nanoseconds. */
+  private final long openNanos;
+
+  /** Count of successful probes required to close the breaker. */
+  private final int probes;
+
+  /** Time source for the open state's cool-down. */
+  private final @Nonnull Ticker ticker;
+
+  /** Current state of the breaker. */
+  @GuardedBy("this")
+  private State state = State.CLOSED;
+
+  /** Count of calls in the window. */
+  @GuardedBy("this")
+  private int calls = 0;
+
+  /** Count of failures in the window. */
+  @GuardedBy("this")
+  private int failures = 0;
+
+  /** Next slot in the window to write. */
+  @GuardedBy("this")
+  private int cursor = 0;
+
+  /** Ticker reading at which the breaker last opened. */
+  @GuardedBy("this")
+  private long openedAt = 0;
+
+  /** Count of probes admitted in the current half-open period. */
+  @GuardedBy("this")
+  private int probesAdmitted = 0;
+
+  /** Count of probes which succeeded in the current half-open period. */
+  @GuardedBy("this")
+  private int probesSucceeded = 0;
+
+  /** Count of transitions into the open state. */
+  private final AtomicLong openCount = new AtomicLong(0);
+
+  /** Count of transitions into the half-open state. */
+  private final AtomicLong halfOpenCount = new AtomicLong(0);
+
+  /** Count of transitions back into the closed state. */
+  private final AtomicLong closeCount = new AtomicLong(0);
+
+  /** Count of reads which bypassed the cache because the breaker was not closed. */
+  private final AtomicLong rejectedCount = new AtomicLong(0);
+
+  /**
+   * Private constructor. Acquire via one of the {@code create} factory methods.
+   *
+   * @param window Count of recent calls to derive the failure rate from.
+   * @param minCalls Count of calls required in the window before the breaker may open.
+   * @param failureThreshold Failure rate at which the breaker opens.
+   * @param openDuration Time to wait in the open state before probing the cache again.
+   * @param openDurationUnit Time units for {@code openDuration}.
+   * @param probes Count of successful probes required to close the breaker again.
+   * @param ticker Time source for the open state's cool-down.
+   */
+  private CacheCircuitBreaker(int window,
+                              int minCalls,
+                              double failureThreshold,
+                              long openDuration,
+                              @Nonnull TimeUnit openDurationUnit,
+                              int probes,
+                              @Nonnull Ticker ticker) {
+    if (window < 1) throw new IllegalArgumentException("Breaker window must hold at least 1 call.");
+    if (minCalls < 1 || minCalls > window)
+      throw new IllegalArgumentException("Minimum calls must be between 1 and the window size.");
+    if (failureThreshold <= 0 || failureThreshold > 1)
+      throw new IllegalArgumentException("Failure threshold must be in (0, 1].");
+    if (openDuration < 0) throw new IllegalArgumentException("Open duration cannot be negative.");
+    if (probes < 1) throw new IllegalArgumentException("Breaker must allow at least 1 probe.");
+    this.window = new boolean[window];
+    this.minCalls = minCalls;
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openDurationUnit.toNanos(openDuration);
+    this.probes = probes;
+    this.ticker = ticker;
+  }
+
+  /** @return Circuit breaker with default settings. */
+  public static @Nonnull CacheCircuitBreaker create() {
+    return create(DEFAULT_WINDOW, DEFAULT_MIN_CALLS, DEFAULT_FAILURE_THRESHOLD,
+      DEFAULT_OPEN_DURATION, DEFAULT_OPEN_DURATION_UNIT, DEFAULT_PROBES, Ticker.systemTicker());
+  }
+
+  /**
+   * Create a circuit breaker with custom settings.
+   *
+   * @param window Count of recent calls to derive the failure rate from.
+   * @param minCalls Count of calls required in the window before the breaker may open.
+   * @param failureThreshold Failure rate, in {@code (0, 1]}, at which the breaker opens.
+   * @param openDuration Time to wait in the open state before probing the cache again.
+   * @param openDurationUnit Time units for {@code openDuration}.
+   * @param probes Count of successful probes required to close the breaker again.
+   * @param ticker Time source for the open state's cool-down.
+   * @return Circuit breaker instance.
+   */
+  public static @Nonnull CacheCircuitBreaker create(int window,
+                                                    int minCalls,
+                                                    double failureThreshold,
+                                                    long openDuration,
+                                                    @Nonnull TimeUnit openDurationUnit,
+                                                    int probes,
+                                                    @Nonnull Ticker ticker) {
+    return new CacheCircuitBreaker(
+      window, minCalls, failureThreshold, openDuration, openDurationUnit, probes, ticker);
+  }
+
+  // -- API: Calls -- //
+  /**
+   * Decide whether a read may try the cache. Every call which returns {@code true} must be followed by exactly one call
+   * to {@link #recordSuccess()}, {@link #recordFailure()}, or {@link #recordIgnored()}.
+   *
+   * @return Whether the read should try the cache; if {@code false}, it should bypass the cache.
+   */
+  public synchronized boolean allowRequest() {
+    if (state == State.OPEN && ticker.read() - openedAt >= openNanos) transitionLocked(State.HALF_OPEN);
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (probesAdmitted < probes) {
+          probesAdmitted++;
+          return true;
+        }
+        // fall through
+      default:
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+  }
+
+  /** Record that a cache call succeeded (whether it hit or missed). */
+  public synchronized void recordSuccess() {
+    if (state == State.HALF_OPEN) {
+      probesSucceeded++;
+      if (probesSucceeded >= probes) transitionLocked(State.CLOSED);
+      return;
+    }
+    if (state == State.CLOSED) recordLocked(false);
+  }
+
+  /** Record that a cache call failed, either with an error or by timing out. */
+  public synchronized void recordFailure() {
+    if (state == State.HALF_OPEN) {
+      transitionLocked(State.OPEN);
+      return;
+    }
+    if (state == State.CLOSED) {
+      recordLocked(true);
+      if (calls >= minCalls && (double)failures / calls >= failureThreshold) transitionLocked(State.OPEN);
+    }
+  }
+
+  /** Record that a cache call was abandoned without an outcome, for instance because it lost a hedged read. */
+  public synchronized void recordIgnored() {
+    if (state == State.HALF_OPEN && probesAdmitted > probesSucceeded) probesAdmitted--;
+  }
+
+  // -- Internals -- //
+  /**
+   * Add an outcome to the sliding window. Must be called while holding the breaker's monitor.
+   *
+   * @param failed Whether the call failed.
+   */
+  @GuardedBy("this")
+  private void recordLocked(boolean failed) {
+    if (calls == window.length) {
+      if (window[cursor]) failures--;
+    } else {
+      calls++;
+    }
+    window[cursor] = failed;
+    if (failed) failures++;
+    cursor = (cursor + 1) % window.length;
+  }
+
+  /**
+   * Move the breaker into a new state, resetting state-specific counters. Must be called while holding the breaker's
+   * monitor.
+   *
+   * @param next State to move into.
+   */
+  @GuardedBy("this")
+  private void transitionLocked(@Nonnull State next) {
+    final State previous = state;
+    state = next;
+    switch (next) {
+      case OPEN:
+        openedAt = ticker.read();
+        openCount.incrementAndGet();
+        logging.warn(format("Cache circuit breaker opened (was %s). Reads will bypass the cache.", previous.name()));
+        break;
+      case HALF_OPEN:
+        probesAdmitted = 0;
+        probesSucceeded = 0;
+        halfOpenCount.incrementAndGet();
+        if (logging.isDebugEnabled())
+          logging.debug("Cache circuit breaker half-open. Probing the cache.");
+        break;
+      case CLOSED:
+      default:
+        calls = 0;
+        failures = 0;
+        cursor = 0;
+        closeCount.incrementAndGet();
+        logging.info("Cache circuit breaker closed. Reads will use the cache again.");
+        break;
+    }
+  }
+
+  // -- Metrics -- //
+  /** @return Current state of the breaker. */
+  public synchronized @Nonnull State state() {
+    return state;
+  }
+
+  /** @return Failure rate over the current window, or {@code 0} if it is empty. */
+  public synchronized double failureRate() {
+    return calls == 0 ? 0.0 : (double)failures / calls;
+  }
+
+  /** @return Count of times the breaker has opened. */
+  public long openCount() {
+    return openCount.get();
+  }
+
+  /** @return Count of times the breaker has become half-open. */
+  public long halfOpenCount() {
+    return halfOpenCount.get();
+  }
+
+  /** @return Count of times the breaker has closed again after opening. */
+  public long closeCount() {
+    return closeCount.get();
+  }
+
+  /** @return Count of reads which bypassed the cache because the breaker was not closed. */
+  public long rejectedCount() {
+    return rejectedCount.get();
+  }
+}
@@ -98,4 +98,14 @@ public interface CacheDriver<Key extends Message, Model extends Message> {
   @Nonnull ReactiveFuture<Optional<Model>> fetch(@Nonnull Key key,
                                                  @Nonnull FetchOptions options,
                                                  @Nonnull ListeningScheduledExecutorService executor);
+
+  /**
+   * Report the time-to-live which this cache applies to records written into it, if it expires records by age. Used to
+   * schedule work relative to expiry, such as refreshing hot records ahead of it.
+   *
+   * @return Time-to-live for cached records, in milliseconds, or {@link Optional#empty()} if records do not expire.
+   */
+  default @Nonnull Optional<Long> entryTTLMillis() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Tracks observed cache fetch latency on behalf of a {@link ModelAdapter}, over a sliding window of recent samples, and
+ * derives cache timeouts and hedging delays from it according to {@link CacheOptions#cacheTimeoutMode()}.
+ *
+ * <p>In {@link CacheOptions.TimeoutMode#ADAPTIVE} mode, the cache timeout is the observed
+ * {@link CacheOptions#cacheTimeoutPercentile()} latency, with some headroom, capped at the fixed
+ * {@link CacheOptions#cacheTimeout()}. In {@link CacheOptions.TimeoutMode#HEDGED} mode, the same timeout applies, and a
+ * storage read is additionally started once the cache takes longer than the {@link CacheOptions#cacheHedgePercentile()}
+ * latency. Until enough samples have been observed, the fixed timeout applies, and reads are not hedged.</p>
+ *
+ * <p>Fetches which are cancelled (because they timed out, or lost a hedge) are recorded at the time they were
+ * cancelled, which under-counts their true latency. This keeps a cache which is consistently slow from dropping out of
+ * the window entirely.</p>
+ */
+@ThreadSafe
+public final class CacheLatencyTracker {
+  /** Default count of recent samples to derive percentiles from. */
+  public static final int DEFAULT_WINDOW = 256;
+
+  /** Default count of samples required before adaptive timeouts or hedging apply. */
+  public static final int DEFAULT_MIN_SAMPLES = 20;
+
+  /** Multiplier applied to the observed percentile latency when deriving an adaptive timeout. */
+  public static final double ADAPTIVE_HEADROOM = 1.5;
+
+  /** Smallest adaptive timeout, or hedging delay, which will be issued. */
+  public static final long MIN_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** Count of new samples after which the sorted snapshot is rebuilt. */
+  private static final int SNAPSHOT_INTERVAL = 16;
+
+  /** Count of samples required before percentiles are reported. */
+  private final int minSamples;
+
+  /** Ring of recent samples, in nanoseconds. */
+  @GuardedBy("this")
+  private final long[] window;
+
+  /** Total count of samples recorded. */
+  @GuardedBy("this")
+  private long recorded = 0;
+
+  /** Sorted copy of the window, as of {@link #snapshotAt}. */
+  @GuardedBy("this")
+  private long[] snapshot = null;
+
+  /** Value of {@link #recorded} when {@link #snapshot} was taken. */
+  @GuardedBy("this")
+  private long snapshotAt = 0;
+
+  /** Count of reads which were hedged to storage. */
+  private final AtomicLong hedgeCount = new AtomicLong(0);
+
+  /** Count of hedged reads which storage answered first. */
+  private final AtomicLong hedgeWinCount = new AtomicLong(0);
+
+  /** Count of cache fetches which timed out. */
+  private final AtomicLong timeoutCount = new AtomicLong(0);
+
+  /**
+   * Private constructor. Acquire via one of the {@code create} factory methods.
+   *
+   * @param window Count of recent samples to derive percentiles from.
+   * @param minSamples Count of samples required before adaptive timeouts or hedging apply.
+   */
+  private CacheLatencyTracker(int window, int minSamples) {
+    if (window < 1) throw new IllegalArgumentException("Latency window must hold at least 1 sample.");
+    if (minSamples < 1 || minSamples > window)
+      throw new IllegalArgumentException("Minimum samples must be between 1 and the window size.");
+    this.window = new long[window];
+    this.minSamples = minSamples;
+  }
+
+  /** @return Latency tracker with the default window size and sample threshold. */
+  public static @Nonnull CacheLatencyTracker create() {
+    return create(DEFAULT_WINDOW, DEFAULT_MIN_SAMPLES);
+  }
+
+  /**
+   * Create a latency tracker with a custom window size and sample threshold.
+   *
+   * @param window Count of recent samples to derive percentiles from.
+   * @param minSamples Count of samples required before adaptive timeouts or hedging apply.
+   * @return Latency tracker instance.
+   */
+  public static @Nonnull CacheLatencyTracker create(int window, int minSamples) {
+    return new CacheLatencyTracker(window, minSamples);
+  }
+
+  // -- API: Samples -- //
+  /**
+   * Record the latency of a single cache fetch.
+   *
+   * @param nanos Time the fetch took, in nanoseconds.
+   */
+  public synchronized void record(long nanos) {
+    window[(int)(recorded % window.length)] = Math.max(0, nanos);
+    recorded++;
+  }
+
+  /**
+   * Resolve the latency at the provided percentile, over the current window.
+   *
+   * @param percentile Percentile to resolve, between {@code 0} and {@code 1}.
+   * @return Latency at that percentile in nanoseconds, or empty if too few samples have been recorded.
+   */
+  public synchronized @Nonnull Optional<Long> percentile(double percentile) {
+    if (recorded < minSamples) return Optional.empty();
+    if (snapshot == null || recorded - snapshotAt >= SNAPSHOT_INTERVAL) {
+      int size = (int)Math.min(recorded, window.length);
+      snapshot = Arrays.copyOf(window, size);
+      Arrays.sort(snapshot);
+      snapshotAt = recorded;
+    }
+    double clamped = Math.min(1.0, Math.max(0.0, percentile));
+    int index = (int)Math.ceil(clamped * snapshot.length) - 1;
+    return Optional.of(snapshot[Math.max(0, Math.min(snapshot.length - 1, index))]);
+  }
+
+  // -- API: Timeouts -- //
+  /**
+   * Resolve the cache timeout to apply to a fetch with the provided options.
+   *
+   * @param options Options for the fetch.
+   * @return Cache timeout, in nanoseconds.
+   */
+  public long timeoutNanos(@Nonnull CacheOptions options) {
+    final long fixed = options.cacheTimeoutUnit().toNanos(
+      options.cacheTimeout().orElse(PersistenceDriver.DEFAULT_CACHE_TIMEOUT));
+    if (options.cacheTimeoutMode() == CacheOptions.TimeoutMode.FIXED) return fixed;
+    return percentile(options.cacheTimeoutPercentile())
+      .map((observed) -> Math.min(fixed, Math.max(MIN_TIMEOUT_NANOS, (long)(observed * ADAPTIVE_HEADROOM))))
+      .orElse(fixed);
+  }
+
+  /**
+   * Resolve the delay after which a fetch with the provided options should be hedged to storage.
+   *
+   * @param options Options for the fetch.
+   * @return Hedging delay in nanoseconds, or empty if the fetch should not be hedged.
+   */
+  public @Nonnull Optional<Long> hedgeDelayNanos(@Nonnull CacheOptions options) {
+    if (options.cacheTimeoutMode() != CacheOptions.TimeoutMode.HEDGED) return Optional.empty();
+    return percentile(options.cacheHedgePercentile())
+      .map((observed) -> Math.max(MIN_TIMEOUT_NANOS, observed));
+  }
+
+  // -- Metrics -- //
+  /** Note that a read was hedged to storage. */
+  void recordHedge() {
+    hedgeCount.incrementAndGet();
+  }
+
+  /** Note that storage answered a hedged read before the cache did. */
+  void recordHedgeWin() {
+    hedgeWinCount.incrementAndGet();
+  }
+
+  /** Note that a cache fetch timed out. */
+  void recordTimeout() {
+    timeoutCount.incrementAndGet();
+  }
+
+  /** @return Total count of samples recorded so far. */
+  public synchronized long sampleCount() {
+    return recorded;
+  }
+
+  /** @return Count of reads hedged to storage so far. */
+  public long hedgeCount() {
+    return hedgeCount.get();
+  }
+
+  /** @return Count of hedged reads which storage answered before the cache. */
+  public long hedgeWinCount() {
+    return hedgeWinCount.get();
+  }
+
+  /** @return Count of cache fetches which timed out so far. */
+  public long timeoutCount() {
+    return timeoutCount.get();
+  }
+}
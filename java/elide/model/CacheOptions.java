@@ -29,6 +29,12 @@ import java.util.concurrent.TimeUnit;
  *   <li>{@link #cacheDefaultTTL()}: Default amount of time to let things stick around in the cache.</li>
  *   <li>{@link #cacheDefaultTTLUnit()}: Time unit to correspond with {@code cacheDefaultTTL}.</li>
  *   <li>{@link #cacheEvictionMode()}: Eviction mode to operate in.
+ *   <li>{@link #cacheWritePolicy()} ({@code INVALIDATE}): How writes should be reflected in the cache.</li>
+ *   <li>{@link #cacheTimeoutMode()} ({@code FIXED}): How the cache timeout is derived, and whether to hedge reads.</li>
+ *   <li>{@link #cacheTimeoutPercentile()} ({@code 0.99}): Latency percentile to base adaptive timeouts on.</li>
+ *   <li>{@link #cacheHedgePercentile()} ({@code 0.95}): Observed latency percentile after which reads are hedged.</li>
+ *   <li>{@link #cacheRefreshAhead()} (none): Fraction of the TTL after which a cache hit triggers a background reload.
+ *   </li>
  * </ul></p>
  */
 public interface CacheOptions extends OperationOptions {
@@ -61,6 +67,83 @@ public interface CacheOptions extends OperationOptions {
     }
   }
 
+  /**
+   * Describes policies for reflecting writes into the cache. Each policy carries its own ordering guarantee with regard
+   * to the underlying storage write, described below.
+   */
+  enum WritePolicy {
+    /**
+     * Write to storage first, then evict any cached record at the written key. The eviction happens whether or not the
+     * storage write succeeds, so a failed write never leaves a cached record which disagrees with storage.
+     */
+    INVALIDATE("Write-Invalidate"),
+
+    /**
+     * Write to storage first, then put the written record into the cache. The operation completes only after both
+     * steps, and cache failures are logged (and the key evicted) rather than failing an otherwise-durable write.
+     */
+    WRITE_THROUGH("Write-Through"),
+
+    /**
+     * Put the record into the cache, acknowledge the write, and flush it to storage asynchronously, coalesced by key
+     * and in batches. Only applies to {@code BLIND} writes with an explicit key; other writes use write-through. If the
+     * eventual storage write fails, the cached record is evicted.
+     */
+    WRITE_BEHIND("Write-Behind");
+
+    /** Pretty label for this policy. */
+    private final @Nonnull String label;
+
+    WritePolicy(@Nonnull String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("WritePolicy(%s - %s)", this.name(), this.label);
+    }
+
+    /** @return Human-readable label for this write policy. */
+    public @Nonnull String getLabel() {
+      return label;
+    }
+  }
+
+  /** Describes modes for deriving the cache timeout, and for hedging slow cache fetches. */
+  enum TimeoutMode {
+    /** Always apply the configured {@link #cacheTimeout()}. */
+    FIXED("Fixed"),
+
+    /**
+     * Derive the timeout from observed cache latency at {@link #cacheTimeoutPercentile()}, capped at the configured
+     * {@link #cacheTimeout()}. Falls back to the configured timeout until enough latency has been observed.
+     */
+    ADAPTIVE("Adaptive"),
+
+    /**
+     * Apply an adaptive timeout, and additionally start a storage read in parallel once the cache takes longer than the
+     * observed latency at {@link #cacheHedgePercentile()}. Whichever answers first is used, and the other is cancelled.
+     */
+    HEDGED("Hedged");
+
+    /** Pretty label for this mode. */
+    private final @Nonnull String label;
+
+    TimeoutMode(@Nonnull String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("TimeoutMode(%s - %s)", this.name(), this.label);
+    }
+
+    /** @return Human-readable label for this timeout mode. */
+    public @Nonnull String getLabel() {
+      return label;
+    }
+  }
+
   /** @return Whether the cache should be enabled, if installed. Defaults to `true`. */
   default @Nonnull Boolean enableCache() {
     return true;
@@ -76,6 +159,21 @@ public interface CacheOptions extends OperationOptions {
     return TimeUnit.SECONDS;
   }
 
+  /** @return Mode for deriving the cache timeout, and for hedging slow cache fetches. */
+  default @Nonnull TimeoutMode cacheTimeoutMode() {
+    return TimeoutMode.FIXED;
+  }
+
+  /** @return Percentile of observed cache latency to base adaptive timeouts on, between {@code 0} and {@code 1}. */
+  default @Nonnull Double cacheTimeoutPercentile() {
+    return 0.99;
+  }
+
+  /** @return Percentile of observed cache latency after which reads are hedged, between {@code 0} and {@code 1}. */
+  default @Nonnull Double cacheHedgePercentile() {
+    return 0.95;
+  }
+
   /** @return Default amount of time to let things remain in the cache. */
   default @Nonnull Optional<Long> cacheDefaultTTL() {
     return Optional.of(1L);
@@ -90,4 +188,21 @@ public interface CacheOptions extends OperationOptions {
   default @Nonnull Optional<EvictionMode> cacheEvictionMode() {
     return Optional.of(EvictionMode.TTL);
   }
+
+  /** @return Policy to apply when writes pass through an adapter with an active cache. */
+  default @Nonnull WritePolicy cacheWritePolicy() {
+    return WritePolicy.INVALIDATE;
+  }
+
+  /**
+   * Fraction of the cache's time-to-live (see {@link CacheDriver#entryTTLMillis()}) after which a cache hit should
+   * trigger an asynchronous reload of the record from storage, while the cached record continues to be served. For
+   * instance, {@code 0.8} refreshes hot records once they are 80% of the way to expiry. Empty (the default) disables
+   * refresh-ahead.
+   *
+   * @return Refresh-ahead factor, between {@code 0} and {@code 1}, if refresh-ahead is enabled.
+   */
+  default @Nonnull Optional<Double> cacheRefreshAhead() {
+    return Optional.empty();
+  }
 }
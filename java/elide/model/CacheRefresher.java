@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.protobuf.Message;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Refreshes hot cache entries ahead of expiry, on behalf of a {@link ModelAdapter}. Reads which specify a
+ * {@link CacheOptions#cacheRefreshAhead()} factor, and which hit a cached record older than that fraction of the
+ * cache's time-to-live, trigger an asynchronous reload from the underlying {@link PersistenceDriver}.
+ * The cached record keeps being served while the reload runs, and is replaced once it completes.
+ *
+ * <p>Ages are tracked from the last time the adapter wrote each record into the cache, either on a read miss or on a
+ * write-through. Records put into the cache by other means are not tracked, and are never refreshed. At most one reload
+ * runs per record at any time.</p>
+ *
+ * <p>The time-to-live is fixed when the refresher is created, and is taken from the cache by default (see
+ * {@link CacheDriver#entryTTLMillis()}), since that is when cached records actually expire. If the cache does not
+ * report one, records are never refreshed.</p>
+ *
+ * <p><b>Consistency:</b> the adapter calls {@link #invalidate(Message)} before any write or delete of a record. A reload
+ * which completes after its record was invalidated is discarded, so a refresh never resurrects a record over a newer
+ * write. If a reload fails, the cached record is left in place, and will expire normally.</p>
+ *
+ * @param <Key> Key type, instances of which uniquely address instances of {@code Model}.
+ * @param <Model> Model type which this refresher is responsible for reloading.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class CacheRefresher<Key extends Message, Model extends Message> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(CacheRefresher.class);
+
+  /** Default maximum count of records to track write times for. */
+  public static final long DEFAULT_MAX_TRACKED = 10_000;
+
+  /** Storage engine which reloads are read from. */
+  private final @Nonnull PersistenceDriver<Key, Model, ?, ?> engine;
+
+  /** Cache which reloaded records are written into. */
+  private final @Nonnull CacheDriver<Key, Model> cache;
+
+  /** Executor used for dispatching reloads. */
+  private final @Nonnull ListeningScheduledExecutorService executor;
+
+  /** Time source for record ages. */
+  private final @Nonnull Ticker ticker;
+
+  /** Time-to-live of cached records, in nanoseconds, or {@code 0} if they do not expire. */
+  private final long ttlNanos;
+
+  /** Time at which each tracked record was last written into the cache, by record ID. */
+  private final @Nonnull Cache<Object, Stamp> writes;
+
+  /** IDs of records with a reload currently in flight. */
+  private final @Nonnull Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+  /** Count of reloads started. */
+  private final AtomicLong refreshCount = new AtomicLong(0);
+
+  /** Count of reloads discarded because their record was written or invalidated meanwhile. */
+  private final AtomicLong supersededCount = new AtomicLong(0);
+
+  /** Count of reloads which failed in storage. */
+  private final AtomicLong failureCount = new AtomicLong(0);
+
+  /** Records the time at which a record was written into the cache. Compared by identity. */
+  private static final class Stamp {
+    private final long writtenAt;
+
+    private Stamp(long writtenAt) {
+      this.writtenAt = writtenAt;
+    }
+  }
+
+  /**
+   * Private constructor. Acquire via one of the {@code create} factory methods.
+   *
+   * @param engine Storage engine which reloads should be read from.
+   * @param cache Cache which reloaded records should be written into.
+   * @param executor Executor to dispatch reloads on.
+   * @param ttlNanos Time-to-live of cached records, in nanoseconds, or {@code 0} if they do not expire.
+   * @param maxTracked Maximum count of records to track write times for.
+   * @param ticker Time source for record ages.
+   */
+  private CacheRefresher(@Nonnull PersistenceDriver<Key, Model, ?, ?> engine,
+                         @Nonnull CacheDriver<Key, Model> cache,
+                         @Nonnull ListeningScheduledExecutorService executor,
+                         long ttlNanos,
+                         long maxTracked,
+                         @Nonnull Ticker ticker) {
+    if (ttlNanos < 0) throw new IllegalArgumentException("Cache TTL may not be negative.");
+    if (maxTracked < 1) throw new IllegalArgumentException("Max tracked records must be at least 1.");
+    this.ttlNanos = ttlNanos;
+    this.engine = Objects.requireNonNull(engine, "Cannot refresh without an engine.");
+    this.cache = Objects.requireNonNull(cache, "Cannot refresh without a cache.");
+    this.executor = Objects.requireNonNull(executor, "Cannot refresh without an executor.");
+    this.ticker = Objects.requireNonNull(ticker, "Cannot refresh without a ticker.");
+    this.writes = CacheBuilder.newBuilder()
+      .maximumSize(maxTracked)
+      .build();
+  }
+
+  /**
+   * Create a cache refresher for the provided engine and cache, with default settings. Records are refreshed relative
+   * to the time-to-live reported by the cache, if any.
+   *
+   * @param engine Storage engine which reloads should be read from.
+   * @param cache Cache which reloaded records should be written into.
+   * @param executor Executor to dispatch reloads on.
+   * @param <K> Key type for the model being refreshed.
+   * @param <M> Model type being refreshed.
+   * @return Cache refresher instance.
+   */
+  public static @Nonnull <K extends Message, M extends Message> CacheRefresher<K, M> create(
+      @Nonnull PersistenceDriver<K, M, ?, ?> engine,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull ListeningScheduledExecutorService executor) {
+    return create(engine, cache, executor, cache.entryTTLMillis().orElse(0L), TimeUnit.MILLISECONDS,
+      DEFAULT_MAX_TRACKED, Ticker.systemTicker());
+  }
+
+  /**
+   * Create a cache refresher for the provided engine and cache, with custom settings.
+   *
+   * @param engine Storage engine which reloads should be read from.
+   * @param cache Cache which reloaded records should be written into.
+   * @param executor Executor to dispatch reloads on.
+   * @param ttl Time-to-live of records in {@code cache}, or {@code 0} if they do not expire.
+   * @param ttlUnit Unit of time for {@code ttl}.
+   * @param maxTracked Maximum count of records to track write times for. Records beyond this count are forgotten, in
+   *                   approximately least-recently-written order, and are not refreshed.
+   * @param ticker Time source for record ages.
+   * @param <K> Key type for the model being refreshed.
+   * @param <M> Model type being refreshed.
+   * @return Cache refresher instance.
+   */
+  public static @Nonnull <K extends Message, M extends Message> CacheRefresher<K, M> create(
+      @Nonnull PersistenceDriver<K, M, ?, ?> engine,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull ListeningScheduledExecutorService executor,
+      long ttl,
+      @Nonnull TimeUnit ttlUnit,
+      long maxTracked,
+      @Nonnull Ticker ticker) {
+    return new CacheRefresher<>(engine, cache, executor, ttlUnit.toNanos(ttl), maxTracked, ticker);
+  }
+
+  // -- API: Tracking -- //
+  /**
+   * Record that the record at {@code key} has just been written into the cache, restarting its age.
+   *
+   * @param key Key for the record which was cached.
+   */
+  public void recordWrite(@Nonnull Key key) {
+    ModelMetadata.id(key).ifPresent((id) -> writes.put(id, new Stamp(ticker.read())));
+  }
+
+  /**
+   * Stop tracking the record at {@code key}, and discard any reload for it which is currently in flight. Must be called
+   * before the record is written or deleted by any other path.
+   *
+   * @param key Key for the record which is about to change.
+   */
+  public void invalidate(@Nonnull Key key) {
+    ModelMetadata.id(key).ifPresent(writes::invalidate);
+  }
+
+  // -- API: Refresh -- //
+  /**
+   * Note a cache hit for the record at {@code key}, and start a reload if the record is due for one, according to the
+   * refresh-ahead factor in the provided {@code options} and the time-to-live of the cache. Returns immediately in
+   * either case.
+   *
+   * @param key Key for the record which was served from the cache.
+   * @param options Options for the read which hit the cache. Also used for the reload.
+   * @return Whether a reload was started.
+   */
+  public boolean onHit(@Nonnull Key key, @Nonnull FetchOptions options) {
+    final Optional<Double> factor = options.cacheRefreshAhead();
+    if (factor.isEmpty() || ttlNanos == 0) return false;
+
+    final Object id = ModelMetadata.id(key).orElse(null);
+    if (id == null) return false;
+    final Stamp stamp = writes.getIfPresent(id);
+    if (stamp == null) return false;
+
+    final long threshold = (long)(ttlNanos * factor.get());
+    if (ticker.read() - stamp.writtenAt < threshold) return false;
+    if (!refreshing.add(id)) return false;
+    refresh(id, key, stamp, options);
+    return true;
+  }
+
+  /**
+   * Reload the record at {@code key} from storage, and write it into the cache, unless the record is invalidated first.
+   * The caller must have claimed {@code id} in {@link #refreshing}; it is released once the reload settles.
+   *
+   * @param id ID of the record to reload.
+   * @param key Key for the record to reload.
+   * @param stamp Write stamp which the cached record had when the reload was started.
+   * @param options Options to apply to the storage read.
+   */
+  private void refresh(@Nonnull Object id,
+                       @Nonnull Key key,
+                       @Nonnull Stamp stamp,
+                       @Nonnull FetchOptions options) {
+    refreshCount.incrementAndGet();
+    if (logging.isDebugEnabled())
+      logging.debug(format("Refreshing cached record at ID '%s' ahead of expiry.", id));
+
+    ListenableFuture<Optional<Model>> reload;
+    try {
+      reload = engine.retrieve(key, options);
+    } catch (RuntimeException exc) {
+      reload = Futures.immediateFailedFuture(exc);
+    }
+
+    final ListenableFuture<?> settled = Futures.catching(Futures.transformAsync(reload, (result) -> {
+      if (writes.getIfPresent(id) != stamp) {
+        supersededCount.incrementAndGet();
+        return Futures.immediateFuture(null);
+      }
+      if (result == null || result.isEmpty()) {
+        // the record is gone from storage. stop serving it.
+        writes.invalidate(id);
+        return cache.evict(key, executor);
+      }
+      final Stamp refreshed = new Stamp(ticker.read());
+      //noinspection unchecked
+      return Futures.transform((ListenableFuture<Object>)cache.put(key, result.get(), executor), (ignored) -> {
+        // if a write raced with the cache put, the reloaded record may be stale: drop it instead of keeping it.
+        if (!writes.asMap().replace(id, stamp, refreshed)) {
+          supersededCount.incrementAndGet();
+          cache.evict(key, executor);
+        }
+        return null;
+      }, executor);
+    }, executor), Throwable.class, (err) -> {
+      failureCount.incrementAndGet();
+      logging.warn(format("Failed to refresh cached record at ID '%s'. Error: '%s'.", id,
+        err == null ? null : err.getMessage()));
+      return null;
+    }, executor);
+
+    settled.addListener(() -> refreshing.remove(id), executor);
+  }
+
+  // -- Metrics -- //
+  /** @return Count of reloads currently in flight. */
+  public int inFlightCount() {
+    return refreshing.size();
+  }
+
+  /** @return Count of reloads started so far. */
+  public long refreshCount() {
+    return refreshCount.get();
+  }
+
+  /** @return Count of reloads discarded because their record changed while they were in flight. */
+  public long supersededCount() {
+    return supersededCount.get();
+  }
+
+  /** @return Count of reloads which failed in storage. */
+  public long failureCount() {
+    return failureCount.get();
+  }
+
+  /** @return Approximate count of records whose cache age is being tracked. */
+  public long trackedCount() {
+    return writes.size();
+  }
+
+}
@@ -13,12 +13,21 @@
 package elide.model;
 
 import tools.elide.core.CollectionMode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.Message;
 import com.google.protobuf.Descriptors;
+import elide.runtime.jvm.ReactiveFuture;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 
@@ -221,4 +230,114 @@ public final class CollapsedMessage {
       operation.execute(prefix, (WriteProxy<Object>)proxy, Optional.empty());
     });
   }
+
+  /**
+   * Arrange the operations held by this message as a dependency graph, where each operation depends on its parent.
+   * Since every operation has at most one parent, the graph is a forest: operations whose parent is absent (or not held
+   * by this message) are roots, and every other operation is a child of its parent.
+   *
+   * @param roots List to fill with root operations, in the order they are held.
+   * @return Child operations of each operation which has any, in the order they are held.
+   */
+  private @Nonnull Map<Operation, List<Operation>> dependencies(@Nonnull List<Operation> roots) {
+    final Map<Operation, Boolean> held = new IdentityHashMap<>(operations.size());
+    for (Operation operation : operations) held.put(operation, Boolean.TRUE);
+
+    final Map<Operation, List<Operation>> children = new IdentityHashMap<>();
+    for (Operation operation : operations) {
+      final Optional<Operation> parent = operation.getParent();
+      if (parent.isPresent() && held.containsKey(parent.get())) {
+        children.computeIfAbsent(parent.get(), key -> new ArrayList<>()).add(operation);
+      } else {
+        roots.add(operation);
+      }
+    }
+    return children;
+  }
+
+  /**
+   * Execute an operation on the provided executor, followed by all of its descendants. Once the operation itself is
+   * done, each of its children (and their sub-trees) are executed concurrently.
+   *
+   * @param operation Operation to execute.
+   * @param children Child operations of each operation.
+   * @param prefix Path prefix to apply to all sub-writes.
+   * @param proxy Write proxy to employ.
+   * @param executor Executor on which to execute operations.
+   * @return Future which completes once the operation and all of its descendants are done.
+   */
+  private static @Nonnull ListenableFuture<Void> executeTree(@Nonnull Operation operation,
+                                                             @Nonnull Map<Operation, List<Operation>> children,
+                                                             @Nullable String prefix,
+                                                             @Nonnull WriteProxy<Object> proxy,
+                                                             @Nonnull ListeningExecutorService executor) {
+    final ListenableFuture<Void> self = executor.submit(() -> {
+      operation.execute(prefix, proxy, Optional.empty());
+      return null;
+    });
+    final List<Operation> descendants = children.getOrDefault(operation, Collections.emptyList());
+    if (descendants.isEmpty()) return self;
+    return Futures.transformAsync(self, done -> executeAll(descendants, children, prefix, proxy, executor),
+      MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Execute a set of independent operations concurrently, each followed by its descendants.
+   *
+   * @param operations Independent operations to execute.
+   * @param children Child operations of each operation.
+   * @param prefix Path prefix to apply to all sub-writes.
+   * @param proxy Write proxy to employ.
+   * @param executor Executor on which to execute operations.
+   * @return Future which completes once every operation and all of their descendants are done.
+   */
+  private static @Nonnull ListenableFuture<Void> executeAll(@Nonnull List<Operation> operations,
+                                                            @Nonnull Map<Operation, List<Operation>> children,
+                                                            @Nullable String prefix,
+                                                            @Nonnull WriteProxy<Object> proxy,
+                                                            @Nonnull ListeningExecutorService executor) {
+    final List<ListenableFuture<Void>> trees = new ArrayList<>(operations.size());
+    for (Operation operation : operations) trees.add(executeTree(operation, children, prefix, proxy, executor));
+    return Futures.whenAllSucceed(trees).call(() -> null, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Execute the collapsed message against the provided {@link WriteProxy}, running independent branches of the message
+   * in parallel on the provided executor.
+   *
+   * <p>Operations are arranged as a dependency graph, where each write depends on its parent: a parent is always
+   * executed before its children, but sibling sub-trees (for instance, separate child collections) proceed
+   * independently. For entities with many child collections, latency is therefore bound by the depth of the entity,
+   * rather than the count of writes. The proxy must tolerate concurrent calls.</p>
+   *
+   * <p>If any operation fails, the returned future fails, and the descendants of the failed operation are not executed.
+   * Operations on other branches may still be executed.</p>
+   *
+   * @param prefix Path prefix to apply to all sub-writes.
+   * @param proxy Write proxy to employ, which must be safe for concurrent use.
+   * @param executor Executor on which to execute operations.
+   * @return Future which completes once every operation has been executed.
+   */
+  public @Nonnull ReactiveFuture<Void> persist(@Nullable String prefix,
+                                               @Nonnull WriteProxy<?> proxy,
+                                               @Nonnull ListeningExecutorService executor) {
+    final List<Operation> roots = new ArrayList<>();
+    final Map<Operation, List<Operation>> children = dependencies(roots);
+    //noinspection unchecked
+    return ReactiveFuture.wrap(executeAll(roots, children, prefix, (WriteProxy<Object>)proxy, executor), executor);
+  }
+
+  /**
+   * Execute the collapsed message against the provided {@link BatchWriteProxy}, and then flush the proxy, so that the
+   * message's writes (along with any others buffered by the proxy) are committed in batches rather than one by one.
+   *
+   * @param prefix Path prefix to apply to all sub-writes.
+   * @param proxy Batching write proxy to employ.
+   * @return Future for a report describing the outcome of each batch.
+   */
+  public @Nonnull ListenableFuture<BatchWriteProxy.Report> persistBatched(@Nullable String prefix,
+                                                                          @Nonnull BatchWriteProxy<?> proxy) {
+    persist(prefix, proxy);
+    return proxy.flush();
+  }
 }
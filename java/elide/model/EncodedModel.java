@@ -33,7 +33,8 @@ import java.util.Objects;
 
 /**
  * Container class for an encoded Protocol Buffer model. Holds raw encoded model data, in any of Protobuf's built-in
- * well-defined serialization formats (for instance {@code BINARY} or {@code JSON}).
+ * well-defined serialization formats (for instance {@code BINARY} or {@code JSON}), optionally compressed (for instance
+ * {@code BINARY_GZIP}).
  *
  * <p>Raw model data is encoded before being held by this record. In addition to holding the raw data, it also keeps
  * the fully-qualified path to the model that the data came from, and the serialization format the data lives in. After
@@ -175,9 +176,7 @@ public final class EncodedModel implements Serializable, Cloneable {
     EncodedModel that = (EncodedModel) o;
     return com.google.common.base.Objects.equal(type, that.type) &&
       dataMode == that.dataMode &&
-      com.google.common.base.Objects.equal(
-        Arrays.hashCode(rawBytes),
-        Arrays.hashCode(that.rawBytes));
+      Arrays.equals(rawBytes, that.rawBytes);
   }
 
   /** {@inheritDoc} */
@@ -226,20 +225,27 @@ public final class EncodedModel implements Serializable, Cloneable {
    * @param model Empty model instance from which to resolve a parser.
    * @param <Model> Generic model type inflated and returned by this method.
    * @return Instance of the model, inflated from the encoded data.
-   * @throws InvalidProtocolBufferException If the held data is incorrectly formatted.
+   * @throws InvalidProtocolBufferException If the held data is incorrectly formatted, or cannot be decompressed.
    */
   public @Nonnull <Model extends Message> Model inflate(@Nonnull Message model) throws InvalidProtocolBufferException {
-    if (dataMode == EncodingMode.JSON) {
+    final byte[] data;
+    try {
+      data = ModelCompression.decompress(dataMode.compression(), this.rawBytes);
+    } catch (IOException ioe) {
+      throw new InvalidProtocolBufferException(ioe);
+    }
+
+    if (dataMode.format() == EncodingMode.JSON) {
       Message.Builder builder = model.newBuilderForType();
       JsonFormat.parser().merge(
-        new String(this.rawBytes, StandardCharsets.UTF_8),
+        new String(data, StandardCharsets.UTF_8),
         builder);
 
       //noinspection unchecked
       return (Model)builder.build();
     } else {
       //noinspection unchecked
-      return (Model)model.getParserForType().parseFrom(this.rawBytes);
+      return (Model)model.getParserForType().parseFrom(data);
     }
   }
 }
@@ -12,12 +12,76 @@
  */
 package elide.model;
 
+import tools.elide.core.data.CompressionMode;
 
-/** Wire format mode to apply when serializing or de-serializing. */
+import javax.annotation.Nonnull;
+
+
+/**
+ * Wire format mode to apply when serializing or de-serializing. Each mode pairs a Protobuf serialization format with a
+ * {@link CompressionMode}, which is applied to the serialized bytes; the uncompressed modes use {@code IDENTITY}.
+ * Because encoded models carry their mode, readers can detect and undo compression without being told about it.
+ */
 public enum EncodingMode {
   /** Use Protobuf binary serialization. */
-  BINARY,
+  BINARY(CompressionMode.IDENTITY),
 
   /** Use Protobuf JSON serialization. */
-  JSON
+  JSON(CompressionMode.IDENTITY),
+
+  /** Use Protobuf binary serialization, compressed with gzip. */
+  BINARY_GZIP(CompressionMode.GZIP),
+
+  /** Use Protobuf JSON serialization, compressed with gzip. */
+  JSON_GZIP(CompressionMode.GZIP),
+
+  /** Use Protobuf binary serialization, compressed with Brotli. Only usable where Brotli is available. */
+  BINARY_BROTLI(CompressionMode.BROTLI),
+
+  /** Use Protobuf JSON serialization, compressed with Brotli. Only usable where Brotli is available. */
+  JSON_BROTLI(CompressionMode.BROTLI);
+
+  /** Compression applied to serialized data in this mode. */
+  private final @Nonnull CompressionMode compression;
+
+  EncodingMode(@Nonnull CompressionMode compression) {
+    this.compression = compression;
+  }
+
+  /** @return Compression applied to serialized data in this mode, or {@code IDENTITY} for none. */
+  public @Nonnull CompressionMode compression() {
+    return compression;
+  }
+
+  /** @return Whether serialized data is compressed in this mode. */
+  public boolean isCompressed() {
+    return compression != CompressionMode.IDENTITY;
+  }
+
+  /** @return Uncompressed mode with the same serialization format as this one ({@code BINARY} or {@code JSON}). */
+  public @Nonnull EncodingMode format() {
+    switch (this) {
+      case JSON:
+      case JSON_GZIP:
+      case JSON_BROTLI: return JSON;
+      default: return BINARY;
+    }
+  }
+
+  /**
+   * Resolve the mode which applies the provided compression to this mode's serialization format.
+   *
+   * @param compression Compression to apply.
+   * @return Mode with this mode's serialization format, and the provided compression.
+   * @throws IllegalArgumentException If the compression mode is not recognized.
+   */
+  public @Nonnull EncodingMode withCompression(@Nonnull CompressionMode compression) {
+    final boolean json = format() == JSON;
+    switch (compression) {
+      case IDENTITY: return json ? JSON : BINARY;
+      case GZIP: return json ? JSON_GZIP : BINARY_GZIP;
+      case BROTLI: return json ? JSON_BROTLI : BINARY_BROTLI;
+      default: throw new IllegalArgumentException("Unrecognized compression mode: " + compression);
+    }
+  }
 }
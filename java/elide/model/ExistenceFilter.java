@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import elide.runtime.jvm.Logging;
+import elide.struct.BloomFilters;
+import elide.struct.LayeredBloomFilter;
+import elide.struct.MembershipFilter;
+import org.slf4j.Logger;
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Bloom filter of the record IDs known to exist for one model type, which lets a {@link ModelAdapter} answer reads for
+ * missing records as "definitely absent", without touching the cache or storage.
+ *
+ * <p>The filter only answers once it is <i>authoritative</i>: that is, once it has been {@link #rebuild(Iterable)
+ * rebuilt} from a full listing of stored IDs, or {@link #restore(BloomFilter) restored} from a snapshot taken via
+ * {@link #toProto()} (for fast warm starts). Until then, it learns IDs from writes, but never short-circuits a read.
+ * Writes record their ID both before they are issued (so a reader never misses its own write) and once they succeed (so
+ * that a concurrent rebuild cannot drop them).</p>
+ *
+ * <p>Deletes cannot be applied to a plain Bloom filter, and a counting filter cannot apply them safely either, because
+ * the adapter cannot tell whether a given upsert inserted a new record, or whether a deleted record existed at all. A
+ * wrong decrement would cause false negatives, so deletes are instead counted as stale entries, which only cost false
+ * positives. Once stale entries make up a large enough share of the filter, {@link #needsRebuild()} reports it.</p>
+ */
+@ThreadSafe
+public final class ExistenceFilter {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(ExistenceFilter.class);
+
+  /** Default count of IDs each layer of the filter is sized for. */
+  public static final long DEFAULT_EXPECTED_IDS = 100_000L;
+
+  /** Default target false-positive rate for each layer of the filter. */
+  public static final double DEFAULT_FPP = 0.01;
+
+  /** Default share of stale (deleted) entries at which a rebuild is recommended. */
+  public static final double DEFAULT_MAX_STALE_RATIO = 0.25;
+
+  /** Count of IDs each layer of the filter is sized for. */
+  private final long expectedIds;
+
+  /** Target false-positive rate for each layer of the filter. */
+  private final double fpp;
+
+  /** Share of stale entries at which a rebuild is recommended. */
+  private final double maxStaleRatio;
+
+  /** Filter consulted by reads. Replaced wholesale on rebuild or restore. */
+  private volatile @Nonnull MembershipFilter filter;
+
+  /** Filter being built by an in-progress rebuild, if any. Writes land here as well as in {@link #filter}. */
+  private volatile @Nullable MembershipFilter pending = null;
+
+  /** Whether the filter holds every stored ID, and so may answer "definitely absent". */
+  private volatile boolean authoritative = false;
+
+  /** Count of deletes applied since the filter was last rebuilt or restored. */
+  private final @Nonnull AtomicLong staleCount = new AtomicLong(0);
+
+  /** Count of reads checked against the filter while authoritative. */
+  private final @Nonnull AtomicLong checkCount = new AtomicLong(0);
+
+  /** Count of reads answered as "definitely absent". */
+  private final @Nonnull AtomicLong absentCount = new AtomicLong(0);
+
+  /**
+   * Private constructor. Acquire via {@link #create()} or {@link #create(long, double, double)}.
+   *
+   * @param expectedIds Count of IDs each layer of the filter is sized for.
+   * @param fpp Target false-positive rate for each layer of the filter.
+   * @param maxStaleRatio Share of stale entries at which a rebuild is recommended.
+   */
+  private ExistenceFilter(long expectedIds, double fpp, double maxStaleRatio) {
+    if (!(maxStaleRatio > 0.0)) throw new IllegalArgumentException("Stale ratio must be positive.");
+    this.expectedIds = expectedIds;
+    this.fpp = fpp;
+    this.maxStaleRatio = maxStaleRatio;
+    this.filter = LayeredBloomFilter.create(expectedIds, fpp);
+  }
+
+  /**
+   * Create an existence filter with default settings. The filter starts out non-authoritative.
+   *
+   * @return Existence filter.
+   */
+  public static @Nonnull ExistenceFilter create() {
+    return create(DEFAULT_EXPECTED_IDS, DEFAULT_FPP, DEFAULT_MAX_STALE_RATIO);
+  }
+
+  /**
+   * Create an existence filter with custom settings. The filter starts out non-authoritative. It grows a new layer each
+   * time {@code expectedIds} more IDs are recorded, so it never saturates, but its false-positive rate rises gradually
+   * with each added layer.
+   *
+   * @param expectedIds Count of IDs each layer of the filter is sized for.
+   * @param fpp Target false-positive rate for each layer of the filter.
+   * @param maxStaleRatio Share of stale (deleted) entries at which a rebuild is recommended.
+   * @return Existence filter.
+   */
+  public static @Nonnull ExistenceFilter create(long expectedIds, double fpp, double maxStaleRatio) {
+    return new ExistenceFilter(expectedIds, fpp, maxStaleRatio);
+  }
+
+  /**
+   * Check whether the record with the provided ID is definitely absent. This is always {@code false} while the filter
+   * is not authoritative.
+   *
+   * @param id ID of the record.
+   * @return Whether the record definitely does not exist.
+   */
+  public boolean definitelyAbsent(@Nonnull Object id) {
+    if (!authoritative) return false;
+    checkCount.incrementAndGet();
+    if (filter.mightContain(bytes(id))) return false;
+    absentCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Record that a record with the provided ID exists, or is about to.
+   *
+   * @param id ID of the record.
+   */
+  public void recordPresent(@Nonnull Object id) {
+    final byte[] item = bytes(id);
+    // read `pending` before `filter`, so that an ID recorded while a rebuild swaps filters lands in the new filter.
+    final MembershipFilter next = pending;
+    if (next != null) next.put(item);
+    filter.put(item);
+  }
+
+  /**
+   * Record that the record with the provided ID was deleted. The ID stays in the filter, as a stale entry.
+   *
+   * @param id ID of the record.
+   */
+  public void recordDeleted(@Nonnull Object id) {
+    staleCount.incrementAndGet();
+  }
+
+  /**
+   * Rebuild the filter from a full listing of stored IDs, and mark it authoritative. Writes which complete while the
+   * rebuild is in progress are captured, whether or not they appear in {@code ids}.
+   *
+   * @param ids IDs of every stored record. Must reflect at least every write which completed before this call.
+   */
+  public synchronized void rebuild(@Nonnull Iterable<?> ids) {
+    final MembershipFilter fresh = LayeredBloomFilter.create(expectedIds, fpp);
+    pending = fresh;
+    long count = 0;
+    for (Object id : ids) {
+      fresh.put(bytes(id));
+      count++;
+    }
+    filter = fresh;
+    pending = null;
+    staleCount.set(0);
+    authoritative = true;
+    if (logging.isDebugEnabled())
+      logging.debug(format("Rebuilt existence filter from %s stored IDs.", count));
+  }
+
+  /**
+   * Restore the filter from a snapshot taken via {@link #toProto()}, and mark it authoritative. The snapshot must have
+   * been taken from an authoritative filter, and no records may have been written since.
+   *
+   * @param snapshot Serialized filter.
+   */
+  public synchronized void restore(@Nonnull BloomFilter snapshot) {
+    filter = BloomFilters.fromProto(snapshot);
+    staleCount.set(0);
+    authoritative = true;
+  }
+
+  /** @return Serialized form of the current filter, which may be restored via {@link #restore(BloomFilter)}. */
+  public @Nonnull BloomFilter toProto() {
+    return filter.toProto();
+  }
+
+  /** @return Whether the filter holds every stored ID, and so may answer "definitely absent". */
+  public boolean isAuthoritative() {
+    return authoritative;
+  }
+
+  /** @return Whether enough deletes have accumulated that a rebuild is recommended. */
+  public boolean needsRebuild() {
+    final long stale = staleCount.get();
+    return stale > 0 && stale >= filter.count() * maxStaleRatio;
+  }
+
+  /** @return Approximate count of IDs in the filter, including stale entries. */
+  public long size() {
+    return filter.count();
+  }
+
+  /** @return Count of deletes applied since the filter was last rebuilt or restored. */
+  public long staleCount() {
+    return staleCount.get();
+  }
+
+  /** @return Count of reads checked against the filter while authoritative. */
+  public long checkCount() {
+    return checkCount.get();
+  }
+
+  /** @return Count of reads answered as "definitely absent". */
+  public long absentCount() {
+    return absentCount.get();
+  }
+
+  /** @return Estimated false-positive rate of the filter, given its current contents. */
+  public double expectedFpp() {
+    return filter.expectedFpp();
+  }
+
+  /**
+   * Encode a record ID for the filter.
+   *
+   * @param id ID of the record.
+   * @return Bytes to add to, or check against, the filter.
+   */
+  private static @Nonnull byte[] bytes(@Nonnull Object id) {
+    return String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+  }
+}
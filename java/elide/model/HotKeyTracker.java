@@ -0,0 +1,442 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import elide.runtime.jvm.Logging;
+import elide.struct.BloomHasher;
+import org.slf4j.Logger;
+import tools.elide.core.crypto.HashAlgorithm;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Detects hot keys for a {@link ModelAdapter}, and pins their records in a small near-cache in front of the main cache.
+ * Every read is counted in a count-min sketch. Any record whose estimated count in the current window reaches a
+ * threshold is promoted into the hot set, up to a fixed capacity; once the hot set is full, a new candidate displaces
+ * the coolest hot key, if it is hotter.
+ *
+ * <p>The window decays: every {@code windowSize} reads, all counters in the sketch are halved, and hot keys whose
+ * estimate falls below the threshold are demoted. This keeps the hot set tracking current traffic, rather than all-time
+ * totals.</p>
+ *
+ * <p>Pinned records have no eviction bookkeeping on the read path, so hot keys never contend on cache maintenance.
+ * <b>Consistency:</b> the adapter calls {@link #invalidate(Object)} before and after any write or delete of a record.
+ * Each hot key carries a version, bumped on every invalidation; a read only pins its result if the version it started
+ * with is still current, so an in-flight read never pins a record over a newer write. Writes which bypass the adapter
+ * cannot invalidate a pin, so each pinned record also carries a deadline (the cache TTL of the read which loaded it,
+ * or the tracker's pin lifetime), after which it is dropped and re-loaded by the next read.</p>
+ *
+ * <p>The current hot set, with estimated counts, is available via {@link #hotKeys()}, along with other metrics.</p>
+ *
+ * @param <Model> Model type for which this tracker pins records.
+ */
+@ThreadSafe
+public final class HotKeyTracker<Model> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(HotKeyTracker.class);
+
+  /** Atomic accessor for elements of the counter array. */
+  private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  /** Hasher used to pick counters for each key. */
+  private static final BloomHasher HASHER = BloomHasher.forAlgorithm(HashAlgorithm.IDENTITY);
+
+  /** Default count of rows (hash functions) in the sketch. */
+  public static final int DEFAULT_DEPTH = 4;
+
+  /** Default count of counters in each row of the sketch. */
+  public static final int DEFAULT_WIDTH = 2048;
+
+  /** Default count of reads after which the sketch decays. */
+  public static final long DEFAULT_WINDOW = 10_000;
+
+  /** Default estimated count of reads, in the current window, at which a key becomes hot. */
+  public static final long DEFAULT_THRESHOLD = 64;
+
+  /** Default maximum count of hot keys to pin. */
+  public static final int DEFAULT_CAPACITY = 32;
+
+  /** Default lifetime of a pinned record, in milliseconds, for reads which specify no cache TTL. */
+  public static final long DEFAULT_PIN_TTL_MILLIS = 1000;
+
+  /** State for a single hot key. */
+  private static final class HotEntry<Model> {
+    /** Pinned record, if it has been loaded since the last invalidation. */
+    @GuardedBy("this")
+    private @Nullable Model value = null;
+
+    /** Version of the entry, bumped on every invalidation. */
+    @GuardedBy("this")
+    private long version = 0;
+
+    /** Time (per {@link System#nanoTime()}) after which the pinned record, if any, is dropped. */
+    @GuardedBy("this")
+    private long expiresAt = 0;
+
+    /** Estimated count for this key, as of its last promotion or decay. */
+    private volatile long estimate;
+
+    private HotEntry(long estimate) {
+      this.estimate = estimate;
+    }
+  }
+
+  /** Count of rows in the sketch. */
+  private final int depth;
+
+  /** Count of counters in each row of the sketch. */
+  private final int width;
+
+  /** Count of reads after which the sketch decays. */
+  private final long window;
+
+  /** Estimated count at which a key becomes hot. */
+  private final long threshold;
+
+  /** Maximum count of hot keys. */
+  private final int capacity;
+
+  /** Lifetime of pinned records loaded without a cache TTL, in nanoseconds. */
+  private final long pinTtlNanos;
+
+  /** Sketch counters, row-major. */
+  private final @Nonnull long[] counters;
+
+  /** Current hot keys, by record ID. */
+  private final @Nonnull ConcurrentHashMap<Object, HotEntry<Model>> hot = new ConcurrentHashMap<>();
+
+  /** Count of reads recorded in the current window. */
+  private final @Nonnull AtomicLong windowReads = new AtomicLong(0);
+
+  /** Count of reads served from pinned records. */
+  private final @Nonnull AtomicLong pinnedHits = new AtomicLong(0);
+
+  /** Count of keys promoted into the hot set. */
+  private final @Nonnull AtomicLong promotions = new AtomicLong(0);
+
+  /** Count of keys demoted out of the hot set. */
+  private final @Nonnull AtomicLong demotions = new AtomicLong(0);
+
+  /** Count of times the sketch has decayed. */
+  private final @Nonnull AtomicLong decays = new AtomicLong(0);
+
+  /** Count of pinned records dropped because they outlived their deadline. */
+  private final @Nonnull AtomicLong expirations = new AtomicLong(0);
+
+  /**
+   * Private constructor. Acquire via {@link #create()} or {@link #create(int, int, long, long, int, long, TimeUnit)}.
+   *
+   * @param depth Count of rows in the sketch.
+   * @param width Count of counters in each row of the sketch.
+   * @param window Count of reads after which the sketch decays.
+   * @param threshold Estimated count at which a key becomes hot.
+   * @param capacity Maximum count of hot keys.
+   * @param pinTtlNanos Lifetime of pinned records loaded without a cache TTL, in nanoseconds.
+   */
+  private HotKeyTracker(int depth, int width, long window, long threshold, int capacity, long pinTtlNanos) {
+    if (depth < 1 || width < 1) throw new IllegalArgumentException("Sketch must have at least one counter.");
+    if (window < 1 || threshold < 1 || capacity < 1 || pinTtlNanos < 1)
+      throw new IllegalArgumentException("Hot key window, threshold, capacity and pin lifetime must be positive.");
+    this.depth = depth;
+    this.width = width;
+    this.window = window;
+    this.threshold = threshold;
+    this.capacity = capacity;
+    this.pinTtlNanos = pinTtlNanos;
+    this.counters = new long[Math.multiplyExact(depth, width)];
+  }
+
+  /**
+   * Create a hot key tracker with default settings.
+   *
+   * @param <M> Model type for which the tracker pins records.
+   * @return Hot key tracker.
+   */
+  public static @Nonnull <M> HotKeyTracker<M> create() {
+    return create(DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_WINDOW, DEFAULT_THRESHOLD, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create a hot key tracker with custom settings. Wider sketches overestimate less; deeper ones are less likely to
+   * overestimate at all.
+   *
+   * @param depth Count of rows (hash functions) in the sketch.
+   * @param width Count of counters in each row of the sketch.
+   * @param window Count of reads after which the sketch decays (halves).
+   * @param threshold Estimated count of reads, in the current window, at which a key becomes hot.
+   * @param capacity Maximum count of hot keys to pin.
+   * @param <M> Model type for which the tracker pins records.
+   * @return Hot key tracker.
+   */
+  public static @Nonnull <M> HotKeyTracker<M> create(int depth,
+                                                   int width,
+                                                   long window,
+                                                   long threshold,
+                                                   int capacity) {
+    return create(depth, width, window, threshold, capacity, DEFAULT_PIN_TTL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create a hot key tracker with custom settings, including the lifetime of pinned records which are loaded by reads
+   * that specify no cache TTL.
+   *
+   * @param depth Count of rows (hash functions) in the sketch.
+   * @param width Count of counters in each row of the sketch.
+   * @param window Count of reads after which the sketch decays (halves).
+   * @param threshold Estimated count of reads, in the current window, at which a key becomes hot.
+   * @param capacity Maximum count of hot keys to pin.
+   * @param pinTtl Lifetime of pinned records, after which they are re-loaded.
+   * @param pinTtlUnit Unit of time for {@code pinTtl}.
+   * @param <M> Model type for which the tracker pins records.
+   * @return Hot key tracker.
+   */
+  public static @Nonnull <M> HotKeyTracker<M> create(int depth,
+                                                   int width,
+                                                   long window,
+                                                   long threshold,
+                                                   int capacity,
+                                                   long pinTtl,
+                                                   @Nonnull TimeUnit pinTtlUnit) {
+    return new HotKeyTracker<>(depth, width, window, threshold, capacity, pinTtlUnit.toNanos(pinTtl));
+  }
+
+  /**
+   * Record a read of the provided record, and return its pinned copy, if it is hot, loaded, and not past its deadline.
+   *
+   * @param id ID of the record being read.
+   * @return Pinned copy of the record, or {@link Optional#empty()} if the read must be served normally.
+   */
+  public @Nonnull Optional<Model> access(@Nonnull Object id) {
+    final long[] hash = HASHER.hash(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      final int index = row * width + (int)BloomHasher.bucket(hash[0], hash[1], row, width);
+      estimate = Math.min(estimate, (long)COUNTERS.getAndAdd(counters, index, 1L) + 1L);
+    }
+
+    final HotEntry<Model> entry = hot.get(id);
+    if (entry == null && estimate >= threshold) promote(id, estimate);
+    if (windowReads.incrementAndGet() % window == 0) decay();
+
+    if (entry != null) {
+      final Model value;
+      synchronized (entry) {
+        if (entry.value != null && System.nanoTime() - entry.expiresAt >= 0) {
+          entry.value = null;
+          expirations.incrementAndGet();
+        }
+        value = entry.value;
+      }
+      if (value != null) {
+        pinnedHits.incrementAndGet();
+        return Optional.of(value);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Capture the current version of a hot record, before it is loaded.
+   *
+   * @param id ID of the record about to be loaded.
+   * @return Version to pass to {@link #fill(Object, long, Object)}, or {@code -1} if the record is not hot.
+   */
+  public long stamp(@Nonnull Object id) {
+    final HotEntry<Model> entry = hot.get(id);
+    if (entry == null) return -1L;
+    synchronized (entry) {
+      return entry.version;
+    }
+  }
+
+  /**
+   * Pin a freshly loaded hot record for the tracker's default pin lifetime, unless it was invalidated (or demoted)
+   * since the load began.
+   *
+   * @param id ID of the loaded record.
+   * @param stamp Version captured via {@link #stamp(Object)} before the load began.
+   * @param value Loaded record.
+   */
+  public void fill(@Nonnull Object id, long stamp, @Nonnull Model value) {
+    fill(id, stamp, value, pinTtlNanos);
+  }
+
+  /**
+   * Pin a freshly loaded hot record for the provided lifetime, unless it was invalidated (or demoted) since the load
+   * began.
+   *
+   * @param id ID of the loaded record.
+   * @param stamp Version captured via {@link #stamp(Object)} before the load began.
+   * @param value Loaded record.
+   * @param ttlNanos Lifetime of the pinned record, in nanoseconds.
+   */
+  public void fill(@Nonnull Object id, long stamp, @Nonnull Model value, long ttlNanos) {
+    final HotEntry<Model> entry = hot.get(id);
+    if (entry == null || stamp < 0 || ttlNanos < 1) return;
+    synchronized (entry) {
+      if (entry.version == stamp) {
+        entry.value = value;
+        entry.expiresAt = System.nanoTime() + ttlNanos;
+      }
+    }
+  }
+
+  /** @return Lifetime of pinned records loaded without a cache TTL, in nanoseconds. */
+  public long pinTtlNanos() {
+    return pinTtlNanos;
+  }
+
+  /**
+   * Drop the pinned copy of a record, if any, because it is about to change (or just changed).
+   *
+   * @param id ID of the record.
+   */
+  public void invalidate(@Nonnull Object id) {
+    final HotEntry<Model> entry = hot.get(id);
+    if (entry == null) return;
+    synchronized (entry) {
+      entry.version++;
+      entry.value = null;
+    }
+  }
+
+  /**
+   * Promote a key into the hot set, displacing the coolest hot key if the set is full and the candidate is hotter.
+   *
+   * @param id ID of the candidate record.
+   * @param estimate Estimated count for the candidate.
+   */
+  private synchronized void promote(@Nonnull Object id, long estimate) {
+    if (hot.containsKey(id)) return;
+    if (hot.size() >= capacity) {
+      Map.Entry<Object, HotEntry<Model>> coolest = null;
+      for (Map.Entry<Object, HotEntry<Model>> candidate : hot.entrySet()) {
+        if (coolest == null || candidate.getValue().estimate < coolest.getValue().estimate) coolest = candidate;
+      }
+      if (coolest == null || coolest.getValue().estimate >= estimate) return;
+      demote(coolest.getKey());
+    }
+    hot.put(id, new HotEntry<>(estimate));
+    promotions.incrementAndGet();
+    if (logging.isDebugEnabled())
+      logging.debug(format("Promoted hot key '%s' (estimated reads: %s).", id, estimate));
+  }
+
+  /**
+   * Remove a key from the hot set, bumping its version so that no in-flight read can pin it.
+   *
+   * @param id ID of the record to demote.
+   */
+  @GuardedBy("this")
+  private void demote(@Nonnull Object id) {
+    final HotEntry<Model> entry = hot.remove(id);
+    if (entry == null) return;
+    synchronized (entry) {
+      entry.version++;
+      entry.value = null;
+    }
+    demotions.incrementAndGet();
+  }
+
+  /** Halve every counter in the sketch, then refresh hot key estimates and demote keys which have cooled off. */
+  private synchronized void decay() {
+    for (int i = 0; i < counters.length; i++) {
+      long current;
+      do {
+        current = (long)COUNTERS.getVolatile(counters, i);
+      } while (!COUNTERS.compareAndSet(counters, i, current, current >>> 1));
+    }
+    decays.incrementAndGet();
+
+    for (Map.Entry<Object, HotEntry<Model>> entry : new ArrayList<>(hot.entrySet())) {
+      final long estimate = estimate(entry.getKey());
+      entry.getValue().estimate = estimate;
+      if (estimate < threshold) demote(entry.getKey());
+    }
+  }
+
+  /**
+   * Estimate the count of reads for a record in the current window, without recording a read.
+   *
+   * @param id ID of the record.
+   * @return Estimated count, which may overestimate but never underestimates.
+   */
+  public long estimate(@Nonnull Object id) {
+    final long[] hash = HASHER.hash(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      final int index = row * width + (int)BloomHasher.bucket(hash[0], hash[1], row, width);
+      estimate = Math.min(estimate, (long)COUNTERS.getVolatile(counters, index));
+    }
+    return estimate;
+  }
+
+  // -- Metrics -- //
+
+  /** @return Current hot keys, hottest first, with their estimated counts as of promotion or the last decay. */
+  public @Nonnull Map<Object, Long> hotKeys() {
+    final List<Map.Entry<Object, HotEntry<Model>>> entries = new ArrayList<>(hot.entrySet());
+    entries.sort(Comparator.comparingLong((Map.Entry<Object, HotEntry<Model>> e) -> e.getValue().estimate).reversed());
+    final Map<Object, Long> snapshot = new LinkedHashMap<>();
+    for (Map.Entry<Object, HotEntry<Model>> entry : entries) snapshot.put(entry.getKey(), entry.getValue().estimate);
+    return snapshot;
+  }
+
+  /** @return Count of current hot keys. */
+  public int hotCount() {
+    return hot.size();
+  }
+
+  /** @return Count of reads served from pinned records. */
+  public long pinnedHitCount() {
+    return pinnedHits.get();
+  }
+
+  /** @return Count of keys promoted into the hot set. */
+  public long promotionCount() {
+    return promotions.get();
+  }
+
+  /** @return Count of keys demoted out of the hot set. */
+  public long demotionCount() {
+    return demotions.get();
+  }
+
+  /** @return Count of times the sketch has decayed. */
+  public long decayCount() {
+    return decays.get();
+  }
+
+  /** @return Count of pinned records dropped because they outlived their deadline. */
+  public long expirationCount() {
+    return expirations.get();
+  }
+}
@@ -14,9 +14,13 @@ package elide.model;
 
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.FieldMask;
 import com.google.protobuf.Message;
 import elide.runtime.jvm.ReactiveFuture;
 import tools.elide.core.DatapointType;
@@ -25,6 +29,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static elide.model.ModelMetadata.*;
@@ -73,6 +85,328 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
    */
   @Nonnull PersistenceDriver<Key, Model, ReadIntermediate, WriteIntermediate> engine();
 
+  /**
+   * Return the write-behind buffer in use for this particular model adapter, if any. The buffer is only consulted for
+   * writes which specify the {@link CacheOptions.WritePolicy#WRITE_BEHIND} cache write policy; if no buffer is present,
+   * such writes fall back to write-through behavior.
+   *
+   * @return Write-behind buffer currently in use by this model adapter.
+   */
+  default @Nonnull Optional<WriteBehindBuffer<Key, Model>> writeBehind() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the cache refresher in use for this particular model adapter, if any. The refresher is only consulted for
+   * reads which specify a {@link CacheOptions#cacheRefreshAhead()} factor; if no refresher is present, cached records
+   * simply expire according to the cache driver's own settings.
+   *
+   * @return Cache refresher currently in use by this model adapter.
+   */
+  default @Nonnull Optional<CacheRefresher<Key, Model>> refresher() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the cache latency tracker in use for this particular model adapter, if any. The tracker observes the latency
+   * of every cache fetch, and is consulted for reads which specify an {@code ADAPTIVE} or {@code HEDGED}
+   * {@link CacheOptions#cacheTimeoutMode()}; if no tracker is present, the fixed cache timeout always applies.
+   *
+   * @return Cache latency tracker currently in use by this model adapter.
+   */
+  default @Nonnull Optional<CacheLatencyTracker> cacheLatency() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the circuit breaker guarding the cache for this particular model adapter, if any. While the breaker is open,
+   * reads bypass the cache entirely and go straight to the {@link #engine()}, and writes, modifications and deletes only
+   * issue an eviction, without waiting for it; if no breaker is present, reads always try the cache first. Either way,
+   * writes never wait on the cache for longer than the cache timeout.
+   *
+   * @return Cache circuit breaker currently in use by this model adapter.
+   */
+  default @Nonnull Optional<CacheCircuitBreaker> cacheBreaker() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the existence filter for this particular model adapter, if any. Once authoritative, the filter lets reads for
+   * records which were never written return empty right away, without touching the cache or the {@link #engine()}; if
+   * no filter is present, every read is looked up.
+   *
+   * @return Existence filter currently in use by this model adapter.
+   */
+  default @Nonnull Optional<ExistenceFilter> existence() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the hot key tracker for this particular model adapter, if any. The tracker counts reads per record, and pins
+   * the hottest records in a small near-cache, which is consulted ahead of the {@link #cache()} for reads with caching
+   * enabled; if no tracker is present, all reads go through the regular read path.
+   *
+   * @return Hot key tracker currently in use by this model adapter.
+   */
+  default @Nonnull Optional<HotKeyTracker<Model>> hotKeys() {
+    return Optional.empty();
+  }
+
+  /**
+   * Return the write combiner for this particular model adapter, if any. The combiner is only consulted for writes which
+   * specify a {@link WriteOptions#writeCombineWindow()}; if no combiner is present, every write goes to storage.
+   *
+   * @return Write combiner currently in use by this model adapter.
+   */
+  default @Nonnull Optional<WriteCombiner<Key, Model>> writeCombiner() {
+    return Optional.empty();
+  }
+
+  /**
+   * Once a storage read issued after a cache miss completes, store its result (if any) in the cache.
+   *
+   * @param key Key for the record which was read.
+   * @param record Storage read for the record.
+   * @param options Options for the read.
+   * @param cache Cache to store the record in.
+   */
+  private void cacheOnMiss(@Nonnull Key key,
+                           @Nonnull ListenableFuture<Optional<Model>> record,
+                           @Nonnull FetchOptions options,
+                           @Nonnull CacheDriver<Key, Model> cache) {
+    record.addListener(() -> {
+      if (Internals.logging.isDebugEnabled()) {
+        Internals.logging.debug("Response was NOT cached. Storing in cache...");
+      }
+
+      Internals.swallowExceptions(() -> {
+        Optional<Model> fetchResult = record.get();
+        fetchResult.ifPresent(model -> {
+          cache.put(
+            key,
+            model,
+            options.executorService().orElseGet(ModelAdapter.this::executorService));
+          refresher().ifPresent((refresher) -> refresher.recordWrite(key));
+        });
+      });
+    }, options.executorService().orElseGet(ModelAdapter.this::executorService));
+  }
+
+  /**
+   * Retrieve a record from the cache, hedging to storage if the cache has not answered within {@code hedgeDelay}. The
+   * first of the two to produce an answer wins, and the other is cancelled; a cache miss, error, or timeout always
+   * defers to storage. Storage answers (including empty ones) are authoritative, and are stored in the cache.
+   *
+   * @param key Key for the record to retrieve.
+   * @param options Options for the read.
+   * @param cache Cache to try first.
+   * @param latency Latency tracker to record the cache fetch with.
+   * @param breaker Circuit breaker to record the cache fetch outcome with, if any.
+   * @param hedgeDelay Delay, in nanoseconds, after which storage is read in parallel.
+   * @param exec Executor to run callbacks on.
+   * @return Future which resolves to the record, if found.
+   */
+  private @Nonnull ReactiveFuture<Optional<Model>> retrieveHedged(@Nonnull Key key,
+                                                                  @Nonnull FetchOptions options,
+                                                                  @Nonnull CacheDriver<Key, Model> cache,
+                                                                  @Nonnull CacheLatencyTracker latency,
+                                                                  @Nonnull Optional<CacheCircuitBreaker> breaker,
+                                                                  long hedgeDelay,
+                                                                  @Nonnull ListeningScheduledExecutorService exec) {
+    final SettableFuture<Optional<Model>> result = SettableFuture.create();
+    final AtomicBoolean storageStarted = new AtomicBoolean(false);
+    final AtomicReference<ListenableFuture<Optional<Model>>> storageRead = new AtomicReference<>();
+
+    final long fetchStart = System.nanoTime();
+    final ListenableFuture<Optional<Model>> cacheRead = Futures.withTimeout(Objects.requireNonNull(
+      cache.fetch(key, options, exec), "Cache cannot return `null` for `retrieve`."),
+      latency.timeoutNanos(options), TimeUnit.NANOSECONDS, exec);
+    cacheRead.addListener(() -> latency.record(System.nanoTime() - fetchStart), MoreExecutors.directExecutor());
+    breaker.ifPresent((b) -> recordCacheOutcome(cacheRead, b));
+
+    final Runnable readStorage = () -> {
+      if (result.isDone() || !storageStarted.compareAndSet(false, true)) return;
+      final ListenableFuture<Optional<Model>> read = engine().retrieve(key, options);
+      storageRead.set(read);
+      cacheOnMiss(key, read, options, cache);
+      Futures.addCallback(read, new FutureCallback<>() {
+        @Override
+        public void onSuccess(@Nullable Optional<Model> record) {
+          if (result.set(record == null ? Optional.empty() : record) && !cacheRead.isDone()) {
+            latency.recordHedgeWin();
+            cacheRead.cancel(true);
+          }
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable err) {
+          result.setException(err);
+        }
+      }, exec);
+      // a cache hit may have landed while the read was being started.
+      if (result.isDone()) read.cancel(true);
+    };
+
+    Futures.addCallback(cacheRead, new FutureCallback<>() {
+      @Override
+      public void onSuccess(@Nullable Optional<Model> cacheResult) {
+        if (cacheResult != null && cacheResult.isPresent()) {
+          if (result.set(cacheResult)) {
+            final ListenableFuture<Optional<Model>> read = storageRead.get();
+            if (read != null) read.cancel(true);
+            if (options.cacheRefreshAhead().isPresent())
+              refresher().ifPresent((refresher) -> refresher.onHit(key, options));
+          }
+        } else {
+          readStorage.run();
+        }
+      }
+
+      @Override
+      public void onFailure(@Nonnull Throwable err) {
+        if (err instanceof TimeoutException) latency.recordTimeout();
+        readStorage.run();
+      }
+    }, exec);
+
+    final ScheduledFuture<?> hedge = exec.schedule(() -> {
+      if (result.isDone() || storageStarted.get()) return;
+      if (Internals.logging.isDebugEnabled())
+        Internals.logging.debug(format("Cache is slow for record '%s'. Hedging to driver.", id(key)));
+      latency.recordHedge();
+      readStorage.run();
+    }, hedgeDelay, TimeUnit.NANOSECONDS);
+    result.addListener(() -> hedge.cancel(false), MoreExecutors.directExecutor());
+    return ReactiveFuture.wrap(result, exec);
+  }
+
+  /**
+   * Report the outcome of a cache fetch to a circuit breaker, once it completes. Timeouts and errors count as failures;
+   * cancellations (for instance, of the losing side of a hedged read) are ignored.
+   *
+   * @param cacheRead Cache fetch to observe.
+   * @param breaker Circuit breaker to report to.
+   */
+  private static void recordCacheOutcome(@Nonnull ListenableFuture<?> cacheRead,
+                                         @Nonnull CacheCircuitBreaker breaker) {
+    cacheRead.addListener(() -> {
+      if (cacheRead.isCancelled()) {
+        breaker.recordIgnored();
+        return;
+      }
+      try {
+        Futures.getDone(cacheRead);
+        breaker.recordSuccess();
+      } catch (ExecutionException | RuntimeException err) {
+        breaker.recordFailure();
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Decide whether a write should wait on the cache. While the circuit breaker is open, writes still issue their cache
+   * put or eviction, so that a recovered cache does not serve a stale record, but do not wait for it.
+   *
+   * @param breaker Circuit breaker guarding the cache, if any.
+   * @return Whether the write should issue and wait on its cache call; if {@code false}, it should only evict.
+   */
+  private static boolean allowCacheWrite(@Nonnull Optional<CacheCircuitBreaker> breaker) {
+    return breaker.isEmpty() || breaker.get().allowRequest();
+  }
+
+  /**
+   * Wait on a cache put or eviction issued for a storage write, for no longer than the cache timeout, and report its
+   * outcome to the circuit breaker. A cache call which fails or times out is left running, and does not fail the write.
+   *
+   * @param cacheWrite Cache put or eviction to wait on.
+   * @param breaker Circuit breaker to report the outcome to, if any.
+   * @param options Options for the write, which carry the cache timeout.
+   * @param executor Executor to use for the timeout.
+   * @return Future which resolves to whether the cache call succeeded in time. It never fails.
+   */
+  private static @Nonnull ListenableFuture<Boolean> awaitCacheWrite(@Nonnull ListenableFuture<?> cacheWrite,
+                                                                    @Nonnull Optional<CacheCircuitBreaker> breaker,
+                                                                    @Nonnull CacheOptions options,
+                                                                    @Nonnull ListeningScheduledExecutorService executor) {
+    final ListenableFuture<?> timed = Futures.withTimeout(
+      Futures.nonCancellationPropagating(cacheWrite),
+      options.cacheTimeoutUnit().toNanos(options.cacheTimeout().orElse(PersistenceDriver.DEFAULT_CACHE_TIMEOUT)),
+      TimeUnit.NANOSECONDS,
+      executor);
+    breaker.ifPresent((b) -> recordCacheOutcome(timed, b));
+    return Futures.catching(Futures.transform(timed, (ignored) -> true, MoreExecutors.directExecutor()),
+      Exception.class, (err) -> {
+        Internals.logging.warn(format("Cache write failed or timed out for a storage write. Error: '%s'.",
+          err instanceof TimeoutException ? "timeout" : err.getMessage()));
+        return false;
+      }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Evict a record from the cache after a storage write, guarded by the circuit breaker and bounded by the cache
+   * timeout (see {@link #awaitCacheWrite}).
+   *
+   * @param written Result of the storage write.
+   * @param key Key for the record to evict.
+   * @param cache Cache to evict the record from.
+   * @param breaker Circuit breaker guarding the cache, if any.
+   * @param options Options for the write, which carry the cache timeout.
+   * @param executor Executor to use for the eviction and timeout.
+   * @param <K> Key type for the record.
+   * @param <M> Model type for the record.
+   * @param <R> Result type for the storage write.
+   * @return Future for {@code written}, which completes once the eviction completes, fails, or times out.
+   */
+  private static <K extends Message, M extends Message, R> ListenableFuture<R> evictAfterWrite(
+      @Nullable R written,
+      @Nonnull K key,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull Optional<CacheCircuitBreaker> breaker,
+      @Nonnull CacheOptions options,
+      @Nonnull ListeningScheduledExecutorService executor) {
+    if (!allowCacheWrite(breaker)) {
+      cache.evict(key, executor);
+      return Futures.immediateFuture(written);
+    }
+    return Futures.transform(awaitCacheWrite(cache.evict(key, executor), breaker, options, executor),
+      (ignored) -> written, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Wrap a storage write so that, if it fails, the record at {@code key} is evicted from the provided {@code cache}
+   * before the failure is propagated. If no key is known for the write, the operation is returned as-is.
+   *
+   * @param operation Storage write operation to wrap.
+   * @param key Key for the record being written, if known.
+   * @param cache Cache to evict the record from upon failure.
+   * @param executor Executor to use for the eviction.
+   * @param <K> Key type for the record being written.
+   * @param <M> Model type for the record being written.
+   * @return Wrapped operation, which fails with the same error as {@code operation}.
+   */
+  private static <K extends Message, M extends Message> ListenableFuture<M> evictOnFailure(
+      @Nonnull ListenableFuture<M> operation,
+      @Nullable K key,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull ListeningScheduledExecutorService executor) {
+    if (key == null) return operation;
+    return Futures.catchingAsync(operation, Throwable.class, (err) -> Futures.whenAllComplete(
+      cache.evict(key, executor)).callAsync(() -> Futures.immediateFailedFuture(err), executor), executor);
+  }
+
+  /**
+   * Check whether an operation carries any version or update-time preconditions, which must be checked against storage
+   * at the moment the operation is applied.
+   *
+   * @param options Options for the operation.
+   * @return Whether any precondition is present.
+   */
+  private static boolean hasPreconditions(@Nonnull OperationOptions options) {
+    return options.expectedVersion().isPresent() ||
+      options.updatedAtMicros().isPresent() ||
+      options.updatedAtSeconds().isPresent();
+  }
+
   // -- Interface: Execution -- //
   /** {@inheritDoc} */
   @Override
@@ -80,6 +414,21 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
     return engine().executorService();
   }
 
+  // -- Interface: Lifecycle -- //
+  /**
+   * Flush writes which this adapter has acknowledged, but not yet written to the {@link #engine()}. The
+   * {@link #writeBehind()} buffer (if any) is closed, so later write-behind writes fall back to write-through, and
+   * every write it holds is flushed. Owners of an adapter should call this before the process stops, so that
+   * acknowledged writes are not lost.
+   *
+   * @return Future which completes once every acknowledged write has been flushed.
+   */
+  default @Nonnull ReactiveFuture<Void> shutdown() {
+    final Optional<WriteBehindBuffer<Key, Model>> buffer = this.writeBehind();
+    if (buffer.isEmpty()) return ReactiveFuture.wrap(Futures.immediateVoidFuture(), executorService());
+    return buffer.get().close();
+  }
+
   // -- Interface: Key Generation -- //
   /** {@inheritDoc} */
   @Override
@@ -96,15 +445,83 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
     if (Internals.logging.isTraceEnabled())
       Internals.logging.trace(format("Retrieving record '%s' from storage (executor: '%s')...", id(key), exec));
 
+    // a record the existence filter has never seen cannot be in the cache, or in storage.
+    final Optional<ExistenceFilter> existence = this.existence();
+    final Optional<HotKeyTracker<Model>> hotKeys = options.enableCache() ? this.hotKeys() : Optional.empty();
+    final Optional<Object> recordId = existence.isPresent() || hotKeys.isPresent() ? id(key) : Optional.empty();
+    if (existence.isPresent() && recordId.isPresent() && existence.get().definitelyAbsent(recordId.get())) {
+      if (Internals.logging.isDebugEnabled())
+        Internals.logging.debug(format("Existence filter rules out record '%s'. Skipping lookup.", recordId.get()));
+      return ReactiveFuture.done(Optional.empty());
+    }
+
+    // hot records are served from the pinned near-cache. a hot record which is not pinned yet is pinned once loaded,
+    // unless it is written in the meantime, and for no longer than the cache would hold it.
+    if (hotKeys.isPresent() && recordId.isPresent()) {
+      final HotKeyTracker<Model> tracker = hotKeys.get();
+      final Optional<Model> pinned = tracker.access(recordId.get());
+      if (pinned.isPresent()) return ReactiveFuture.done(pinned);
+      final long stamp = tracker.stamp(recordId.get());
+      if (stamp >= 0) {
+        final long ttlNanos = options.cacheDefaultTTL()
+          .map((ttl) -> options.cacheDefaultTTLUnit().toNanos(ttl))
+          .orElseGet(tracker::pinTtlNanos);
+        final ReactiveFuture<Optional<Model>> read = retrieveRecord(key, options, exec);
+        Futures.addCallback(read, new FutureCallback<>() {
+          @Override
+          public void onSuccess(@Nullable Optional<Model> record) {
+            //noinspection OptionalAssignedToNull
+            if (record != null) record.ifPresent((value) -> tracker.fill(recordId.get(), stamp, value, ttlNanos));
+          }
+
+          @Override
+          public void onFailure(@Nonnull Throwable err) {
+            // nothing to pin.
+          }
+        }, MoreExecutors.directExecutor());
+        return read;
+      }
+    }
+    return retrieveRecord(key, options, exec);
+  }
+
+  /**
+   * Retrieve a record through the cache (if enabled and present) and the {@link #engine()}.
+   *
+   * @param key Key for the record to retrieve.
+   * @param options Options for the read.
+   * @param exec Executor for the read.
+   * @return Future for the record, if found.
+   */
+  private @Nonnull ReactiveFuture<Optional<Model>> retrieveRecord(@Nonnull Key key,
+                                                                  @Nonnull FetchOptions options,
+                                                                  @Nonnull ListeningScheduledExecutorService exec) {
     final Optional<CacheDriver<Key, Model>> cache = this.cache();
     if (options.enableCache() && cache.isPresent()) {
       if (Internals.logging.isDebugEnabled())
         Internals.logging.debug(
           format("Caching enabled with object of type '%s'.", cache.get().getClass().getSimpleName()));
 
+      // a tripped circuit breaker sends reads straight to storage, without paying for a cache attempt.
+      final Optional<CacheCircuitBreaker> breaker = this.cacheBreaker();
+      if (breaker.isPresent() && !breaker.get().allowRequest()) {
+        if (Internals.logging.isDebugEnabled())
+          Internals.logging.debug("Cache circuit breaker is open. Deferring to driver.");
+        return engine().retrieve(key, options);
+      }
+
+      // hedged reads race the cache against storage, once the cache is slower than usual.
+      final Optional<CacheLatencyTracker> latency = this.cacheLatency();
+      final Optional<Long> hedgeDelay = latency.flatMap((tracker) -> tracker.hedgeDelayNanos(options));
+      if (hedgeDelay.isPresent())
+        return retrieveHedged(key, options, cache.get(), latency.get(), breaker, hedgeDelay.get(), exec);
+
       // cache result future
+      final long fetchStart = System.nanoTime();
       final ReactiveFuture<Optional<Model>> cacheFetchFuture = Objects.requireNonNull(
         cache.get().fetch(key, options, exec), "Cache cannot return `null` for `retrieve`.");
+      latency.ifPresent((tracker) -> cacheFetchFuture.addListener(
+        () -> tracker.record(System.nanoTime() - fetchStart), MoreExecutors.directExecutor()));
 
       // wrap in a future, with a non-propagating cancelling timeout, which handles any nulls from the cache.
       final ListenableFuture<Optional<Model>> cacheFuture = (Futures.nonCancellationPropagating(
@@ -124,12 +541,27 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
           }
         }, exec)));
 
-      // wrap the cache future in a timeout function, which enforces the configured (or default) cache timeout
-      final ListenableFuture<Optional<Model>> limitedCacheFuture = Futures.withTimeout(
+      // wrap the cache future in a timeout function, which enforces the configured (or adaptive) cache timeout. a cache
+      // which times out, or fails, is treated as a miss.
+      final ListenableFuture<Optional<Model>> timedCacheFuture = Futures.withTimeout(
         cacheFuture,
-        options.cacheTimeout().orElse(PersistenceDriver.DEFAULT_CACHE_TIMEOUT),
-        options.cacheTimeoutUnit(),
+        latency.map((tracker) -> tracker.timeoutNanos(options)).orElseGet(() -> options.cacheTimeoutUnit().toNanos(
+          options.cacheTimeout().orElse(PersistenceDriver.DEFAULT_CACHE_TIMEOUT))),
+        TimeUnit.NANOSECONDS,
         exec);
+      breaker.ifPresent((b) -> recordCacheOutcome(timedCacheFuture, b));
+      final ListenableFuture<Optional<Model>> limitedCacheFuture = Futures.catching(
+        timedCacheFuture, Exception.class, (err) -> {
+          if (err instanceof TimeoutException) {
+            latency.ifPresent(CacheLatencyTracker::recordTimeout);
+            if (Internals.logging.isDebugEnabled())
+              Internals.logging.debug(format("Cache timed out for record '%s'. Deferring to driver.", id(key)));
+          } else {
+            Internals.logging.warn(format("Cache failed for record '%s'. Deferring to driver. Error: '%s'.",
+              id(key), err == null ? null : err.getMessage()));
+          }
+          return Optional.empty();
+        }, exec);
 
       // finally, respond to a cache miss by deferring to the driver directly. this must be separate from `cacheFuture`
       // to allow separate cancellation of the cache future and the future which backstops it.
@@ -144,22 +576,12 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
           }
 
           if (cacheResult != null && cacheResult.isPresent()) {
+            if (options.cacheRefreshAhead().isPresent())
+              refresher().ifPresent((refresher) -> refresher.onHit(key, options));
             return Futures.immediateFuture(cacheResult);
           } else {
             var record = engine().retrieve(key, options);
-            record.addListener(() -> {
-              if (Internals.logging.isDebugEnabled()) {
-                Internals.logging.debug("Response was NOT cached. Storing in cache...");
-              }
-
-              Internals.swallowExceptions(() -> {
-                Optional<Model> fetchResult = record.get();
-                fetchResult.ifPresent(model -> cache.get().put(
-                    key,
-                    model,
-                    options.executorService().orElseGet(ModelAdapter.this::executorService)));
-              });
-            }, options.executorService().orElseGet(ModelAdapter.this::executorService));
+            cacheOnMiss(key, record, options, cache.get());
             return record;
           }
         }
@@ -172,28 +594,275 @@ public interface ModelAdapter<Key extends Message, Model extends Message, ReadIn
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  default @Nonnull ReactiveFuture<Optional<Versioned<Model>>> retrieveVersioned(@Nonnull Key key,
+                                                                                @Nonnull FetchOptions options) {
+    // versions are only tracked by storage, so versioned reads always go to the engine.
+    return engine().retrieveVersioned(key, options);
+  }
+
   // -- Interface: Persist -- //
   /** {@inheritDoc} */
   @Override
   default @Nonnull ReactiveFuture<Model> persist(@Nullable Key key,
                                                  @Nonnull Model model,
                                                  @Nonnull WriteOptions options) {
-    return engine().persist(key, model, options);
+    // combining only applies to writes whose outcome does not depend on how many of them reach storage. other writes
+    // are still ordered behind any combined write to the same record.
+    final Optional<WriteCombiner<Key, Model>> combiner = this.writeCombiner();
+    final Optional<Object> recordId = key != null && combiner.isPresent() ? id(key) : Optional.empty();
+    if (recordId.isEmpty()) return persistTracked(key, model, options);
+    if (options.writeCombineWindow().isPresent() &&
+        !WriteOptions.WriteDisposition.MUST_NOT_EXIST.equals(options.writeMode().orElse(null)) &&
+        !hasPreconditions(options)) {
+      return combiner.get().submit(recordId.get(), key, model, options, this::persistTracked);
+    }
+    return ordered(combiner.get(), recordId.get(), options, () -> persistTracked(key, model, options));
+  }
+
+  /**
+   * Issue a write or delete which is not combined through the {@link #writeCombiner()}, in order with combined writes to
+   * the same record.
+   *
+   * @param combiner Write combiner in use by this adapter.
+   * @param id ID of the record being written or deleted.
+   * @param options Options for the operation.
+   * @param operation Issues the write or delete.
+   * @param <R> Result type for the operation.
+   * @return Future for the result of the operation.
+   */
+  private @Nonnull <R> ReactiveFuture<R> ordered(@Nonnull WriteCombiner<Key, Model> combiner,
+                                                 @Nonnull Object id,
+                                                 @Nonnull OperationOptions options,
+                                                 @Nonnull Supplier<ReactiveFuture<R>> operation) {
+    final ListenableFuture<R> op = combiner.exclusive(id, operation::get);
+    return ReactiveFuture.wrap(op, options.executorService().orElseGet(this::executorService));
+  }
+
+  /**
+   * Persist a record, keeping the {@link #existence()} filter and {@link #hotKeys()} tracker (if any) up to date.
+   *
+   * @param key Key for the record, if known.
+   * @param model Record to persist.
+   * @param options Options for the write.
+   * @return Future for the written record.
+   */
+  private @Nonnull ReactiveFuture<Model> persistTracked(@Nullable Key key,
+                                                        @Nonnull Model model,
+                                                        @Nonnull WriteOptions options) {
+    final Optional<ExistenceFilter> existence = this.existence();
+    final Optional<HotKeyTracker<Model>> hotKeys = this.hotKeys();
+    if (existence.isEmpty() && hotKeys.isEmpty()) return persistRecord(key, model, options);
+
+    // record the ID before the write is issued, so a read which follows it never misses; and again once it succeeds, so
+    // a concurrent rebuild of the filter cannot drop it. any pinned copy is dropped both before and after the write, so
+    // a read racing the write cannot re-pin the old record.
+    final Optional<Object> recordId = key != null ? id(key) : Optional.empty();
+    recordId.ifPresent((id) -> {
+      existence.ifPresent((filter) -> filter.recordPresent(id));
+      hotKeys.ifPresent((tracker) -> tracker.invalidate(id));
+    });
+    final ReactiveFuture<Model> write = persistRecord(key, model, options);
+    Futures.addCallback(write, new FutureCallback<>() {
+      @Override
+      public void onSuccess(@Nullable Model written) {
+        if (written == null) return;
+        ModelMetadata.<Object>id(written).ifPresent((id) -> {
+          existence.ifPresent((filter) -> filter.recordPresent(id));
+          hotKeys.ifPresent((tracker) -> tracker.invalidate(id));
+        });
+      }
+
+      @Override
+      public void onFailure(@Nonnull Throwable err) {
+        // an ID recorded ahead of a failed write only costs a false positive.
+        recordId.ifPresent((id) -> hotKeys.ifPresent((tracker) -> tracker.invalidate(id)));
+      }
+    }, MoreExecutors.directExecutor());
+    return write;
+  }
+
+  /**
+   * Persist a record through the cache (according to its write policy, if enabled) and the {@link #engine()}.
+   *
+   * @param key Key for the record, if known.
+   * @param model Record to persist.
+   * @param options Options for the write.
+   * @return Future for the written record.
+   */
+  private @Nonnull ReactiveFuture<Model> persistRecord(@Nullable Key key,
+                                                       @Nonnull Model model,
+                                                       @Nonnull WriteOptions options) {
+    final Optional<CacheDriver<Key, Model>> cache = this.cache();
+    if (!options.enableCache() || cache.isEmpty()) {
+      return engine().persist(key, model, options);
+    }
+    final ListeningScheduledExecutorService exec = options.executorService().orElseGet(this::executorService);
+    final CacheOptions.WritePolicy policy = options.cacheWritePolicy();
+    final Optional<CacheRefresher<Key, Model>> refresher = this.refresher();
+    final Optional<CacheCircuitBreaker> breaker = this.cacheBreaker();
+    if (key != null) refresher.ifPresent((r) -> r.invalidate(key));
+    if (Internals.logging.isTraceEnabled())
+      Internals.logging.trace(format("Persisting record with cache write policy '%s'.", policy.name()));
+
+    switch (policy) {
+      case WRITE_BEHIND:
+        // write-behind only applies to blind writes with a known key, because preconditions cannot be checked until
+        // the write is flushed. everything else is written through.
+        final Optional<WriteBehindBuffer<Key, Model>> buffer = this.writeBehind();
+        final WriteOptions.WriteDisposition disposition =
+          options.writeMode().orElse(WriteOptions.WriteDisposition.BLIND);
+        if (key != null && buffer.isPresent() && !buffer.get().isClosed() && !hasPreconditions(options) &&
+            WriteOptions.WriteDisposition.BLIND.equals(disposition)) {
+          return buffer.get().enqueue(key, model, options);
+        }
+        if (Internals.logging.isDebugEnabled())
+          Internals.logging.debug("Write-behind is not available for this write. Falling back to write-through.");
+        // fall through
+
+      case WRITE_THROUGH:
+        // write to storage, then put the written record in the cache. a cache failure or timeout evicts the key, but
+        // does not fail the (already durable) write. a storage failure evicts the key, and propagates. while the cache
+        // breaker is open, the key is evicted without waiting.
+        return ReactiveFuture.wrap(Futures.transformAsync(
+          evictOnFailure(engine().persist(key, model, options), key, cache.get(), exec),
+          new AsyncFunction<>() {
+            @Override
+            public @Nonnull ListenableFuture<Model> apply(@Nonnull Model written) {
+              //noinspection unchecked
+              final Key writtenKey = key != null ? key : (Key)key(written).orElseThrow();
+              if (!allowCacheWrite(breaker)) {
+                cache.get().evict(writtenKey, exec);
+                return Futures.immediateFuture(written);
+              }
+              final ListenableFuture<?> cacheWrite = cache.get().put(writtenKey, written, exec);
+              return Futures.transform(awaitCacheWrite(cacheWrite, breaker, options, exec), (succeeded) -> {
+                if (succeeded) {
+                  refresher.ifPresent((r) -> r.recordWrite(writtenKey));
+                } else {
+                  if (Internals.logging.isDebugEnabled())
+                    Internals.logging.debug("Failed to write through to cache, evicting instead.");
+                  cache.get().evict(writtenKey, exec);
+                }
+                return written;
+              }, exec);
+            }
+          }, exec), exec);
+
+      case INVALIDATE:
+      default:
+        // write to storage, then evict the key from the cache, whether or not the write succeeded.
+        final ReactiveFuture<Model> write = engine().persist(key, model, options);
+        return ReactiveFuture.wrap(Futures.transformAsync(
+          evictOnFailure(write, key, cache.get(), exec),
+          new AsyncFunction<>() {
+            @Override
+            public @Nonnull ListenableFuture<Model> apply(@Nonnull Model written) {
+              //noinspection unchecked
+              final Key writtenKey = key != null ? key : (Key)key(written).orElseThrow();
+              return evictAfterWrite(written, writtenKey, cache.get(), breaker, options, exec);
+            }
+          }, exec), exec);
+    }
+  }
+
+  // -- Interface: Modify -- //
+  /** {@inheritDoc} */
+  @Override
+  default @Nonnull ReactiveFuture<Model> modify(@Nonnull Key key,
+                                                @Nonnull UnaryOperator<Model> function,
+                                                @Nonnull WriteOptions options) {
+    return modifyRecord(key, options, () -> engine().modify(key, function, options));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  default @Nonnull ReactiveFuture<Model> update(@Nonnull Key key,
+                                                @Nonnull Model model,
+                                                @Nonnull UpdateOptions options) {
+    final Optional<FieldMask> mask = options.updateMask();
+    if (mask.isEmpty() || mask.get().getPathsCount() == 0) return PersistenceDriver.super.update(key, model, options);
+
+    // partial updates are merged by the engine, which may be able to do so without decoding the stored record.
+    return modifyRecord(key, options, () -> engine().update(key, model, options));
+  }
+
+  /**
+   * Run a read-modify-write {@code operation} against the {@link #engine()}, keeping the {@link #hotKeys()} tracker and
+   * cache (if any) from holding on to the record as it was before the write.
+   *
+   * @param key Key for the record being modified.
+   * @param options Options for the write.
+   * @param operation Issues the read-modify-write against the engine.
+   * @return Future for the modified record, which completes once any cached copy has been evicted.
+   */
+  private @Nonnull ReactiveFuture<Model> modifyRecord(@Nonnull Key key,
+                                                      @Nonnull WriteOptions options,
+                                                      @Nonnull Supplier<ReactiveFuture<Model>> operation) {
+    // the new record is computed from storage, never from the cache. any pinned copy is dropped both before and after
+    // the write, and any cached copy is evicted before the modification is reported as done.
+    final Optional<HotKeyTracker<Model>> hotKeys = this.hotKeys();
+    final Optional<WriteCombiner<Key, Model>> combiner = this.writeCombiner();
+    final Optional<Object> recordId = hotKeys.isPresent() || combiner.isPresent() ? id(key) : Optional.empty();
+    recordId.ifPresent((id) -> hotKeys.ifPresent((tracker) -> tracker.invalidate(id)));
+    final ReactiveFuture<Model> op = combiner.isPresent() && recordId.isPresent() ?
+      ordered(combiner.get(), recordId.get(), options, operation) :
+      operation.get();
+    recordId.ifPresent((id) -> hotKeys.ifPresent(
+      (tracker) -> op.addListener(() -> tracker.invalidate(id), MoreExecutors.directExecutor())));
+
+    final Optional<CacheDriver<Key, Model>> cache = this.cache();
+    if (!options.enableCache() || cache.isEmpty()) return op;
+    final ListeningScheduledExecutorService exec = options.executorService().orElseGet(this::executorService);
+    refresher().ifPresent((refresher) -> refresher.invalidate(key));
+    return ReactiveFuture.wrap(Futures.transformAsync(
+      evictOnFailure(op, key, cache.get(), exec),
+      (written) -> evictAfterWrite(written, key, cache.get(), cacheBreaker(), options, exec),
+      exec), exec);
   }
 
   /** {@inheritDoc} */
   @Override
   default @Nonnull ReactiveFuture<Key> delete(@Nonnull Key key,
                                               @Nonnull DeleteOptions options) {
-    ReactiveFuture<Key> op = engine().delete(key, options);
+    enforceRole(key, DatapointType.OBJECT_KEY);
+    final ListeningScheduledExecutorService exec = options.executorService().orElseGet(this::executorService);
+    final Optional<HotKeyTracker<Model>> hotKeys = this.hotKeys();
+    final Optional<WriteCombiner<Key, Model>> combiner = this.writeCombiner();
+    final Optional<Object> recordId = hotKeys.isPresent() || combiner.isPresent() ? id(key) : Optional.empty();
+    recordId.ifPresent((id) -> hotKeys.ifPresent((tracker) -> tracker.invalidate(id)));
+
+    // a buffered or combined write to the record must never land after the delete: drop it, or wait for it if it is in
+    // flight.
+    final Optional<WriteBehindBuffer<Key, Model>> buffer = this.writeBehind();
+    final Supplier<ReactiveFuture<Key>> delete = () -> buffer.isEmpty() ? engine().delete(key, options) :
+      ReactiveFuture.wrap(
+        Futures.transformAsync(buffer.get().discard(key), (ignored) -> engine().delete(key, options), exec), exec);
+    final ReactiveFuture<Key> op = combiner.isPresent() && recordId.isPresent() ?
+      ordered(combiner.get(), recordId.get(), options, delete) :
+      delete.get();
+    recordId.ifPresent((id) -> hotKeys.ifPresent(
+      (tracker) -> op.addListener(() -> tracker.invalidate(id), MoreExecutors.directExecutor())));
+    existence().ifPresent((filter) -> Futures.addCallback(op, new FutureCallback<>() {
+      @Override
+      public void onSuccess(@Nullable Key deleted) {
+        ModelMetadata.<Object>id(key).ifPresent(filter::recordDeleted);
+      }
+
+      @Override
+      public void onFailure(@Nonnull Throwable err) {
+        // nothing to do: the record (if any) is still there.
+      }
+    }, MoreExecutors.directExecutor()));
     if (options.enableCache()) {
       // if caching is enabled and a cache driver is present, make sure to evict any cached record behind this key.
       Optional<CacheDriver<Key, Model>> cacheDriver = this.cache();
       if (cacheDriver.isPresent()) {
-        ListeningScheduledExecutorService exec = options.executorService().orElseGet(this::executorService);
-        ReactiveFuture<Key> storageDelete = engine().delete(key, options);
-        ReactiveFuture<Key> cacheEvict = cacheDriver.get().evict(key, exec);
-        return ReactiveFuture.wrap(Futures.whenAllComplete(storageDelete, cacheEvict).call(() -> key, exec));
+        refresher().ifPresent((refresher) -> refresher.invalidate(key));
+        // the record is evicted once the delete lands, so that a read racing the delete cannot leave it cached.
+        return ReactiveFuture.wrap(Futures.whenAllComplete(op).callAsync(
+          () -> evictAfterWrite(key, key, cacheDriver.get(), cacheBreaker(), options, exec), exec), exec);
       }
     }
     return op;
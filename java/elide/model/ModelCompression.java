@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.nixxcode.jvmbrotli.common.BrotliLoader;
+import com.nixxcode.jvmbrotli.dec.BrotliInputStream;
+import com.nixxcode.jvmbrotli.enc.BrotliOutputStream;
+import com.nixxcode.jvmbrotli.enc.Encoder;
+import elide.runtime.jvm.Logging;
+import org.slf4j.Logger;
+import tools.elide.core.data.CompressionMode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.String.format;
+
+
+/**
+ * Compresses and decompresses encoded model data, according to a {@link CompressionMode}. Gzip is always available, via
+ * the JDK. Brotli is available only where its native library can be loaded for the current platform; check with
+ * {@link #isAvailable(CompressionMode)} before compressing with it.
+ *
+ * <p>Brotli is tuned here for throughput rather than ratio, because model data is compressed on the write path, rather
+ * than ahead of time.</p>
+ */
+@ThreadSafe
+public final class ModelCompression {
+  /** Log pipe to use. */
+  private static final Logger logging = Logging.logger(ModelCompression.class);
+
+  /** Brotli quality to compress with (0-11). */
+  private static final int BROTLI_QUALITY = 5;
+
+  /** Whether Brotli is available on this platform. */
+  private static final boolean brotliAvailable;
+
+  static {
+    boolean available;
+    try {
+      available = BrotliLoader.isBrotliAvailable();
+    } catch (LinkageError err) {
+      available = false;
+    }
+    brotliAvailable = available;
+    if (logging.isDebugEnabled())
+      logging.debug(format("Brotli compression is %s for encoded models.", available ? "available" : "unavailable"));
+  }
+
+  private ModelCompression() { /* Disallow construction. */ }
+
+  /**
+   * @param compression Compression mode to check.
+   * @return Whether data can be compressed and decompressed with the provided mode on this platform.
+   */
+  public static boolean isAvailable(@Nonnull CompressionMode compression) {
+    switch (compression) {
+      case IDENTITY:
+      case GZIP: return true;
+      case BROTLI: return brotliAvailable;
+      default: return false;
+    }
+  }
+
+  /**
+   * Compress the provided data with the provided mode.
+   *
+   * @param compression Compression mode to apply.
+   * @param data Data to compress.
+   * @return Compressed data. For {@code IDENTITY}, the provided data is returned as-is.
+   * @throws IOException If the mode is not available on this platform, or compression fails.
+   */
+  public static @Nonnull byte[] compress(@Nonnull CompressionMode compression, @Nonnull byte[] data)
+    throws IOException {
+    if (compression == CompressionMode.IDENTITY) return data;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, data.length / 2));
+    try (OutputStream stream = compressor(compression, out)) {
+      stream.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decompress the provided data with the provided mode.
+   *
+   * @param compression Compression mode the data was compressed with.
+   * @param data Compressed data.
+   * @return Decompressed data. For {@code IDENTITY}, the provided data is returned as-is.
+   * @throws IOException If the mode is not available on this platform, or the data is corrupt.
+   */
+  public static @Nonnull byte[] decompress(@Nonnull CompressionMode compression, @Nonnull byte[] data)
+    throws IOException {
+    if (compression == CompressionMode.IDENTITY) return data;
+    try (InputStream stream = decompressor(compression, new ByteArrayInputStream(data))) {
+      return stream.readAllBytes();
+    }
+  }
+
+  private static @Nonnull OutputStream compressor(@Nonnull CompressionMode compression,
+                                                  @Nonnull OutputStream out) throws IOException {
+    switch (compression) {
+      case GZIP: return new GZIPOutputStream(out);
+      case BROTLI:
+        requireBrotli();
+        return new BrotliOutputStream(out, new Encoder.Parameters().setQuality(BROTLI_QUALITY));
+      default: throw new IOException(format("Unsupported compression mode: %s.", compression));
+    }
+  }
+
+  private static @Nonnull InputStream decompressor(@Nonnull CompressionMode compression,
+                                                   @Nonnull InputStream in) throws IOException {
+    switch (compression) {
+      case GZIP: return new GZIPInputStream(in);
+      case BROTLI:
+        requireBrotli();
+        return new BrotliInputStream(in);
+      default: throw new IOException(format("Unsupported compression mode: %s.", compression));
+    }
+  }
+
+  private static void requireBrotli() throws IOException {
+    if (!brotliAvailable) throw new IOException("Brotli compression is not available on this platform.");
+  }
+}
@@ -15,6 +15,7 @@ package elide.model;
 import com.google.protobuf.Message;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Optional;
 
 
 /** Thrown when a write operation fails, because of some conflict situation. */
@@ -23,6 +24,9 @@ public final class ModelWriteConflict extends ModelWriteFailure {
   /** Expectation that was violated during the write operation. */
   private final @Nonnull WriteOptions.WriteDisposition failedExpectation;
 
+  /** Precondition that was violated during the write operation, if any. */
+  private final @Nullable String failedPrecondition;
+
   /**
    * Create a model write exception with a throwable as a cause.
    *
@@ -38,6 +42,26 @@ public final class ModelWriteConflict extends ModelWriteFailure {
       key,
       expectation.name()));
     this.failedExpectation = expectation;
+    this.failedPrecondition = null;
+  }
+
+  /**
+   * Create a model write exception for a violated precondition, such as an expected version or update time. The
+   * failed expectation is reported as {@code MUST_EXIST}, since every precondition applies to an existing record.
+   *
+   * @param key   Key for the record that failed to write.
+   * @param model Model that failed to write.
+   * @param precondition Description of the precondition that failed to be met.
+   */
+  public ModelWriteConflict(@Nullable Object key,
+                            @Nonnull Message model,
+                            @Nonnull String precondition) {
+    super(key, model, String.format(
+      "Cannot write to the specified model. Key %s did not meet precondition '%s'.",
+      key,
+      precondition));
+    this.failedExpectation = WriteOptions.WriteDisposition.MUST_EXIST;
+    this.failedPrecondition = precondition;
   }
 
   // -- Getters -- //
@@ -45,4 +69,9 @@ public final class ModelWriteConflict extends ModelWriteFailure {
   public @Nonnull WriteOptions.WriteDisposition getFailedExpectation() {
     return failedExpectation;
   }
+
+  /** @return Precondition that was violated, when the error was encountered, if any. */
+  public @Nonnull Optional<String> getFailedPrecondition() {
+    return Optional.ofNullable(failedPrecondition);
+  }
 }
@@ -12,11 +12,13 @@
  */
 package elide.model
 
-import tools.elide.core.Datamodel
 import tools.elide.core.FieldType as CoreFieldType
 import com.google.cloud.firestore.DocumentReference
+import com.google.firestore.v1.Document
+import com.google.firestore.v1.Value
 import com.google.protobuf.ByteString
 import com.google.protobuf.Descriptors
+import com.google.protobuf.Descriptors.FieldDescriptor.JavaType
 import com.google.protobuf.Descriptors.FieldDescriptor.Type
 import com.google.protobuf.Message
 import com.google.protobuf.Timestamp
@@ -29,7 +31,8 @@ import javax.annotation.Nonnull
 
 /**
  * Specifies a deserializer which is capable of converting generic Java [Map] objects (expected to have
- * [String] keys) into arbitrary [Message] types.
+ * [String] keys) into arbitrary [Message] types. Firestore [Document] protos may also be inflated directly, without
+ * first materializing them as maps.
  *
  * @param <Model> Model record type which this serializer is responsible for converting.
  */
@@ -228,7 +231,7 @@ open class ObjectModelDeserializer<Model: Message> protected constructor(
               "'${field.name}' on entity '${descriptor.name}'.")
 
           // string value should be the enum type
-          enumValues.add(enumType.findValueByName(rawEnumKey.toUpperCase()))
+          enumValues.add(enumNamed(descriptor, field, rawEnumKey))
         }
       }
 
@@ -282,119 +285,384 @@ open class ObjectModelDeserializer<Model: Message> protected constructor(
    * @throws DeserializationError
    */
   @Throws(DeserializationError::class)
-  @Suppress("UNCHECKED_CAST", "DuplicatedCode")
   fun <B: Message.Builder> build(builder: B, data: Map<String, *>): B {
-    // setup a new builder
-    if (data.isEmpty()) return builder  // it's empty, return a default proto
+    return build(builder, data, ObjectModelPlan.forDescriptor(builder.descriptorForType))
+  }
 
-    // otherwise parse the fields
-    val descriptor = builder.descriptorForType
-    fields@for (field in descriptor.fields) {
-      // every field must have a type
-      val type = field.type ?: throw DeserializationError("Cannot inflate a field without a type.")
-      val fieldProto = field.toProto()
-      val fieldOptions = if (fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.opts)) {
-        fieldProto.options.getExtension(Datamodel.opts)
-      } else {
-        null
+  /**
+   * Inflate a timestamp field from a non-map value: either a Google Cloud timestamp, a Protobuf timestamp, or a number
+   * of seconds since the Unix epoch.
+   *
+   * @param descriptor
+   * @param field
+   * @param dataValue
+   * @returns
+   * @throws DeserializationError
+   */
+  private fun inflateTimestamp(descriptor: Descriptors.Descriptor,
+                               field: Descriptors.FieldDescriptor,
+                               dataValue: Any): Timestamp = when (dataValue) {
+    // it's a Google Cloud well-known-value (`Timestamp`), for which we have a converter
+    is com.google.cloud.Timestamp -> instantFromCloudTimestamp(dataValue)
+
+    // it's a Protobuf well-known-value (`Timestamp`), for which we need no conversion
+    is Timestamp -> dataValue
+
+    // if it's numeric, it should be a Unix epoch timestamp
+    is Int, is Double, is Long -> Timestamp.newBuilder()
+      .setSeconds((dataValue as Number).toLong())
+      .build()
+
+    // all other types should fail
+    else ->
+      throw DeserializationError("Failed to decode timestamp/instant type. Could not determine " +
+        "native type at field '${field.name}' on entity '${descriptor.name}'.")
+  }
+
+  /**
+   * Inflate a key reference from a Firestore document reference, filling the ID field resolved by the key's plan.
+   *
+   * @param builder
+   * @param fieldPlan
+   * @param dataValue
+   * @throws DeserializationError
+   */
+  private fun <B: Message.Builder> setReference(builder: B, fieldPlan: ObjectModelPlan.Field, dataValue: Any) {
+    // it should be a reference type
+    if (dataValue !is DocumentReference)
+      throw DeserializationError("Found non-reference value for reference property.")
+    setReferencePath(builder, fieldPlan, dataValue.path)
+  }
+
+  /**
+   * Load the fields of a Firestore document into a message builder, decoding each `Value` straight into the builder
+   * rather than first materializing the document as a map. Values are decoded as [build] would decode their map
+   * equivalents.
+   *
+   * @param builder
+   * @param document
+   * @returns
+   * @throws DeserializationError
+   */
+  @Throws(DeserializationError::class)
+  fun <B: Message.Builder> build(builder: B, document: Document): B {
+    return buildFromValues(builder, document.fieldsMap, ObjectModelPlan.forDescriptor(builder.descriptorForType))
+  }
+
+  /**
+   * Decode a Firestore value into the object expected by [Message.Builder.setField] for a non-message field, or a
+   * single element of a repeated non-message field. Numbers are converted to the width of the field; bytes may be held
+   * either raw or Base64-encoded; enums may be held by name or number.
+   *
+   * @param field
+   * @param value
+   * @returns Decoded value, or `null` if the value is null.
+   * @throws DeserializationError
+   */
+  private fun decodeScalar(field: Descriptors.FieldDescriptor, value: Value): Any? {
+    if (value.valueTypeCase == Value.ValueTypeCase.NULL_VALUE) return null
+    return when (field.javaType) {
+      JavaType.INT -> numberOf(field, value).toInt()
+      JavaType.LONG -> numberOf(field, value).toLong()
+      JavaType.FLOAT -> numberOf(field, value).toFloat()
+      JavaType.DOUBLE -> numberOf(field, value).toDouble()
+      JavaType.BOOLEAN -> value.booleanValue
+      JavaType.STRING -> value.stringValue
+      JavaType.BYTE_STRING -> when (value.valueTypeCase) {
+        // decode from base64 if it's not already raw
+        Value.ValueTypeCase.STRING_VALUE -> ByteString.copyFrom(
+          Base64.getDecoder().decode(value.stringValue.toByteArray(StandardCharsets.UTF_8)))
+        else -> value.bytesValue
       }
-      val persistenceOptions = if (fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.field)) {
-        fieldProto.options.getExtension(Datamodel.field)
+      JavaType.ENUM -> {
+        val enumType = field.enumType
+        // decode from either string or numeric reference
+        when (value.valueTypeCase) {
+          Value.ValueTypeCase.STRING_VALUE -> enumType.findValueByName(value.stringValue.toUpperCase())
+          Value.ValueTypeCase.INTEGER_VALUE -> enumType.findValueByNumber(value.integerValue.toInt())
+          else -> throw DeserializationError("Unable to resolve enum type from raw value for field '${field.name}' " +
+            "on entity '${field.containingType.name}'.")
+        } ?: throw DeserializationError("Unable to resolve enum value for field '${field.name}' " +
+          "on entity '${field.containingType.name}'.")
+      }
+      JavaType.MESSAGE, null ->
+        throw DeserializationError("Cannot set sub-message types as simple values.")
+    }
+  }
+
+  /**
+   * Read a numeric Firestore value, whether it is held as an integer, a double, or a numeric string.
+   *
+   * @param field
+   * @param value
+   * @returns
+   * @throws DeserializationError
+   */
+  private fun numberOf(field: Descriptors.FieldDescriptor, value: Value): Number = when (value.valueTypeCase) {
+    Value.ValueTypeCase.INTEGER_VALUE -> value.integerValue
+    Value.ValueTypeCase.DOUBLE_VALUE -> value.doubleValue
+    Value.ValueTypeCase.STRING_VALUE -> value.stringValue.toBigDecimal()
+    else -> throw DeserializationError("Found non-numeric value for numeric field '${field.name}' " +
+      "on entity '${field.containingType.name}'.")
+  }
+
+  /**
+   * Inflate a timestamp field from a non-map Firestore value: either a timestamp, an ISO-8601 string, or a number of
+   * seconds since the Unix epoch.
+   *
+   * @param descriptor
+   * @param field
+   * @param value
+   * @returns
+   * @throws DeserializationError
+   */
+  private fun inflateTimestamp(descriptor: Descriptors.Descriptor,
+                               field: Descriptors.FieldDescriptor,
+                               value: Value): Timestamp = when (value.valueTypeCase) {
+    Value.ValueTypeCase.TIMESTAMP_VALUE -> value.timestampValue
+    Value.ValueTypeCase.INTEGER_VALUE, Value.ValueTypeCase.DOUBLE_VALUE -> Timestamp.newBuilder()
+      .setSeconds(numberOf(field, value).toLong())
+      .build()
+    Value.ValueTypeCase.STRING_VALUE -> {
+      val instant = java.time.Instant.parse(value.stringValue)
+      Timestamp.newBuilder().setSeconds(instant.epochSecond).setNanos(instant.nano).build()
+    }
+    else ->
+      throw DeserializationError("Failed to decode timestamp/instant type. Could not determine " +
+        "native type at field '${field.name}' on entity '${descriptor.name}'.")
+  }
+
+  /**
+   * Inflate a key reference from a Firestore reference value (a document path), filling the ID field resolved by the
+   * key's plan.
+   *
+   * @param builder
+   * @param fieldPlan
+   * @param reference
+   * @throws DeserializationError
+   */
+  private fun <B: Message.Builder> setReference(builder: B, fieldPlan: ObjectModelPlan.Field, reference: String) {
+    // references may be full resource names, or paths relative to the database root
+    setReferencePath(builder, fieldPlan, reference.substringAfter("/documents/"))
+  }
+
+  /**
+   * Inflate a key reference from a document path, relative to the database root. The last segment is the key's ID, and
+   * each earlier pair of segments (collection, then ID) fills the ID of the next `PARENT` up the key's parent chain.
+   *
+   * @param builder
+   * @param fieldPlan
+   * @param path
+   * @throws DeserializationError
+   */
+  private fun <B: Message.Builder> setReferencePath(builder: B, fieldPlan: ObjectModelPlan.Field, path: String) {
+    val segments = path.trim('/').split('/')
+    if (segments.size < 2 || segments.size % 2 != 0 || segments.any { it.isEmpty() })
+      throw DeserializationError("Malformed document path '$path' for reference field '${fieldPlan.name}'.")
+    val keyInstance = builder.newBuilderForField(fieldPlan.descriptor) ?:
+      throw DeserializationError("Unable to resolve builder for key reference instance.")
+    val keyPlan = fieldPlan.messagePlan
+    val idField = if (keyPlan?.idKeyField == null) keyPlan?.idField else null
+    if (keyPlan == null || idField == null)
+      throw DeserializationError("Could not resolve key structure ID field for reference inflate.")
+    builder.setField(fieldPlan.descriptor, inflateReference(keyInstance, keyPlan, idField, segments, path))
+  }
+
+  /**
+   * Recursive boundary for reference inflation. Fill [idField] on [builder] from the last segment of [segments], then
+   * inflate the parent named by the segments before it (if any) into the plan's `PARENT` field.
+   *
+   * @param builder
+   * @param plan
+   * @param idField
+   * @param segments
+   * @param path
+   * @returns
+   * @throws DeserializationError
+   */
+  private fun inflateReference(builder: Message.Builder,
+                               plan: ObjectModelPlan,
+                               idField: Descriptors.FieldDescriptor,
+                               segments: List<String>,
+                               path: String): Message {
+    builder.setField(idField, segments.last())
+    val parentSegments = segments.subList(0, segments.size - 2)
+    if (parentSegments.isEmpty())
+      return builder.build()
+
+    val parentField = plan.parentField
+    val parentIdField = plan.parentIdField
+    if (parentField == null || parentIdField == null)
+      throw DeserializationError("Document path '$path' is nested deeper than the parents of key type " +
+        "'${plan.descriptor.name}'.")
+    val parent = inflateReference(builder.newBuilderForField(parentField),
+      ObjectModelPlan.forDescriptor(parentField.messageType), parentIdField, parentSegments, path)
+    builder.setField(parentField, parent)
+    return builder.build()
+  }
+
+  /**
+   * Resolve the enum value named by an entry in a repeated enum expressed as a map.
+   *
+   * @param descriptor
+   * @param field
+   * @param name
+   * @returns
+   * @throws DeserializationError
+   */
+  private fun enumNamed(descriptor: Descriptors.Descriptor,
+                        field: Descriptors.FieldDescriptor,
+                        name: String): Descriptors.EnumValueDescriptor {
+    return field.enumType.findValueByName(name.toUpperCase()) ?: throw DeserializationError("Unable to resolve enum " +
+      "value '$name' in repeated field '${field.name}' on entity '${descriptor.name}'.")
+  }
+
+  /**
+   * Load a map of Firestore values into a message builder, following the compiled plan for the builder's type. This
+   * mirrors the map-based [build], field for field, but decodes each value directly from its `Value` proto.
+   *
+   * @param builder
+   * @param data
+   * @param plan
+   * @returns
+   * @throws DeserializationError
+   */
+  @Throws(DeserializationError::class)
+  private fun <B: Message.Builder> buildFromValues(builder: B, data: Map<String, Value>, plan: ObjectModelPlan): B {
+    if (data.isEmpty()) return builder  // it's empty, return a default proto
+
+    val descriptor = plan.descriptor
+    fields@for (fieldPlan in plan.fields) {
+      // skip ephemeral fields
+      if (fieldPlan.ephemeral) continue@fields
+
+      val field = fieldPlan.descriptor
+      val isMessage = fieldPlan.kind == ObjectModelPlan.Kind.MESSAGE || fieldPlan.kind == ObjectModelPlan.Kind.TIMESTAMP
+      val value = data[fieldPlan.name]
+
+      if (!fieldPlan.repeated) {
+        if (value != null) {
+          if (value.valueTypeCase == Value.ValueTypeCase.NULL_VALUE) continue@fields
+          if (!isMessage) {
+            builder.setField(field, decodeScalar(field, value))
+          } else if (value.valueTypeCase == Value.ValueTypeCase.MAP_VALUE) {
+            // it's a singular sub-message field. prepare the sub-builder, then attach to the top-level field.
+            val subBuilder = builder.newBuilderForField(field)
+              ?: throw DeserializationError("Unable to resolve message type for property '${field.name}' " +
+                "on entity '${descriptor.name}'")
+            buildFromValues(subBuilder, value.mapValue.fieldsMap, fieldPlan.messagePlan!!)
+            builder.setField(field, subBuilder.build())
+          } else if (fieldPlan.kind == ObjectModelPlan.Kind.TIMESTAMP) {
+            // special case: consider timestamps
+            builder.setField(field, inflateTimestamp(descriptor, field, value))
+          } else if ((fieldPlan.role == CoreFieldType.REFERENCE || fieldPlan.role == CoreFieldType.PARENT) &&
+                     value.valueTypeCase == Value.ValueTypeCase.REFERENCE_VALUE) {
+            // it is annotated as a parent, or a reference, which explains this state
+            setReference(builder, fieldPlan, value.referenceValue)
+          } else {
+            throw DeserializationError("Found non-map value where sub-message value was expected, " +
+              "in field '${field.name}' on entity '${descriptor.name}'.")
+          }
+        } else if (fieldPlan.concrete && isMessage) {
+          // a concrete record is flattened into the map we're currently de-serializing, and named by a synthesized
+          // type property (see the map-based `build`).
+          val concreteType = data[ObjectModelSerializer.concreteTypeProperty]?.stringValue
+          if (concreteType != null && concreteType.toLowerCase().trim() == field.jsonName.toLowerCase().trim()) {
+            val subBuilder = builder.newBuilderForField(field)
+            subBuilder ?: throw DeserializationError("Unable to resolve message type for concrete property " +
+              "'${field.name}' on entity '${descriptor.name}'")
+            buildFromValues(subBuilder, data, fieldPlan.messagePlan!!)
+            builder.setField(field, subBuilder.build())
+          }
+        } else if (fieldPlan.required) {
+          throw DeserializationError("Unable to resolve required field '${field.name}' on message " +
+            "'${field.containingType.fullName}'.")
+        }
       } else {
-        null
+        // field is repeated: decode each value in the list
+        if (value == null || value.valueTypeCase == Value.ValueTypeCase.NULL_VALUE) continue@fields
+        if (field.type == Type.ENUM && value.valueTypeCase == Value.ValueTypeCase.MAP_VALUE) {
+          // special case: repeated enums may be expressed as a map of names to flags
+          builder.setField(field, value.mapValue.fieldsMap.keys.map { name -> enumNamed(descriptor, field, name) })
+        } else if (value.valueTypeCase != Value.ValueTypeCase.ARRAY_VALUE) {
+          throw DeserializationError("Found non-list value for repeated field '${field.name}' " +
+            "on entity '${descriptor.name}'.")
+        } else if (value.arrayValue.valuesCount > 0) {
+          val items = value.arrayValue.valuesList
+          val targetValues = ArrayList<Any>(items.size)
+          for ((pos, item) in items.withIndex()) {
+            if (isMessage) {
+              if (item.valueTypeCase != Value.ValueTypeCase.MAP_VALUE)
+                throw DeserializationError("Cannot identify type for message in repeated field " +
+                  "'${field.name}' at position '${pos + 1}' on entity '${descriptor.name}'.")
+              val subBuilder = builder.newBuilderForField(field) ?:
+                throw DeserializationError("Unable to resolve builder for field '${field.name}' on " +
+                  "entity '${descriptor.name}'.")
+              targetValues.add(buildFromValues(subBuilder, item.mapValue.fieldsMap, fieldPlan.messagePlan!!).build())
+            } else {
+              // skip nulls
+              targetValues.add(decodeScalar(field, item) ?: continue)
+            }
+          }
+          if (targetValues.isNotEmpty())
+            builder.setField(field, targetValues)
+        }
       }
+    }
+    return builder
+  }
+
+  /**
+   * Load a raw set of mapped data into a message builder, following the compiled plan for the builder's type. Plans
+   * for sub-messages are linked from the plan's fields, so nested records never re-resolve their own plans.
+   *
+   * @param builder
+   * @param data
+   * @param plan
+   * @returns
+   * @throws DeserializationError
+   */
+  @Throws(DeserializationError::class)
+  @Suppress("UNCHECKED_CAST")
+  private fun <B: Message.Builder> build(builder: B, data: Map<String, *>, plan: ObjectModelPlan): B {
+    // setup a new builder
+    if (data.isEmpty()) return builder  // it's empty, return a default proto
 
+    // otherwise parse the fields
+    val descriptor = plan.descriptor
+    fields@for (fieldPlan in plan.fields) {
       // skip ephemeral fields
-      if (fieldOptions?.ephemeral == true) continue@fields
+      if (fieldPlan.ephemeral) continue@fields
 
-      if (!field.isRepeated) {
-        if (data.containsKey(field.name)) {
-          // extract value, make sure it's not null
-          val dataValue = data[field.name] ?: continue@fields
-          when (type) {
-            Type.GROUP, Type.MESSAGE -> {
-              // it's a singular sub-message field. recurse.
-              val subBuilder = builder.newBuilderForField(field)
-                ?: throw DeserializationError("Unable to resolve message type for property '${field.name}' " +
-                  "on entity '${descriptor.name}'")
-              if (dataValue is Map<*, *>) {
-                // prepare the sub-builder, then attach to the top-level field
-                this.build(subBuilder, dataValue as Map<String, Any>)
-                builder.setField(field, subBuilder.build())
-              } else {
-                // special case: consider timestamps
-                if (field.messageType.fullName == "google.protobuf.Timestamp") {
-                  when (dataValue.javaClass.name) {
-                    // it's a Google Cloud well-known-value (`Timestamp`), for which we have a converter
-                    "com.google.cloud.Timestamp" ->
-                      builder.setField(field, instantFromCloudTimestamp(
-                        dataValue as com.google.cloud.Timestamp))
-
-
-                    // it's a Protobuf well-known-value (`Timestamp`), for which we need no conversion
-                    "google.protobuf.Timestamp" ->
-                      builder.setField(field, dataValue as Timestamp)
-
-
-                    // if it's numeric, it should be a millisecond-resolution Unix epoch timestamp
-                    else -> builder.setField(field, when (dataValue) {
-                      is Int, is Double, is Long -> Timestamp.newBuilder()
-                        .setSeconds(dataValue as Long)
-
-                      // all other types should fail
-                      else ->
-                        throw DeserializationError("Failed to decode timestamp/instant type. Could not determine " +
-                          "native type at field '${field.name}' on entity '${descriptor.name}'.")
-                    }.build())
-                  }
-                } else {
-                  // see if it is annotated as a parent, or a reference, which would explain this state
-                  if (persistenceOptions != null && (
-                      persistenceOptions.type == CoreFieldType.REFERENCE ||
-                        persistenceOptions.type == CoreFieldType.PARENT)) {
-                    // it should be a reference type
-                    if (dataValue.javaClass.name != DocumentReference::class.java.name)
-                      throw DeserializationError("Found non-reference value for reference property.")
-                    val ref = dataValue as DocumentReference
-                    if (ref.parent.parent == null) {
-                      // has no parent, so it's easy. set up a new instance of the key.
-                      val keyInstance = builder.newBuilderForField(field) ?:
-                      throw DeserializationError("Unable to resolve builder for key reference instance.")
-
-                      // find the field to inflate the ID into
-                      var idField: Descriptors.FieldDescriptor? = null
-                      keyFields@for (keyField in keyInstance.descriptorForType.fields) {
-                        if (keyField.options.hasExtension(Datamodel.field)) {
-                          val persistenceOptsForSubfield = keyField.options.getExtension(Datamodel.field)
-                          if (persistenceOptsForSubfield.type == CoreFieldType.ID) {
-                            // found it
-                            idField = keyField
-                            break@keyFields
-                          }
-                        }
-                      }
-                      if (idField == null)
-                        throw DeserializationError("Could not resolve key structure ID field for reference inflate.")
-
-                      // fill the builder at that field with the trimmed value
-                      keyInstance.setField(idField, ref.id)
-                      builder.setField(field, keyInstance.build())
-
-                    } else {
-                      TODO("recursive inflation of references not yet supported")
-                    }
-                  } else {
-                    // dunno why it's not an object
-                    throw DeserializationError("Found non-map value where sub-message value was expected, " +
-                      "in field '${field.name}' on entity '${descriptor.name}'.")
-                  }
-                }
-              }
-            }
+      val field = fieldPlan.descriptor
+      val type = field.type ?: throw DeserializationError("Cannot inflate a field without a type.")
+      val isMessage = fieldPlan.kind == ObjectModelPlan.Kind.MESSAGE || fieldPlan.kind == ObjectModelPlan.Kind.TIMESTAMP
 
-            else -> setSimpleField(type, field, builder, dataValue)
+      if (!fieldPlan.repeated) {
+        if (data.containsKey(fieldPlan.name)) {
+          // extract value, make sure it's not null
+          val dataValue = data[fieldPlan.name] ?: continue@fields
+          if (!isMessage) {
+            setSimpleField(type, field, builder, dataValue)
+          } else if (dataValue is Map<*, *>) {
+            // it's a singular sub-message field. prepare the sub-builder, then attach to the top-level field.
+            val subBuilder = builder.newBuilderForField(field)
+              ?: throw DeserializationError("Unable to resolve message type for property '${field.name}' " +
+                "on entity '${descriptor.name}'")
+            this.build(subBuilder, dataValue as Map<String, Any>, fieldPlan.messagePlan!!)
+            builder.setField(field, subBuilder.build())
+          } else if (fieldPlan.kind == ObjectModelPlan.Kind.TIMESTAMP) {
+            // special case: consider timestamps
+            builder.setField(field, inflateTimestamp(descriptor, field, dataValue))
+          } else if (fieldPlan.role == CoreFieldType.REFERENCE || fieldPlan.role == CoreFieldType.PARENT) {
+            // it is annotated as a parent, or a reference, which explains this state
+            setReference(builder, fieldPlan, dataValue)
+          } else {
+            // dunno why it's not an object
+            throw DeserializationError("Found non-map value where sub-message value was expected, " +
+              "in field '${field.name}' on entity '${descriptor.name}'.")
           }
-        } else if (fieldOptions?.concrete == true && (type == Type.MESSAGE || type == Type.GROUP)) {
+        } else if (fieldPlan.concrete && isMessage) {
           // if it's a concrete record, examine the field name, against the containing one-of name. if the containing
           // one-of name (concrete synthesized name) and the property name match here, it's supposed to be a concrete
           // type, flattened into the map we're currently de-serializing.
@@ -405,53 +673,50 @@ open class ObjectModelDeserializer<Model: Message> protected constructor(
             val subBuilder = builder.newBuilderForField(field)
             subBuilder ?: throw DeserializationError("Unable to resolve message type for concrete property " +
               "'${field.name}' on entity '${descriptor.name}'")
-            this.build(subBuilder, data)
+            this.build(subBuilder, data, fieldPlan.messagePlan!!)
             builder.setField(field, subBuilder.build())
           }
-        } else if (fieldOptions?.required == true) {
+        } else if (fieldPlan.required) {
           throw DeserializationError("Unable to resolve required field '${field.name}' on message " +
             "'${field.containingType.fullName}'.")
         }
       } else {
         // field is repeated: try to grab a list of values, decode for each one
-        val dataList = data[field.name] ?: continue@fields
+        val dataList = data[fieldPlan.name] ?: continue@fields
         if (type == Type.ENUM) {
           // handle special case: repeated enums
           setRepeatedEnum(descriptor, field, builder, dataList)
-        } else {
+        } else if (dataList is List<*> && dataList.isNotEmpty()) {
           // only operate on lists with values
-          if (dataList is List<*> && dataList.isNotEmpty()) {
-            when (type) {
-              Type.GROUP, Type.MESSAGE -> {
-                val submessageList: ArrayList<Message> = ArrayList(dataList.size)
-
-                // make a new list of decoded messages
-                var pos = 0
-                for (subObj in dataList) {
-                  pos += 1
-
-                  if (subObj is Map<*, *>) {
-                    // reset field for next round
-                    val subBuilder = builder.newBuilderForField(field) ?:
-                    throw DeserializationError("Unable to resolve builder for field '${field.name}' on " +
-                      "entity '${descriptor.name}'.")
-                    this.build(subBuilder, subObj as Map<String, Any>)
-                    submessageList.add(subBuilder.build())
-
-                  } else {
-                    throw DeserializationError("Cannot identify type for message in repeated field " +
-                      "'${field.name}' at position '$pos' on entity " +
-                      "'${descriptor.name}'.")
-                  }
-                }
-
-                if (submessageList.isNotEmpty())
-                  builder.setField(field, submessageList)
+          if (isMessage) {
+            val submessageList: ArrayList<Message> = ArrayList(dataList.size)
+            val subPlan = fieldPlan.messagePlan!!
+
+            // make a new list of decoded messages
+            var pos = 0
+            for (subObj in dataList) {
+              pos += 1
+
+              if (subObj is Map<*, *>) {
+                // reset field for next round
+                val subBuilder = builder.newBuilderForField(field) ?:
+                throw DeserializationError("Unable to resolve builder for field '${field.name}' on " +
+                  "entity '${descriptor.name}'.")
+                this.build(subBuilder, subObj as Map<String, Any>, subPlan)
+                submessageList.add(subBuilder.build())
+
+              } else {
+                throw DeserializationError("Cannot identify type for message in repeated field " +
+                  "'${field.name}' at position '$pos' on entity " +
+                  "'${descriptor.name}'.")
               }
-              else ->
-                // set as regular repeated field
-                setRepeatedField(type, field, builder, dataList)
             }
+
+            if (submessageList.isNotEmpty())
+              builder.setField(field, submessageList)
+          } else {
+            // set as regular repeated field
+            setRepeatedField(type, field, builder, dataList)
           }
         }
       }
@@ -468,4 +733,20 @@ open class ObjectModelDeserializer<Model: Message> protected constructor(
     build(builder, input)
     return builder.build() as Model
   }
+
+  /**
+   * Inflate a model instance directly from a Firestore document.
+   *
+   * @param document Document to inflate.
+   * @return Inflated model instance.
+   * @throws ModelInflateException If the document cannot be decoded as the model.
+   */
+  @Nonnull
+  @Suppress("UNCHECKED_CAST")
+  @Throws(ModelInflateException::class)
+  fun inflate(@Nonnull document: Document): Model {
+    val builder = defaultInstance.newBuilderForType()
+    build(builder, document)
+    return builder.build() as Model
+  }
 }
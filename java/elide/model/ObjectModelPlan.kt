@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model
+
+import tools.elide.core.FieldType as CoreFieldType
+import com.google.protobuf.DescriptorProtos.FieldOptions
+import com.google.protobuf.Descriptors.Descriptor
+import com.google.protobuf.Descriptors.FieldDescriptor
+import com.google.protobuf.Descriptors.FieldDescriptor.Type as FieldType
+import com.google.protobuf.ExtensionLite
+import tools.elide.core.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.Nonnull
+import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.ThreadSafe
+
+
+/**
+ * Compiled plan for converting instances of one model type to and from object maps, as used by
+ * [ObjectModelSerializer]. A plan holds everything about a [Descriptor] that does not depend on serializer settings:
+ * the field list, each field's resolved annotations, the kind of value each field holds, and the fields which carry
+ * the model's ID and parent.
+ *
+ * Resolving these details means reading annotation extensions from descriptor options, which is far more expensive
+ * than the serialization work itself. Plans are compiled once per descriptor and cached for the life of the process;
+ * descriptors are immutable, so a cached plan never goes stale.
+ */
+@Immutable
+@ThreadSafe
+class ObjectModelPlan private constructor(
+  /** Descriptor this plan was compiled for. */
+  val descriptor: Descriptor,
+
+  /** Model-level persistence annotation (`Datamodel.db`), if any. */
+  val persistence: PersistenceOptions?) {
+  /** Kind of value held by a field, which selects the routine used to serialize it. */
+  enum class Kind {
+    /** Integral numbers of any width or encoding. */
+    INTEGER,
+
+    /** Floating-point numbers. */
+    FLOATING,
+
+    /** Boolean values. */
+    BOOL,
+
+    /** Strings. */
+    STRING,
+
+    /** Raw bytes, which are Base64-encoded when serialized. */
+    BYTES,
+
+    /** Enumerated values. */
+    ENUM,
+
+    /** Singular `google.protobuf.Timestamp` sub-messages, which are serialized as temporal instants. */
+    TIMESTAMP,
+
+    /** All other sub-messages, singular or repeated. */
+    MESSAGE,
+
+    /** Types which cannot be serialized. */
+    UNSUPPORTED,
+  }
+
+  /**
+   * Compiled details for one field of a model.
+   *
+   * @param descriptor Descriptor for the field.
+   */
+  @Immutable
+  class Field internal constructor(@Nonnull val descriptor: FieldDescriptor) {
+    /** Name of the field, as it appears in serialized data. */
+    val name: String = descriptor.name
+
+    /** Kind of value held by the field. */
+    val kind: Kind = kindOf(descriptor)
+
+    /** Whether the field is repeated. */
+    val repeated: Boolean = descriptor.isRepeated
+
+    /** Datapoint annotation (`Datamodel.opts`) on the field, if any. */
+    val options: DatapointOptions? = extension(descriptor, Datamodel.opts)
+
+    /** Persistence annotation (`Datamodel.field`) on the field, if any. */
+    val persistence: FieldPersistenceOptions? = extension(descriptor, Datamodel.field)
+
+    /** Collection annotation (`Datamodel.collection`) on the field, if any. */
+    val collection: SubmessageOptions? = extension(descriptor, Datamodel.collection)
+
+    /** Whether the field is ephemeral, and so never serialized. */
+    val ephemeral: Boolean = options?.ephemeral == true
+
+    /** Whether the field is required to carry a value. */
+    val required: Boolean = options?.required == true
+
+    /** Whether the field holds a concrete type for a generic parent. */
+    val concrete: Boolean = options?.concrete == true
+
+    /** Whether the field is serialized even when it holds a default value. */
+    val explicit: Boolean = persistence?.explicit == true
+
+    /** Persistence role of the field (for instance, `ID` or `REFERENCE`), if annotated. */
+    val role: CoreFieldType? = persistence?.type
+
+    /**
+     * Collection mode for a sub-message field: taken from the field's collection annotation, or else the sub-message
+     * type's persistence annotation, or else `NESTED`. Always `NESTED` for other fields.
+     */
+    val collectionMode: CollectionMode = when {
+      descriptor.type != FieldType.MESSAGE && descriptor.type != FieldType.GROUP -> CollectionMode.NESTED
+      collection != null -> collection.mode
+      descriptor.messageType.options.hasExtension(Datamodel.db) ->
+        descriptor.messageType.options.getExtension(Datamodel.db).mode
+      else -> CollectionMode.NESTED
+    }
+
+    /** Plan for the field's sub-message type, if it holds a sub-message. Resolved on first use. */
+    val messagePlan: ObjectModelPlan? by lazy {
+      if (descriptor.type == FieldType.MESSAGE || descriptor.type == FieldType.GROUP) {
+        forDescriptor(descriptor.messageType)
+      } else {
+        null
+      }
+    }
+  }
+
+  /** Plan for each field on the model, in declaration order. */
+  val fields: List<Field> = descriptor.fields.map { Field(it) }
+
+  /**
+   * Field holding the model's ID, if one is annotated. This is either a string field on the model itself, or a field
+   * on the model's key (see [idKeyField]).
+   */
+  val idField: FieldDescriptor?
+
+  /** Key field which holds [idField], or `null` if the ID lives directly on the model. */
+  val idKeyField: FieldDescriptor?
+
+  /** Field annotated as the model's `PARENT`, if it holds a string `ID` property of its own. */
+  val parentField: FieldDescriptor?
+
+  /** String `ID` property on the type held by [parentField], if any. */
+  val parentIdField: FieldDescriptor?
+
+  init {
+    // resolve the ID field, which is either a string field on the model, or a property on an annotated key.
+    var id: FieldDescriptor? = null
+    var idKey: FieldDescriptor? = null
+    idScan@ for (field in fields) {
+      when (field.descriptor.type) {
+        FieldType.STRING -> if (field.role == CoreFieldType.ID) {
+          id = field.descriptor
+          break@idScan
+        }
+        FieldType.GROUP, FieldType.MESSAGE -> if (field.role == CoreFieldType.KEY) {
+          val keyId = field.descriptor.messageType.fields.firstOrNull {
+            extension(it, Datamodel.field)?.type == CoreFieldType.ID
+          }
+          if (keyId != null) {
+            id = keyId
+            idKey = field.descriptor
+            break@idScan
+          }
+        }
+        else -> continue@idScan
+      }
+    }
+    idField = id
+    idKeyField = idKey
+
+    // resolve the parent field, and the ID property on the parent's type.
+    val parent = fields.firstOrNull {
+      it.descriptor.type == FieldType.MESSAGE && it.role == CoreFieldType.PARENT
+    }
+    val parentId = parent?.descriptor?.messageType?.fields?.firstOrNull {
+      it.type == FieldType.STRING && extension(it, Datamodel.field)?.type == CoreFieldType.ID
+    }
+    parentField = if (parentId != null) parent.descriptor else null
+    parentIdField = parentId
+  }
+
+  companion object {
+    /** Compiled plans, by descriptor. */
+    private val plans = ConcurrentHashMap<Descriptor, ObjectModelPlan>()
+
+    /**
+     * Resolve the plan for a model type, compiling it if this is the first time the type has been seen. Plans for
+     * sub-message types are compiled lazily, when first used.
+     *
+     * @param descriptor Descriptor for the model type.
+     * @return Compiled plan for the model type.
+     */
+    @JvmStatic
+    fun forDescriptor(@Nonnull descriptor: Descriptor): ObjectModelPlan {
+      return plans.computeIfAbsent(descriptor) {
+        ObjectModelPlan(it, if (it.options.hasExtension(Datamodel.db)) it.options.getExtension(Datamodel.db) else null)
+      }
+    }
+
+    /**
+     * Resolve the kind of value held by a field.
+     *
+     * @param field Field to resolve a kind for.
+     * @return Kind of value held by the field.
+     */
+    private fun kindOf(field: FieldDescriptor): Kind = when (field.type) {
+      FieldType.INT32, FieldType.UINT32, FieldType.SINT32,
+      FieldType.INT64, FieldType.UINT64, FieldType.SINT64,
+      FieldType.FIXED32, FieldType.FIXED64, FieldType.SFIXED32, FieldType.SFIXED64 -> Kind.INTEGER
+      FieldType.FLOAT, FieldType.DOUBLE -> Kind.FLOATING
+      FieldType.BOOL -> Kind.BOOL
+      FieldType.STRING -> Kind.STRING
+      FieldType.BYTES -> Kind.BYTES
+      FieldType.ENUM -> Kind.ENUM
+      FieldType.GROUP, FieldType.MESSAGE ->
+        if (!field.isRepeated && field.messageType.fullName == "google.protobuf.Timestamp") {
+          Kind.TIMESTAMP
+        } else {
+          Kind.MESSAGE
+        }
+      else -> Kind.UNSUPPORTED
+    }
+
+    /**
+     * Read an annotation extension from a field's options, if present.
+     *
+     * @param field Field to read the annotation from.
+     * @param ext Extension to read.
+     * @return Annotation value, or `null` if the field is not annotated.
+     */
+    private fun <T> extension(field: FieldDescriptor, ext: ExtensionLite<FieldOptions, T>): T? {
+      return if (field.options.hasExtension(ext)) field.options.getExtension(ext) else null
+    }
+  }
+}
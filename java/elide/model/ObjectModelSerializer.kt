@@ -14,8 +14,11 @@ package elide.model
 
 import tools.elide.core.FieldType as CoreFieldType
 import com.google.firestore.v1.ArrayValue
+import com.google.firestore.v1.Document
+import com.google.firestore.v1.DocumentMask
 import com.google.firestore.v1.MapValue
 import com.google.firestore.v1.Value
+import com.google.firestore.v1.Write
 import com.google.protobuf.*
 import com.google.protobuf.Descriptors.*
 import com.google.protobuf.Descriptors.FieldDescriptor.Type as FieldType
@@ -62,8 +65,11 @@ class ObjectModelSerializer<Model : Message>
     /** Temporal instant serialization mode.  */
     @field:Nonnull @param:Nonnull private val instantMode: InstantSerializeMode)
   : ModelSerializer<Model, Map<String, *>> {
-  /** @return Empty serialized object. */
-  private fun serializedObject(): SerializedModel = SerializedModel.factory()
+  /**
+   * @param descriptor Type of model which will be serialized.
+   * @return Empty serialized object, in compact form for the provided model type.
+   */
+  private fun serializedObject(descriptor: Descriptor): SerializedModel = SerializedModel.compact(descriptor)
 
   /**
    * Generate a full referential database path, given the concrete type and document ID to reference. This variant
@@ -151,24 +157,22 @@ class ObjectModelSerializer<Model : Message>
    * @param data Data value to wrap.
    * @return Value builder, pre-filled with the data.
    */
-  private fun <T> wrapValue(value: Value.Builder, type: FieldType, data: T): Value.Builder {
+  private fun wrapValue(value: Value.Builder, type: FieldType, data: Any?): Value.Builder {
     return when (type) {
       FieldType.INT32, FieldType.UINT32, FieldType.SINT32, FieldType.INT64,
       FieldType.UINT64, FieldType.SINT64, FieldType.FIXED32, FieldType.FIXED64,
       FieldType.SFIXED32, FieldType.SFIXED64 -> {
-        val decoded = data as? Long
-        if (decoded == null) {
+        if (data !is Number) {
           null
         } else {
-          value.setIntegerValue(decoded)
+          value.setIntegerValue(data.toLong())
         }
       }
       FieldType.FLOAT, FieldType.DOUBLE -> {
-        val decoded = data as? Double
-        if (decoded == null) {
+        if (data !is Number) {
           null
         } else {
-          value.setDoubleValue(decoded)
+          value.setDoubleValue(data.toDouble())
         }
       }
       FieldType.ENUM -> {
@@ -192,11 +196,10 @@ class ObjectModelSerializer<Model : Message>
         }
       }
       FieldType.BOOL -> {
-        val decoded = data as? Boolean
-        if (decoded == null) {
+        if (data !is Boolean) {
           null
         } else {
-          value.setBooleanValue(decoded)
+          value.setBooleanValue(data)
         }
       }
       FieldType.STRING -> {
@@ -326,6 +329,76 @@ class ObjectModelSerializer<Model : Message>
     }
   }
 
+  /**
+   * Determine whether a singular primitive field should be withheld from serialized output, because it holds a default
+   * value (or a value matching the base record), and defaults are not being included.
+   *
+   * @param proto Message record to extract from.
+   * @param base Base record to compare to (optional).
+   * @param field Singular primitive field to check.
+   * @return Whether the field's value should be withheld.
+   */
+  private fun withholdPrimitive(proto: Message, base: Message?, field: FieldDescriptor): Boolean {
+    return !includeDefaults && !proto.hasField(field) && (base == null || base.getField(field) == field.defaultValue)
+  }
+
+  /**
+   * Extract a singular integer field of any width or encoding, and write it directly to the provided value builder as
+   * an integer. Default values are withheld (by writing a null value), unless defaults are being included.
+   *
+   * @param proto Message record to extract from.
+   * @param base Base record to compare to (optional).
+   * @param field Singular integer field to extract.
+   * @param builder Field value builder.
+   * @return Whether the value was withheld, in which case a null value was written.
+   */
+  private fun extractInteger(proto: Message, base: Message?, field: FieldDescriptor, builder: Value.Builder): Boolean {
+    if (withholdPrimitive(proto, base, field)) {
+      builder.setNullValue(NullValue.NULL_VALUE)
+      return true
+    }
+    builder.setIntegerValue((proto.getField(field) as Number).toLong())
+    return false
+  }
+
+  /**
+   * Extract a singular floating-point field, and write it directly to the provided value builder as a double. Default
+   * values are withheld (by writing a null value), unless defaults are being included.
+   *
+   * @param proto Message record to extract from.
+   * @param base Base record to compare to (optional).
+   * @param field Singular floating-point field to extract.
+   * @param builder Field value builder.
+   * @return Whether the value was withheld, in which case a null value was written.
+   */
+  private fun extractFloating(proto: Message, base: Message?, field: FieldDescriptor, builder: Value.Builder): Boolean {
+    if (withholdPrimitive(proto, base, field)) {
+      builder.setNullValue(NullValue.NULL_VALUE)
+      return true
+    }
+    builder.setDoubleValue((proto.getField(field) as Number).toDouble())
+    return false
+  }
+
+  /**
+   * Extract a singular boolean field, and write it directly to the provided value builder. Default values are withheld
+   * (by writing a null value), unless defaults are being included.
+   *
+   * @param proto Message record to extract from.
+   * @param base Base record to compare to (optional).
+   * @param field Singular boolean field to extract.
+   * @param builder Field value builder.
+   * @return Whether the value was withheld, in which case a null value was written.
+   */
+  private fun extractBoolean(proto: Message, base: Message?, field: FieldDescriptor, builder: Value.Builder): Boolean {
+    if (withholdPrimitive(proto, base, field)) {
+      builder.setNullValue(NullValue.NULL_VALUE)
+      return true
+    }
+    builder.setBooleanValue(proto.getField(field) as Boolean)
+    return false
+  }
+
   /**
    * Extract an enum field value, encoding it as directed by enum encoding settings listed above. Enums are either
    * serialized as their numeric ID, or their string name.
@@ -447,12 +520,8 @@ class ObjectModelSerializer<Model : Message>
    */
   @Suppress("MemberVisibilityCanBePrivate")
   fun collectionPath(descriptor: Descriptor): String {
-    val protoObj = descriptor.toProto()
-    if (protoObj.hasOptions() && protoObj.options.hasExtension(Datamodel.db)) {
-      // process settings
-      val dbSettings = protoObj.options.getExtension(Datamodel.db)
-      return dbSettings.path
-    }
+    val dbSettings = ObjectModelPlan.forDescriptor(descriptor).persistence
+    if (dbSettings != null) return dbSettings.path
     throw IllegalStateException("Failed to calculate collection path for type: '${descriptor.name}'.")
   }
 
@@ -463,48 +532,26 @@ class ObjectModelSerializer<Model : Message>
    * the field that contained the ID.
    *
    * @param proto Proto message to scan on.
-   * @param fields List of fields to scan through.
+   * @param plan Compiled plan for the message, which locates the parent and ID fields.
    * @return Pair of the collection path segment name for the parent, and the ID value, or `null` for both if a parent
    *         could not be resolved.
    */
   private fun scanForParent(proto: Message,
-                            fields: List<FieldDescriptor>):
+                            plan: ObjectModelPlan):
     Pair<Pair<String?, String?>, Pair<Message?, FieldDescriptor?>> {
-    parentScan@ for (field in fields) {
-      if (field.type == FieldType.MESSAGE) {
-        val fieldProto = field.toProto()
-        if (fieldProto.options.hasExtension(Datamodel.field)) {
-          // potentially annotated with `PARENT`
-          val fieldInfo = fieldProto.options.getExtension(Datamodel.field)
-          if (fieldInfo != null && fieldInfo.type == CoreFieldType.PARENT) {
-            // we found the parent
-            parentIdScan@ for (subfield in field.messageType.fields) {
-              if (subfield.type == FieldType.STRING) {
-                // potentially a parent ID
-                val subfieldProto = subfield.toProto()
-                if (subfieldProto.options.hasExtension(Datamodel.field)) {
-                  val subfieldInfo = subfieldProto.options.getExtension(
-                    Datamodel.field)
-                  if (subfieldInfo != null && subfieldInfo.type == CoreFieldType.ID) {
-                    // found it
-                    val idContainer = (proto.getField(field) as? Message)
-                    val idValue = idContainer?.getField(subfield) as? String ?:
-                      throw ModelSerializer.SerializationError("Cannot serialize sub-write with missing parent ID.")
-                    val collectionPath = this.collectionPath(field.messageType)
-                    if (collectionPath.isBlank() || collectionPath.isEmpty() ||
-                      idValue.isBlank() || idValue.isEmpty())
-                        throw ModelSerializer.SerializationError("Cannot serialize sub-write with empty parent ID.")
-                    return (collectionPath to idValue) to (idContainer to subfield)
-                  }
-                }
-              }
-            }
-            break@parentScan
-          }
-        }
-      }
-    }
-    return null to null to (null to null)
+    val field = plan.parentField
+    val subfield = plan.parentIdField
+    if (field == null || subfield == null)
+      return null to null to (null to null)
+
+    val idContainer = (proto.getField(field) as? Message)
+    val idValue = idContainer?.getField(subfield) as? String ?:
+      throw ModelSerializer.SerializationError("Cannot serialize sub-write with missing parent ID.")
+    val collectionPath = this.collectionPath(field.messageType)
+    if (collectionPath.isBlank() || collectionPath.isEmpty() ||
+      idValue.isBlank() || idValue.isEmpty())
+        throw ModelSerializer.SerializationError("Cannot serialize sub-write with empty parent ID.")
+    return (collectionPath to idValue) to (idContainer to subfield)
   }
 
   /**
@@ -513,74 +560,25 @@ class ObjectModelSerializer<Model : Message>
    * otherwise null in each case or where things could not be found.
    *
    * @param proto Proto message to scan on.
-   * @param fields Fields to look in for the annotation.
+   * @param plan Compiled plan for the message, which locates the ID field.
    * @return Pair of the value in the field, to a pair of the matching message and descriptor, as applicable.
    */
   private fun scanForIdProperty(proto: Message,
-                                fields: List<FieldDescriptor>):
+                                plan: ObjectModelPlan):
     Pair<String?, Pair<Message?, FieldDescriptor?>> {
-    var idField: FieldDescriptor? = null
-    var idValue: String? = null
-    var idEntity: Message? = proto
-
-    idScan@ for (field in fields) {
-      when (field.type) {
-        FieldType.STRING -> {
-          val fieldProto = field.toProto()
-          if (fieldProto.options.hasExtension(Datamodel.field)) {
-            // potentially an ID field
-            val fieldInfo = fieldProto.options.getExtension(Datamodel.field)
-            if (fieldInfo != null && fieldInfo.type == CoreFieldType.ID) {
-              idField = field
-              idEntity = proto
-
-              val (_, extractedIdValue) = extractValue<String>(idEntity, null, idField)
-              idValue = extractedIdValue
-              break@idScan
-            }
-          }
-        }
-        FieldType.GROUP, FieldType.MESSAGE -> {
-          val fieldProto = field.toProto()
-
-          // special case: is this a key or ID field?
-          if (fieldProto.options.hasExtension(Datamodel.field)) {
-            val fieldInfo = fieldProto.options.getExtension(Datamodel.field)
-            when (fieldInfo.type) {
-              CoreFieldType.KEY -> {
-                // a sub-property on this message type is this item's ID field
-                val keyType = field.messageType
-
-                for (subfield in keyType.fields) {
-                  val subfieldProto = subfield.toProto()
-                  if (subfieldProto != null
-                    && subfieldProto.hasOptions()
-                    && subfieldProto.options.hasExtension(Datamodel.field)) {
-                    // it has some kind of field annotation
-                    val subfieldInfo = subfieldProto.options.getExtension(
-                      Datamodel.field)
-                    if (subfieldInfo != null && subfieldInfo.type == CoreFieldType.ID) {
-                      // we have an ID property
-                      idField = subfield
-                      val (_, extractedIdEntity) = extractValue<Message>(proto, null, field)
-                      if (extractedIdEntity != null) {
-                        idEntity = extractedIdEntity
-
-                        val (_, extractedIdValue) = extractValue<String>(idEntity, null, idField)
-                        idValue = extractedIdValue
-                      }
-                      break@idScan
-                    }
-                  }
-                }
-              }
-              else -> continue@idScan  // other fields are not interesting in this case
-            }
-          }
-        }
-        else -> continue@idScan  // other fields are not interesting in this case
-      }
+    val idField = plan.idField ?: return null to (proto to null)
+    val keyField = plan.idKeyField
+    if (keyField == null) {
+      // the ID lives directly on the message
+      val (_, idValue) = extractValue<String>(proto, null, idField)
+      return idValue to (proto to idField)
     }
+
+    // the ID lives on the message's key
+    val (_, idEntity) = extractValue<Message>(proto, null, keyField)
+    if (idEntity == null)
+      return null to (proto to idField)
+    val (_, idValue) = extractValue<String>(idEntity, null, idField)
     return idValue to (idEntity to idField)
   }
 
@@ -598,7 +596,7 @@ class ObjectModelSerializer<Model : Message>
                                         immediateParentPath: String): String {
     // scan for parent property
     val (values, coordinates) = this.scanForParent(
-      parent, parentDescriptor.fields)
+      parent, ObjectModelPlan.forDescriptor(parentDescriptor))
     val (prefix, idValue) = values
     val (container, idField) = coordinates
 
@@ -627,7 +625,7 @@ class ObjectModelSerializer<Model : Message>
                                      effectiveId: String? = null): Pair<String, String> {
     val path = this.collectionPath(descriptor)
     val (values, coordinates) = this.scanForParent(
-      container, descriptor.fields)
+      container, ObjectModelPlan.forDescriptor(descriptor))
     val (parentPrefix, parentId) = values
     val (subContainer, subField) = coordinates
 
@@ -720,20 +718,18 @@ class ObjectModelSerializer<Model : Message>
   /**
    * Given an entity, and either a nested or root context, resolve a write operation to persist it.
    *
-   * @param descriptor Descriptor for the model we are resolving a write for.
-   * @param descriptorProto Pre-fetched proto version of the descriptor.
+   * @param plan Compiled plan for the model we are resolving a write for.
    * @param data Serialized data object which we are building.
-   * @param field Descriptor for the field we are resolving a write for, as applicable.
+   * @param field Plan for the field we are resolving a write for, as applicable.
    * @param id Resolved ID value for the record being written.
    * @param nested Whether the record is a nested entity.
    * @param parentWrite Parent write that governs the scope for this one, if applicable.
    * @param disposition Disposition (execution strategy) for the resulting write.
    * @return Write operation characterized by the provided data.
    */
-  private fun resolveWrite(descriptor: Descriptor,
-                           descriptorProto: DescriptorProtos.DescriptorProto,
+  private fun resolveWrite(plan: ObjectModelPlan,
                            data: SerializedModel,
-                           field: FieldDescriptor?,
+                           field: ObjectModelPlan.Field?,
                            id: String,
                            nested: Boolean,
                            parentWrite: CollapsedMessage.Operation?,
@@ -743,43 +739,33 @@ class ObjectModelSerializer<Model : Message>
     } else {
       CollectionMode.GROUP
     }
-    val fieldProto = field?.toProto()
+    val descriptor = plan.descriptor
+    val fieldDescriptor = field?.descriptor
     val keyPresent = ModelMetadata.keyField(descriptor).isPresent
 
     // resolve storage mode for this object, and storage path (pluralized + lower-cased message name)
-    val (storageMode: CollectionMode, storagePath: String?) = if (
-      descriptorProto.hasOptions() && descriptorProto.options.hasExtension(Datamodel.db)) {
-      val extType = ModelMetadata.modelAnnotation(descriptor, Datamodel.db, false)
-
-      if (extType.isPresent) {
-        val ext = extType.get()
-        if (ext.path.isEmpty()) {
-          resolvePersistenceFromKeyOrModel(descriptor, ext, field, nested, defaultMode)
-        } else {
-          // use the explicit path on the model instance
-          ext.mode to ext.path
-        }
+    val ext = plan.persistence
+    val (storageMode: CollectionMode, storagePath: String?) = if (ext != null) {
+      if (ext.path.isEmpty()) {
+        resolvePersistenceFromKeyOrModel(descriptor, ext, fieldDescriptor, nested, defaultMode)
       } else {
-        (if (nested) {
-          CollectionMode.NESTED
-        } else {
-          CollectionMode.GROUP
-        }) to generateDefaultWritePath(descriptor, nested, field, defaultMode)
+        // use the explicit path on the model instance
+        ext.mode to ext.path
       }
     } else if (keyPresent) {
-      resolvePersistenceFromKeyOrModel(descriptor, null, field, nested, defaultMode)
+      resolvePersistenceFromKeyOrModel(descriptor, null, fieldDescriptor, nested, defaultMode)
 
-    } else if (fieldProto != null && fieldProto.options.hasExtension(Datamodel.collection)) {
+    } else if (field?.collection != null) {
       // the field has an extension on it
-      val extCollection = fieldProto.options.getExtension(Datamodel.collection)
+      val extCollection = field.collection
       extCollection.mode to if (extCollection.path.isEmpty()) {
         // generate a default path
-        generateDefaultWritePath(descriptor, nested, field, extCollection.mode)
+        generateDefaultWritePath(descriptor, nested, fieldDescriptor, extCollection.mode)
       } else {
         extCollection.path
       }
     } else {
-      defaultMode to generateDefaultWritePath(descriptor, nested, field, defaultMode)
+      defaultMode to generateDefaultWritePath(descriptor, nested, fieldDescriptor, defaultMode)
     }
 
     // append parent prefix if we have one
@@ -810,9 +796,7 @@ class ObjectModelSerializer<Model : Message>
    *
    * @param proto
    * @param base
-   * @param field
-   * @param fieldProto
-   * @param fieldOptions
+   * @param fieldPlan
    * @param builder
    * @param dataMap
    * @param skipCollections
@@ -820,23 +804,14 @@ class ObjectModelSerializer<Model : Message>
    */
   private fun extractSubmessage(proto: Message,
                                 base: Message?,
-                                field: FieldDescriptor,
-                                fieldProto: DescriptorProtos.FieldDescriptorProto,
-                                fieldOptions: DatapointOptions?,
+                                fieldPlan: ObjectModelPlan.Field,
                                 builder: Value.Builder,
-                                dataMap: SerializedModel,
+                                dataMap: FieldSink,
                                 skipCollections: Boolean): Pair<Boolean, Value.Builder?> {
-    // if the sub-message is a temporal instance, and not repeated, it's a special case. set it directly.
-    if (!field.isRepeated && field.messageType.fullName == "google.protobuf.Timestamp")
-      return serializeInstant(proto, base, field, builder)
+    val field = fieldPlan.descriptor
 
     // check for other options that might affect serialization
-    val fieldPersistenceOpts: FieldPersistenceOptions? = if (
-      !field.isRepeated && fieldProto.options.hasExtension(Datamodel.field)) {
-      fieldProto.options.getExtension(Datamodel.field)
-    } else {
-      null
-    }
+    val fieldPersistenceOpts: FieldPersistenceOptions? = if (!field.isRepeated) fieldPlan.persistence else null
 
     if ((fieldPersistenceOpts?.type == CoreFieldType.REFERENCE ||
          fieldPersistenceOpts?.type == CoreFieldType.PARENT) &&
@@ -845,7 +820,7 @@ class ObjectModelSerializer<Model : Message>
       val subProto = proto.getField(field) as? Message ?:
         throw ModelSerializer.SerializationError("Unable to extract reference sub-message.")
       val (idValue, coordinates) = this.scanForIdProperty(
-        subProto, field.messageType.fields)
+        subProto, ObjectModelPlan.forDescriptor(field.messageType))
       val (idContainer, idField) = coordinates
 
       return if (idValue == null || idContainer == null || idField == null) {
@@ -861,27 +836,16 @@ class ObjectModelSerializer<Model : Message>
 
     // if we're told to skip collections, scan for non-NESTED annotations first
     if (skipCollections) {
-      // first things first: scan both the proto and the field for collection settings. if any collection setting other
-      // than `NESTED` is found, skip this field, because we've been told to do that.
-      val fieldTypeProto = field.messageType.toProto()
-      val mode: CollectionMode = if (
-        fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.collection)) {
-        // field annotation overrides, because it has stronger context
-        fieldProto.options.getExtension(Datamodel.collection).mode
-      } else if (fieldTypeProto.hasOptions() && fieldTypeProto.options.hasExtension(Datamodel.db)) {
-        // if there's no field annotation, check the model
-        fieldTypeProto.options.getExtension(Datamodel.db).mode
-      } else {
-        CollectionMode.NESTED  // default mode
-      }
-      if (mode != CollectionMode.NESTED)
+      // first things first: consult the collection mode resolved for the field (the field annotation overrides the
+      // model's). if any collection setting other than `NESTED` is found, skip this field, because we've been told to.
+      if (fieldPlan.collectionMode != CollectionMode.NESTED)
         // skip this object, it's not a nested write. we do that by adding a null placeholder.
         return true to builder.setNullValue(NullValue.NULL_VALUE)
     }
 
     // handle as a regular sub-message... which may be repeated
     if (field.isRepeated) {
-      if (fieldOptions?.concrete == true)
+      if (fieldPlan.concrete)
         throw ModelSerializer.SerializationError("Cannot annotate repeated nested field with `concrete`.")
 
       // extract repeated messages
@@ -904,10 +868,9 @@ class ObjectModelSerializer<Model : Message>
 
           // we have a list with values
           for (message in extractedValue) {
-            // it's eligible to be included
+            // it's eligible to be included, so encode it straight into a struct
             val subStruct = MapValue.newBuilder()
-            val subMap: SerializedModel = this.serialize(message, base = base)
-            subStruct.putAllFields(subMap)
+            serializeInto(message, base, false, false, MapValueSink(subStruct))
 
             // add it to the outer list value
             objectList.addValues(Value.newBuilder().setMapValue(subStruct))
@@ -923,14 +886,14 @@ class ObjectModelSerializer<Model : Message>
         // if it's not there, or it's a default instance and we shouldn't include those, just return as null
         true to builder.setNullValue(NullValue.NULL_VALUE)
       } else {
-        val subMap: SerializedModel = this.serialize(extractedValue)
-        if (fieldOptions?.concrete == true) {
+        if (fieldPlan.concrete) {
+          val subMap: SerializedModel = this.serialize(extractedValue)
           // the field is "concrete," for an outer generic. this means we are tasked with applying each serialized field
           // value to the upper data map, for our parent object, rather than building a struct, which is nested under a
           // regular property (like a JSON object).
           val errorKeys = TreeSet<String>()
           subMap.entries.forEach { entry ->
-            if (dataMap.containsKey(entry.key)) {
+            if (dataMap.has(entry.key)) {
               if (entry.key == "key" && entry.value == dataMap[entry.key]) {
                 // they are keys and they are identical, so it's fine.
                 return@forEach
@@ -958,7 +921,9 @@ class ObjectModelSerializer<Model : Message>
         } else {
           // it's a normal struct that is eligible to be included in the parent's payload. generate it, and return it,
           // so  the parent can choose whether to include it.
-          false to builder.setMapValue(MapValue.newBuilder().putAllFields(subMap))
+          val subStruct = MapValue.newBuilder()
+          serializeInto(extractedValue, null, false, false, MapValueSink(subStruct))
+          false to builder.setMapValue(subStruct)
         }
       }
     }
@@ -983,68 +948,219 @@ class ObjectModelSerializer<Model : Message>
                 collection: Boolean = false,
                 concrete: String? = null,
                 id: Pair<String, Pair<Message?, FieldDescriptor?>>? = null): SerializedModel {
-    val descriptor = proto.descriptorForType
-    val fields = descriptor.fields
-    val dataMap = serializedObject()
-
-    // for each field, serialize raw and put it into the map
-    fields@ for (field in fields) {
-      val value = Value.newBuilder()
-
-      // resolve field options, if any
-      val fieldProto = field.toProto()
-      val fieldOptions = if (fieldProto.hasOptions() && fieldProto.options.hasExtension(
-          Datamodel.opts)) {
-        fieldProto.options.getExtension(Datamodel.opts)
-      } else {
-        null
-      }
+    val dataMap = serializedObject(proto.descriptorForType)
+    serializeInto(proto, base, skipCollections, collection, MapSink(dataMap))
+    return dataMap
+  }
 
-      // persistence options for the field
-      val persistenceOptions = if (
-        fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.field)) {
-        fieldProto.options.getExtension(Datamodel.field)
-      } else {
-        null
+  /**
+   * Encode a model instance directly into a Firestore [Document], without building an intermediate [SerializedModel].
+   * Fields are encoded exactly as [serialize] would encode them, and nested records are encoded straight into their
+   * parent's struct values.
+   *
+   * @param proto Model instance to encode.
+   * @param name Full resource name for the document.
+   * @param builder Document builder to encode into. It is cleared first, so builders may be re-used across calls.
+   * @return Encoded document.
+   */
+  fun encodeDocument(proto: Message, name: String, builder: Document.Builder = Document.newBuilder()): Document {
+    builder.clear().setName(name)
+    serializeInto(proto, null, false, false, DocumentSink(builder))
+    return builder.build()
+  }
+
+  /**
+   * Encode a model instance directly into a Firestore [Write]. Without a [base] record, the write replaces the entire
+   * document. With one, only fields which differ from [base] are encoded (see [serializeDelta]), and the write carries
+   * an update mask listing their paths.
+   *
+   * @param proto Model instance to encode.
+   * @param name Full resource name for the document.
+   * @param base Base snapshot of the same model, to encode a partial update against (optional).
+   * @return Encoded write.
+   */
+  fun encodeWrite(proto: Message, name: String, base: Message? = null): Write {
+    val write = Write.newBuilder()
+    val document = write.updateBuilder.setName(name)
+    if (base == null) {
+      serializeInto(proto, null, false, false, DocumentSink(document))
+    } else {
+      if (base.descriptorForType != proto.descriptorForType)
+        throw ModelSerializer.SerializationError("Unable to serialize with merged object of foreign kind.")
+      val mask = FieldMask.newBuilder()
+      diffMessage(proto, base, "", DocumentSink(document), mask, true)
+      write.setUpdateMask(DocumentMask.newBuilder().addAllFieldPaths(mask.pathsList))
+    }
+    return write.build()
+  }
+
+  /**
+   * Serialize each field of the given message into the provided sink, following the compiled plan for the model.
+   *
+   * @param proto Message to serialize.
+   * @param base Base message to compare to (optional).
+   * @param skipCollections Whether to skip sub-messages which are stored in their own collection.
+   * @param collection Whether the message is being serialized as a collection member (skips required-ness checks).
+   * @param sink Destination for serialized field values.
+   */
+  private fun serializeInto(proto: Message,
+                            base: Message?,
+                            skipCollections: Boolean,
+                            collection: Boolean,
+                            sink: FieldSink) {
+    val plan = ObjectModelPlan.forDescriptor(proto.descriptorForType)
+    for (fieldPlan in plan.fields)
+      serializeField(proto, base, fieldPlan, sink, skipCollections, collection)
+  }
+
+  /**
+   * Serialize a single field from the given message into the provided data map, following the field's compiled plan.
+   * Null or withheld values are only written if nulls are being included, or the field is explicit.
+   *
+   * @param proto Message to serialize the field from.
+   * @param base Base message to compare to (optional).
+   * @param fieldPlan Compiled plan for the field.
+   * @param dataMap Destination to write the field's value into.
+   * @param skipCollections Whether to skip sub-messages which are stored in their own collection.
+   * @param collection Whether the message is being serialized as a collection member (skips required-ness checks).
+   */
+  private fun serializeField(proto: Message,
+                             base: Message?,
+                             fieldPlan: ObjectModelPlan.Field,
+                             dataMap: FieldSink,
+                             skipCollections: Boolean,
+                             collection: Boolean) {
+    if (fieldPlan.ephemeral)
+      return
+
+    val field = fieldPlan.descriptor
+    val value = Value.newBuilder()
+    val singular = !fieldPlan.repeated
+    val wasNull = when {
+      // singular primitives are written straight into the value builder, without intermediate wrapping
+      singular && fieldPlan.kind == ObjectModelPlan.Kind.INTEGER -> extractInteger(proto, base, field, value)
+      singular && fieldPlan.kind == ObjectModelPlan.Kind.FLOATING -> extractFloating(proto, base, field, value)
+      singular && fieldPlan.kind == ObjectModelPlan.Kind.BOOL -> extractBoolean(proto, base, field, value)
+
+      else -> {
+        val (extractedNull, sentinel) = when (fieldPlan.kind) {
+          ObjectModelPlan.Kind.INTEGER -> extractAndSetValue(proto, base, field, value, value::setIntegerValue)
+          ObjectModelPlan.Kind.FLOATING -> extractAndSetValue(proto, base, field, value, value::setDoubleValue)
+          ObjectModelPlan.Kind.BOOL -> extractAndSetValue(proto, base, field, value, value::setBooleanValue)
+          ObjectModelPlan.Kind.STRING -> extractAndSetValue(proto, base, field, value, value::setStringValue)
+          ObjectModelPlan.Kind.BYTES -> extractAndSetValue(
+            proto, base, field, value, bytesEncoder(value::setStringValue))
+          ObjectModelPlan.Kind.ENUM -> extractEnum(proto, base, field, value, fieldPlan.persistence)
+          ObjectModelPlan.Kind.TIMESTAMP -> serializeInstant(proto, base, field, value)
+          ObjectModelPlan.Kind.MESSAGE -> extractSubmessage(
+            proto, base, fieldPlan, value, dataMap, skipCollections)
+          ObjectModelPlan.Kind.UNSUPPORTED -> {
+            // log a warning
+            logging.warn("Unresolvable or null type for proto field: '${field.type}'. Skipping.")
+            return
+          }
+        }
+
+        // if `sentinel` is null, some sub-routine handled it for us (likely via the `concrete` annotation on a nested
+        // non-repeated sub-message), so we can safely skip it ourselves.
+        if (sentinel == null)
+          return
+        extractedNull
       }
+    }
+
+    // if field value is not null, it is always included. if it is null, it is only included if `includeNulls` is set
+    // to `true`.
+    if (!wasNull || includeNulls || fieldPlan.explicit)
+    // if we get here, we were able to extract a value and set it on the value builder
+      dataMap[field.name] = value.build()
+
+    // enforce required-ness of fields. if we reach this line, there was no value or the value was skipped, so we make
+    // sure the value was indeed null (a decision that is delegated to the type-specific sub-routine, considering that
+    // proto will substitute empty models where sub-message nesting is accessed).
+    else if (!collection && fieldPlan.required && (field.type != FieldType.ENUM))
+      throw ModelSerializer.SerializationError(
+        "Required field was missing a value: `${field.name}` on record `${field.containingType.name}`.")
+  }
 
-      if (fieldOptions?.ephemeral == true)
+  /**
+   * Serialize only the fields of [proto] which differ from [base], along with an update mask listing the path of each
+   * changed field. Applying the resulting data under the resulting mask to a stored copy of [base] yields [proto].
+   *
+   * Singular sub-messages present on both records are compared recursively, so a change deep in a nested record
+   * produces a nested data map holding only the changed leaf, masked by its dotted path. Repeated fields are compared
+   * as a whole: if any element differs, the entire list is written, because update masks address lists as a unit.
+   * Masked paths without a value in the resulting data denote a field which was cleared (as with document updates,
+   * such fields are deleted).
+   *
+   * @param proto Updated message to serialize changes from.
+   * @param base Base snapshot of the same model which [proto] is compared against.
+   * @param skipCollections Whether to skip sub-messages which are stored in their own collection.
+   * @return Delta holding the changed fields and their update mask.
+   */
+  fun serializeDelta(proto: Message, base: Message, skipCollections: Boolean = true): Delta {
+    if (base.descriptorForType != proto.descriptorForType)
+      throw ModelSerializer.SerializationError("Unable to serialize with merged object of foreign kind.")
+    val data = serializedObject(proto.descriptorForType)
+    val mask = FieldMask.newBuilder()
+    diffMessage(proto, base, "", MapSink(data), mask, skipCollections)
+    return Delta(data, mask.build())
+  }
+
+  /**
+   * Recursive boundary for delta serialization. Compare each field of [proto] with [base], following the compiled
+   * plan for the model, and serialize changed fields into [data], adding each changed path to [mask].
+   *
+   * @param proto Updated message to compare.
+   * @param base Base message to compare against.
+   * @param prefix Path prefix for fields on this message, ending in `.` unless empty.
+   * @param data Destination to write changed fields into.
+   * @param mask Update mask to add changed paths to.
+   * @param skipCollections Whether to skip sub-messages which are stored in their own collection.
+   */
+  private fun diffMessage(proto: Message,
+                          base: Message,
+                          prefix: String,
+                          data: FieldSink,
+                          mask: FieldMask.Builder,
+                          skipCollections: Boolean) {
+    val plan = ObjectModelPlan.forDescriptor(proto.descriptorForType)
+    fields@ for (fieldPlan in plan.fields) {
+      if (fieldPlan.ephemeral || fieldPlan.kind == ObjectModelPlan.Kind.UNSUPPORTED)
+        continue@fields
+      if (skipCollections && fieldPlan.collectionMode != CollectionMode.NESTED)
         continue@fields
 
-      val (wasNull, sentinel) = when (field.type) {
-        FieldType.INT32, FieldType.UINT32, FieldType.SINT32,
-        FieldType.INT64, FieldType.UINT64, FieldType.SINT64,
-        FieldType.FIXED32, FieldType.FIXED64, FieldType.SFIXED32, FieldType.SFIXED64, FieldType.FLOAT,
-        FieldType.DOUBLE -> extractAndSetValue(proto, base, field, value, value::setDoubleValue)
-        FieldType.BOOL -> extractAndSetValue(proto, base, field, value, value::setBooleanValue)
-        FieldType.STRING -> extractAndSetValue(proto, base, field, value, value::setStringValue)
-        FieldType.BYTES -> extractAndSetValue(proto, base, field, value, bytesEncoder(value::setStringValue))
-        FieldType.ENUM -> extractEnum(proto, base, field, value, persistenceOptions)
-        FieldType.GROUP, FieldType.MESSAGE -> extractSubmessage(
-          proto, base, field, fieldProto, fieldOptions, value, dataMap, skipCollections)
-        else -> {
-          // log a warning
-          logging.warn("Unresolvable or null type for proto field: '${field.type}'. Skipping.")
-          continue@fields
+      val field = fieldPlan.descriptor
+      if (proto.getField(field) == base.getField(field))
+        continue@fields
+
+      // singular sub-messages held on both sides are diffed recursively, unless they serialize as references
+      val path = prefix + field.name
+      if (fieldPlan.kind == ObjectModelPlan.Kind.MESSAGE && !fieldPlan.repeated &&
+          fieldPlan.role != CoreFieldType.REFERENCE && fieldPlan.role != CoreFieldType.PARENT &&
+          proto.hasField(field) && base.hasField(field)) {
+        val subProto = proto.getField(field) as Message
+        val subBase = base.getField(field) as Message
+        if (fieldPlan.concrete) {
+          // concrete fields are flattened into their parent, so their changes are too
+          diffMessage(subProto, subBase, prefix, data, mask, skipCollections)
+        } else {
+          val subStruct = MapValue.newBuilder()
+          diffMessage(subProto, subBase, "$path.", MapValueSink(subStruct), mask, skipCollections)
+          data[field.name] = Value.newBuilder().setMapValue(subStruct).build()
         }
+        continue@fields
       }
 
-      // if field value is not null, it is always included. if it is null, it is only included if `includeNulls` is set
-      // to `true`. in either case, if `sentinel` is null, some sub-routine handled it for us (likely via the `concrete`
-      // annotation on a nested non-repeated sub-message), so we can safely skip it ourselves.
-      if (sentinel != null && (!wasNull || (wasNull && (includeNulls || persistenceOptions?.explicit == true))))
-      // if we get here, we were able to extract a value and set it on the value builder
-        dataMap[field.name] = value.build()
-
-      // enforce required-ness of fields. if we reach this line, there was no value or the value was skipped, so we make
-      // sure the value was indeed null (a decision that is delegated to the type-specific sub-routine, considering that
-      // proto will substitute empty models where sub-message nesting is accessed).
-      else if (sentinel != null && wasNull && !collection && fieldOptions?.required == true
-        && (field.type != FieldType.ENUM))
-        throw ModelSerializer.SerializationError(
-          "Required field was missing a value: `${field.name}` on record `${descriptor.name}`.")
+      // any other change rewrites the field; a cleared sub-message or timestamp is masked without a value, which
+      // deletes it
+      mask.addPaths(path)
+      if ((fieldPlan.kind == ObjectModelPlan.Kind.MESSAGE || fieldPlan.kind == ObjectModelPlan.Kind.TIMESTAMP) &&
+          !fieldPlan.repeated && !proto.hasField(field))
+        continue@fields
+      serializeField(proto, base, fieldPlan, data, skipCollections, false)
     }
-    return dataMap
   }
 
   /**
@@ -1071,16 +1187,15 @@ class ObjectModelSerializer<Model : Message>
                               writes: ArrayList<CollapsedMessage.Operation>,
                               nested: Boolean,
                               parent: CollapsedMessage.Operation?,
-                              parentField: FieldDescriptor?,
+                              parentField: ObjectModelPlan.Field?,
                               disposition: ModelSerializer.WriteDisposition,
                               collection: Boolean = false,
                               concrete: String? = null) {
     // prepare to collapse
-    val descriptor = proto.descriptorForType
-    val descriptorProto = descriptor.toProto()
-    val fields = descriptor.fields
+    val plan = ObjectModelPlan.forDescriptor(proto.descriptorForType)
+    val descriptor = plan.descriptor
     val subwrites = ArrayList<CollapsedMessage.Operation>()
-    val (idValue, idProperty) = this.scanForIdProperty(proto, fields)
+    val (idValue, idProperty) = this.scanForIdProperty(proto, plan)
 
     if (base != null && base.descriptorForType.name != descriptor.name)
       throw ModelSerializer.SerializationError("Unable to serialize with merged object of foreign kind.")
@@ -1098,38 +1213,26 @@ class ObjectModelSerializer<Model : Message>
       id = idValue to idProperty)
 
     val writeOp = resolveWrite(
-      descriptor, descriptorProto, dataMap, parentField, idValue, nested, parent, disposition)
+      plan, dataMap, parentField, idValue, nested, parent, disposition)
 
     // if this passes, all fields are simple
     if (dataMap.size != descriptor.fields.size) {
       // for each field, serialize raw and put it into the map
-      fields@ for (field in fields) {
+      fields@ for (fieldPlan in plan.fields) {
+        val field = fieldPlan.descriptor
         if (dataMap.containsKey(field.name))
         // we already have this field: probably because it's nested
           continue@fields
 
-        // skip it if it's marked as concrete, or ephemeral
-        val fieldProto = field.toProto()
-        val fieldOptions = if (
-          fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.opts)) {
-          fieldProto.options.getExtension(Datamodel.opts)
-        } else {
-          null
-        }
-        if (fieldOptions?.concrete == true)
+        // skip it if it's marked as concrete
+        if (fieldPlan.concrete)
         // concrete fields can be skipped
           continue@fields
 
-        val groupOptions = if (
-          fieldProto.hasOptions() && fieldProto.options.hasExtension(Datamodel.collection)) {
-          fieldProto.options.getExtension(Datamodel.collection)
-        } else {
-          null
-        }
-
+        val groupOptions = fieldPlan.collection
         val value = Value.newBuilder()
-        val (wasNull, _) = when (field.type) {
-          FieldType.GROUP, FieldType.MESSAGE -> {
+        val (wasNull, _) = when (fieldPlan.kind) {
+          ObjectModelPlan.Kind.MESSAGE, ObjectModelPlan.Kind.TIMESTAMP -> {
             if (field.isRepeated) {
               // firstly, extract the list of messages...
               val (isDefault, extractedValue) = extractValue<List<Message>>(proto, base, field)
@@ -1149,7 +1252,7 @@ class ObjectModelSerializer<Model : Message>
                 // recurse to perform the same collapse routine.
                 for (subMessage in extractedValue) {
                   this.collapseMessage(
-                    subMessage, null, subwrites, true, writeOp, field, disposition,
+                    subMessage, null, subwrites, true, writeOp, fieldPlan, disposition,
                     collection = true,
                     concrete = groupOptions?.concrete)
                 }
@@ -1163,12 +1266,10 @@ class ObjectModelSerializer<Model : Message>
                 // specify as null
                 true to value.setNullValue(NullValue.NULL_VALUE)
               } else if (!isDefault || includeDefaults) {
-                if (ModelMetadata.matchCollectionAnnotation(
-                    field,
-                    CollectionMode.COLLECTION)) {
+                if (groupOptions?.mode == CollectionMode.COLLECTION) {
                   // it's eligible to be included
                   this.collapseMessage(
-                    extractedValue, base, subwrites, true, writeOp, field, disposition)
+                    extractedValue, base, subwrites, true, writeOp, fieldPlan, disposition)
                   continue@fields
                 } else {
                   val serialized = this.serialize(
@@ -1225,7 +1326,7 @@ class ObjectModelSerializer<Model : Message>
     val parentWrite = if (parent != null) {
       val parentDescriptor = parent.descriptorForType
       val (immediateParentId, _) = this.scanForIdProperty(
-        parent, parentDescriptor.fields)
+        parent, ObjectModelPlan.forDescriptor(parentDescriptor))
       if (immediateParentId == null)
         throw ModelSerializer.SerializationError("Cannot serialize with parent entity with undefined ID.")
 
@@ -1253,6 +1354,57 @@ class ObjectModelSerializer<Model : Message>
     return serialize(input).data
   }
 
+  /** Destination for serialized field values, keyed by field name. */
+  private interface FieldSink {
+    /** @return Whether a value is already held for the given field name. */
+    fun has(name: String): Boolean
+
+    /** @return Value held for the given field name, if any. */
+    operator fun get(name: String): Value?
+
+    /** Hold a value for the given field name, replacing any existing value. */
+    operator fun set(name: String, value: Value)
+  }
+
+  /** Field sink which writes into a regular map, such as a [SerializedModel]. */
+  private class MapSink(private val target: MutableMap<String, Value>) : FieldSink {
+    override fun has(name: String): Boolean = target.containsKey(name)
+    override fun get(name: String): Value? = target[name]
+    override fun set(name: String, value: Value) { target[name] = value }
+  }
+
+  /** Field sink which writes straight into a Firestore document under construction. */
+  private class DocumentSink(private val target: Document.Builder) : FieldSink {
+    override fun has(name: String): Boolean = target.containsFields(name)
+    override fun get(name: String): Value? = target.getFieldsOrDefault(name, null)
+    override fun set(name: String, value: Value) { target.putFields(name, value) }
+  }
+
+  /** Field sink which writes straight into a Firestore struct value under construction. */
+  private class MapValueSink(private val target: MapValue.Builder) : FieldSink {
+    override fun has(name: String): Boolean = target.containsFields(name)
+    override fun get(name: String): Value? = target.getFieldsOrDefault(name, null)
+    override fun set(name: String, value: Value) { target.putFields(name, value) }
+  }
+
+  /**
+   * Result of delta serialization (see [serializeDelta]): serialized values for each changed field, and an update mask
+   * listing the path of each changed field.
+   *
+   * @param model Serialized values for changed fields. Nested changes are held in nested maps.
+   * @param mask Update mask listing the path of each changed field.
+   */
+  @Immutable
+  class Delta internal constructor(
+    /** Serialized values for changed fields. */
+    val model: SerializedModel,
+
+    /** Update mask listing the path of each changed field. */
+    val mask: FieldMask) {
+    /** @return Whether the delta holds no changes at all. */
+    fun isEmpty(): Boolean = mask.pathsCount == 0
+  }
+
   companion object {
     /** Private logging pipe. */
     private val logging = Logging.logger(ObjectModelSerializer::class.java)
@@ -40,16 +40,33 @@ public interface OperationOptions {
     return Optional.empty();
   }
 
-  /** @return Set a precondition for the precise time (in microseconds) that a record was updated. */
+  /**
+   * @return Set a precondition that the record has not been modified since the provided time, in microseconds since
+   *         the epoch. Passing the update time read with a record makes the write fail if anyone else wrote the record
+   *         since. Violations fail the operation with {@link ModelWriteConflict}.
+   */
   default @Nonnull Optional<Long> updatedAtMicros() {
     return Optional.empty();
   }
 
-  /** @return Set a precondition for the precise time (in seconds) that a record was updated. */
+  /**
+   * @return Set a precondition that the record has not been modified since the provided time, in seconds since the
+   *         epoch. Violations fail the operation with {@link ModelWriteConflict}.
+   */
   default @Nonnull Optional<Long> updatedAtSeconds() {
     return Optional.empty();
   }
 
+  /**
+   * @return Set a precondition that the record exists, at exactly the provided version. Passing the version read with
+   *         a record makes the write fail if anyone else wrote the record since. Violations fail the operation with
+   *         {@link ModelWriteConflict}.
+   * @see Versioned For reading a record along with its version.
+   */
+  default @Nonnull Optional<Long> expectedVersion() {
+    return Optional.empty();
+  }
+
   /** @return Number of retries, otherwise the default is used. */
   default @Nonnull Optional<Integer> retries() {
     return Optional.empty();
@@ -14,12 +14,15 @@ package elide.model;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.FieldMask;
 import com.google.protobuf.Message;
+import com.google.protobuf.util.FieldMaskUtil;
 import elide.runtime.jvm.Logging;
 import elide.runtime.jvm.ReactiveFuture;
 import org.reactivestreams.Publisher;
@@ -34,6 +37,7 @@ import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static elide.model.ModelMetadata.*;
@@ -169,6 +173,92 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
       }
       throw new IllegalArgumentException("Operation failed: " + expectation);
     }
+
+    /**
+     * Read, modify, and write the record at {@code key} with optimistic versioning: the record is read via
+     * {@link #retrieveVersioned(Message, FetchOptions)}, and the result of {@code function} is written on the condition
+     * that the record is still at the version read. If another write wins the race, the whole cycle is retried. If the
+     * caller set preconditions of its own, they are kept, and a conflict is reported rather than retried. If the driver
+     * does not track record versions, {@code unversioned} runs instead.
+     *
+     * @param driver Driver to read and write through.
+     * @param key Key for the record to modify.
+     * @param function Computes the new record from the current one.
+     * @param options Options to apply to the write.
+     * @param exec Executor to run follow-up steps on.
+     * @param unversioned Modification to run instead, if the driver does not track record versions.
+     * @param <Key> Type of key used with the driver.
+     * @param <Model> Type of model handled by the driver.
+     * @return Future for the record as finally stored.
+     */
+    static <Key extends Message, Model extends Message> ListenableFuture<Model> modifyVersioned(
+        @Nonnull PersistenceDriver<Key, Model, ?, ?> driver,
+        @Nonnull Key key,
+        @Nonnull UnaryOperator<Model> function,
+        @Nonnull WriteOptions options,
+        @Nonnull ListeningScheduledExecutorService exec,
+        @Nonnull AsyncCallable<Model> unversioned) {
+      final boolean retry = options.expectedVersion().isEmpty() &&
+        options.updatedAtMicros().isEmpty() &&
+        options.updatedAtSeconds().isEmpty();
+      // `null` marks a driver which does not track versions, as distinct from a missing record.
+      final ListenableFuture<Optional<Versioned<Model>>> versioned = Futures.catching(
+        driver.retrieveVersioned(key, FetchOptions.DEFAULTS), UnsupportedOperationException.class, (err) -> null, exec);
+      return Futures.transformAsync(versioned, (current) -> {
+        if (current == null) return unversioned.call();
+        if (current.isEmpty())
+          throw new ModelWriteConflict(
+            id(key).orElse(null), driver.codec().instance(), WriteOptions.WriteDisposition.MUST_EXIST);
+        final Versioned<Model> read = current.get();
+        final Model next = Objects.requireNonNull(function.apply(read.model()), "Cannot modify a record into `null`.");
+        if (next == read.model()) return Futures.immediateFuture(next);
+        if (!retry) return driver.persist(key, next, options);
+        return Futures.catchingAsync(driver.persist(key, next, new Conditioned(options, read.version())),
+          ModelWriteConflict.class, (conflict) -> {
+            if (logging.isDebugEnabled())
+              logging.debug(format("Record changed while it was modified. Retrying: '%s'.", conflict.getMessage()));
+            return modifyVersioned(driver, key, function, options, exec, unversioned);
+          }, exec);
+      }, exec);
+    }
+
+    /** Write options which pass everything through from another set, and add an expected-version precondition. */
+    private static final class Conditioned implements WriteOptions {
+      /** Options to pass through. */
+      private final @Nonnull WriteOptions options;
+
+      /** Version the record must be at for the write to proceed. */
+      private final long version;
+
+      private Conditioned(@Nonnull WriteOptions options, long version) {
+        this.options = options;
+        this.version = version;
+      }
+
+      @Override public @Nonnull Optional<Long> expectedVersion() { return Optional.of(version); }
+      @Override public @Nonnull Optional<WriteDisposition> writeMode() { return options.writeMode(); }
+      @Override public @Nonnull Optional<Durability> durability() { return options.durability(); }
+      @Override public @Nonnull Optional<Long> writeCombineWindow() { return options.writeCombineWindow(); }
+      @Override public @Nonnull TimeUnit writeCombineWindowUnit() { return options.writeCombineWindowUnit(); }
+      @Override public @Nonnull Boolean enableCache() { return options.enableCache(); }
+      @Override public @Nonnull Optional<Long> cacheTimeout() { return options.cacheTimeout(); }
+      @Override public @Nonnull TimeUnit cacheTimeoutUnit() { return options.cacheTimeoutUnit(); }
+      @Override public @Nonnull TimeoutMode cacheTimeoutMode() { return options.cacheTimeoutMode(); }
+      @Override public @Nonnull Double cacheTimeoutPercentile() { return options.cacheTimeoutPercentile(); }
+      @Override public @Nonnull Double cacheHedgePercentile() { return options.cacheHedgePercentile(); }
+      @Override public @Nonnull Optional<Long> cacheDefaultTTL() { return options.cacheDefaultTTL(); }
+      @Override public @Nonnull TimeUnit cacheDefaultTTLUnit() { return options.cacheDefaultTTLUnit(); }
+      @Override public @Nonnull Optional<EvictionMode> cacheEvictionMode() { return options.cacheEvictionMode(); }
+      @Override public @Nonnull WritePolicy cacheWritePolicy() { return options.cacheWritePolicy(); }
+      @Override public @Nonnull Optional<Double> cacheRefreshAhead() { return options.cacheRefreshAhead(); }
+      @Override public @Nonnull Optional<Long> timeoutValue() { return options.timeoutValue(); }
+      @Override public @Nonnull Optional<TimeUnit> timeoutUnit() { return options.timeoutUnit(); }
+      @Override public @Nonnull Optional<ListeningScheduledExecutorService> executorService() {
+        return options.executorService();
+      }
+      @Override public @Nonnull Optional<Integer> retries() { return options.retries(); }
+      @Override public @Nonnull Optional<Boolean> transactional() { return options.transactional(); }
+    }
   }
 
   // -- API: Execution -- //
@@ -351,6 +441,34 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
     return instance;
   }
 
+  /**
+   * Merge the fields named by an update {@code mask} from {@code update} into {@code current}, leaving every other
+   * field of {@code current} as-is. Masked fields which are not set on {@code update} are cleared; masked message and
+   * repeated fields are replaced wholesale, rather than merged.
+   *
+   * @param current Stored record to merge into.
+   * @param update Record carrying the new values for masked fields.
+   * @param mask Update mask naming the fields to copy.
+   * @return Merged record.
+   * @throws IllegalArgumentException If the mask names a field which does not exist on the model.
+   */
+  @VisibleForTesting
+  default Model mergeMasked(@Nonnull Model current, @Nonnull Model update, @Nonnull FieldMask mask) {
+    if (!FieldMaskUtil.isValid(current.getDescriptorForType(), mask))
+      throw new IllegalArgumentException(format(
+        "Update mask '%s' is not valid for model type '%s'.",
+        FieldMaskUtil.toString(mask),
+        current.getDescriptorForType().getFullName()));
+
+    Message.Builder merged = current.toBuilder();
+    FieldMaskUtil.merge(mask, update, merged, new FieldMaskUtil.MergeOptions()
+      .setReplaceMessageFields(true)
+      .setReplaceRepeatedFields(true)
+      .setReplacePrimitiveFields(true));
+    //noinspection unchecked
+    return (Model)merged.build();
+  }
+
   // -- API: Fetch -- //
   /**
    * Synchronously retrieve a data model instance from underlying storage, addressed by its unique ID.
@@ -587,6 +705,45 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
    */
   @Nonnull ReactiveFuture<Optional<Model>> retrieve(@Nonnull Key key, @Nonnull FetchOptions options);
 
+  /**
+   * Retrieve a batch of records by key, as a single bulk operation where the storage engine supports one. Each record
+   * gets its own future, which behaves exactly as if the record had been fetched via
+   * {@link #retrieve(Message, FetchOptions)}; in particular, failing to fetch one record does not fail the others.
+   *
+   * <p>The default implementation issues one {@link #retrieve(Message, FetchOptions)} per key. Drivers which can read
+   * many records at once should override it.</p>
+   *
+   * @param keys Keys of the records to retrieve.
+   * @param options Options to apply to every retrieval in the batch.
+   * @return Futures for each record, in the same order as {@code keys}.
+   */
+  default @Nonnull List<ReactiveFuture<Optional<Model>>> retrieveAll(@Nonnull List<Key> keys,
+                                                                     @Nonnull FetchOptions options) {
+    final List<ReactiveFuture<Optional<Model>>> results = new ArrayList<>(keys.size());
+    for (Key key : keys) results.add(retrieve(key, options));
+    return results;
+  }
+
+  /**
+   * Retrieve a record along with its current version and update time, for use as preconditions on a later write (see
+   * {@link OperationOptions#expectedVersion()} and {@link OperationOptions#updatedAtMicros()}). The record, version,
+   * and update time are read together, so the version always describes the record returned with it.
+   *
+   * <p>Drivers which track record versions override this method, and enforce version and update-time preconditions on
+   * writes and deletes, failing them with {@link ModelWriteConflict}. The default implementation fails with
+   * {@link UnsupportedOperationException}.</p>
+   *
+   * @param key Key at which we should look for the requested entity.
+   * @param options Options to apply to this individual retrieval operation.
+   * @return Future value, which resolves to the versioned record, or {@link Optional#empty()} if the record could not
+   *         be located by the storage engine.
+   */
+  default @Nonnull ReactiveFuture<Optional<Versioned<Model>>> retrieveVersioned(@Nonnull Key key,
+                                                                                @Nonnull FetchOptions options) {
+    return ReactiveFuture.wrap(Futures.immediateFailedFuture(new UnsupportedOperationException(format(
+      "Driver '%s' does not track record versions.", getClass().getSimpleName()))));
+  }
+
   // -- API: Persist -- //
   /**
    * Create the record specified by {@code model} in underlying storage, provisioning a key or ID for the record if
@@ -784,6 +941,10 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
    * <p>The returned record will be re-constituted, with the ID or key value unmodified, as applicable, and with any
    * computed or framework-related properties updated in (i.e. automatic update timestamping).</p>
    *
+   * <p>If {@code options} carry an {@link UpdateOptions#updateMask()}, only the masked fields are merged into the
+   * stored record (see {@link #mergeMasked(Message, Message, FieldMask)}), via {@link #modify}. The merge is therefore
+   * conditioned on the version read where the driver tracks versions, and retried if a concurrent write wins.</p>
+   *
    * @param model Model to update in underlying storage. Requires a {@code ID} or {@code KEY}-annotated field and value.
    * @return Future value, which resolves to the stored model entity, after it has been updated.
    * @throws InvalidModelType If the specified model record is not usable with storage.
@@ -798,9 +959,56 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
       options.writeMode().orElse(WriteOptions.WriteDisposition.MUST_EXIST),
       WriteOptions.WriteDisposition.MUST_EXIST,
       "Write options for `update` must specify `MUST_EXIST` write disposition.");
+    final Optional<FieldMask> mask = options.updateMask();
+    if (mask.isPresent() && mask.get().getPathsCount() > 0) {
+      // partial update: merge the masked fields into whatever is stored, as one modification.
+      return modify(key, (current) -> mergeMasked(current, model, mask.get()), options);
+    }
     return persist(key, model, options);
   }
 
+  /**
+   * Atomically read, modify, and write the record addressed by {@code key}. The current record is passed to
+   * {@code function}, and whatever it returns is written back in its place. If {@code function} returns the very same
+   * instance it was given, nothing is written, and the current record is returned as-is.
+   *
+   * <p>{@code function} may be called more than once if a concurrent write wins a race; it should therefore be free of
+   * side effects. The default implementation reads the record via {@link #retrieveVersioned(Message, FetchOptions)},
+   * and writes the result on the condition that the record is still at the version read (see
+   * {@link OperationOptions#expectedVersion()}), retrying from the read whenever that write fails with
+   * {@link ModelWriteConflict}. If {@code options} already carry a version or update-time precondition, it is kept as
+   * given, and a conflict fails the operation instead of being retried. Drivers which cannot do better per key need not
+   * override this method.</p>
+   *
+   * <p>Only if the driver does not track versions ({@link #retrieveVersioned(Message, FetchOptions)} fails with
+   * {@link UnsupportedOperationException}) does the default implementation fall back to a plain retrieve followed by a
+   * persist, which is <b>not</b> atomic: a concurrent write between the two may be lost.</p>
+   *
+   * @param key Key for the record to modify.
+   * @param function Computes the new record from the current one. Must not return {@code null}.
+   * @param options Options to apply to the write. Only the {@code MUST_EXIST} write disposition is allowed.
+   * @return Future value, which resolves to the record as finally stored. If the record does not exist, the future
+   *         fails with {@link ModelWriteConflict}.
+   * @throws IllegalArgumentException If an incompatible {@link WriteOptions.WriteDisposition} value is specified.
+   */
+  default @Nonnull ReactiveFuture<Model> modify(@Nonnull Key key,
+                                                @Nonnull UnaryOperator<Model> function,
+                                                @Nonnull WriteOptions options) {
+    Internals.enforceOption(
+      options.writeMode().orElse(WriteOptions.WriteDisposition.MUST_EXIST),
+      WriteOptions.WriteDisposition.MUST_EXIST,
+      "Write options for `modify` must specify `MUST_EXIST` write disposition.");
+    final ListeningScheduledExecutorService exec = options.executorService().orElseGet(this::executorService);
+    return ReactiveFuture.wrap(Internals.modifyVersioned(this, key, function, options, exec, () ->
+      Futures.transformAsync(retrieve(key, FetchOptions.DEFAULTS), (current) -> {
+        if (current == null || current.isEmpty())
+          throw new ModelWriteConflict(id(key).orElse(null), codec().instance(), WriteOptions.WriteDisposition.MUST_EXIST);
+        final Model next = Objects.requireNonNull(function.apply(current.get()), "Cannot modify a record into `null`.");
+        if (next == current.get()) return Futures.immediateFuture(next);
+        return persist(key, next, options);
+      }, exec)), exec);
+  }
+
   /**
    * Low-level record persistence method. Effectively called by all other create/put variants. Asynchronously write a
    * data model instance to storage, which will populate the provided {@link ReactiveFuture} value.
@@ -835,6 +1043,31 @@ public interface PersistenceDriver<Key extends Message, Model extends Message, R
    */
   @Nonnull ReactiveFuture<Model> persist(@Nullable Key key, @Nonnull Model model, @Nonnull WriteOptions options);
 
+  /**
+   * Persist a batch of records, each at a known key, as a single bulk operation where the storage engine supports one.
+   * Each record gets its own future, which behaves exactly as if the record had been written via
+   * {@link #persist(Message, Message, WriteOptions)}; in particular, a conflict on one record does not fail the others.
+   * Records are written in order, so a later write to the same key wins.
+   *
+   * <p>The default implementation issues one {@link #persist(Message, Message, WriteOptions)} per record. Drivers
+   * which can write many records at once should override it.</p>
+   *
+   * @param keys Keys to store each record at.
+   * @param models Records to store, matching {@code keys} by position.
+   * @param options Options to apply to every write in the batch.
+   * @return Futures for each written record, in the same order as {@code models}.
+   * @throws IllegalArgumentException If {@code keys} and {@code models} differ in size.
+   */
+  default @Nonnull List<ReactiveFuture<Model>> persistAll(@Nonnull List<Key> keys,
+                                                          @Nonnull List<Model> models,
+                                                          @Nonnull WriteOptions options) {
+    if (keys.size() != models.size())
+      throw new IllegalArgumentException("Bulk persist requires exactly one key per record.");
+    final List<ReactiveFuture<Model>> results = new ArrayList<>(models.size());
+    for (int i = 0; i < models.size(); i++) results.add(persist(keys.get(i), models.get(i), options));
+    return results;
+  }
+
   // -- API: Delete -- //
   /**
    * Delete and fully erase the record referenced by {@code key} from underlying storage, permanently. The resulting
@@ -17,6 +17,7 @@ import com.google.protobuf.TypeRegistry;
 import com.google.protobuf.util.JsonFormat;
 import elide.runtime.jvm.Logging;
 import org.slf4j.Logger;
+import tools.elide.core.data.CompressionMode;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -38,6 +39,11 @@ import java.util.Optional;
  *   <li><b>ProtoJSON:</b> Protocol Buffers-defined JSON translation protocol.</li>
  * </ul></p>
  *
+ * <p>Either format may be compressed, by selecting one of the compressed {@link EncodingMode} variants (for instance,
+ * {@code BINARY_GZIP}). Compression is skipped for records smaller than the codec's compression threshold, which are
+ * tagged with the plain format instead; on the way back in, data is decompressed according to its own tag, so a codec
+ * reads compressed and uncompressed records alike. Brotli modes fall back to gzip where Brotli is unavailable.</p>
+ *
  * @see ModelCodec Generic model codec interface.
  */
 @Immutable
@@ -46,12 +52,21 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
   /** Default wire format mode. */
   private static final EncodingMode DEFAULT_FORMAT = EncodingMode.BINARY;
 
+  /** Default size, in bytes, below which serialized records are not compressed. */
+  public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
   /** Log pipe to use. */
   private static final Logger logging = Logging.logger(ProtoModelCodec.class);
 
-  /** Protobuf wire format to use. */
+  /** Protobuf wire format to use, including any compression. */
   private final EncodingMode wireMode;
 
+  /** Serialization format to use, without compression. */
+  private final EncodingMode format;
+
+  /** Size, in bytes, below which serialized records are not compressed. */
+  private final int compressionThreshold;
+
   /** Builder from which to spawn models. */
   private final Model instance;
 
@@ -74,9 +89,21 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
    * @param instance Model instance (empty) to use for type information.
    * @param mode Mode to apply to this codec instance.
    * @param registry Optional type registry of other types to use with {@link JsonFormat}.
+   * @param compressionThreshold Size, in bytes, below which serialized records are not compressed.
    */
-  private ProtoModelCodec(@Nonnull Model instance, @Nonnull EncodingMode mode, @Nullable TypeRegistry registry) {
+  private ProtoModelCodec(@Nonnull Model instance,
+                          @Nonnull EncodingMode mode,
+                          @Nullable TypeRegistry registry,
+                          int compressionThreshold) {
+    if (!ModelCompression.isAvailable(mode.compression())) {
+      logging.warn(String.format(
+        "Compression mode %s is unavailable on this platform. Falling back to GZIP.",
+        mode.compression().name()));
+      mode = mode.withCompression(CompressionMode.GZIP);
+    }
     this.wireMode = mode;
+    this.format = mode.format();
+    this.compressionThreshold = compressionThreshold;
     this.instance = instance;
     this.serializer = new ProtoMessageSerializer();
     this.deserializer = new ProtoMessageDeserializer();
@@ -84,7 +111,7 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
     if (logging.isTraceEnabled())
       logging.trace(String.format("Initializing `ProtoModelCodec` with format %s.", mode.name()));
 
-    if (mode == EncodingMode.JSON) {
+    if (format == EncodingMode.JSON) {
       TypeRegistry resolvedRegisry = registry != null ? registry : TypeRegistry.newBuilder()
         .add(instance.getDescriptorForType())
         .build();
@@ -145,10 +172,32 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
   public @Nonnull static <M extends Message> ProtoModelCodec<M> forModel(@Nonnull M instance,
                                                                          @Nonnull EncodingMode mode,
                                                                          @Nonnull Optional<TypeRegistry> registry) {
+    return forModel(instance, mode, registry, DEFAULT_COMPRESSION_THRESHOLD);
+  }
+
+  /**
+   * Acquire a Protobuf model codec for the provided model instance, which compresses serialized records at or above
+   * the provided size, if the provided {@link EncodingMode} is a compressed one.
+   *
+   * @param <M> Model instance type.
+   * @param instance Model instance to return a codec for.
+   * @param mode Wire format mode to operate in (for instance, {@code BINARY} or {@code BINARY_GZIP}).
+   * @param registry Optional type registry of other types to use with {@link JsonFormat}.
+   * @param compressionThreshold Size, in bytes, below which serialized records are not compressed.
+   * @return Model codec which serializes and de-serializes to/from Protobuf wire formats.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public @Nonnull static <M extends Message> ProtoModelCodec<M> forModel(@Nonnull M instance,
+                                                                         @Nonnull EncodingMode mode,
+                                                                         @Nonnull Optional<TypeRegistry> registry,
+                                                                         int compressionThreshold) {
+    if (compressionThreshold < 0)
+      throw new IllegalArgumentException("Compression threshold cannot be negative.");
     return new ProtoModelCodec<>(
       instance,
       mode,
-      registry.orElse(null));
+      registry.orElse(null),
+      compressionThreshold);
   }
 
   /** Serializes model instances into raw bytes, according to Protobuf wire protocol semantics. */
@@ -169,17 +218,17 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
           input.getDescriptorForType().getFullName(),
           wireMode.name()));
 
-      if (wireMode == EncodingMode.BINARY) {
-        return EncodedModel.wrap(
-          input.getDescriptorForType().getFullName(),
-          wireMode,
-          input.toByteArray());
-      } else {
-        return EncodedModel.wrap(
-          input.getDescriptorForType().getFullName(),
-          wireMode,
-          Objects.requireNonNull(jsonPrinter).print(input).getBytes(StandardCharsets.UTF_8));
+      final byte[] data = format == EncodingMode.BINARY ?
+        input.toByteArray() :
+        Objects.requireNonNull(jsonPrinter).print(input).getBytes(StandardCharsets.UTF_8);
+
+      if (!wireMode.isCompressed() || data.length < compressionThreshold) {
+        return EncodedModel.wrap(input.getDescriptorForType().getFullName(), format, data);
       }
+      return EncodedModel.wrap(
+        input.getDescriptorForType().getFullName(),
+        wireMode,
+        ModelCompression.compress(wireMode.compression(), data));
     }
   }
 
@@ -199,15 +248,20 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
         logging.debug(String.format(
           "Inflating record of type '%s' with format %s.",
           data.getType(),
-          wireMode.name()));
+          data.getDataMode().name()));
+
+      // decompress according to the data's own mode, which may differ from ours.
+      final byte[] raw = ModelCompression.decompress(
+        data.getDataMode().compression(),
+        data.getRawBytes().toByteArray());
 
-      if (wireMode == EncodingMode.BINARY) {
+      if (format == EncodingMode.BINARY) {
         //noinspection unchecked
-        return (Model)instance.newBuilderForType().mergeFrom(data.getRawBytes().toByteArray()).build();
+        return (Model)instance.newBuilderForType().mergeFrom(raw).build();
       } else {
         Message.Builder builder = instance.newBuilderForType();
         Objects.requireNonNull(jsonParser).merge(
-          data.getRawBytes().toStringUtf8(),
+          new String(raw, StandardCharsets.UTF_8),
           builder);
 
         //noinspection unchecked
@@ -248,4 +302,24 @@ public final class ProtoModelCodec<Model extends Message> implements ModelCodec<
   public @Nonnull ModelDeserializer<EncodedModel, Model> deserializer() {
     return this.deserializer;
   }
+
+  /**
+   * Apply this codec's compression to a record which is held in the codec's plain format, as if the record had just
+   * been serialized by this codec. This is useful for records which were modified in their encoded form (for instance,
+   * merged in place on the wire), and so may have grown past the compression threshold without passing back through
+   * {@link #serialize(Message)}.
+   *
+   * @param data Encoded record to compress.
+   * @return The record compressed with this codec's mode, or {@code data} itself if this codec does not compress, the
+   *         record is already compressed or in another format, or the record is below the compression threshold.
+   * @throws IOException If the record cannot be compressed.
+   */
+  public @Nonnull EncodedModel compress(@Nonnull EncodedModel data) throws IOException {
+    if (!wireMode.isCompressed() || data.getDataMode() != format || data.getRawBytes().size() < compressionThreshold)
+      return data;
+    return EncodedModel.wrap(
+      data.getType(),
+      wireMode,
+      ModelCompression.compress(wireMode.compression(), data.getRawBytes().toByteArray()));
+  }
 }
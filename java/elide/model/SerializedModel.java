@@ -13,13 +13,460 @@
 package elide.model;
 
 import com.google.firestore.v1.Value;
+import com.google.protobuf.Descriptors;
 import com.google.protobuf.Message;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
-/** Describes a model which has been serialized into a backing map of keys and properties. */
+/**
+ * Describes a model which has been serialized into a backing map of keys and properties.
+ *
+ * <p>By default, properties are held in a {@link TreeMap}. Models of a known type may instead be held in a compact
+ * form (see {@link #compact(Descriptors.Descriptor)}), where each of the type's fields is assigned a slot in a plain
+ * array of values, in sorted order. Filling a compact model allocates nothing per property, and needs no string
+ * comparisons, while keeping the same sorted {@link Map} view.</p>
+ */
 public final class SerializedModel implements Map<String, Value> {
+  /**
+   * Table of the fields declared by one model type, in sorted order, which assigns each field a slot in a compact value
+   * array. Tables are built once per type, and cached for the life of the process.
+   */
+  @Immutable
+  private static final class FieldTable {
+    /** Tables built so far, by descriptor. */
+    private static final Map<Descriptors.Descriptor, FieldTable> tables = new ConcurrentHashMap<>();
+
+    /** Field names, in sorted order. The position of a name is its slot. */
+    private final @Nonnull String[] names;
+
+    /** Slot for each field name. */
+    private final @Nonnull Map<String, Integer> slots;
+
+    private FieldTable(@Nonnull Descriptors.Descriptor descriptor) {
+      this.names = descriptor.getFields().stream()
+        .map(Descriptors.FieldDescriptor::getName)
+        .sorted()
+        .toArray(String[]::new);
+      this.slots = new HashMap<>(names.length * 2);
+      for (int i = 0; i < names.length; i++) slots.put(names[i], i);
+    }
+
+    /**
+     * Resolve the table for a model type, building it if this is the first time the type has been seen.
+     *
+     * @param descriptor Descriptor for the model type.
+     * @return Field table for the model type.
+     */
+    static @Nonnull FieldTable forDescriptor(@Nonnull Descriptors.Descriptor descriptor) {
+      return tables.computeIfAbsent(descriptor, FieldTable::new);
+    }
+
+    /**
+     * @param key Property name to resolve.
+     * @return Slot for the property, or {@code -1} if it is not a field declared by the model type.
+     */
+    int slot(@Nullable Object key) {
+      final Integer slot = slots.get(key);
+      return slot == null ? -1 : slot;
+    }
+  }
+
+  /**
+   * Compact, array-backed sorted map of properties for one model type. Declared fields live in a {@code Value[]},
+   * indexed through the type's {@link FieldTable}; any other property (for instance, properties synthesized for
+   * concrete types) lives in an overflow {@link TreeMap}, which is only allocated when needed. Iteration merges the two
+   * in sorted order. Null values are not supported.
+   *
+   * <p>Views returned by {@link #subMap(String, String)}, {@link #headMap(String)} and {@link #tailMap(String)} are
+   * live, as with a {@link TreeMap}: they filter this map's entries by key, and read and write through to it.</p>
+   */
+  private static final class CompactData extends AbstractMap<String, Value> implements SortedMap<String, Value> {
+    /** Field table for the model type. */
+    private final @Nonnull FieldTable table;
+
+    /** Value held in each slot, or {@code null} if the slot is empty. */
+    private final @Nonnull Value[] values;
+
+    /** Count of non-empty slots. */
+    private int count = 0;
+
+    /** Properties which are not declared fields, if any have been held. */
+    private @Nullable TreeMap<String, Value> overflow = null;
+
+    private CompactData(@Nonnull FieldTable table) {
+      this.table = table;
+      this.values = new Value[table.names.length];
+    }
+
+    /**
+     * Entry for a slot, which reads and writes through to the slot. Entries hold nothing but their slot, to keep
+     * iteration as cheap as possible.
+     */
+    private final class SlotEntry implements Entry<String, Value> {
+      private final int slot;
+
+      private SlotEntry(int slot) {
+        this.slot = slot;
+      }
+
+      @Override
+      public String getKey() {
+        return table.names[slot];
+      }
+
+      @Override
+      public Value getValue() {
+        return values[slot];
+      }
+
+      @Override
+      public Value setValue(Value value) {
+        final Value previous = values[slot];
+        values[slot] = Objects.requireNonNull(value);
+        return previous;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (!(o instanceof Entry)) return false;
+        final Entry<?, ?> that = (Entry<?, ?>) o;
+        return getKey().equals(that.getKey()) && Objects.equals(getValue(), that.getValue());
+      }
+
+      @Override
+      public int hashCode() {
+        return getKey().hashCode() ^ Objects.hashCode(getValue());
+      }
+
+      @Override
+      public String toString() {
+        return getKey() + "=" + getValue();
+      }
+    }
+
+    /** Iterates over slots and overflow properties together, in sorted order. */
+    private final class EntryIterator implements Iterator<Entry<String, Value>> {
+      private int nextSlot = advance(0);
+      private @Nullable Entry<String, Value> nextExtra = overflow == null ? null : overflow.firstEntry();
+      private int lastSlot = -1;
+      private @Nullable String lastExtra = null;
+
+      private int advance(int from) {
+        int slot = from;
+        while (slot < values.length && values[slot] == null) slot++;
+        return slot;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return nextSlot < values.length || nextExtra != null;
+      }
+
+      @Override
+      public Entry<String, Value> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        final boolean slotFirst = nextSlot < values.length
+          && (nextExtra == null || table.names[nextSlot].compareTo(nextExtra.getKey()) < 0);
+        if (slotFirst) {
+          lastSlot = nextSlot;
+          lastExtra = null;
+          nextSlot = advance(nextSlot + 1);
+          return new SlotEntry(lastSlot);
+        }
+        final Entry<String, Value> extra = Objects.requireNonNull(nextExtra);
+        lastSlot = -1;
+        lastExtra = extra.getKey();
+        nextExtra = Objects.requireNonNull(overflow).higherEntry(lastExtra);
+        return extra;
+      }
+
+      @Override
+      public void remove() {
+        if (lastSlot >= 0) {
+          values[lastSlot] = null;
+          count--;
+          lastSlot = -1;
+        } else if (lastExtra != null) {
+          Objects.requireNonNull(overflow).remove(lastExtra);
+          lastExtra = null;
+        } else {
+          throw new IllegalStateException();
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return count + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      final int slot = table.slot(key);
+      if (slot >= 0) return values[slot] != null;
+      return overflow != null && overflow.containsKey(key);
+    }
+
+    @Override
+    public Value get(Object key) {
+      final int slot = table.slot(key);
+      if (slot >= 0) return values[slot];
+      return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public Value put(String key, Value value) {
+      Objects.requireNonNull(value, "Compact serialized models cannot hold null values.");
+      final int slot = table.slot(key);
+      if (slot >= 0) {
+        final Value previous = values[slot];
+        if (previous == null) count++;
+        values[slot] = value;
+        return previous;
+      }
+      if (overflow == null) overflow = new TreeMap<>();
+      return overflow.put(key, value);
+    }
+
+    @Override
+    public Value remove(Object key) {
+      final int slot = table.slot(key);
+      if (slot >= 0) {
+        final Value previous = values[slot];
+        if (previous != null) count--;
+        values[slot] = null;
+        return previous;
+      }
+      return overflow == null ? null : overflow.remove(key);
+    }
+
+    @Override
+    public void clear() {
+      Arrays.fill(values, null);
+      count = 0;
+      overflow = null;
+    }
+
+    @Override
+    public @Nonnull Set<Entry<String, Value>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public @Nonnull Iterator<Entry<String, Value>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return CompactData.this.size();
+        }
+      };
+    }
+
+    @Override
+    public @Nullable Comparator<? super String> comparator() {
+      return null;  // natural ordering, as with a default `TreeMap`
+    }
+
+    @Override
+    public String firstKey() {
+      return entrySet().iterator().next().getKey();
+    }
+
+    @Override
+    public String lastKey() {
+      int slot = values.length - 1;
+      while (slot >= 0 && values[slot] == null) slot--;
+      final String extra = overflow == null || overflow.isEmpty() ? null : overflow.lastKey();
+      if (slot < 0 && extra == null) throw new NoSuchElementException();
+      if (slot < 0) return extra;
+      if (extra == null) return table.names[slot];
+      return table.names[slot].compareTo(extra) > 0 ? table.names[slot] : extra;
+    }
+
+    @Override
+    public @Nonnull SortedMap<String, Value> subMap(String fromKey, String toKey) {
+      if (Objects.requireNonNull(fromKey).compareTo(Objects.requireNonNull(toKey)) > 0)
+        throw new IllegalArgumentException("Range start is after range end.");
+      return new RangeView(fromKey, toKey);
+    }
+
+    @Override
+    public @Nonnull SortedMap<String, Value> headMap(String toKey) {
+      return new RangeView(null, Objects.requireNonNull(toKey));
+    }
+
+    @Override
+    public @Nonnull SortedMap<String, Value> tailMap(String fromKey) {
+      return new RangeView(Objects.requireNonNull(fromKey), null);
+    }
+
+    /**
+     * Live view of the properties whose keys fall within a range, from {@code low} (inclusive) to {@code high}
+     * (exclusive). Either bound may be absent. Reads and writes go straight through to the enclosing map.
+     */
+    private final class RangeView extends AbstractMap<String, Value> implements SortedMap<String, Value> {
+      /** Lowest key in the view, inclusive, or {@code null} for no lower bound. */
+      private final @Nullable String low;
+
+      /** Key above the view, exclusive, or {@code null} for no upper bound. */
+      private final @Nullable String high;
+
+      private RangeView(@Nullable String low, @Nullable String high) {
+        this.low = low;
+        this.high = high;
+      }
+
+      /** @return Whether {@code key} is below the view's range. */
+      private boolean tooLow(@Nonnull String key) {
+        return low != null && key.compareTo(low) < 0;
+      }
+
+      /** @return Whether {@code key} is above the view's range. */
+      private boolean tooHigh(@Nonnull String key) {
+        return high != null && key.compareTo(high) >= 0;
+      }
+
+      /** @return Whether {@code key} is a string within the view's range. */
+      private boolean inRange(@Nullable Object key) {
+        return key instanceof String && !tooLow((String) key) && !tooHigh((String) key);
+      }
+
+      /** Iterates over the enclosing map's entries, from the first in range until the first past the range. */
+      private final class RangeIterator implements Iterator<Entry<String, Value>> {
+        private final Iterator<Entry<String, Value>> entries = new EntryIterator();
+        private @Nullable Entry<String, Value> next = seek();
+        private @Nullable String last = null;
+
+        private @Nullable Entry<String, Value> seek() {
+          while (entries.hasNext()) {
+            final Entry<String, Value> entry = entries.next();
+            if (tooLow(entry.getKey())) continue;
+            return tooHigh(entry.getKey()) ? null : entry;
+          }
+          return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return next != null;
+        }
+
+        @Override
+        public Entry<String, Value> next() {
+          final Entry<String, Value> current = next;
+          if (current == null) throw new NoSuchElementException();
+          last = current.getKey();
+          next = seek();
+          return current;
+        }
+
+        @Override
+        public void remove() {
+          // the underlying iterator has already moved past this entry, so remove it by key.
+          if (last == null) throw new IllegalStateException();
+          CompactData.this.remove(last);
+          last = null;
+        }
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return inRange(key) && CompactData.this.containsKey(key);
+      }
+
+      @Override
+      public Value get(Object key) {
+        return inRange(key) ? CompactData.this.get(key) : null;
+      }
+
+      @Override
+      public Value put(String key, Value value) {
+        if (!inRange(key)) throw new IllegalArgumentException("Key out of range.");
+        return CompactData.this.put(key, value);
+      }
+
+      @Override
+      public Value remove(Object key) {
+        return inRange(key) ? CompactData.this.remove(key) : null;
+      }
+
+      @Override
+      public @Nonnull Set<Entry<String, Value>> entrySet() {
+        return new AbstractSet<>() {
+          @Override
+          public @Nonnull Iterator<Entry<String, Value>> iterator() {
+            return new RangeIterator();
+          }
+
+          @Override
+          public int size() {
+            int size = 0;
+            for (Iterator<Entry<String, Value>> it = iterator(); it.hasNext(); it.next()) size++;
+            return size;
+          }
+        };
+      }
+
+      @Override
+      public @Nullable Comparator<? super String> comparator() {
+        return null;
+      }
+
+      @Override
+      public String firstKey() {
+        return entrySet().iterator().next().getKey();
+      }
+
+      @Override
+      public String lastKey() {
+        String last = null;
+        for (Iterator<Entry<String, Value>> it = entrySet().iterator(); it.hasNext(); ) last = it.next().getKey();
+        if (last == null) throw new NoSuchElementException();
+        return last;
+      }
+
+      @Override
+      public @Nonnull SortedMap<String, Value> subMap(String fromKey, String toKey) {
+        if (Objects.requireNonNull(fromKey).compareTo(Objects.requireNonNull(toKey)) > 0)
+          throw new IllegalArgumentException("Range start is after range end.");
+        return narrow(fromKey, toKey);
+      }
+
+      @Override
+      public @Nonnull SortedMap<String, Value> headMap(String toKey) {
+        return narrow(low, Objects.requireNonNull(toKey));
+      }
+
+      @Override
+      public @Nonnull SortedMap<String, Value> tailMap(String fromKey) {
+        return narrow(Objects.requireNonNull(fromKey), high);
+      }
+
+      /**
+       * Narrow this view to a smaller range, which must lie within this view's range, as with {@link TreeMap} views.
+       *
+       * @param from Lowest key in the narrowed view, inclusive, or {@code null} for no lower bound.
+       * @param to Key above the narrowed view, exclusive, or {@code null} for no upper bound.
+       * @return Narrowed view.
+       */
+      private @Nonnull SortedMap<String, Value> narrow(@Nullable String from, @Nullable String to) {
+        if ((from != null && (tooLow(from) || (high != null && from.compareTo(high) > 0))) ||
+            (to != null && (tooLow(to) || (high != null && to.compareTo(high) > 0))))
+          throw new IllegalArgumentException("Key out of range.");
+        return new RangeView(from, to);
+      }
+    }
+  }
+
   /** Raw serialized property data for the backing message. */
   private final @Nonnull SortedMap<String, Value> data;
 
@@ -47,6 +494,17 @@ public final class SerializedModel implements Map<String, Value> {
     return factory(new TreeMap<>());
   }
 
+  /**
+   * Create an empty serialized model in compact form, for instances of the provided model type. Properties named for
+   * the type's fields are held in a plain array; any others are still accepted, and held in an overflow map.
+   *
+   * @param descriptor Descriptor for the type of model which will be serialized into the container.
+   * @return Empty compact serialized model.
+   */
+  public static @Nonnull SerializedModel compact(@Nonnull Descriptors.Descriptor descriptor) {
+    return new SerializedModel(new CompactData(FieldTable.forDescriptor(descriptor)), Optional.empty());
+  }
+
   /**
    * Create a serialized model, pre-filled with the provided backing data.
    *
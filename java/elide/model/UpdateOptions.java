@@ -13,8 +13,25 @@
 package elide.model;
 
 
+import com.google.protobuf.FieldMask;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+
+
 /** Describes options specifically involved with updating existing model entities. */
 public interface UpdateOptions extends WriteOptions {
   /** Default set of update operation options. */
   UpdateOptions DEFAULTS = new UpdateOptions() {};
+
+  /**
+   * Field mask describing a partial update. When present (and non-empty), only the fields named in the mask are copied
+   * from the provided record into the stored record; every other stored field is left as-is. A field named in the mask
+   * but not set on the provided record is cleared.
+   *
+   * @return Field mask to apply to the update, if any. By default, the whole record is replaced.
+   */
+  default @Nonnull Optional<FieldMask> updateMask() {
+    return Optional.empty();
+  }
 }
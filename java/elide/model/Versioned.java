@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Record read from storage along with its version and update time, as tracked by drivers which support optimistic
+ * concurrency control. Pass either value back as a precondition ({@link OperationOptions#expectedVersion()} or
+ * {@link OperationOptions#updatedAtMicros()}) to make a later write fail if anyone else wrote the record since.
+ *
+ * @param <Model> Type of record held.
+ */
+@Immutable
+public final class Versioned<Model extends Message> {
+  /** Record as read from storage. */
+  private final @Nonnull Model model;
+
+  /** Version of the record when it was read. */
+  private final long version;
+
+  /** Time the record was last written, in microseconds since the epoch. */
+  private final long updatedAtMicros;
+
+  /** Private constructor. Acquire via {@link #of(Message, long, long)}. */
+  private Versioned(@Nonnull Model model, long version, long updatedAtMicros) {
+    this.model = model;
+    this.version = version;
+    this.updatedAtMicros = updatedAtMicros;
+  }
+
+  /**
+   * Wrap a record read from storage with its version and update time.
+   *
+   * @param model Record as read from storage.
+   * @param version Version of the record when it was read.
+   * @param updatedAtMicros Time the record was last written, in microseconds since the epoch.
+   * @param <Model> Type of record held.
+   * @return Versioned record.
+   */
+  public static @Nonnull <Model extends Message> Versioned<Model> of(@Nonnull Model model,
+                                                                    long version,
+                                                                    long updatedAtMicros) {
+    return new Versioned<>(model, version, updatedAtMicros);
+  }
+
+  /** @return Record as read from storage. */
+  public @Nonnull Model model() {
+    return model;
+  }
+
+  /** @return Version of the record when it was read. */
+  public long version() {
+    return version;
+  }
+
+  /** @return Time the record was last written, in microseconds since the epoch. */
+  public long updatedAtMicros() {
+    return updatedAtMicros;
+  }
+
+  /** @return Time the record was last written, in whole seconds since the epoch. */
+  public long updatedAtSeconds() {
+    return TimeUnit.MICROSECONDS.toSeconds(updatedAtMicros);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "Versioned{" +
+      "version=" + version +
+      ", updatedAtMicros=" + updatedAtMicros +
+      ", model=" + model +
+      '}';
+  }
+}
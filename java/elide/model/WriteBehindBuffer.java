@@ -0,0 +1,468 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import elide.runtime.jvm.Logging;
+import elide.runtime.jvm.ReactiveFuture;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Buffers writes on behalf of a {@link ModelAdapter} operating with the {@link CacheOptions.WritePolicy#WRITE_BEHIND}
+ * cache write policy. Writes are acknowledged as soon as the cache holds the new record, and are then flushed to the
+ * underlying {@link PersistenceDriver} asynchronously.
+ *
+ * <p>Pending writes are coalesced by record ID: if a record is written several times before a flush occurs, only the
+ * latest value is sent to storage. Flushes are triggered either after {@code flushDelay} has elapsed since the first
+ * pending write, or immediately once {@code maxBatch} writes are pending, and each flush dispatches at most
+ * {@code maxBatch} writes.</p>
+ *
+ * <p><b>Ordering:</b> writes to the same key are acknowledged one at a time, in the order they were enqueued, so the
+ * cache and the pending write always agree on the latest value; and only one flush is in flight at any time, so two
+ * writes to the same key always reach storage in the order they were acknowledged. Other writes to a record (for instance, deletes) must first {@link #discard} any
+ * pending write for it, so that a later flush cannot undo them. <b>Failures:</b> if a flushed write fails, and no newer
+ * write for the same key is pending, the key is evicted from the cache so that readers fall back to storage, which
+ * remains authoritative. <b>Shutdown:</b> {@link #close()} stops the buffer from accepting writes, and flushes every
+ * write it has acknowledged; owners should call it before the process stops.</p>
+ *
+ * @param <Key> Key type, instances of which uniquely address instances of {@code Model}.
+ * @param <Model> Model type which this buffer is responsible for writing.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class WriteBehindBuffer<Key extends Message, Model extends Message> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(WriteBehindBuffer.class);
+
+  /** Default delay, in milliseconds, between the first pending write and a flush. */
+  public static final long DEFAULT_FLUSH_DELAY = 50;
+
+  /** Time units for {@link #DEFAULT_FLUSH_DELAY}. */
+  public static final TimeUnit DEFAULT_FLUSH_DELAY_UNIT = TimeUnit.MILLISECONDS;
+
+  /** Default maximum count of writes to dispatch in a single flush. */
+  public static final int DEFAULT_MAX_BATCH = 100;
+
+  /** Storage engine which receives flushed writes. */
+  private final @Nonnull PersistenceDriver<Key, Model, ?, ?> engine;
+
+  /** Cache which holds acknowledged, but not-yet-flushed, writes. */
+  private final @Nonnull CacheDriver<Key, Model> cache;
+
+  /** Executor used for scheduling and dispatching flushes. */
+  private final @Nonnull ListeningScheduledExecutorService executor;
+
+  /** Delay between the first pending write and a flush. */
+  private final long flushDelay;
+
+  /** Time units for {@link #flushDelay}. */
+  private final @Nonnull TimeUnit flushDelayUnit;
+
+  /** Maximum count of writes to dispatch in a single flush. */
+  private final int maxBatch;
+
+  /** Lock which guards pending state. */
+  private final Object lock = new Object();
+
+  /** Pending writes, by record ID, in order of first write. */
+  @GuardedBy("lock")
+  private final LinkedHashMap<Object, PendingWrite<Key, Model>> pending = new LinkedHashMap<>();
+
+  /** IDs of the records being written by the flush in flight, if any. */
+  @GuardedBy("lock")
+  private final Set<Object> inFlight = new HashSet<>();
+
+  /** Completes once the flush in flight (if any) has finished. */
+  @GuardedBy("lock")
+  private @Nonnull SettableFuture<Void> flushDone = SettableFuture.create();
+
+  /** Futures waiting for the buffer to become idle (nothing pending, nothing in flight). */
+  @GuardedBy("lock")
+  private final List<SettableFuture<Void>> idleWaiters = new ArrayList<>();
+
+  /** Whether a flush has been scheduled but has not yet started. */
+  @GuardedBy("lock")
+  private boolean flushScheduled = false;
+
+  /** Whether a flush is currently in flight. */
+  @GuardedBy("lock")
+  private boolean flushing = false;
+
+  /** Latest write still being acknowledged for each record, until it is acknowledged, by record ID. */
+  @GuardedBy("lock")
+  private final Map<Object, ListenableFuture<?>> acknowledging = new HashMap<>();
+
+  /** Whether the buffer has been closed to new writes. */
+  @GuardedBy("lock")
+  private boolean closed = false;
+
+  /** Count of flushes dispatched to storage. */
+  private final AtomicLong batchCount = new AtomicLong(0);
+
+  /** Count of writes dispatched to storage. */
+  private final AtomicLong writeCount = new AtomicLong(0);
+
+  /** Count of writes which were superseded by a newer write before being flushed. */
+  private final AtomicLong coalescedCount = new AtomicLong(0);
+
+  /** Count of flushed writes which failed in storage. */
+  private final AtomicLong failureCount = new AtomicLong(0);
+
+  /** Count of pending writes which were discarded before being flushed. */
+  private final AtomicLong discardCount = new AtomicLong(0);
+
+  /** Write which has been acknowledged, but not yet flushed. */
+  private static final class PendingWrite<Key extends Message, Model extends Message> {
+    private final @Nonnull Key key;
+    private final @Nonnull Model model;
+    private final @Nonnull WriteOptions options;
+
+    private PendingWrite(@Nonnull Key key, @Nonnull Model model, @Nonnull WriteOptions options) {
+      this.key = key;
+      this.model = model;
+      this.options = options;
+    }
+  }
+
+  /**
+   * Private constructor. Acquire via one of the {@code create} factory methods.
+   *
+   * @param engine Storage engine which should receive flushed writes.
+   * @param cache Cache which should hold acknowledged writes.
+   * @param executor Executor to schedule and dispatch flushes on.
+   * @param flushDelay Delay between the first pending write and a flush.
+   * @param flushDelayUnit Time units for {@code flushDelay}.
+   * @param maxBatch Maximum count of writes to dispatch in a single flush.
+   */
+  private WriteBehindBuffer(@Nonnull PersistenceDriver<Key, Model, ?, ?> engine,
+                            @Nonnull CacheDriver<Key, Model> cache,
+                            @Nonnull ListeningScheduledExecutorService executor,
+                            long flushDelay,
+                            @Nonnull TimeUnit flushDelayUnit,
+                            int maxBatch) {
+    if (flushDelay < 0) throw new IllegalArgumentException("Flush delay cannot be negative.");
+    if (maxBatch < 1) throw new IllegalArgumentException("Max batch size must be at least 1.");
+    this.engine = Objects.requireNonNull(engine, "Cannot buffer writes without an engine.");
+    this.cache = Objects.requireNonNull(cache, "Cannot buffer writes without a cache.");
+    this.executor = Objects.requireNonNull(executor, "Cannot buffer writes without an executor.");
+    this.flushDelay = flushDelay;
+    this.flushDelayUnit = flushDelayUnit;
+    this.maxBatch = maxBatch;
+  }
+
+  /**
+   * Create a write-behind buffer for the provided engine and cache, with default flush settings.
+   *
+   * @param engine Storage engine which should receive flushed writes.
+   * @param cache Cache which should hold acknowledged writes.
+   * @param executor Executor to schedule and dispatch flushes on.
+   * @param <K> Key type for the model being written.
+   * @param <M> Model type being written.
+   * @return Write-behind buffer instance.
+   */
+  public static @Nonnull <K extends Message, M extends Message> WriteBehindBuffer<K, M> create(
+      @Nonnull PersistenceDriver<K, M, ?, ?> engine,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull ListeningScheduledExecutorService executor) {
+    return create(engine, cache, executor, DEFAULT_FLUSH_DELAY, DEFAULT_FLUSH_DELAY_UNIT, DEFAULT_MAX_BATCH);
+  }
+
+  /**
+   * Create a write-behind buffer for the provided engine and cache, with custom flush settings.
+   *
+   * @param engine Storage engine which should receive flushed writes.
+   * @param cache Cache which should hold acknowledged writes.
+   * @param executor Executor to schedule and dispatch flushes on.
+   * @param flushDelay Delay between the first pending write and a flush.
+   * @param flushDelayUnit Time units for {@code flushDelay}.
+   * @param maxBatch Maximum count of writes to dispatch in a single flush.
+   * @param <K> Key type for the model being written.
+   * @param <M> Model type being written.
+   * @return Write-behind buffer instance.
+   */
+  public static @Nonnull <K extends Message, M extends Message> WriteBehindBuffer<K, M> create(
+      @Nonnull PersistenceDriver<K, M, ?, ?> engine,
+      @Nonnull CacheDriver<K, M> cache,
+      @Nonnull ListeningScheduledExecutorService executor,
+      long flushDelay,
+      @Nonnull TimeUnit flushDelayUnit,
+      int maxBatch) {
+    return new WriteBehindBuffer<>(engine, cache, executor, flushDelay, flushDelayUnit, maxBatch);
+  }
+
+  // -- API: Writes -- //
+  /**
+   * Enqueue a write for {@code model} at {@code key}. The record is first put into the cache; once that completes, the
+   * write is queued for flushing, and the returned future resolves to the record (with its key spliced in). A write to
+   * a key which is still being acknowledged waits for the earlier write, so that the cache never ends up holding an
+   * older value than the one which is flushed.
+   *
+   * @param key Key at which the record should be written.
+   * @param model Record to write.
+   * @param options Options to apply when the record is eventually flushed to storage.
+   * @return Future which resolves once the write has been acknowledged by the cache, or fails if the buffer is closed.
+   */
+  public @Nonnull ReactiveFuture<Model> enqueue(@Nonnull Key key,
+                                                @Nonnull Model model,
+                                                @Nonnull WriteOptions options) {
+    final Object id = ModelMetadata.id(key)
+      .orElseThrow(() -> new IllegalArgumentException("Cannot buffer write with empty key."));
+    final Model record = ModelMetadata.spliceKey(model, Optional.of(key));
+
+    final ListenableFuture<Model> acknowledged;
+    synchronized (lock) {
+      if (closed) return ReactiveFuture.wrap(Futures.immediateFailedFuture(
+        new IllegalStateException("Write-behind buffer is closed.")), executor);
+      final ListenableFuture<?> previous = acknowledging.get(id);
+      final ListenableFuture<?> cacheWrite = previous == null ?
+        cache.put(key, record, executor) :
+        Futures.whenAllComplete(previous).callAsync(() -> cache.put(key, record, executor), executor);
+      acknowledged = Futures.transform(cacheWrite, (ignored) -> {
+        synchronized (lock) {
+          if (pending.put(id, new PendingWrite<>(key, record, options)) != null)
+            coalescedCount.incrementAndGet();
+          if (pending.size() >= maxBatch) {
+            scheduleFlushLocked(0, flushDelayUnit);
+          } else {
+            scheduleFlushLocked(flushDelay, flushDelayUnit);
+          }
+        }
+        if (logging.isTraceEnabled())
+          logging.trace(format("Acknowledged write-behind record at ID '%s'.", id));
+        return record;
+      }, executor);
+      acknowledging.put(id, acknowledged);
+    }
+    acknowledged.addListener(() -> {
+      synchronized (lock) {
+        if (acknowledging.get(id) == acknowledged) acknowledging.remove(id);
+      }
+    }, executor);
+    return ReactiveFuture.wrap(acknowledged, executor);
+  }
+
+  /**
+   * Flush all pending writes to storage, regardless of the configured delay. The returned future completes once no
+   * writes are pending or in flight.
+   *
+   * @return Future which completes when the buffer has been drained.
+   */
+  public @Nonnull ReactiveFuture<Void> flush() {
+    final SettableFuture<Void> idle = SettableFuture.create();
+    synchronized (lock) {
+      if (pending.isEmpty() && !flushing) {
+        idle.set(null);
+      } else {
+        idleWaiters.add(idle);
+        scheduleFlushLocked(0, flushDelayUnit);
+      }
+    }
+    return ReactiveFuture.wrap(idle, executor);
+  }
+
+  /**
+   * Discard any pending write for the record at {@code key}, so that it is never flushed. If a write for the record is
+   * already in flight, the returned future completes once it has landed; otherwise, it completes right away. Callers
+   * which write to the record by other means (for instance, deleting it) should wait on the returned future first, so
+   * that no buffered write lands after theirs.
+   *
+   * @param key Key for the record whose pending write should be discarded.
+   * @return Future which completes once no write for the record is pending or in flight.
+   */
+  public @Nonnull ReactiveFuture<Void> discard(@Nonnull Key key) {
+    final Object id = ModelMetadata.id(key).orElse(null);
+    if (id == null) return ReactiveFuture.wrap(Futures.immediateVoidFuture(), executor);
+    final ListenableFuture<Void> landed;
+    synchronized (lock) {
+      // a write still being acknowledged would become pending after this discard. discard once it is acknowledged.
+      final ListenableFuture<?> queued = acknowledging.get(id);
+      if (queued != null) return ReactiveFuture.wrap(
+        Futures.whenAllComplete(queued).callAsync(() -> discard(key), executor), executor);
+      if (pending.remove(id) != null) discardCount.incrementAndGet();
+      landed = inFlight.contains(id) ? flushDone : null;
+    }
+    if (landed == null) return ReactiveFuture.wrap(Futures.immediateVoidFuture(), executor);
+    if (logging.isTraceEnabled())
+      logging.trace(format("Waiting for in-flight write-behind record at ID '%s' before discarding.", id));
+    return ReactiveFuture.wrap(Futures.nonCancellationPropagating(landed), executor);
+  }
+
+  /**
+   * Close the buffer to new writes, and flush every write it has acknowledged, or is still acknowledging, to storage.
+   * Writes enqueued after this call fail. Closing the buffer more than once is safe.
+   *
+   * @return Future which completes once every acknowledged write has been flushed.
+   */
+  public @Nonnull ReactiveFuture<Void> close() {
+    final List<ListenableFuture<?>> queued;
+    synchronized (lock) {
+      closed = true;
+      queued = new ArrayList<>(acknowledging.values());
+    }
+    if (logging.isDebugEnabled())
+      logging.debug(format("Closing write-behind buffer with %s records pending.", pendingCount()));
+    return ReactiveFuture.wrap(Futures.whenAllComplete(queued).callAsync(this::flush, executor), executor);
+  }
+
+  /** @return Whether the buffer has been closed to new writes. */
+  public boolean isClosed() {
+    synchronized (lock) {
+      return closed;
+    }
+  }
+
+  // -- Internals -- //
+  /**
+   * Schedule a flush after the provided delay, unless one is already in flight, or a delayed flush is already scheduled
+   * and this request is not immediate. An in-flight flush will re-schedule itself on completion if writes remain
+   * pending. Must be called while holding {@link #lock}.
+   *
+   * @param delay Delay before the flush should begin.
+   * @param unit Time units for {@code delay}.
+   */
+  @GuardedBy("lock")
+  private void scheduleFlushLocked(long delay, @Nonnull TimeUnit unit) {
+    if (flushing || (flushScheduled && delay > 0)) return;
+    flushScheduled = true;
+    executor.schedule(this::runFlush, delay, unit);
+  }
+
+  /** Drain up to {@link #maxBatch} pending writes, and dispatch them to storage. */
+  private void runFlush() {
+    final List<PendingWrite<Key, Model>> batch = new ArrayList<>(maxBatch);
+    synchronized (lock) {
+      flushScheduled = false;
+      if (flushing || pending.isEmpty()) return;
+      flushing = true;
+      flushDone = SettableFuture.create();
+      Iterator<Map.Entry<Object, PendingWrite<Key, Model>>> it = pending.entrySet().iterator();
+      while (it.hasNext() && batch.size() < maxBatch) {
+        final Map.Entry<Object, PendingWrite<Key, Model>> entry = it.next();
+        batch.add(entry.getValue());
+        inFlight.add(entry.getKey());
+        it.remove();
+      }
+    }
+
+    if (logging.isDebugEnabled())
+      logging.debug(format("Flushing batch of %s write-behind records to storage.", batch.size()));
+    batchCount.incrementAndGet();
+    writeCount.addAndGet(batch.size());
+
+    final List<ListenableFuture<Model>> writes = new ArrayList<>(batch.size());
+    for (PendingWrite<Key, Model> write : batch) {
+      ListenableFuture<Model> op;
+      try {
+        op = engine.persist(write.key, write.model, write.options);
+      } catch (RuntimeException exc) {
+        op = Futures.immediateFailedFuture(exc);
+      }
+      Futures.addCallback(op, new FutureCallback<>() {
+        @Override
+        public void onSuccess(Model result) {
+          /* nothing to do */
+        }
+
+        @Override
+        public void onFailure(@Nonnull Throwable err) {
+          onFlushFailure(write, err);
+        }
+      }, executor);
+      writes.add(op);
+    }
+
+    Futures.whenAllComplete(writes).run(() -> {
+      final List<SettableFuture<Void>> waiters;
+      final SettableFuture<Void> done;
+      synchronized (lock) {
+        flushing = false;
+        inFlight.clear();
+        done = flushDone;
+        if (!pending.isEmpty()) {
+          scheduleFlushLocked(idleWaiters.isEmpty() && pending.size() < maxBatch ? flushDelay : 0, flushDelayUnit);
+          waiters = Collections.emptyList();
+        } else {
+          waiters = new ArrayList<>(idleWaiters);
+          idleWaiters.clear();
+        }
+      }
+      done.set(null);
+      waiters.forEach((waiter) -> waiter.set(null));
+    }, executor);
+  }
+
+  /**
+   * Handle failure of a flushed write, by evicting the key from the cache unless a newer write is already pending.
+   *
+   * @param write Write which failed.
+   * @param err Error which caused the failure.
+   */
+  private void onFlushFailure(@Nonnull PendingWrite<Key, Model> write, @Nonnull Throwable err) {
+    failureCount.incrementAndGet();
+    final Object id = ModelMetadata.id(write.key).orElse(null);
+    logging.error(format("Write-behind flush failed for record at ID '%s': '%s'.", id, err.getMessage()));
+    final boolean superseded;
+    synchronized (lock) {
+      superseded = pending.containsKey(id);
+    }
+    if (!superseded) cache.evict(write.key, executor);
+  }
+
+  // -- Metrics -- //
+  /** @return Count of writes currently waiting to be flushed. */
+  public int pendingCount() {
+    synchronized (lock) {
+      return pending.size();
+    }
+  }
+
+  /** @return Count of flushes dispatched to storage so far. */
+  public long batchCount() {
+    return batchCount.get();
+  }
+
+  /** @return Count of writes dispatched to storage so far. */
+  public long writeCount() {
+    return writeCount.get();
+  }
+
+  /** @return Count of writes superseded by a newer write to the same key before being flushed. */
+  public long coalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /** @return Count of flushed writes which failed in storage. */
+  public long failureCount() {
+    return failureCount.get();
+  }
+
+  /** @return Count of pending writes discarded before being flushed (for instance, because the record was deleted). */
+  public long discardCount() {
+    return discardCount.get();
+  }
+}
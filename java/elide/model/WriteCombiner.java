@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import elide.runtime.jvm.Logging;
+import elide.runtime.jvm.ReactiveFuture;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+
+/**
+ * Combines bursts of writes to the same record on behalf of a {@link ModelAdapter}, for writes which specify a
+ * {@link WriteOptions#writeCombineWindow()}. The first write to a record opens a window; writes to the same record which
+ * arrive while the window is open replace its pending value, and when the window closes only the latest value is
+ * written to storage. Every write combined into the window completes with the record as finally persisted.
+ *
+ * <p>Only writes with the same {@link WriteOptions.WriteDisposition} are combined. A write with a different disposition
+ * closes the open window for its record, and opens a new one. Combining {@code MUST_NOT_EXIST} writes would change their
+ * outcome, so callers should not submit them.</p>
+ *
+ * <p><b>Ordering:</b> writes for a record reach storage in the order their windows were opened. A window which closes
+ * while the previous write for the same record is still in flight waits for that write to complete first. Writes and
+ * deletes which are not combined must go through {@link #exclusive(Object, AsyncCallable)}, which closes any open
+ * window for the record right away, and orders the operation after it (and any combined write submitted later after
+ * the operation), so an earlier combined write can never land on top of a later delete or conditional write.</p>
+ *
+ * @param <Key> Key type, instances of which uniquely address instances of {@code Model}.
+ * @param <Model> Model type which this combiner is responsible for writing.
+ */
+@ThreadSafe
+@SuppressWarnings("UnstableApiUsage")
+public final class WriteCombiner<Key, Model> {
+  /** Private logging pipe. */
+  private static final Logger logging = Logging.logger(WriteCombiner.class);
+
+  /** Performs the combined write for a window, once it closes. */
+  @FunctionalInterface
+  public interface Writer<Key, Model> {
+    /**
+     * Write the latest value for a record to storage.
+     *
+     * @param key Key for the record.
+     * @param model Latest value for the record.
+     * @param options Options for the latest write to the record.
+     * @return Future for the written record.
+     */
+    @Nonnull ListenableFuture<Model> write(@Nonnull Key key, @Nonnull Model model, @Nonnull WriteOptions options);
+  }
+
+  /** Executor used for closing windows and dispatching writes. */
+  private final @Nonnull ListeningScheduledExecutorService executor;
+
+  /** Lock which guards window state. */
+  private final Object lock = new Object();
+
+  /** Windows which are still open, by record ID. */
+  @GuardedBy("lock")
+  private final Map<Object, Window<Key, Model>> open = new HashMap<>();
+
+  /** Completion of the latest write or delete issued for each record, until it completes, by record ID. */
+  @GuardedBy("lock")
+  private final Map<Object, ListenableFuture<?>> tail = new HashMap<>();
+
+  /** Count of writes submitted. */
+  private final AtomicLong submittedCount = new AtomicLong(0);
+
+  /** Count of writes dispatched to storage. */
+  private final AtomicLong writeCount = new AtomicLong(0);
+
+  /** Count of writes which were combined into an already-open window. */
+  private final AtomicLong combinedCount = new AtomicLong(0);
+
+  /** Writes to one record which are combined into a single storage write. */
+  private static final class Window<Key, Model> {
+    private final @Nonnull Object id;
+    private final @Nonnull WriteOptions.WriteDisposition mode;
+    private final @Nonnull Writer<Key, Model> writer;
+    private final @Nullable ListenableFuture<?> previous;
+    private final @Nonnull SettableFuture<Void> done = SettableFuture.create();
+    private final @Nonnull List<SettableFuture<Model>> waiters = new ArrayList<>();
+    private @Nonnull Key key;
+    private @Nonnull Model model;
+    private @Nonnull WriteOptions options;
+
+    private Window(@Nonnull Object id,
+                   @Nonnull WriteOptions.WriteDisposition mode,
+                   @Nonnull Writer<Key, Model> writer,
+                   @Nullable ListenableFuture<?> previous,
+                   @Nonnull Key key,
+                   @Nonnull Model model,
+                   @Nonnull WriteOptions options) {
+      this.id = id;
+      this.mode = mode;
+      this.writer = writer;
+      this.previous = previous;
+      this.key = key;
+      this.model = model;
+      this.options = options;
+    }
+  }
+
+  /**
+   * Private constructor. Acquire via {@link #create(ListeningScheduledExecutorService)}.
+   *
+   * @param executor Executor to close windows and dispatch writes on.
+   */
+  private WriteCombiner(@Nonnull ListeningScheduledExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Create a write combiner.
+   *
+   * @param executor Executor to close windows and dispatch writes on.
+   * @param <K> Key type for the combiner.
+   * @param <M> Model type for the combiner.
+   * @return Write combiner.
+   */
+  public static @Nonnull <K, M> WriteCombiner<K, M> create(@Nonnull ListeningScheduledExecutorService executor) {
+    return new WriteCombiner<>(executor);
+  }
+
+  /**
+   * Submit a write to be combined with other writes to the same record. If a window with the same write disposition is
+   * open for the record, the write replaces its pending value; otherwise, a new window is opened, which closes after
+   * {@link WriteOptions#writeCombineWindow()} has elapsed and then writes the latest value with {@code writer}.
+   *
+   * @param id ID of the record being written.
+   * @param key Key for the record being written.
+   * @param model Value to write.
+   * @param options Options for the write.
+   * @param writer Writes the latest value to storage, once the window closes.
+   * @return Future for the record as finally persisted.
+   */
+  public @Nonnull ReactiveFuture<Model> submit(@Nonnull Object id,
+                                               @Nonnull Key key,
+                                               @Nonnull Model model,
+                                               @Nonnull WriteOptions options,
+                                               @Nonnull Writer<Key, Model> writer) {
+    final WriteOptions.WriteDisposition mode = options.writeMode().orElse(WriteOptions.WriteDisposition.BLIND);
+    final SettableFuture<Model> result = SettableFuture.create();
+    submittedCount.incrementAndGet();
+    synchronized (lock) {
+      final Window<Key, Model> current = open.get(id);
+      if (current != null && current.mode == mode) {
+        current.key = key;
+        current.model = model;
+        current.options = options;
+        current.waiters.add(result);
+        combinedCount.incrementAndGet();
+      } else {
+        // a window with a different disposition is closed early, and the new window is ordered after it.
+        final Window<Key, Model> window = new Window<>(id, mode, writer, tail.get(id), key, model, options);
+        window.waiters.add(result);
+        open.put(id, window);
+        tail.put(id, window.done);
+        if (current != null) executor.execute(() -> close(current));
+        executor.schedule(() -> close(window),
+          options.writeCombineWindowUnit().toNanos(options.writeCombineWindow().orElse(0L)), TimeUnit.NANOSECONDS);
+      }
+    }
+    return ReactiveFuture.wrap(result, options.executorService().orElse(executor));
+  }
+
+  /**
+   * Close a window, and dispatch its latest value to storage once any previous write for the same record completes.
+   * Closing a window which is already closed has no effect.
+   *
+   * @param window Window to close.
+   */
+  private void close(@Nonnull Window<Key, Model> window) {
+    final Key key;
+    final Model model;
+    final WriteOptions options;
+    final List<SettableFuture<Model>> waiters;
+    synchronized (lock) {
+      if (open.get(window.id) == window) {
+        open.remove(window.id);
+      } else if (window.waiters.isEmpty()) {
+        return;
+      }
+      key = window.key;
+      model = window.model;
+      options = window.options;
+      waiters = new ArrayList<>(window.waiters);
+      window.waiters.clear();
+    }
+    if (waiters.isEmpty()) return;
+    writeCount.incrementAndGet();
+    if (logging.isTraceEnabled())
+      logging.trace(format("Writing record '%s', combined from %s writes.", window.id, waiters.size()));
+
+    final List<ListenableFuture<?>> before = window.previous != null ?
+      Collections.singletonList(window.previous) : Collections.emptyList();
+    final ListenableFuture<Model> write = Futures.whenAllComplete(before).callAsync(
+      () -> window.writer.write(key, model, options), MoreExecutors.directExecutor());
+    for (SettableFuture<Model> waiter : waiters) waiter.setFuture(write);
+    write.addListener(() -> finish(window.id, window.done), MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Run a write or delete which is not combined, in order with combined writes to the same record. Any open window for
+   * the record is closed right away, and {@code operation} is issued once its write (and any earlier write or delete
+   * for the record) completes, whether or not it succeeded. Windows opened afterwards wait for {@code operation}.
+   *
+   * @param id ID of the record being written or deleted.
+   * @param operation Issues the write or delete.
+   * @param <R> Result type for the operation.
+   * @return Future for the result of the operation.
+   */
+  public @Nonnull <R> ReactiveFuture<R> exclusive(@Nonnull Object id, @Nonnull AsyncCallable<R> operation) {
+    final SettableFuture<Void> done = SettableFuture.create();
+    final ListenableFuture<?> previous;
+    final Window<Key, Model> current;
+    synchronized (lock) {
+      // the open window is detached here, rather than when it closes, so that writes submitted from now on open a new
+      // window, ordered after this operation, instead of joining one which is written ahead of it.
+      current = open.remove(id);
+      previous = tail.get(id);
+      tail.put(id, done);
+    }
+    if (current != null) {
+      if (logging.isTraceEnabled())
+        logging.trace(format("Closing write window for record '%s' early, ahead of an exclusive operation.", id));
+      executor.execute(() -> close(current));
+    }
+    final ListenableFuture<R> op = previous == null ?
+      Futures.submitAsync(operation, MoreExecutors.directExecutor()) :
+      Futures.whenAllComplete(previous).callAsync(operation, MoreExecutors.directExecutor());
+    op.addListener(() -> finish(id, done), MoreExecutors.directExecutor());
+    return ReactiveFuture.wrap(op, executor);
+  }
+
+  /**
+   * Mark the write or delete tracked by {@code done} as complete, releasing anything ordered after it.
+   *
+   * @param id ID of the record.
+   * @param done Completion future registered for the operation.
+   */
+  private void finish(@Nonnull Object id, @Nonnull SettableFuture<Void> done) {
+    done.set(null);
+    synchronized (lock) {
+      if (tail.get(id) == done) tail.remove(id);
+    }
+  }
+
+  /** @return Count of writes submitted to the combiner. */
+  public long submittedCount() {
+    return submittedCount.get();
+  }
+
+  /** @return Count of writes dispatched to storage. */
+  public long writeCount() {
+    return writeCount.get();
+  }
+
+  /** @return Count of writes which were combined into an already-open window, and so never written on their own. */
+  public long combinedCount() {
+    return combinedCount.get();
+  }
+
+  /** @return Count of windows which are currently open. */
+  public int openCount() {
+    synchronized (lock) {
+      return open.size();
+    }
+  }
+}
@@ -14,10 +14,11 @@ package elide.model;
 
 import javax.annotation.Nonnull;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 
 /** Describes options involved with operations to persist model entities. */
-public interface WriteOptions extends OperationOptions {
+public interface WriteOptions extends CacheOptions, OperationOptions {
   /** Default set of write operation options. */
   WriteOptions DEFAULTS = new WriteOptions() {};
 
@@ -33,8 +34,42 @@ public interface WriteOptions extends OperationOptions {
     MUST_NOT_EXIST
   }
 
+  /** Enumerates durability levels for a write, for drivers which keep a write-ahead log. */
+  enum Durability {
+    /** The write is not logged at all. It survives a crash only if a snapshot captures it first. */
+    NONE,
+
+    /** The write is logged, but completes without waiting for the log to reach disk. */
+    ASYNC,
+
+    /** The write completes once the log reaches disk, sharing each sync with other writes logged around it. */
+    GROUP_COMMIT,
+
+    /** The write completes once the log reaches disk, syncing as soon as possible rather than waiting for others. */
+    SYNC
+  }
+
   /** @return Specifies the write mode for an operation. Overridden by some methods (for instance, {@code create}). */
   default @Nonnull Optional<WriteDisposition> writeMode() {
     return Optional.empty();
   }
+
+  /** @return Durability level for the write. If left unspecified, the driver's default is used. */
+  default @Nonnull Optional<Durability> durability() {
+    return Optional.empty();
+  }
+
+  /**
+   * @return Window within which writes to the same key may be combined, so that only the latest value is written to
+   *         storage. Applies only to {@code BLIND} and {@code MUST_EXIST} writes with a known key, and only for adapters
+   *         which support write combining. Empty (the default) disables write combining.
+   */
+  default @Nonnull Optional<Long> writeCombineWindow() {
+    return Optional.empty();
+  }
+
+  /** @return Unit to apply to the write combining window. */
+  default @Nonnull TimeUnit writeCombineWindowUnit() {
+    return TimeUnit.MILLISECONDS;
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Fixed-size array of bits, backed by an array of {@code long} words. Setting bits is lock-free (via an atomic bitwise
+ * OR on the containing word), and reads never block, so the array may be shared freely between threads. Bits may only
+ * ever be set, never cleared.
+ */
+@ThreadSafe
+public final class BitArray {
+  /** Atomic accessor for elements of the word array. */
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  /** Words holding the bits. Bit {@code i} lives at bit {@code i % 64} of word {@code i / 64}. */
+  private final @Nonnull long[] words;
+
+  /** Count of bits set in the array. */
+  private final @Nonnull AtomicLong bitCount;
+
+  /**
+   * Private constructor. Acquire via {@link #create(long)} or {@link #wrap(long[])}.
+   *
+   * @param words Words holding the bits.
+   * @param bitCount Count of bits already set in {@code words}.
+   */
+  private BitArray(@Nonnull long[] words, long bitCount) {
+    if (words.length == 0) throw new IllegalArgumentException("Bit array must hold at least one word.");
+    this.words = words;
+    this.bitCount = new AtomicLong(bitCount);
+  }
+
+  /**
+   * Create an empty bit array, holding at least {@code bits} bits. The size is rounded up to a whole count of words.
+   *
+   * @param bits Minimum count of bits to hold.
+   * @return Empty bit array.
+   */
+  public static @Nonnull BitArray create(long bits) {
+    if (bits < 1) throw new IllegalArgumentException("Bit array must hold at least one bit.");
+    long wordCount = (bits + 63) >>> 6;
+    if (wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Bit array is too large: " + bits);
+    return new BitArray(new long[(int)wordCount], 0);
+  }
+
+  /**
+   * Create a bit array from existing words. The words are copied.
+   *
+   * @param words Words to load.
+   * @return Bit array holding the same bits as {@code words}.
+   */
+  public static @Nonnull BitArray wrap(@Nonnull long[] words) {
+    long count = 0;
+    for (long word : words) count += Long.bitCount(word);
+    return new BitArray(words.clone(), count);
+  }
+
+  /**
+   * Set the bit at {@code index}.
+   *
+   * @param index Index of the bit to set.
+   * @return Whether the bit changed (i.e. was previously clear).
+   */
+  public boolean set(long index) {
+    final long mask = 1L << index;
+    final long previous = (long)WORDS.getAndBitwiseOr(words, (int)(index >>> 6), mask);
+    if ((previous & mask) != 0) return false;
+    bitCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Check the bit at {@code index}.
+   *
+   * @param index Index of the bit to check.
+   * @return Whether the bit is set.
+   */
+  public boolean get(long index) {
+    return ((long)WORDS.getAcquire(words, (int)(index >>> 6)) & (1L << index)) != 0;
+  }
+
+  /**
+   * Set every bit which is set in {@code other}, which must be the same size as this array.
+   *
+   * @param other Bit array to merge into this one.
+   */
+  public void putAll(@Nonnull BitArray other) {
+    if (other.words.length != words.length)
+      throw new IllegalArgumentException("Cannot merge bit arrays of different sizes.");
+    for (int i = 0; i < words.length; i++) {
+      final long incoming = (long)WORDS.getAcquire(other.words, i);
+      if (incoming == 0) continue;
+      final long previous = (long)WORDS.getAndBitwiseOr(words, i, incoming);
+      final int added = Long.bitCount(incoming & ~previous);
+      if (added > 0) bitCount.addAndGet(added);
+    }
+  }
+
+  /** @return Copy of the words backing this array. */
+  public @Nonnull long[] toWords() {
+    final long[] copy = new long[words.length];
+    for (int i = 0; i < words.length; i++) copy[i] = (long)WORDS.getAcquire(words, i);
+    return copy;
+  }
+
+  /** @return Total count of bits held by this array. */
+  public long bitSize() {
+    return (long)words.length << 6;
+  }
+
+  /** @return Count of bits set in this array. */
+  public long bitCount() {
+    return bitCount.get();
+  }
+
+  /** @return Count of words backing this array. */
+  public int wordCount() {
+    return words.length;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Entrypoint for restoring Bloom filters from the {@link BloomFilter} proto, whatever their variant.
+ */
+public final class BloomFilters {
+  private BloomFilters() { /* Disallow construction. */ }
+
+  /**
+   * Restore a filter from its serialized form, picking the variant from the shape of the proto:
+   *
+   * <ul>
+   *   <li>Bucket counts present: {@link CountingBloomFilter}.</li>
+   *   <li>{@code limit} set: {@link LayeredBloomFilter}.</li>
+   *   <li>Otherwise: {@link StandardBloomFilter}.</li>
+   * </ul>
+   *
+   * @param proto Serialized filter.
+   * @return Restored filter, which serializes back to an equal proto.
+   * @throws IllegalArgumentException If the proto is malformed.
+   */
+  public static @Nonnull MembershipFilter fromProto(@Nonnull BloomFilter proto) {
+    if (proto.getLayerCount() > 0 && proto.getLayer(0).getCountCount() > 0)
+      return CountingBloomFilter.fromProto(proto);
+    if (proto.getLimit() > 0)
+      return LayeredBloomFilter.fromProto(proto);
+    return StandardBloomFilter.fromProto(proto);
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.core.crypto.HashAlgorithm;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * Produces the pair of 64-bit hashes which drive bucket selection in a Bloom filter, via double hashing: the bucket for
+ * round {@code i} is derived from {@code h1 + i * h2}, so only one hash of each item is ever computed, regardless of the
+ * count of rounds.
+ *
+ * <p>The hash algorithm is taken from the filter's {@link HashAlgorithm}. {@link HashAlgorithm#IDENTITY} (the default)
+ * selects the built-in 128-bit MurmurHash3, which is fast and well-distributed, and is the recommended choice. The
+ * cryptographic algorithms are supported for compatibility with filters produced elsewhere, and use the leading 128
+ * bits of the digest.</p>
+ */
+@ThreadSafe
+public final class BloomHasher {
+  /** Little-endian accessor for {@code long} values in a byte array. */
+  private static final VarHandle LONGS_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** Big-endian accessor for {@code long} values in a byte array. */
+  private static final VarHandle LONGS_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /** First mixing constant for MurmurHash3. */
+  private static final long C1 = 0x87c37b91114253d5L;
+
+  /** Second mixing constant for MurmurHash3. */
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  /** Shared MurmurHash3 hasher. */
+  private static final BloomHasher MURMUR3 = new BloomHasher(HashAlgorithm.IDENTITY, null);
+
+  /** Algorithm this hasher implements. */
+  private final @Nonnull HashAlgorithm algorithm;
+
+  /** Per-thread digests, for cryptographic algorithms. {@code null} for MurmurHash3. */
+  private final ThreadLocal<MessageDigest> digest;
+
+  /**
+   * Private constructor. Acquire via {@link #forAlgorithm(HashAlgorithm)}.
+   *
+   * @param algorithm Algorithm this hasher implements.
+   * @param digestName JCA name of the digest to use, or {@code null} for MurmurHash3.
+   */
+  private BloomHasher(@Nonnull HashAlgorithm algorithm, String digestName) {
+    this.algorithm = algorithm;
+    if (digestName == null) {
+      this.digest = null;
+    } else {
+      try {
+        MessageDigest.getInstance(digestName);  // fail fast if the algorithm is unavailable
+      } catch (NoSuchAlgorithmException nsa) {
+        throw new IllegalArgumentException("Hash algorithm is not available: " + algorithm.name(), nsa);
+      }
+      this.digest = ThreadLocal.withInitial(() -> {
+        try {
+          return MessageDigest.getInstance(digestName);
+        } catch (NoSuchAlgorithmException nsa) {
+          throw new IllegalStateException(nsa);
+        }
+      });
+    }
+  }
+
+  /**
+   * Acquire a hasher for the provided algorithm.
+   *
+   * @param algorithm Hash algorithm, as specified on a Bloom filter.
+   * @return Hasher for the algorithm.
+   * @throws IllegalArgumentException If the algorithm is not recognized or not available.
+   */
+  public static @Nonnull BloomHasher forAlgorithm(@Nonnull HashAlgorithm algorithm) {
+    switch (algorithm) {
+      case IDENTITY: return MURMUR3;
+      case MD5: return new BloomHasher(algorithm, "MD5");
+      case SHA1: return new BloomHasher(algorithm, "SHA-1");
+      case SHA256: return new BloomHasher(algorithm, "SHA-256");
+      case SHA512: return new BloomHasher(algorithm, "SHA-512");
+      case SHA3_224: return new BloomHasher(algorithm, "SHA3-224");
+      case SHA3_256: return new BloomHasher(algorithm, "SHA3-256");
+      case SHA3_512: return new BloomHasher(algorithm, "SHA3-512");
+      default: throw new IllegalArgumentException("Unrecognized hash algorithm: " + algorithm);
+    }
+  }
+
+  /** @return Algorithm this hasher implements. */
+  public @Nonnull HashAlgorithm algorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Hash an item into a pair of 64-bit values.
+   *
+   * @param item Item to hash.
+   * @return Two-element array holding {@code h1} and {@code h2}.
+   */
+  public @Nonnull long[] hash(@Nonnull byte[] item) {
+    if (digest == null) return murmur3(item);
+    final MessageDigest md = digest.get();
+    md.reset();
+    final byte[] out = md.digest(item);
+    return new long[] {(long)LONGS_BE.get(out, 0), (long)LONGS_BE.get(out, 8)};
+  }
+
+  /**
+   * Resolve the bucket for a given round, via double hashing.
+   *
+   * @param h1 First hash of the item.
+   * @param h2 Second hash of the item.
+   * @param round Round to resolve the bucket for, starting at {@code 0}.
+   * @param buckets Total count of buckets.
+   * @return Bucket index, in {@code [0, buckets)}.
+   */
+  public static long bucket(long h1, long h2, int round, long buckets) {
+    long combined = h1 + round * h2;
+    if (combined < 0) combined = ~combined;
+    return combined % buckets;
+  }
+
+  // -- MurmurHash3 (x64, 128-bit) -- //
+
+  /**
+   * Compute the 128-bit MurmurHash3 (x64 variant, seed {@code 0}) of {@code data}.
+   *
+   * @param data Data to hash.
+   * @return Two-element array holding the low and high 64 bits of the hash.
+   */
+  private static @Nonnull long[] murmur3(@Nonnull byte[] data) {
+    final int length = data.length;
+    final int blocks = length >>> 4;
+    long h1 = 0;
+    long h2 = 0;
+
+    for (int i = 0; i < blocks; i++) {
+      long k1 = (long)LONGS_LE.get(data, i << 4);
+      long k2 = (long)LONGS_LE.get(data, (i << 4) + 8);
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    final int tail = blocks << 4;
+    long k1 = 0;
+    long k2 = 0;
+    switch (length & 15) {
+      case 15: k2 ^= ((long)data[tail + 14] & 0xff) << 48;  // fall through
+      case 14: k2 ^= ((long)data[tail + 13] & 0xff) << 40;  // fall through
+      case 13: k2 ^= ((long)data[tail + 12] & 0xff) << 32;  // fall through
+      case 12: k2 ^= ((long)data[tail + 11] & 0xff) << 24;  // fall through
+      case 11: k2 ^= ((long)data[tail + 10] & 0xff) << 16;  // fall through
+      case 10: k2 ^= ((long)data[tail + 9] & 0xff) << 8;  // fall through
+      case 9:
+        k2 ^= ((long)data[tail + 8] & 0xff);
+        h2 ^= mixK2(k2);
+        // fall through
+      case 8: k1 ^= ((long)data[tail + 7] & 0xff) << 56;  // fall through
+      case 7: k1 ^= ((long)data[tail + 6] & 0xff) << 48;  // fall through
+      case 6: k1 ^= ((long)data[tail + 5] & 0xff) << 40;  // fall through
+      case 5: k1 ^= ((long)data[tail + 4] & 0xff) << 32;  // fall through
+      case 4: k1 ^= ((long)data[tail + 3] & 0xff) << 24;  // fall through
+      case 3: k1 ^= ((long)data[tail + 2] & 0xff) << 16;  // fall through
+      case 2: k1 ^= ((long)data[tail + 1] & 0xff) << 8;  // fall through
+      case 1:
+        k1 ^= ((long)data[tail] & 0xff);
+        h1 ^= mixK1(k1);
+        break;
+      default:
+        break;
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+    return new long[] {h1, h2};
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Sizing math and wire helpers shared by the Bloom filter implementations in this package.
+ */
+public final class BloomMath {
+  private BloomMath() { /* Disallow construction. */ }
+
+  /**
+   * Compute the optimal count of bits for a Bloom filter, given its expected count of items and target false-positive
+   * probability: {@code m = -n ln(p) / (ln 2)^2}.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param fpp Target false-positive probability, in {@code (0, 1)}.
+   * @return Optimal count of bits (at least 64).
+   */
+  public static long optimalBits(long expectedInsertions, double fpp) {
+    if (expectedInsertions < 1) throw new IllegalArgumentException("Expected insertions must be positive.");
+    if (!(fpp > 0.0 && fpp < 1.0)) throw new IllegalArgumentException("False-positive rate must be in (0, 1).");
+    return Math.max(64L, (long)Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+  }
+
+  /**
+   * Compute the optimal count of hash rounds for a Bloom filter, given its expected count of items and count of bits:
+   * {@code k = (m / n) ln 2}.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param bits Count of bits in the filter.
+   * @return Optimal count of hash rounds (at least 1).
+   */
+  public static int optimalRounds(long expectedInsertions, long bits) {
+    if (expectedInsertions < 1) throw new IllegalArgumentException("Expected insertions must be positive.");
+    return Math.max(1, (int)Math.round((double)bits / expectedInsertions * Math.log(2)));
+  }
+
+  /**
+   * Read the bit set of a serialized filter layer.
+   *
+   * @param layer Serialized layer.
+   * @return Words of the layer's bit set.
+   */
+  static @Nonnull long[] words(@Nonnull BloomFilter.FilterLayer layer) {
+    final long[] words = new long[layer.getBitsetCount()];
+    for (int i = 0; i < words.length; i++) words[i] = layer.getBitset(i);
+    return words;
+  }
+
+  /**
+   * Read the bucket counts of a serialized filter layer.
+   *
+   * @param layer Serialized layer.
+   * @return Bucket counts of the layer.
+   */
+  static @Nonnull long[] counts(@Nonnull BloomFilter.FilterLayer layer) {
+    final long[] counts = new long[layer.getCountCount()];
+    for (int i = 0; i < counts.length; i++) counts[i] = layer.getCount(i);
+    return counts;
+  }
+
+  /**
+   * Serialize a filter layer holding only a bit set.
+   *
+   * @param words Words of the bit set.
+   * @return Serialized layer.
+   */
+  static @Nonnull BloomFilter.FilterLayer layer(@Nonnull long[] words) {
+    final BloomFilter.FilterLayer.Builder builder = BloomFilter.FilterLayer.newBuilder();
+    for (long word : words) builder.addBitset(word);
+    return builder.build();
+  }
+
+  /**
+   * Serialize a filter layer holding a bit set and bucket counts.
+   *
+   * @param words Words of the bit set.
+   * @param counts Count for each bucket.
+   * @return Serialized layer.
+   */
+  static @Nonnull BloomFilter.FilterLayer layer(@Nonnull long[] words, @Nonnull long[] counts) {
+    final BloomFilter.FilterLayer.Builder builder = BloomFilter.FilterLayer.newBuilder();
+    for (long word : words) builder.addBitset(word);
+    for (long count : counts) builder.addCount(count);
+    return builder.build();
+  }
+}
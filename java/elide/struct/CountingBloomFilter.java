@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.core.crypto.HashAlgorithm;
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Counting Bloom filter, which keeps a counter per bucket instead of a single bit, and so supports {@link #remove}.
+ * Buckets are chosen exactly as in {@link StandardBloomFilter}; counters are updated atomically, so adds, removes and
+ * queries may run concurrently without locks.
+ *
+ * <p>On the wire, the filter is a single layer carrying both the presence bit set (derived from the counters) and the
+ * count for each bucket. Removing an item which was never added may introduce false negatives, as with any counting
+ * filter.</p>
+ */
+@ThreadSafe
+public final class CountingBloomFilter implements MembershipFilter {
+  /** Atomic accessor for elements of the counter array. */
+  private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  /** Hasher for items. */
+  private final @Nonnull BloomHasher hasher;
+
+  /** Counter for each bucket. Always a whole multiple of 64 in length, to line up with the serialized bit set. */
+  private final @Nonnull long[] counters;
+
+  /** Count of hash rounds applied to each item. */
+  private final int rounds;
+
+  /** Count of items added, less items removed. */
+  private final @Nonnull AtomicLong count;
+
+  /**
+   * Private constructor. Acquire via one of the static factory methods.
+   *
+   * @param hasher Hasher for items.
+   * @param counters Counter for each bucket.
+   * @param rounds Count of hash rounds applied to each item.
+   * @param count Count of items already in the filter.
+   */
+  private CountingBloomFilter(@Nonnull BloomHasher hasher, @Nonnull long[] counters, int rounds, long count) {
+    if (rounds < 1) throw new IllegalArgumentException("Bloom filter must apply at least one hash round.");
+    if (counters.length == 0 || counters.length % Long.SIZE != 0)
+      throw new IllegalArgumentException("Counting Bloom filter must hold a whole count of 64-bucket words.");
+    this.hasher = hasher;
+    this.counters = counters;
+    this.rounds = rounds;
+    this.count = new AtomicLong(count);
+  }
+
+  /**
+   * Create an empty counting filter, sized for the provided count of insertions and false-positive rate, using
+   * MurmurHash3.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param fpp Target false-positive probability, in {@code (0, 1)}, at {@code expectedInsertions} items.
+   * @return Empty counting Bloom filter.
+   */
+  public static @Nonnull CountingBloomFilter create(long expectedInsertions, double fpp) {
+    return create(expectedInsertions, fpp, HashAlgorithm.IDENTITY);
+  }
+
+  /**
+   * Create an empty counting filter, sized for the provided count of insertions and false-positive rate.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param fpp Target false-positive probability, in {@code (0, 1)}, at {@code expectedInsertions} items.
+   * @param algorithm Hash algorithm to use.
+   * @return Empty counting Bloom filter.
+   */
+  public static @Nonnull CountingBloomFilter create(long expectedInsertions,
+                                                    double fpp,
+                                                    @Nonnull HashAlgorithm algorithm) {
+    final long bits = BloomMath.optimalBits(expectedInsertions, fpp);
+    final long words = (bits + 63) >>> 6;
+    if (words * Long.SIZE > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Counting Bloom filter is too large: " + bits);
+    return new CountingBloomFilter(
+      BloomHasher.forAlgorithm(algorithm),
+      new long[(int)(words * Long.SIZE)],
+      BloomMath.optimalRounds(expectedInsertions, bits),
+      0);
+  }
+
+  /**
+   * Restore a counting filter from its serialized form. The proto must hold exactly one layer, with a count for each
+   * bucket of its bit set.
+   *
+   * @param proto Serialized filter.
+   * @return Restored filter.
+   * @throws IllegalArgumentException If the proto does not describe a counting filter.
+   */
+  public static @Nonnull CountingBloomFilter fromProto(@Nonnull BloomFilter proto) {
+    if (proto.getLayerCount() != 1)
+      throw new IllegalArgumentException("Counting Bloom filter must have exactly one layer.");
+    final BloomFilter.FilterLayer layer = proto.getLayer(0);
+    if (layer.getCountCount() != layer.getBitsetCount() * Long.SIZE)
+      throw new IllegalArgumentException("Counting Bloom filter must carry a count for each bucket.");
+    return new CountingBloomFilter(
+      BloomHasher.forAlgorithm(proto.getAlgorithm()),
+      BloomMath.counts(layer),
+      proto.getRounds(),
+      proto.getCount());
+  }
+
+  /**
+   * Add an item to the filter. Unlike a regular filter, every add is counted, so that a matching {@link #remove}
+   * always balances it.
+   *
+   * @param item Item to add.
+   * @return Whether any bucket went from empty to occupied as a result.
+   */
+  @Override
+  public boolean put(@Nonnull byte[] item) {
+    final long[] hash = hasher.hash(item);
+    boolean changed = false;
+    for (int i = 0; i < rounds; i++) {
+      final int bucket = (int)BloomHasher.bucket(hash[0], hash[1], i, counters.length);
+      changed |= (long)COUNTERS.getAndAdd(counters, bucket, 1L) == 0L;
+    }
+    count.incrementAndGet();
+    return changed;
+  }
+
+  /**
+   * Remove an item from the filter. If the item is definitely absent, the filter is left untouched. Counters never
+   * drop below zero, even under concurrent removes.
+   *
+   * @param item Item to remove.
+   * @return Whether the item was possibly present, and so was removed.
+   */
+  public boolean remove(@Nonnull byte[] item) {
+    final long[] hash = hasher.hash(item);
+    if (!mightContainHashed(hash)) return false;
+    for (int i = 0; i < rounds; i++) {
+      final int bucket = (int)BloomHasher.bucket(hash[0], hash[1], i, counters.length);
+      long current;
+      do {
+        current = (long)COUNTERS.getAcquire(counters, bucket);
+        if (current == 0L) break;
+      } while (!COUNTERS.compareAndSet(counters, bucket, current, current - 1L));
+    }
+    count.updateAndGet((value) -> Math.max(0L, value - 1L));
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean mightContain(@Nonnull byte[] item) {
+    return mightContainHashed(hasher.hash(item));
+  }
+
+  /**
+   * Estimate how many times an item has been added (less removals). The estimate never undercounts, unless items were
+   * removed without first being added.
+   *
+   * @param item Item to check.
+   * @return Estimated count for the item; zero if it is definitely absent.
+   */
+  public long estimateCount(@Nonnull byte[] item) {
+    final long[] hash = hasher.hash(item);
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < rounds; i++) {
+      final int bucket = (int)BloomHasher.bucket(hash[0], hash[1], i, counters.length);
+      min = Math.min(min, (long)COUNTERS.getAcquire(counters, bucket));
+    }
+    return min;
+  }
+
+  /**
+   * Check whether an item may be present, by its pre-computed hash.
+   *
+   * @param hash Hash of the item.
+   * @return {@code false} if the item is definitely absent; {@code true} if it may be present.
+   */
+  private boolean mightContainHashed(@Nonnull long[] hash) {
+    for (int i = 0; i < rounds; i++) {
+      final int bucket = (int)BloomHasher.bucket(hash[0], hash[1], i, counters.length);
+      if ((long)COUNTERS.getAcquire(counters, bucket) == 0L) return false;
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long count() {
+    return count.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int rounds() {
+    return rounds;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull HashAlgorithm algorithm() {
+    return hasher.algorithm();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double expectedFpp() {
+    long occupied = 0;
+    for (int i = 0; i < counters.length; i++) {
+      if ((long)COUNTERS.getAcquire(counters, i) != 0L) occupied++;
+    }
+    return Math.pow((double)occupied / counters.length, rounds);
+  }
+
+  /** @return Total count of buckets in this filter. */
+  public long bucketCount() {
+    return counters.length;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull BloomFilter toProto() {
+    final long[] snapshot = new long[counters.length];
+    final long[] words = new long[counters.length / Long.SIZE];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = (long)COUNTERS.getAcquire(counters, i);
+      if (snapshot[i] != 0L) words[i >>> 6] |= 1L << i;
+    }
+    return BloomFilter.newBuilder()
+      .setAlgorithm(hasher.algorithm())
+      .setRounds(rounds)
+      .setCount(count.get())
+      .addLayer(BloomMath.layer(words, snapshot))
+      .build();
+  }
+}
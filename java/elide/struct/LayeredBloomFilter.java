@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.core.crypto.HashAlgorithm;
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+
+
+/**
+ * Layered (scalable) Bloom filter, made up of uniform {@link StandardBloomFilter} layers. Each layer is sized for
+ * {@link #limit()} items at the target false-positive rate. Once the newest layer holds {@code limit} items, a new layer
+ * is added automatically, so the filter can grow without bound while each layer stays within its design parameters.
+ *
+ * <p>Items are checked against every layer, and added only to the newest one. Each item is hashed once, regardless of
+ * the count of layers. The combined false-positive rate grows with the count of layers (roughly, it is their sum), so
+ * {@code limit} should be set near the expected steady-state size where possible.</p>
+ *
+ * <p>Adds and queries are lock-free; adding a layer briefly takes a lock. Under concurrent adds, a layer may slightly
+ * exceed {@code limit} before the next layer takes over.</p>
+ */
+@ThreadSafe
+public final class LayeredBloomFilter implements MembershipFilter {
+  /** Hasher for items, shared by all layers. */
+  private final @Nonnull BloomHasher hasher;
+
+  /** Count of items each layer is sized for. */
+  private final long limit;
+
+  /** Count of bits in each layer. */
+  private final long layerBits;
+
+  /** Count of hash rounds applied to each item, in each layer. */
+  private final int rounds;
+
+  /** Current layers, oldest first. Replaced (never mutated) when a layer is added. */
+  @GuardedBy("this")
+  private volatile @Nonnull StandardBloomFilter[] layers;
+
+  /**
+   * Private constructor. Acquire via one of the static factory methods.
+   *
+   * @param hasher Hasher for items.
+   * @param limit Count of items each layer is sized for.
+   * @param layerBits Count of bits in each layer.
+   * @param rounds Count of hash rounds applied to each item.
+   * @param layers Initial layers.
+   */
+  private LayeredBloomFilter(@Nonnull BloomHasher hasher,
+                             long limit,
+                             long layerBits,
+                             int rounds,
+                             @Nonnull StandardBloomFilter[] layers) {
+    if (limit < 1) throw new IllegalArgumentException("Layered Bloom filter must have a positive limit.");
+    this.hasher = hasher;
+    this.limit = limit;
+    this.layerBits = layerBits;
+    this.rounds = rounds;
+    this.layers = layers;
+  }
+
+  /**
+   * Create an empty layered filter, using MurmurHash3.
+   *
+   * @param limit Count of items each layer is sized for.
+   * @param fpp Target false-positive probability for each layer, in {@code (0, 1)}.
+   * @return Empty layered Bloom filter, with one layer.
+   */
+  public static @Nonnull LayeredBloomFilter create(long limit, double fpp) {
+    return create(limit, fpp, HashAlgorithm.IDENTITY);
+  }
+
+  /**
+   * Create an empty layered filter.
+   *
+   * @param limit Count of items each layer is sized for.
+   * @param fpp Target false-positive probability for each layer, in {@code (0, 1)}.
+   * @param algorithm Hash algorithm to use.
+   * @return Empty layered Bloom filter, with one layer.
+   */
+  public static @Nonnull LayeredBloomFilter create(long limit, double fpp, @Nonnull HashAlgorithm algorithm) {
+    final BloomHasher hasher = BloomHasher.forAlgorithm(algorithm);
+    final long bits = BloomMath.optimalBits(limit, fpp);
+    final int rounds = BloomMath.optimalRounds(limit, bits);
+    final StandardBloomFilter first = StandardBloomFilter.empty(hasher, bits, rounds);
+    return new LayeredBloomFilter(hasher, limit, first.bitSize(), rounds, new StandardBloomFilter[] {first});
+  }
+
+  /**
+   * Restore a layered filter from its serialized form. The proto must specify a {@code limit}, hold at least one layer
+   * (all of the same size), and carry no bucket counts. Layers fill in order, so every layer but the newest is assumed
+   * to hold {@code limit} items, and the newest holds the remainder of {@code count}.
+   *
+   * @param proto Serialized filter.
+   * @return Restored filter.
+   * @throws IllegalArgumentException If the proto does not describe a layered filter.
+   */
+  public static @Nonnull LayeredBloomFilter fromProto(@Nonnull BloomFilter proto) {
+    if (proto.getLimit() < 1) throw new IllegalArgumentException("Layered Bloom filter must specify a limit.");
+    if (proto.getLayerCount() < 1) throw new IllegalArgumentException("Layered Bloom filter must have a layer.");
+    final BloomHasher hasher = BloomHasher.forAlgorithm(proto.getAlgorithm());
+    final int size = proto.getLayer(0).getBitsetCount();
+    final StandardBloomFilter[] layers = new StandardBloomFilter[proto.getLayerCount()];
+    long remaining = proto.getCount();
+    for (int i = 0; i < layers.length; i++) {
+      final BloomFilter.FilterLayer layer = proto.getLayer(i);
+      if (layer.getBitsetCount() != size || layer.getCountCount() > 0)
+        throw new IllegalArgumentException("Layered Bloom filter layers must be uniform, without bucket counts.");
+      final long layerCount = i == layers.length - 1 ? remaining : Math.min(remaining, proto.getLimit());
+      remaining -= layerCount;
+      layers[i] = StandardBloomFilter.fromLayer(hasher, layer, proto.getRounds(), Math.max(0, layerCount));
+    }
+    return new LayeredBloomFilter(hasher, proto.getLimit(), layers[0].bitSize(), proto.getRounds(), layers);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean put(@Nonnull byte[] item) {
+    final long[] hash = hasher.hash(item);
+    final StandardBloomFilter[] current = layers;
+    for (StandardBloomFilter layer : current) {
+      if (layer.mightContainHashed(hash)) return false;
+    }
+    final StandardBloomFilter top = current[current.length - 1];
+    final boolean changed = top.putHashed(hash);
+    if (top.count() >= limit) grow(top);
+    return changed;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean mightContain(@Nonnull byte[] item) {
+    final long[] hash = hasher.hash(item);
+    for (StandardBloomFilter layer : layers) {
+      if (layer.mightContainHashed(hash)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Add a new layer, if {@code full} is still the newest layer.
+   *
+   * @param full Layer which has reached the limit.
+   */
+  private synchronized void grow(@Nonnull StandardBloomFilter full) {
+    final StandardBloomFilter[] current = layers;
+    if (current[current.length - 1] != full) return;
+    final StandardBloomFilter[] next = Arrays.copyOf(current, current.length + 1);
+    next[current.length] = StandardBloomFilter.empty(hasher, layerBits, rounds);
+    layers = next;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long count() {
+    long total = 0;
+    for (StandardBloomFilter layer : layers) total += layer.count();
+    return total;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int rounds() {
+    return rounds;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull HashAlgorithm algorithm() {
+    return hasher.algorithm();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double expectedFpp() {
+    double miss = 1.0;
+    for (StandardBloomFilter layer : layers) miss *= 1.0 - layer.expectedFpp();
+    return 1.0 - miss;
+  }
+
+  /** @return Count of items each layer is sized for. */
+  public long limit() {
+    return limit;
+  }
+
+  /** @return Current count of layers. */
+  public int layerCount() {
+    return layers.length;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull BloomFilter toProto() {
+    final StandardBloomFilter[] current = layers;
+    final BloomFilter.Builder builder = BloomFilter.newBuilder()
+      .setAlgorithm(hasher.algorithm())
+      .setRounds(rounds)
+      .setLimit(limit);
+    long total = 0;
+    for (StandardBloomFilter layer : current) {
+      total += layer.count();
+      builder.addLayer(layer.toProto().getLayer(0));
+    }
+    return builder.setCount(total).build();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.core.crypto.HashAlgorithm;
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Describes a probabilistic set-membership filter. Filters answer {@link #mightContain(byte[])} with either "possibly
+ * present" or "definitely absent": false positives are possible (at a rate tuned when the filter is created), but false
+ * negatives are not. All implementations are safe for concurrent use, and serialize to the {@link BloomFilter} proto.
+ */
+public interface MembershipFilter {
+  /**
+   * Add an item to the filter.
+   *
+   * @param item Item to add.
+   * @return Whether the filter changed as a result. {@code false} means the item was probably already present.
+   */
+  boolean put(@Nonnull byte[] item);
+
+  /**
+   * Check whether an item may be present in the filter.
+   *
+   * @param item Item to check.
+   * @return {@code false} if the item is definitely absent; {@code true} if it may be present.
+   */
+  boolean mightContain(@Nonnull byte[] item);
+
+  /**
+   * Add a string item to the filter, encoded as UTF-8.
+   *
+   * @param item Item to add.
+   * @return Whether the filter changed as a result.
+   */
+  default boolean put(@Nonnull CharSequence item) {
+    return put(item.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Check whether a string item, encoded as UTF-8, may be present in the filter.
+   *
+   * @param item Item to check.
+   * @return {@code false} if the item is definitely absent; {@code true} if it may be present.
+   */
+  default boolean mightContain(@Nonnull CharSequence item) {
+    return mightContain(item.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** @return Approximate count of distinct items added to the filter. */
+  long count();
+
+  /** @return Count of hash rounds applied to each item. */
+  int rounds();
+
+  /** @return Hash algorithm in use by the filter. */
+  @Nonnull HashAlgorithm algorithm();
+
+  /** @return Estimated probability that {@link #mightContain(byte[])} returns a false positive, given current contents. */
+  double expectedFpp();
+
+  /** @return Serialized form of this filter, which may be restored via {@code BloomFilters.fromProto}. */
+  @Nonnull BloomFilter toProto();
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import tools.elide.core.crypto.HashAlgorithm;
+import tools.elide.struct.BloomFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Regular (single-layer) Bloom filter, backed by a {@link BitArray}. Each item sets {@link #rounds()} bits, chosen via
+ * double hashing from a single 128-bit hash. Adds are lock-free, and queries never block.
+ *
+ * <p>The filter is sized up-front for an expected count of insertions and a target false-positive rate; adding many
+ * more items than expected degrades the false-positive rate. See {@code LayeredBloomFilter} for a filter which grows.</p>
+ */
+@ThreadSafe
+public final class StandardBloomFilter implements MembershipFilter {
+  /** Hasher for items. */
+  private final @Nonnull BloomHasher hasher;
+
+  /** Bits backing the filter. */
+  private final @Nonnull BitArray bits;
+
+  /** Count of hash rounds applied to each item. */
+  private final int rounds;
+
+  /** Count of puts which changed the filter. */
+  private final @Nonnull AtomicLong count;
+
+  /**
+   * Private constructor. Acquire via one of the static factory methods.
+   *
+   * @param hasher Hasher for items.
+   * @param bits Bits backing the filter.
+   * @param rounds Count of hash rounds applied to each item.
+   * @param count Count of items already in the filter.
+   */
+  private StandardBloomFilter(@Nonnull BloomHasher hasher, @Nonnull BitArray bits, int rounds, long count) {
+    if (rounds < 1) throw new IllegalArgumentException("Bloom filter must apply at least one hash round.");
+    this.hasher = hasher;
+    this.bits = bits;
+    this.rounds = rounds;
+    this.count = new AtomicLong(count);
+  }
+
+  /**
+   * Create an empty filter, sized for the provided count of insertions and false-positive rate, using MurmurHash3.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param fpp Target false-positive probability, in {@code (0, 1)}, at {@code expectedInsertions} items.
+   * @return Empty Bloom filter.
+   */
+  public static @Nonnull StandardBloomFilter create(long expectedInsertions, double fpp) {
+    return create(expectedInsertions, fpp, HashAlgorithm.IDENTITY);
+  }
+
+  /**
+   * Create an empty filter, sized for the provided count of insertions and false-positive rate.
+   *
+   * @param expectedInsertions Count of items the filter is expected to hold.
+   * @param fpp Target false-positive probability, in {@code (0, 1)}, at {@code expectedInsertions} items.
+   * @param algorithm Hash algorithm to use.
+   * @return Empty Bloom filter.
+   */
+  public static @Nonnull StandardBloomFilter create(long expectedInsertions,
+                                                    double fpp,
+                                                    @Nonnull HashAlgorithm algorithm) {
+    final long bitCount = BloomMath.optimalBits(expectedInsertions, fpp);
+    return new StandardBloomFilter(
+      BloomHasher.forAlgorithm(algorithm),
+      BitArray.create(bitCount),
+      BloomMath.optimalRounds(expectedInsertions, bitCount),
+      0);
+  }
+
+  /**
+   * Restore a filter from its serialized form. The proto must hold exactly one layer, with no bucket counts.
+   *
+   * @param proto Serialized filter.
+   * @return Restored filter.
+   * @throws IllegalArgumentException If the proto does not describe a single-layer filter.
+   */
+  public static @Nonnull StandardBloomFilter fromProto(@Nonnull BloomFilter proto) {
+    if (proto.getLayerCount() != 1)
+      throw new IllegalArgumentException("Regular Bloom filter must have exactly one layer.");
+    final BloomFilter.FilterLayer layer = proto.getLayer(0);
+    if (layer.getCountCount() > 0)
+      throw new IllegalArgumentException("Regular Bloom filter cannot carry bucket counts.");
+    return fromLayer(BloomHasher.forAlgorithm(proto.getAlgorithm()), layer, proto.getRounds(), proto.getCount());
+  }
+
+  /**
+   * Create an empty filter with an explicit shape. Used by layered filters to create uniform layers.
+   *
+   * @param hasher Hasher for items.
+   * @param bitCount Minimum count of bits in the filter.
+   * @param rounds Count of hash rounds applied to each item.
+   * @return Empty Bloom filter.
+   */
+  static @Nonnull StandardBloomFilter empty(@Nonnull BloomHasher hasher, long bitCount, int rounds) {
+    return new StandardBloomFilter(hasher, BitArray.create(bitCount), rounds, 0);
+  }
+
+  /**
+   * Restore a filter from a single serialized layer. Used by layered filters to restore its layers.
+   *
+   * @param hasher Hasher for items.
+   * @param layer Serialized layer.
+   * @param rounds Count of hash rounds applied to each item.
+   * @param count Count of items in the layer.
+   * @return Restored filter.
+   */
+  static @Nonnull StandardBloomFilter fromLayer(@Nonnull BloomHasher hasher,
+                                                @Nonnull BloomFilter.FilterLayer layer,
+                                                int rounds,
+                                                long count) {
+    return new StandardBloomFilter(hasher, BitArray.wrap(BloomMath.words(layer)), rounds, count);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean put(@Nonnull byte[] item) {
+    return putHashed(hasher.hash(item));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean mightContain(@Nonnull byte[] item) {
+    return mightContainHashed(hasher.hash(item));
+  }
+
+  /**
+   * Add an item to the filter, by its pre-computed hash.
+   *
+   * @param hash Hash of the item, from this filter's {@link BloomHasher}.
+   * @return Whether the filter changed as a result.
+   */
+  boolean putHashed(@Nonnull long[] hash) {
+    final long size = bits.bitSize();
+    boolean changed = false;
+    for (int i = 0; i < rounds; i++) {
+      changed |= bits.set(BloomHasher.bucket(hash[0], hash[1], i, size));
+    }
+    if (changed) count.incrementAndGet();
+    return changed;
+  }
+
+  /**
+   * Check whether an item may be present in the filter, by its pre-computed hash.
+   *
+   * @param hash Hash of the item, from this filter's {@link BloomHasher}.
+   * @return {@code false} if the item is definitely absent; {@code true} if it may be present.
+   */
+  boolean mightContainHashed(@Nonnull long[] hash) {
+    final long size = bits.bitSize();
+    for (int i = 0; i < rounds; i++) {
+      if (!bits.get(BloomHasher.bucket(hash[0], hash[1], i, size))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Merge all items from {@code other} into this filter. Both filters must share the same size, rounds and algorithm.
+   *
+   * @param other Filter to merge into this one.
+   */
+  public void putAll(@Nonnull StandardBloomFilter other) {
+    if (other.rounds != rounds || other.hasher.algorithm() != hasher.algorithm()
+        || other.bits.bitSize() != bits.bitSize())
+      throw new IllegalArgumentException("Cannot merge incompatible Bloom filters.");
+    bits.putAll(other.bits);
+    count.addAndGet(other.count());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long count() {
+    return count.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int rounds() {
+    return rounds;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull HashAlgorithm algorithm() {
+    return hasher.algorithm();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double expectedFpp() {
+    return Math.pow((double)bits.bitCount() / bits.bitSize(), rounds);
+  }
+
+  /** @return Total count of bits in this filter. */
+  public long bitSize() {
+    return bits.bitSize();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public @Nonnull BloomFilter toProto() {
+    return BloomFilter.newBuilder()
+      .setAlgorithm(hasher.algorithm())
+      .setRounds(rounds)
+      .setCount(count.get())
+      .addLayer(BloomMath.layer(bits.toWords()))
+      .build();
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import elide.model.BatchingDriver;
+import elide.model.DeleteOptions;
+import elide.model.FetchOptions;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonKey;
+import elide.model.UpdateOptions;
+import elide.model.Versioned;
+import elide.model.WriteOptions;
+import elide.runtime.jvm.ReactiveFuture;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the {@link BatchingDriver}, wrapped around an {@link InMemoryDriver}. */
+@SuppressWarnings("UnstableApiUsage")
+public final class BatchingDriverTest {
+  private static ListeningScheduledExecutorService executorService;
+
+  @BeforeAll
+  static void initExecutor() {
+    executorService = MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(3));
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+  }
+
+  private static @Nonnull BatchingDriver<PersonKey, Person, ?, ?> batching(int maxBatch, long maxDelayMillis) {
+    return BatchingDriver.wrap(InMemoryAdapter
+      .acquire(PersonKey.getDefaultInstance(), Person.getDefaultInstance(), executorService)
+      .engine(), maxBatch, maxDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static @Nonnull Person person(@Nonnull String id) {
+    return Person.newBuilder()
+      .setKey(PersonKey.newBuilder().setId(id))
+      .setName("Jane Doe " + id)
+      .build();
+  }
+
+  @Test
+  void testFullBatchDispatchesImmediately() throws Exception {
+    var driver = batching(4, 60_000);
+    List<ReactiveFuture<Person>> writes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Person record = person("batch-full-" + i);
+      writes.add(driver.persist(record.getKey(), record, WriteOptions.DEFAULTS));
+    }
+    for (ReactiveFuture<Person> write : writes) {
+      assertNotNull(write.get(5, TimeUnit.SECONDS), "each write in a full batch should complete");
+    }
+    assertEquals(1, driver.batchCount(), "four writes should dispatch as one batch");
+    assertEquals(4, driver.operationCount(), "all four writes should be counted");
+    assertEquals(1, driver.sizeFlushCount(), "full batch should be flushed by size");
+    assertEquals(0, driver.delayFlushCount(), "full batch should not wait for its delay");
+    assertEquals(Long.valueOf(1), driver.batchSizeHistogram().get(4), "batch should land in the size-4 bucket");
+  }
+
+  @Test
+  void testPartialBatchDispatchesAfterDelay() throws Exception {
+    var driver = batching(64, 5);
+    Person record = person("batch-delay");
+    driver.persist(record.getKey(), record, WriteOptions.DEFAULTS).get(5, TimeUnit.SECONDS);
+
+    List<ReactiveFuture<Optional<Person>>> reads = new ArrayList<>();
+    reads.add(driver.retrieve(record.getKey(), FetchOptions.DEFAULTS));
+    reads.add(driver.retrieve(PersonKey.newBuilder().setId("batch-missing").build(), FetchOptions.DEFAULTS));
+
+    Optional<Person> found = reads.get(0).get(5, TimeUnit.SECONDS);
+    Optional<Person> missing = reads.get(1).get(5, TimeUnit.SECONDS);
+    assertTrue(found.isPresent(), "stored record should be found through the batch");
+    assertEquals(record.getName(), found.get().getName(), "batched read should return the stored record");
+    assertFalse(missing.isPresent(), "missing record should resolve empty within the same batch");
+    assertEquals(2, driver.delayFlushCount(), "partial batches should be flushed once their delay elapses");
+    assertEquals(0, driver.sizeFlushCount(), "partial batches should not be flushed by size");
+    assertEquals(1.5, driver.meanBatchSize(), 0.001, "mean batch size should average the write and read batches");
+  }
+
+  @Test
+  void testFailureIsIsolatedWithinBatch() throws Exception {
+    var driver = batching(2, 60_000);
+    Person existing = person("batch-conflict");
+    driver.persistAll(List.of(existing.getKey()), List.of(existing), WriteOptions.DEFAULTS)
+      .get(0).get(5, TimeUnit.SECONDS);
+
+    WriteOptions mustNotExist = new WriteOptions() {
+      @Override
+      public @Nonnull Optional<WriteDisposition> writeMode() {
+        return Optional.of(WriteDisposition.MUST_NOT_EXIST);
+      }
+    };
+    Person fresh = person("batch-fresh");
+    ReactiveFuture<Person> conflicting = driver.persist(existing.getKey(), existing, mustNotExist);
+    ReactiveFuture<Person> succeeding = driver.persist(fresh.getKey(), fresh, mustNotExist);
+
+    assertThrows(ExecutionException.class, () -> conflicting.get(5, TimeUnit.SECONDS),
+      "write which conflicts should fail on its own");
+    assertNotNull(succeeding.get(5, TimeUnit.SECONDS), "other write in the same batch should still succeed");
+    assertEquals(1, driver.batchCount(), "both writes should share one batch");
+  }
+
+  @Test
+  void testDeleteWaitsForPendingWrite() throws Exception {
+    var driver = batching(64, 60_000);
+    Person record = person("batch-delete");
+    ReactiveFuture<Person> write = driver.persist(record.getKey(), record, WriteOptions.DEFAULTS);
+    driver.delete(record.getKey(), DeleteOptions.DEFAULTS).get(5, TimeUnit.SECONDS);
+
+    assertTrue(write.isDone(), "pending write should be dispatched and complete before the delete");
+    assertNotNull(write.get(), "pending write should succeed");
+    ReactiveFuture<Optional<Person>> read = driver.retrieve(record.getKey(), FetchOptions.DEFAULTS);
+    driver.flush();
+    assertFalse(read.get(5, TimeUnit.SECONDS).isPresent(),
+      "delete issued after a write should win, even while the write is still batched");
+  }
+
+  @Test
+  void testReadWaitsForPendingWrite() throws Exception {
+    var driver = batching(64, 60_000);
+    Person record = person("batch-read-your-write");
+    driver.persist(record.getKey(), record, WriteOptions.DEFAULTS);
+
+    Optional<Person> read = driver.retrieve(record.getKey(), FetchOptions.DEFAULTS).get(5, TimeUnit.SECONDS);
+    assertTrue(read.isPresent(), "read issued after a batched write should see the write");
+    assertEquals(record.getName(), read.get().getName(), "read should return the written record");
+    assertEquals(1, driver.batchCount(), "pending write batch should be dispatched early for the read");
+  }
+
+  @Test
+  void testModifyIsForwarded() throws Exception {
+    var driver = batching(64, 60_000);
+    Person record = person("batch-modify");
+    ReactiveFuture<Person> write = driver.persist(record.getKey(), record, WriteOptions.DEFAULTS);
+    driver.flush();
+    write.get(5, TimeUnit.SECONDS);
+
+    List<ReactiveFuture<Person>> modifications = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      modifications.add(driver.modify(record.getKey(),
+        (current) -> current.toBuilder().setName(current.getName() + "!").build(), UpdateOptions.DEFAULTS));
+    }
+    for (ReactiveFuture<Person> modification : modifications) modification.get(5, TimeUnit.SECONDS);
+
+    Optional<Versioned<Person>> read = driver.retrieveVersioned(record.getKey(), FetchOptions.DEFAULTS)
+      .get(5, TimeUnit.SECONDS);
+    assertTrue(read.isPresent(), "versioned read should be forwarded to the wrapped driver");
+    assertEquals(record.getName() + "!".repeat(20), read.get().model().getName(),
+      "every concurrent modification should be applied atomically by the wrapped driver");
+  }
+}
@@ -19,12 +19,21 @@ import elide.model.PersonRecord.Person;
 import elide.model.PersonRecord.PersonKey;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static java.lang.String.format;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 
 /** Tests for the {@link InMemoryAdapter}. */
@@ -65,4 +74,65 @@ public final class InMemoryAdapterTest extends GenericPersistenceAdapterTest<InM
       executorService);
     assertNotNull(personAdapter, "should not get `null` for adapter acquire");
   }
+
+  /** {@inheritDoc} */
+  @Override
+  protected @Nonnull Optional<List<DynamicTest>> subclassTests() {
+    final String subcase = this.getClass().getSimpleName();
+    return Optional.of(Arrays.asList(
+      dynamicTest(format("%s: `existenceFilterSkipsUnknownRecords`", subcase), this::existenceFilterSkipsUnknownRecords),
+      dynamicTest(format("%s: `existenceFilterSeesOtherWriters`", subcase), this::existenceFilterSeesOtherWriters)
+    ));
+  }
+
+  /** Once rebuilt, the existence filter should answer reads for unknown records, and learn about new writes. */
+  void existenceFilterSkipsUnknownRecords() throws TimeoutException, ExecutionException, InterruptedException {
+    ExistenceFilter existence = personAdapter.existence().orElseThrow();
+    PersonKey key = PersonKey.newBuilder().setId("existence-" + UUID.randomUUID()).build();
+    assertFalse(existence.definitelyAbsent(key.getId()), "filter should not answer before it is authoritative");
+
+    personAdapter.rebuildExistence();
+    assertTrue(existence.isAuthoritative(), "filter should be authoritative after a rebuild");
+    long skipped = existence.absentCount();
+    assertFalse(personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "unknown record should not be found");
+    assertEquals(skipped + 1, existence.absentCount(), "read for an unknown record should be answered by the filter");
+
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    personAdapter.persist(key, person, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+    assertTrue(personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "written record should be found once the filter has seen it");
+
+    personAdapter.delete(key, DeleteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertEquals(1L, existence.staleCount(), "delete should be counted as a stale filter entry");
+
+    ExistenceFilter restored = ExistenceFilter.create();
+    restored.restore(existence.toProto());
+    assertTrue(restored.isAuthoritative(), "restored filter should be authoritative");
+    assertFalse(restored.definitelyAbsent(key.getId()), "restored filter should hold previously-seen IDs");
+  }
+
+  /** Writes which bypass an adapter with an authoritative filter should still be found through it. */
+  void existenceFilterSeesOtherWriters() throws TimeoutException, ExecutionException, InterruptedException {
+    personAdapter.rebuildExistence();
+    InMemoryAdapter<PersonKey, Person> other = InMemoryAdapter.acquire(
+      PersonKey.getDefaultInstance(),
+      Person.getDefaultInstance(),
+      executorService);
+
+    PersonKey viaAdapter = PersonKey.newBuilder().setId("existence-" + UUID.randomUUID()).build();
+    other.persist(viaAdapter, Person.newBuilder().setKey(viaAdapter).setName("Jane Doe").build(),
+      WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(viaAdapter);
+    assertTrue(personAdapter.retrieve(viaAdapter, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "record written through another adapter should be found");
+
+    PersonKey viaDriver = PersonKey.newBuilder().setId("existence-" + UUID.randomUUID()).build();
+    other.engine().persist(viaDriver, Person.newBuilder().setKey(viaDriver).setName("Jane Roe").build(),
+      WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(viaDriver);
+    assertTrue(personAdapter.retrieve(viaDriver, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "record written directly through a driver should be found");
+  }
 }
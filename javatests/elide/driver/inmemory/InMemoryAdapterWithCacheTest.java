@@ -14,19 +14,37 @@ package elide.driver.inmemory;
 
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import elide.model.CacheDriver;
+import elide.model.CacheLatencyTracker;
+import elide.model.CacheOptions.TimeoutMode;
+import elide.model.CacheOptions.WritePolicy;
+import elide.model.DeleteOptions;
+import elide.model.FetchOptions;
 import elide.model.GenericPersistenceAdapterTest;
+import elide.model.HotKeyTracker;
 import elide.model.ModelAdapter;
+import elide.model.WriteOptions;
 import elide.model.PersonRecord.Person;
 import elide.model.PersonRecord.PersonKey;
+import elide.runtime.jvm.ReactiveFuture;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 
 /** Tests the in-memory adapter with an in-memory cache in front of it. */
@@ -71,4 +89,295 @@ public final class InMemoryAdapterWithCacheTest extends GenericPersistenceAdapte
       Optional.of(personCache),
       executorService));
   }
+
+  /** {@inheritDoc} */
+  @Override
+  protected @Nonnull Optional<List<DynamicTest>> subclassTests() {
+    final String subcase = this.getClass().getSimpleName();
+    return Optional.of(Arrays.asList(
+      dynamicTest(format("%s: `writeThroughPopulatesCache`", subcase), this::writeThroughPopulatesCache),
+      dynamicTest(format("%s: `invalidateEvictsCache`", subcase), this::invalidateEvictsCache),
+      dynamicTest(format("%s: `writeBehindFlushesToStorage`", subcase), this::writeBehindFlushesToStorage),
+      dynamicTest(format("%s: `deleteDiscardsWriteBehind`", subcase), this::deleteDiscardsWriteBehind),
+      dynamicTest(format("%s: `refreshAheadReloadsHotRecord`", subcase), this::refreshAheadReloadsHotRecord),
+      dynamicTest(format("%s: `hotRecordIsPinned`", subcase), this::hotRecordIsPinned),
+      dynamicTest(format("%s: `hedgedReadPrefersStorage`", subcase), this::hedgedReadPrefersStorage),
+      dynamicTest(format("%s: `hedgedReadPrefersCache`", subcase), this::hedgedReadPrefersCache)
+    ));
+  }
+
+  /**
+   * Create options which apply the provided cache write policy.
+   *
+   * @param policy Cache write policy to apply.
+   * @return Write options using the policy.
+   */
+  private static @Nonnull WriteOptions withPolicy(@Nonnull WritePolicy policy) {
+    return new WriteOptions() {
+      @Override
+      public @Nonnull WritePolicy cacheWritePolicy() {
+        return policy;
+      }
+    };
+  }
+
+  /** Cache which answers every fetch after a fixed delay, and keeps the last fetch it handed out. */
+  private static final class SlowCache implements CacheDriver<PersonKey, Person> {
+    private final InMemoryCache<PersonKey, Person> delegate = InMemoryCache.acquire();
+    private final AtomicReference<SettableFuture<Optional<Person>>> lastFetch = new AtomicReference<>();
+    private final long delayMillis;
+
+    private SlowCache(long delayMillis) {
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public @Nonnull ReactiveFuture flush(@Nonnull ListeningScheduledExecutorService executor) {
+      return delegate.flush(executor);
+    }
+
+    @Override
+    public @Nonnull ReactiveFuture put(@Nonnull PersonKey key,
+                                       @Nonnull Person model,
+                                       @Nonnull ListeningScheduledExecutorService executor) {
+      return delegate.put(key, model, executor);
+    }
+
+    @Override
+    public @Nonnull ReactiveFuture<PersonKey> evict(@Nonnull PersonKey key,
+                                                    @Nonnull ListeningScheduledExecutorService executor) {
+      return delegate.evict(key, executor);
+    }
+
+    @Override
+    public @Nonnull ReactiveFuture<Optional<Person>> fetch(@Nonnull PersonKey key,
+                                                           @Nonnull FetchOptions options,
+                                                           @Nonnull ListeningScheduledExecutorService executor) {
+      SettableFuture<Optional<Person>> fetch = SettableFuture.create();
+      lastFetch.set(fetch);
+      executor.schedule(() -> fetch.setFuture(delegate.fetch(key, options, executor)), delayMillis,
+        TimeUnit.MILLISECONDS);
+      return ReactiveFuture.wrap(fetch, executor);
+    }
+  }
+
+  /** Options which hedge reads at the median observed cache latency. */
+  private static final FetchOptions HEDGED = new FetchOptions() {
+    @Override
+    public @Nonnull TimeoutMode cacheTimeoutMode() {
+      return TimeoutMode.HEDGED;
+    }
+
+    @Override
+    public @Nonnull Double cacheHedgePercentile() {
+      return 0.5;
+    }
+  };
+
+  /**
+   * Acquire an adapter in front of the provided cache, whose latency tracker has seen enough samples to hedge reads
+   * after {@code hedgeMillis}. The slowest samples keep the adaptive cache timeout well above the cache's delay.
+   *
+   * @param cache Cache to place in front of the adapter.
+   * @param hedgeMillis Delay after which reads should be hedged.
+   * @return Adapter which hedges reads.
+   */
+  private static InMemoryAdapter<PersonKey, Person> hedgedAdapter(SlowCache cache, long hedgeMillis) {
+    InMemoryAdapter<PersonKey, Person> adapter = InMemoryAdapter.acquire(
+      PersonKey.getDefaultInstance(),
+      Person.getDefaultInstance(),
+      Optional.of(cache),
+      executorService);
+    CacheLatencyTracker latency = adapter.cacheLatency().orElseThrow();
+    for (int i = 0; i < CacheLatencyTracker.DEFAULT_MIN_SAMPLES; i++)
+      latency.record(TimeUnit.MILLISECONDS.toNanos(i % 2 == 0 ? hedgeMillis : 2000));
+    return adapter;
+  }
+
+  private Optional<Person> cached(PersonKey key) throws TimeoutException, ExecutionException, InterruptedException {
+    return personCache.fetch(key, FetchOptions.DEFAULTS, executorService).get(timeout(), timeoutUnit());
+  }
+
+  /** Writes using the write-through policy should be visible in the cache once the write completes. */
+  void writeThroughPopulatesCache() throws TimeoutException, ExecutionException, InterruptedException {
+    PersonKey key = PersonKey.newBuilder().setId("write-through-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    Person written = personAdapter.persist(key, person, withPolicy(WritePolicy.WRITE_THROUGH))
+      .get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+
+    Optional<Person> cached = personCache.fetch(key, FetchOptions.DEFAULTS, executorService)
+      .get(timeout(), timeoutUnit());
+    assertTrue(cached.isPresent(), "write-through should populate the cache");
+    assertEquals(written.toString(), cached.get().toString(),
+      "cached record should match the written record");
+  }
+
+  /** Writes using the default invalidate policy should evict any cached copy, so reads see the new record. */
+  void invalidateEvictsCache() throws TimeoutException, ExecutionException, InterruptedException {
+    PersonKey key = PersonKey.newBuilder().setId("invalidate-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    personAdapter.persist(key, person, withPolicy(WritePolicy.WRITE_THROUGH)).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+    assertTrue(cached(key).isPresent(), "write-through should populate the cache");
+
+    Person updated = person.toBuilder().setName("Jane Roe").build();
+    assertEquals(WritePolicy.INVALIDATE, WriteOptions.DEFAULTS.cacheWritePolicy(), "invalidate should be the default");
+    personAdapter.persist(key, updated, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertFalse(cached(key).isPresent(), "invalidating write should evict the cached record");
+
+    Optional<Person> read = personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertTrue(read.isPresent(), "record should still be found after an invalidating write");
+    assertEquals("Jane Roe", read.get().getName(), "read should see the new record, not the evicted copy");
+  }
+
+  /** Writes using the write-behind policy should be cached immediately, and reach storage once flushed. */
+  void writeBehindFlushesToStorage() throws TimeoutException, ExecutionException, InterruptedException {
+    PersonKey key = PersonKey.newBuilder().setId("write-behind-test").build();
+    Person first = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    Person second = first.toBuilder().setName("Jane Roe").build();
+    personAdapter.persist(key, first, withPolicy(WritePolicy.WRITE_BEHIND)).get(timeout(), timeoutUnit());
+    personAdapter.persist(key, second, withPolicy(WritePolicy.WRITE_BEHIND)).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+
+    Optional<Person> cached = personCache.fetch(key, FetchOptions.DEFAULTS, executorService)
+      .get(timeout(), timeoutUnit());
+    assertTrue(cached.isPresent(), "write-behind should populate the cache before acknowledging");
+    assertEquals("Jane Roe", cached.get().getName(), "cache should hold the latest write");
+
+    assertTrue(personAdapter.writeBehind().isPresent(), "adapter with a cache should offer write-behind");
+    personAdapter.writeBehind().get().flush().get(timeout(), timeoutUnit());
+    Optional<Person> stored = personAdapter.engine().retrieve(key, FetchOptions.DEFAULTS)
+      .get(timeout(), timeoutUnit());
+    assertTrue(stored.isPresent(), "write-behind record should reach storage after a flush");
+    assertEquals("Jane Roe", stored.get().getName(), "storage should hold the latest write");
+  }
+
+  /** Deleting a record with a pending write-behind write should drop the write, so a later flush cannot restore it. */
+  void deleteDiscardsWriteBehind() throws TimeoutException, ExecutionException, InterruptedException {
+    PersonKey key = PersonKey.newBuilder().setId("write-behind-delete-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    personAdapter.persist(key, person, withPolicy(WritePolicy.WRITE_BEHIND)).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+
+    long discarded = personAdapter.writeBehind().orElseThrow().discardCount();
+    personAdapter.delete(key, DeleteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    personAdapter.writeBehind().get().flush().get(timeout(), timeoutUnit());
+    assertEquals(discarded + 1, personAdapter.writeBehind().get().discardCount(),
+      "pending write should be discarded by the delete");
+
+    assertFalse(personAdapter.engine().retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "flushing after a delete should not restore the deleted record");
+    assertFalse(personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit()).isPresent(),
+      "deleted record should not be served from the cache");
+  }
+
+  /** Hits on a cached record past its refresh-ahead threshold should keep serving it, and reload it in the background. */
+  void refreshAheadReloadsHotRecord() throws TimeoutException, ExecutionException, InterruptedException {
+    PersonKey key = PersonKey.newBuilder().setId("refresh-ahead-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    personAdapter.persist(key, person, withPolicy(WritePolicy.WRITE_THROUGH)).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+
+    // change the record underneath the cache, then let the cached copy age past the threshold.
+    personAdapter.engine().persist(key, person.toBuilder().setName("Jane Roe").build(), WriteOptions.DEFAULTS)
+      .get(timeout(), timeoutUnit());
+    Thread.sleep(20);
+
+    // the threshold is taken against the cache's own TTL (one hour), so this refreshes after about 3.6ms.
+    assertEquals(Optional.of(TimeUnit.HOURS.toMillis(1)), personCache.entryTTLMillis(),
+      "cache should report the TTL it applies");
+    FetchOptions refreshAhead = new FetchOptions() {
+      @Override
+      public @Nonnull Optional<Double> cacheRefreshAhead() {
+        return Optional.of(0.000001);
+      }
+    };
+
+    Optional<Person> served = personAdapter.retrieve(key, refreshAhead).get(timeout(), timeoutUnit());
+    assertTrue(served.isPresent(), "record should be served from the cache");
+    assertEquals("Jane Doe", served.get().getName(), "stale record should keep being served during the reload");
+
+    assertTrue(personAdapter.refresher().isPresent(), "adapter with a cache should offer refresh-ahead");
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+    Optional<Person> cached = Optional.empty();
+    while (System.currentTimeMillis() < deadline) {
+      cached = personCache.fetch(key, FetchOptions.DEFAULTS, executorService).get(timeout(), timeoutUnit());
+      if (cached.isPresent() && "Jane Roe".equals(cached.get().getName())) break;
+      Thread.sleep(10);
+    }
+    assertTrue(cached.isPresent(), "refreshed record should remain cached");
+    assertEquals("Jane Roe", cached.get().getName(), "cache should hold the reloaded record");
+    assertTrue(personAdapter.refresher().get().refreshCount() >= 1, "refresher should report the reload");
+  }
+
+  /** Records read often enough should be promoted and pinned, and writes should replace the pinned copy. */
+  void hotRecordIsPinned() throws TimeoutException, ExecutionException, InterruptedException {
+    HotKeyTracker<Person> hotKeys = personAdapter.hotKeys().orElseThrow();
+    PersonKey key = PersonKey.newBuilder().setId("hot-key-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    personAdapter.persist(key, person, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+
+    for (long i = 0; i <= HotKeyTracker.DEFAULT_THRESHOLD; i++)
+      personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertTrue(hotKeys.hotKeys().containsKey(key.getId()), "frequently-read record should be hot");
+    // the record is pinned once the first read after promotion completes, which may race the next read.
+    long pinned = hotKeys.pinnedHitCount();
+    for (int i = 0; i < 10 && hotKeys.pinnedHitCount() == pinned; i++)
+      personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertTrue(hotKeys.pinnedHitCount() > pinned, "hot record should be served from the near-cache");
+
+    Person updated = person.toBuilder().setName("Jane Roe").build();
+    personAdapter.persist(key, updated, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    Optional<Person> read = personAdapter.retrieve(key, FetchOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    assertTrue(read.isPresent(), "hot record should still be found after a write");
+    assertEquals("Jane Roe", read.get().getName(), "write should replace the pinned record");
+  }
+
+  /** Reads against a slow cache should hedge to storage after the delay, take its answer, and cancel the cache. */
+  void hedgedReadPrefersStorage() throws TimeoutException, ExecutionException, InterruptedException {
+    SlowCache cache = new SlowCache(500);
+    InMemoryAdapter<PersonKey, Person> adapter = hedgedAdapter(cache, 20);
+    PersonKey key = PersonKey.newBuilder().setId("hedge-storage-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    adapter.persist(key, person, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+    cache.put(key, person.toBuilder().setName("Jane Roe").build(), executorService).get(timeout(), timeoutUnit());
+
+    long start = System.nanoTime();
+    Optional<Person> read = adapter.retrieve(key, HEDGED).get(timeout(), timeoutUnit());
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue(read.isPresent(), "hedged read should find the record");
+    assertEquals("Jane Doe", read.get().getName(), "storage should answer before the slow cache");
+    assertTrue(elapsed >= 20, "storage should not be read before the hedge delay");
+    assertTrue(elapsed < 500, "hedged read should not wait for the slow cache");
+
+    CacheLatencyTracker latency = adapter.cacheLatency().orElseThrow();
+    assertEquals(1, latency.hedgeCount(), "read should be hedged once");
+    SettableFuture<Optional<Person>> loser = cache.lastFetch.get();
+    assertNotNull(loser, "cache should have been asked first");
+    // the win is counted, and the losing side cancelled, just after the winning answer is published.
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1);
+    while ((!loser.isCancelled() || latency.hedgeWinCount() == 0) && System.currentTimeMillis() < deadline)
+      Thread.sleep(1);
+    assertEquals(1, latency.hedgeWinCount(), "storage should win the hedged read");
+    assertTrue(loser.isCancelled(), "losing cache fetch should be cancelled");
+  }
+
+  /** Reads against a cache which answers before the hedge delay should take its answer, without hedging. */
+  void hedgedReadPrefersCache() throws TimeoutException, ExecutionException, InterruptedException {
+    SlowCache cache = new SlowCache(0);
+    InMemoryAdapter<PersonKey, Person> adapter = hedgedAdapter(cache, 1000);
+    PersonKey key = PersonKey.newBuilder().setId("hedge-cache-test").build();
+    Person person = Person.newBuilder().setKey(key).setName("Jane Doe").build();
+    adapter.persist(key, person, WriteOptions.DEFAULTS).get(timeout(), timeoutUnit());
+    touchedKeys.add(key);
+    cache.put(key, person.toBuilder().setName("Jane Roe").build(), executorService).get(timeout(), timeoutUnit());
+
+    Optional<Person> read = adapter.retrieve(key, HEDGED).get(timeout(), timeoutUnit());
+    assertTrue(read.isPresent(), "hedged read should find the record");
+    assertEquals("Jane Roe", read.get().getName(), "cache should answer before the hedge delay");
+    assertEquals(0, adapter.cacheLatency().orElseThrow().hedgeCount(), "read should not be hedged");
+  }
 }
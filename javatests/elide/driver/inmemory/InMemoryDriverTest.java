@@ -23,9 +23,13 @@ import elide.model.PersonRecord.PersonKey;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -100,4 +104,60 @@ public final class InMemoryDriverTest extends GenericPersistenceDriverTest {
       .acquire(PersonKey.getDefaultInstance(), Person.getDefaultInstance(), Optional.of(NOOP_CACHE), executorService)
       .engine(), "should be able to acquire a driver from an adapter, when providing a cache");
   }
+
+  @Test
+  void testConcurrentModifyIsAtomic() throws Exception {
+    var key = PersonKey.newBuilder().setId("concurrent-modify").build();
+    personDriver.persist(key, Person.newBuilder().setKey(key).setName("0").build(), WriteOptions.DEFAULTS)
+      .get(5, TimeUnit.SECONDS);
+
+    List<ReactiveFuture<Person>> ops = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ops.add(personDriver.modify(key, (current) -> current.toBuilder()
+        .setName(String.valueOf(Integer.parseInt(current.getName()) + 1))
+        .build(), WriteOptions.DEFAULTS));
+    }
+    for (ReactiveFuture<Person> op : ops) op.get(5, TimeUnit.SECONDS);
+
+    Optional<Person> result = personDriver.retrieve(key, FetchOptions.DEFAULTS).get(5, TimeUnit.SECONDS);
+    assertTrue(result.isPresent(), "modified record should be present");
+    assertEquals("100", result.get().getName(), "no concurrent modification should be lost");
+    personDriver.delete(key, DeleteOptions.DEFAULTS).get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void testConditionalWritesEnforceVersion() throws Exception {
+    var key = PersonKey.newBuilder().setId("conditional-write").build();
+    personDriver.persist(key, Person.newBuilder().setKey(key).setName("first").build(), WriteOptions.DEFAULTS)
+      .get(5, TimeUnit.SECONDS);
+    Versioned<Person> first = personDriver.retrieveVersioned(key, FetchOptions.DEFAULTS).get(5, TimeUnit.SECONDS)
+      .orElseThrow();
+    assertEquals(1, first.version(), "new record should start at version 1");
+    assertEquals("first", first.model().getName(), "versioned read should return the stored model");
+
+    personDriver.persist(key, first.model().toBuilder().setName("second").build(), new WriteOptions() {
+      @Override public @Nonnull Optional<Long> expectedVersion() { return Optional.of(first.version()); }
+    }).get(5, TimeUnit.SECONDS);
+    Versioned<Person> second = personDriver.retrieveVersioned(key, FetchOptions.DEFAULTS).get(5, TimeUnit.SECONDS)
+      .orElseThrow();
+    assertEquals(2, second.version(), "write should bump the version");
+    assertTrue(second.updatedAtMicros() > first.updatedAtMicros(), "write should advance the update time");
+
+    ExecutionException stale = assertThrows(ExecutionException.class, () -> personDriver.persist(key,
+      first.model().toBuilder().setName("stale").build(), new WriteOptions() {
+        @Override public @Nonnull Optional<Long> expectedVersion() { return Optional.of(first.version()); }
+      }).get(5, TimeUnit.SECONDS), "write against a stale version should fail");
+    assertTrue(stale.getCause() instanceof ModelWriteConflict, "stale write should fail with a write conflict");
+    assertTrue(((ModelWriteConflict)stale.getCause()).getFailedPrecondition().isPresent(),
+      "write conflict should describe the failed precondition");
+
+    assertThrows(ExecutionException.class, () -> personDriver.delete(key, new DeleteOptions() {
+      @Override public @Nonnull Optional<Long> updatedAtMicros() { return Optional.of(first.updatedAtMicros()); }
+    }).get(5, TimeUnit.SECONDS), "delete of a record modified since should fail");
+    personDriver.delete(key, new DeleteOptions() {
+      @Override public @Nonnull Optional<Long> expectedVersion() { return Optional.of(second.version()); }
+    }).get(5, TimeUnit.SECONDS);
+    assertFalse(personDriver.retrieve(key, FetchOptions.DEFAULTS).get(5, TimeUnit.SECONDS).isPresent(),
+      "delete against the current version should succeed");
+  }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import elide.model.EncodedModel;
+import elide.model.EncodingMode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for consistent snapshot export and import of in-memory storage. */
+public final class InMemorySnapshotTest {
+  private static ExecutorService executorService;
+
+  @BeforeAll
+  static void initExecutor() {
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+  }
+
+  private static EncodedModel data(String value) {
+    return EncodedModel.wrap("elide.test.Record", EncodingMode.BINARY, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static InMemoryRecord record(String value) {
+    return InMemoryRecord.next(data(value), null);
+  }
+
+  private static Map<Object, EncodedModel> contents(Map<Object, InMemoryRecord> storage) {
+    Map<Object, EncodedModel> contents = new TreeMap<>();
+    storage.forEach((id, stored) -> contents.put(id, stored.data()));
+    return contents;
+  }
+
+  private static long shardCount(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter((f) -> f.getFileName().toString().startsWith("shard-")).count();
+    }
+  }
+
+  @Test void testCaptureSeesPointInTime() {
+    SnapshotStorage storage = new SnapshotStorage();
+    storage.put("kept", record("kept"));
+    storage.put("changed", record("before"));
+    storage.put("removed", record("removed"));
+    try (SnapshotStorage.Capture capture = storage.capture()) {
+      storage.put("changed", record("after"));
+      storage.put("changed", record("after-again"));
+      storage.remove("removed");
+      storage.put("added", record("added"));
+
+      assertEquals(data("kept"), capture.valueAt("kept", storage.get("kept")).data(),
+        "untouched record should be seen");
+      assertEquals(data("before"), capture.valueAt("changed", storage.get("changed")).data(),
+        "changed record should be seen as it was when the capture began");
+      assertEquals(data("removed"), capture.valueAt("removed", storage.get("removed")).data(),
+        "removed record should still be seen");
+      assertNull(capture.valueAt("added", storage.get("added")), "record added after the capture should be hidden");
+      assertEquals(2, capture.replaced().size(), "changed and removed records should be reported as replaced");
+      assertThrows(IllegalStateException.class, storage::capture, "only one capture should be open at a time");
+    }
+    assertEquals(data("after-again"), storage.get("changed").data(), "writes should land during a capture");
+  }
+
+  @Test void testExportAndImportRoundTrip() throws Exception {
+    SnapshotStorage storage = new SnapshotStorage();
+    for (long i = 0; i < 1000; i++) storage.put(i, record("value-" + i));
+    Path dir = Files.createTempDirectory("snapshot");
+    assertEquals(1000, InMemorySnapshot.export(storage, dir, 4, executorService), "every record should be exported");
+    assertEquals(4, shardCount(dir), "one file should be written per shard");
+
+    ConcurrentMap<Object, InMemoryRecord> loaded = new ConcurrentSkipListMap<>();
+    assertEquals(1000, InMemorySnapshot.load(dir, loaded, executorService), "every record should be imported");
+    assertEquals(contents(storage), contents(loaded), "imported records should match the exported ones");
+
+    storage.remove(0L);
+    assertEquals(999, InMemorySnapshot.export(storage, dir, 2, executorService), "re-export should reflect removal");
+    assertEquals(2, shardCount(dir), "shards from the previous export should be deleted");
+  }
+
+  @Test void testExportWithMoreShardsThanRecords() throws Exception {
+    SnapshotStorage storage = new SnapshotStorage();
+    storage.put("only", record("only"));
+    Path dir = Files.createTempDirectory("snapshot");
+    assertEquals(1, InMemorySnapshot.export(storage, dir, 8, executorService), "empty shards should be allowed");
+
+    ConcurrentMap<Object, InMemoryRecord> loaded = new ConcurrentSkipListMap<>();
+    InMemorySnapshot.load(dir, loaded, executorService);
+    assertEquals(data("only"), loaded.get("only").data(), "record should survive a mostly-empty export");
+  }
+
+  @Test void testRejectsMissingManifest() throws Exception {
+    Path dir = Files.createTempDirectory("snapshot");
+    assertThrows(IOException.class, () -> InMemorySnapshot.load(dir, new ConcurrentSkipListMap<>(), executorService),
+      "import should fail without a manifest");
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import elide.model.CacheDriver;
+import elide.model.EncodingMode;
+import elide.model.FetchOptions;
+import elide.model.GenericCacheDriverTest;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonKey;
+import elide.model.ProtoModelCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+
+/** Tests for the two-tier (on-heap and off-heap) cache. */
+@SuppressWarnings("UnstableApiUsage")
+public final class TieredCacheTest extends GenericCacheDriverTest {
+  private static ListeningScheduledExecutorService executorService;
+  private static TieredCache<PersonKey, Person> personCache;
+
+  @BeforeAll
+  static void initCache() {
+    executorService = MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(1));
+    personCache = TieredCache.acquire(Person.getDefaultInstance());
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+    personCache = null;
+  }
+
+  /** {@inheritDoc} */
+  @Nonnull
+  protected @Override CacheDriver cache() {
+    return personCache;
+  }
+
+  /**
+   * Implementation-specific driver acquisition test.
+   */
+  @Override
+  protected void acquireDriver() {
+    assertNotNull(TieredCache.<PersonKey, Person>acquire(Person.getDefaultInstance()),
+      "should not get `null` when acquiring a tiered cache driver");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected @Nonnull Optional<List<DynamicTest>> subclassTests() {
+    final String subcase = this.getClass().getSimpleName();
+    return Optional.of(Arrays.asList(
+      dynamicTest(format("%s: `demoteAndPromote`", subcase), this::demoteAndPromote),
+      dynamicTest(format("%s: `mappedRegion`", subcase), this::mappedRegion),
+      dynamicTest(format("%s: `compressedRegion`", subcase), this::compressedRegion),
+      dynamicTest(format("%s: `deadlineSurvivesDemotion`", subcase), this::deadlineSurvivesDemotion),
+      dynamicTest(format("%s: `regionReclaimsOldest`", subcase), this::regionReclaimsOldest),
+      dynamicTest(format("%s: `evictionStampsAreBounded`", subcase), this::evictionStampsAreBounded)
+    ));
+  }
+
+  private static Person person(String id) {
+    return Person.newBuilder()
+      .setKey(PersonKey.newBuilder().setId(id))
+      .setName("Jane Doe")
+      .build();
+  }
+
+  private Optional<Person> fetch(TieredCache<PersonKey, Person> cache, String id)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return cache.fetch(PersonKey.newBuilder().setId(id).build(), FetchOptions.DEFAULTS, executorService)
+      .get(timeout(), timeoutUnit());
+  }
+
+  /** Test that entries evicted from L1 are served from L2, and promoted back. */
+  void demoteAndPromote() throws InterruptedException, ExecutionException, TimeoutException {
+    TieredCache<PersonKey, Person> cache = TieredCache.acquire(
+      Person.getDefaultInstance(), 1, OffHeapRegion.allocate(4096));
+
+    cache.put(person("tier-1").getKey(), person("tier-1"), executorService).get(timeout(), timeoutUnit());
+    cache.put(person("tier-2").getKey(), person("tier-2"), executorService).get(timeout(), timeoutUnit());
+    assertEquals(1, cache.stats().getDemotionCount(), "first entry should be demoted off-heap");
+    assertEquals(1, cache.stats().getL2Size(), "off-heap tier should hold the demoted entry");
+
+    Optional<Person> first = fetch(cache, "tier-1");
+    assertTrue(first.isPresent(), "demoted entry should be served from the off-heap tier");
+    assertEquals(person("tier-1"), first.get(), "off-heap entry should round-trip intact");
+    assertEquals(1, cache.stats().getL2Hits(), "read should count as an off-heap hit");
+
+    Optional<Person> again = fetch(cache, "tier-1");
+    assertTrue(again.isPresent(), "promoted entry should be served on-heap");
+    assertEquals(1, cache.stats().getL1Hits(), "second read should count as an on-heap hit");
+    assertEquals(0.5, cache.stats().getL1HitRatio(), 0.0001, "on-heap hit ratio should reflect both reads");
+    assertEquals(1.0, cache.stats().getL2HitRatio(), 0.0001, "off-heap hit ratio should reflect the single L1 miss");
+
+    cache.evict(PersonKey.newBuilder().setId("tier-2").build(), executorService).get(timeout(), timeoutUnit());
+    assertFalse(fetch(cache, "tier-2").isPresent(), "evicted entry should not be found in either tier");
+    assertEquals(1, cache.stats().getL2Misses(), "final read should miss both tiers");
+  }
+
+  /** Test that eviction stamps dropped for size still keep older entries from moving between tiers. */
+  void evictionStampsAreBounded() throws InterruptedException, ExecutionException, TimeoutException {
+    TieredCache<PersonKey, Person> cache = TieredCache.acquire(
+      Person.getDefaultInstance(), 1, OffHeapRegion.allocate(4096));
+
+    cache.put(person("bounded-1").getKey(), person("bounded-1"), executorService).get(timeout(), timeoutUnit());
+    cache.put(person("bounded-2").getKey(), person("bounded-2"), executorService).get(timeout(), timeoutUnit());
+    assertEquals(1, cache.stats().getL2Size(), "first entry should be demoted off-heap");
+
+    // evict more keys than the cache keeps stamps for (16 per on-heap entry), none of which are cached.
+    for (int i = 0; i < 64; i++) {
+      cache.evict(PersonKey.newBuilder().setId("bounded-evict-" + i).build(), executorService)
+        .get(timeout(), timeoutUnit());
+    }
+
+    assertFalse(fetch(cache, "bounded-1").isPresent(),
+      "entry written before a dropped eviction stamp should not be promoted");
+    Optional<Person> second = fetch(cache, "bounded-2");
+    assertTrue(second.isPresent(), "on-heap entry should still be served");
+    assertEquals(person("bounded-2"), second.get(), "on-heap entry should be intact");
+  }
+
+  /** Test a cache whose off-heap tier is backed by a memory-mapped file. */
+  void mappedRegion() throws Exception {
+    File file = File.createTempFile("elide-tiered-cache", ".bin");
+    file.deleteOnExit();
+    TieredCache<PersonKey, Person> cache = TieredCache.acquire(
+      Person.getDefaultInstance(), 1, OffHeapRegion.map(file.toPath(), 4096));
+
+    cache.put(person("mapped-1").getKey(), person("mapped-1"), executorService).get(timeout(), timeoutUnit());
+    cache.put(person("mapped-2").getKey(), person("mapped-2"), executorService).get(timeout(), timeoutUnit());
+    Optional<Person> first = fetch(cache, "mapped-1");
+    assertTrue(first.isPresent(), "demoted entry should be served from the mapped tier");
+    assertEquals(person("mapped-1"), first.get(), "mapped entry should round-trip intact");
+  }
+
+  /** Test a cache whose off-heap tier holds records compressed by its codec, alongside uncompressed ones. */
+  void compressedRegion() throws InterruptedException, ExecutionException, TimeoutException {
+    TieredCache<PersonKey, Person> cache = TieredCache.acquire(
+      ProtoModelCodec.forModel(Person.getDefaultInstance(), EncodingMode.BINARY_GZIP, Optional.empty(), 256),
+      1, OffHeapRegion.allocate(4096), TieredCache.DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    Person large = person("large").toBuilder().setName("Jane Doe ".repeat(400)).build();
+
+    cache.put(large.getKey(), large, executorService).get(timeout(), timeoutUnit());
+    cache.put(person("small").getKey(), person("small"), executorService).get(timeout(), timeoutUnit());
+    cache.put(person("last").getKey(), person("last"), executorService).get(timeout(), timeoutUnit());
+    assertEquals(2, cache.stats().getDemotionCount(), "both entries should be demoted off-heap");
+    assertTrue(cache.stats().getL2Bytes() < large.getSerializedSize(),
+      "compressed entry should take less room off-heap than it does serialized");
+
+    Optional<Person> first = fetch(cache, "large");
+    assertTrue(first.isPresent(), "compressed entry should be served from the off-heap tier");
+    assertEquals(large, first.get(), "compressed entry should round-trip intact");
+    Optional<Person> second = fetch(cache, "small");
+    assertTrue(second.isPresent(), "uncompressed entry should be served from the off-heap tier");
+    assertEquals(person("small"), second.get(), "uncompressed entry should round-trip intact");
+  }
+
+  /** Test that demotion and promotion keep the deadline an entry was written with, rather than refreshing it. */
+  void deadlineSurvivesDemotion() throws InterruptedException, ExecutionException, TimeoutException {
+    TieredCache<PersonKey, Person> cache = TieredCache.acquire(
+      ProtoModelCodec.forModel(Person.getDefaultInstance(), EncodingMode.BINARY),
+      1, OffHeapRegion.allocate(4096), 400, TimeUnit.MILLISECONDS);
+
+    cache.put(person("aging").getKey(), person("aging"), executorService).get(timeout(), timeoutUnit());
+    Thread.sleep(250);
+    cache.put(person("fresh").getKey(), person("fresh"), executorService).get(timeout(), timeoutUnit());
+    assertEquals(1, cache.stats().getDemotionCount(), "aging entry should be demoted off-heap");
+    Thread.sleep(200);
+
+    assertFalse(fetch(cache, "aging").isPresent(), "demoted entry should expire on its original deadline");
+    assertTrue(fetch(cache, "fresh").isPresent(), "entry written later should still be live");
+  }
+
+  /** Test that a full off-heap region overwrites its oldest entries first. */
+  void regionReclaimsOldest() {
+    OffHeapRegion region = OffHeapRegion.allocate(10);
+    long forever = Long.MAX_VALUE;
+    assertTrue(region.put("a", "aaaa".getBytes(StandardCharsets.UTF_8), forever));
+    assertTrue(region.put("b", "bbbb".getBytes(StandardCharsets.UTF_8), forever));
+    assertTrue(region.put("c", "cccc".getBytes(StandardCharsets.UTF_8), forever));
+    assertNull(region.get("a", 0), "oldest entry should be reclaimed when the region wraps");
+    assertArrayEquals("bbbb".getBytes(StandardCharsets.UTF_8), region.get("b", 0));
+    assertArrayEquals("cccc".getBytes(StandardCharsets.UTF_8), region.get("c", 0));
+    assertEquals(1, region.reclaimCount(), "one entry should have been reclaimed");
+    assertFalse(region.put("d", new byte[11], forever), "entries larger than the region should be rejected");
+    assertNull(region.get("c", forever), "expired entries should not be returned");
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.driver.inmemory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import elide.model.EncodedModel;
+import elide.model.EncodingMode;
+import elide.model.WriteOptions.Durability;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the in-memory {@link WriteAheadLog}. */
+public final class WriteAheadLogTest {
+  private static EncodedModel record(String value) {
+    return EncodedModel.wrap("elide.test.Record", EncodingMode.BINARY, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static InMemoryRecord stored(String value) {
+    return InMemoryRecord.next(record(value), null);
+  }
+
+  private static Map<Object, EncodedModel> contents(Map<Object, InMemoryRecord> storage) {
+    Map<Object, EncodedModel> contents = new TreeMap<>();
+    storage.forEach((id, stored) -> contents.put(id, stored.data()));
+    return contents;
+  }
+
+  private static WriteAheadLog open(Path dir, ConcurrentMap<Object, InMemoryRecord> storage) throws IOException {
+    return WriteAheadLog.open(dir, storage, Durability.GROUP_COMMIT, 1_000_000, 100, TimeUnit.MICROSECONDS);
+  }
+
+  private static long count(Path dir, String prefix) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter((f) -> f.getFileName().toString().startsWith(prefix)).count();
+    }
+  }
+
+  @Test void testReplaysLogOnOpen() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, storage)) {
+      log.put("a", stored("one"), Optional.of(Durability.SYNC)).get(5, TimeUnit.SECONDS);
+      log.put("b", stored("two"), Optional.of(Durability.GROUP_COMMIT)).get(5, TimeUnit.SECONDS);
+      log.put("c", stored("three"), Optional.of(Durability.ASYNC)).get(5, TimeUnit.SECONDS);
+      log.put("d", stored("unlogged"), Optional.of(Durability.NONE)).get(5, TimeUnit.SECONDS);
+      log.put("a", stored("uno"), Optional.empty()).get(5, TimeUnit.SECONDS);
+      log.remove("b", Optional.empty()).get(5, TimeUnit.SECONDS);
+      assertEquals(5, log.appendCount(), "every logged change should be counted, and NONE should be skipped");
+      assertTrue(log.syncCount() >= 1, "durable writes should be synced");
+    }
+
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, recovered)) {
+      assertEquals(5, log.replayedCount(), "every logged change should be replayed");
+      assertEquals(record("uno"), recovered.get("a").data(), "later write should win on replay");
+      assertFalse(recovered.containsKey("b"), "removed record should stay removed");
+      assertEquals(record("three"), recovered.get("c").data(), "async write should be recovered after a clean close");
+      assertFalse(recovered.containsKey("d"), "unlogged write should not be recovered");
+    }
+  }
+
+  @Test void testCheckpointTruncatesLog() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, storage)) {
+      for (long i = 0; i < 100; i++) log.put(i, stored("before-" + i), Optional.empty());
+      log.checkpoint().get(5, TimeUnit.SECONDS);
+      log.put(1000L, stored("after"), Optional.empty()).get(5, TimeUnit.SECONDS);
+      log.remove(0L, Optional.empty()).get(5, TimeUnit.SECONDS);
+      assertEquals(1, log.snapshotCount(), "checkpoint should write a snapshot");
+    }
+    assertEquals(1, count(dir, "snapshot-"), "only the newest snapshot should be kept");
+    assertEquals(1, count(dir, "wal-"), "generations before the snapshot should be deleted");
+
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, recovered)) {
+      assertEquals(contents(storage), contents(recovered), "snapshot plus log should recover the whole map");
+      assertEquals(102, log.replayedCount(), "100 snapshotted records plus 2 logged changes should be replayed");
+    }
+  }
+
+  @Test void testBackToBackCheckpoints() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, storage)) {
+      for (long i = 0; i < 1000; i++) log.put(i, stored("v" + i), Optional.empty());
+      List<ListenableFuture<Void>> checkpoints = new ArrayList<>();
+      for (int i = 0; i < 3; i++) checkpoints.add(log.checkpoint());
+      log.put(1000L, stored("after"), Optional.of(Durability.SYNC)).get(5, TimeUnit.SECONDS);
+      Futures.allAsList(checkpoints).get(5, TimeUnit.SECONDS);
+      assertEquals(3, log.snapshotCount(), "every checkpoint should write its own snapshot");
+    }
+    assertEquals(1, count(dir, "snapshot-"), "snapshots should complete in order, keeping only the newest");
+
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    open(dir, recovered).close();
+    assertEquals(contents(storage), contents(recovered), "chained snapshots should not lose records");
+  }
+
+  @Test void testPeriodicSnapshot() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = WriteAheadLog.open(dir, storage, Durability.SYNC, 10, 0, TimeUnit.MICROSECONDS)) {
+      for (int i = 0; i < 25; i++) log.put(i, stored("v" + i), Optional.empty()).get(5, TimeUnit.SECONDS);
+      assertTrue(log.generation() > 1, "log should move to a new generation once it is full");
+    }
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    open(dir, recovered).close();
+    assertEquals(contents(storage), contents(recovered), "periodic snapshots should not lose records");
+  }
+
+  @Test void testIgnoresTornTail() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, storage)) {
+      log.put("kept", stored("kept"), Optional.of(Durability.SYNC)).get(5, TimeUnit.SECONDS);
+    }
+    Path tail;
+    try (Stream<Path> files = Files.list(dir)) {
+      tail = files.filter((f) -> f.getFileName().toString().startsWith("wal-")).collect(Collectors.toList()).get(0);
+    }
+    Files.write(tail, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, recovered)) {
+      assertEquals(1, log.replayedCount(), "torn entry should be skipped");
+      assertEquals(record("kept"), recovered.get("kept").data(), "entries before the torn one should be recovered");
+    }
+  }
+
+  @Test void testReplayKeepsVersions() throws Exception {
+    Path dir = Files.createTempDirectory("wal");
+    ConcurrentMap<Object, InMemoryRecord> storage = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, storage)) {
+      InMemoryRecord first = stored("one");
+      log.put("a", first, Optional.empty()).get(5, TimeUnit.SECONDS);
+      InMemoryRecord second = InMemoryRecord.next(record("two"), first);
+      assertTrue(log.replace("a", first, second, Optional.empty()).isPresent(), "replace should swap current record");
+      assertFalse(log.replace("a", first, stored("stale"), Optional.empty()).isPresent(),
+        "replace should refuse a stale record");
+      assertFalse(log.removeIf("a", first, Optional.empty()).isPresent(), "removeIf should refuse a stale record");
+      assertEquals(2, log.appendCount(), "refused changes should not be logged");
+    }
+
+    ConcurrentMap<Object, InMemoryRecord> recovered = new ConcurrentSkipListMap<>();
+    try (WriteAheadLog log = open(dir, recovered)) {
+      InMemoryRecord replayed = recovered.get("a");
+      assertEquals(record("two"), replayed.data(), "latest record should be replayed");
+      assertEquals(2, replayed.version(), "version should survive replay");
+      assertEquals(storage.get("a").updatedAtMicros(), replayed.updatedAtMicros(),
+        "update time should survive replay");
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tools.elide.core.CollectionMode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for committing buffered writes in batches, against an in-process fake backend. */
+@SuppressWarnings("UnstableApiUsage")
+public final class BatchWriteProxyTest {
+  private static ListeningExecutorService executorService;
+
+  @BeforeAll
+  static void initExecutor() {
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+  }
+
+  /** Fake backend, which records every batch it commits, and fails batches holding a poisoned reference. */
+  private static final class FakeBackend implements BatchWriteProxy.Backend<String> {
+    private final List<List<BatchWriteProxy.Mutation<String>>> batches =
+      Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> poisoned = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public @Nonnull String ref(@Nonnull String path, @Nullable String prefix) {
+      return prefix == null ? path : prefix + "/" + path;
+    }
+
+    @Override
+    public void commit(@Nonnull List<BatchWriteProxy.Mutation<String>> batch) {
+      for (BatchWriteProxy.Mutation<String> write : batch) {
+        if (poisoned.contains(write.getReference())) throw new IllegalStateException("poisoned batch");
+      }
+      batches.add(new ArrayList<>(batch));
+    }
+  }
+
+  @Test void testSplitsWritesIntoBatches() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    BatchWriteProxy<String> proxy = BatchWriteProxy.wrap(backend, executorService, 500);
+    for (int i = 0; i < 1200; i++) proxy.put(proxy.ref("docs/" + i), SerializedModel.factory());
+    assertEquals(1200, proxy.pendingCount(), "writes should be buffered until flushed");
+
+    BatchWriteProxy.Report report = proxy.flush().get(5, TimeUnit.SECONDS);
+    assertEquals(0, proxy.pendingCount(), "flush should drain the buffer");
+    assertTrue(report.isSuccess(), "all batches should succeed");
+    assertEquals(3, report.getBatches().size(), "writes should be split into three batches");
+    assertEquals(500, report.getBatches().get(0).getSize(), "first batch should be full");
+    assertEquals(200, report.getBatches().get(2).getSize(), "last batch should hold the remainder");
+    assertEquals(1200, report.committedCount(), "every write should be committed");
+    assertEquals(3, backend.batches.size(), "backend should see each batch once");
+    for (List<BatchWriteProxy.Mutation<String>> batch : backend.batches)
+      assertTrue(batch.size() <= 500, "no batch should exceed the limit");
+  }
+
+  @Test void testRepeatedReferencesCommitInOrder() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    BatchWriteProxy<String> proxy = BatchWriteProxy.wrap(backend, executorService, 10);
+    proxy.create(proxy.ref("docs/a"), SerializedModel.factory());
+    proxy.put(proxy.ref("docs/b"), SerializedModel.factory());
+    proxy.update(proxy.ref("docs/a"), SerializedModel.factory());
+
+    BatchWriteProxy.Report report = proxy.flush().get(5, TimeUnit.SECONDS);
+    assertEquals(2, report.getBatches().size(), "second write to a reference should go in a later round");
+    assertEquals(0, report.getBatches().get(0).getRound(), "first batch should be in the first round");
+    assertEquals(1, report.getBatches().get(1).getRound(), "second batch should be in the second round");
+    assertEquals(ModelSerializer.WriteDisposition.CREATE, backend.batches.get(0).get(0).getDisposition(),
+      "first write to a reference should be committed first");
+    assertEquals(ModelSerializer.WriteDisposition.UPDATE, backend.batches.get(1).get(0).getDisposition(),
+      "later write to a reference should be committed later");
+  }
+
+  @Test void testReportsFailedBatches() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.poisoned.add("docs/7");
+    BatchWriteProxy<String> proxy = BatchWriteProxy.wrap(backend, executorService, 5);
+    for (int i = 0; i < 15; i++) proxy.put(proxy.ref("docs/" + i), SerializedModel.factory());
+
+    BatchWriteProxy.Report report = proxy.flush().get(5, TimeUnit.SECONDS);
+    assertFalse(report.isSuccess(), "report should reflect the failed batch");
+    assertEquals(1, report.failures().size(), "only the poisoned batch should fail");
+    assertEquals(1, report.failures().get(0).getIndex(), "the batch holding the poisoned write should fail");
+    assertTrue(report.failures().get(0).getError().isPresent(), "failed batch should carry its error");
+    assertEquals(10, report.committedCount(), "other batches should still be committed");
+  }
+
+  @Test void testSkipsWritesAfterFailedBatch() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.poisoned.add("docs/x");
+    BatchWriteProxy<String> proxy = BatchWriteProxy.wrap(backend, executorService, 2);
+    proxy.create(proxy.ref("docs/a"), SerializedModel.factory());
+    proxy.put(proxy.ref("docs/x"), SerializedModel.factory());
+    proxy.create(proxy.ref("docs/b"), SerializedModel.factory());
+    proxy.update(proxy.ref("docs/a"), SerializedModel.factory());
+    proxy.update(proxy.ref("docs/b"), SerializedModel.factory());
+
+    BatchWriteProxy.Report report = proxy.flush().get(5, TimeUnit.SECONDS);
+    assertFalse(report.isSuccess(), "report should reflect the failed batch");
+    assertEquals(1, report.failures().size(), "only the batch holding the poisoned write should fail");
+    assertEquals(1, report.getSkipped().size(), "later write to a reference in the failed batch should be skipped");
+    assertEquals("docs/a", report.getSkipped().get(0).getReference(), "skipped write should be the one to `docs/a`");
+    assertEquals(ModelSerializer.WriteDisposition.UPDATE, report.getSkipped().get(0).getDisposition(),
+      "skipped write should be the later one");
+    assertEquals(2, report.committedCount(), "writes to other references should still be committed");
+    for (List<BatchWriteProxy.Mutation<String>> batch : backend.batches) {
+      for (BatchWriteProxy.Mutation<String> write : batch)
+        assertNotEquals("docs/a", write.getReference(), "no write to `docs/a` should reach the backend");
+    }
+  }
+
+  @Test void testPersistCollapsedMessageInBatches() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    BatchWriteProxy<String> proxy = BatchWriteProxy.wrap(backend, executorService, 2);
+    List<CollapsedMessage.Operation> operations = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      operations.add(new CollapsedMessage.Write("docs/" + i, ModelSerializer.WriteDisposition.BLIND,
+        CollectionMode.COLLECTION, Optional.empty(), Optional.empty(), SerializedModel.factory()));
+    }
+
+    BatchWriteProxy.Report report = CollapsedMessage.of(operations)
+      .persistBatched("tenant", proxy)
+      .get(5, TimeUnit.SECONDS);
+    assertTrue(report.isSuccess(), "collapsed writes should be committed");
+    assertEquals(3, report.getBatches().size(), "collapsed writes should be batched");
+    assertEquals("tenant/docs/0", backend.batches.stream()
+      .filter(batch -> batch.size() == 2 && batch.get(0).getReference().endsWith("/0"))
+      .findFirst().orElseThrow().get(0).getReference(), "references should carry the persist prefix");
+  }
+}
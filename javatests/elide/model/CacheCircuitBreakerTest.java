@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.base.Ticker;
+import elide.model.CacheCircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the circuit breaker which guards the cache layer. */
+public final class CacheCircuitBreakerTest {
+  /** Manually-advanced time source. */
+  private static final class FakeTicker extends Ticker {
+    private final AtomicLong nanos = new AtomicLong(0);
+
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+
+    void advance(long time, TimeUnit unit) {
+      nanos.addAndGet(unit.toNanos(time));
+    }
+  }
+
+  private static CacheCircuitBreaker breaker(FakeTicker ticker) {
+    return CacheCircuitBreaker.create(10, 4, 0.5, 1, TimeUnit.SECONDS, 2, ticker);
+  }
+
+  /** Test each breaker state for general compliance. */
+  @Test void testBreakerStates() {
+    for (State state : State.values()) {
+      assertNotNull(state.getLabel(), "breaker states should expose a label");
+      assertTrue(state.toString().contains(state.name()), "state `toString()` should contain its name");
+    }
+  }
+
+  /** The breaker should stay closed until enough calls have failed. */
+  @Test void testStaysClosedUnderThreshold() {
+    CacheCircuitBreaker breaker = breaker(new FakeTicker());
+    assertEquals(State.CLOSED, breaker.state(), "breaker should start closed");
+    for (int i = 0; i < 3; i++) {
+      assertTrue(breaker.allowRequest());
+      breaker.recordFailure();
+    }
+    assertEquals(State.CLOSED, breaker.state(), "breaker should not open before the minimum call count");
+    for (int i = 0; i < 6; i++) {
+      assertTrue(breaker.allowRequest());
+      breaker.recordSuccess();
+    }
+    assertTrue(breaker.allowRequest());
+    breaker.recordFailure();
+    assertEquals(0.4, breaker.failureRate(), 0.0001, "failure rate should reflect the window");
+    assertEquals(State.CLOSED, breaker.state(), "breaker should stay closed under the failure threshold");
+  }
+
+  /** The breaker should open, bypass, probe after the cool-down, and close once probes succeed. */
+  @Test void testOpenHalfOpenClose() {
+    FakeTicker ticker = new FakeTicker();
+    CacheCircuitBreaker breaker = breaker(ticker);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(breaker.allowRequest());
+      breaker.recordFailure();
+    }
+    assertEquals(State.OPEN, breaker.state(), "breaker should open once failures cross the threshold");
+    assertEquals(1, breaker.openCount());
+    assertFalse(breaker.allowRequest(), "open breaker should bypass the cache");
+    assertEquals(1, breaker.rejectedCount());
+
+    ticker.advance(1, TimeUnit.SECONDS);
+    assertTrue(breaker.allowRequest(), "breaker should admit a probe after the cool-down");
+    assertEquals(State.HALF_OPEN, breaker.state());
+    assertTrue(breaker.allowRequest(), "breaker should admit a second probe");
+    assertFalse(breaker.allowRequest(), "breaker should not admit more probes than configured");
+    breaker.recordSuccess();
+    breaker.recordSuccess();
+    assertEquals(State.CLOSED, breaker.state(), "breaker should close once all probes succeed");
+    assertEquals(1, breaker.halfOpenCount());
+    assertEquals(1, breaker.closeCount());
+    assertEquals(0.0, breaker.failureRate(), 0.0001, "closing should reset the window");
+  }
+
+  /** A failed probe should re-open the breaker for another cool-down. */
+  @Test void testFailedProbeReopens() {
+    FakeTicker ticker = new FakeTicker();
+    CacheCircuitBreaker breaker = breaker(ticker);
+    for (int i = 0; i < 4; i++) {
+      breaker.allowRequest();
+      breaker.recordFailure();
+    }
+    ticker.advance(2, TimeUnit.SECONDS);
+    assertTrue(breaker.allowRequest());
+    breaker.recordIgnored();
+    assertTrue(breaker.allowRequest(), "ignored probes should release their slot");
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.state(), "failed probe should re-open the breaker");
+    assertEquals(2, breaker.openCount());
+    assertFalse(breaker.allowRequest(), "re-opened breaker should bypass the cache until the next cool-down");
+  }
+}
@@ -12,7 +12,129 @@
  */
 package elide.model;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tools.elide.core.CollectionMode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 
 /** Tests for the {@link CollapsedMessage} intermediate object. */
+@SuppressWarnings("UnstableApiUsage")
 public final class CollapsedMessageTest {
+  private static ListeningExecutorService executorService;
+
+  @BeforeAll
+  static void initExecutor() {
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+  }
+
+  /** Write proxy which records the order of writes, and can hold writes to some paths until a latch opens. */
+  private static final class RecordingProxy implements WriteProxy<String> {
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private @Nullable String failing = null;
+    private @Nullable String gatedPrefix = null;
+    private @Nullable CountDownLatch gate = null;
+
+    @Override
+    public @Nonnull String ref(@Nonnull String path, @Nullable String prefix) {
+      return path;
+    }
+
+    @Override
+    public void put(@Nonnull String reference, @Nonnull SerializedModel message) {
+      if (reference.equals(failing)) throw new IllegalStateException("write failed");
+      if (gate != null && gatedPrefix != null && reference.startsWith(gatedPrefix)) {
+        // every gated write must be in flight at once for the gate to open
+        gate.countDown();
+        try {
+          if (!gate.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("siblings did not run concurrently");
+        } catch (InterruptedException err) {
+          throw new IllegalStateException(err);
+        }
+      }
+      written.add(reference);
+    }
+
+    @Override
+    public void create(@Nonnull String reference, @Nonnull SerializedModel message) {
+      put(reference, message);
+    }
+
+    @Override
+    public void update(@Nonnull String reference, @Nonnull SerializedModel message) {
+      put(reference, message);
+    }
+  }
+
+  private static @Nonnull CollapsedMessage.Write write(@Nonnull String path,
+                                                       @Nullable CollapsedMessage.Operation parent) {
+    return new CollapsedMessage.Write(path, ModelSerializer.WriteDisposition.BLIND, CollectionMode.COLLECTION,
+      Optional.ofNullable(parent), Optional.empty(), SerializedModel.factory());
+  }
+
+  @Test void testSerialPersistKeepsOrder() {
+    RecordingProxy proxy = new RecordingProxy();
+    CollapsedMessage.Write root = write("people/a", null);
+    CollapsedMessage.of(List.of(root, write("people/a/pets/1", root))).persist(null, proxy);
+    assertEquals(List.of("people/a", "people/a/pets/1"), proxy.written, "serial persist should follow held order");
+  }
+
+  @Test void testParallelPersistRunsSiblingsConcurrently() throws Exception {
+    RecordingProxy proxy = new RecordingProxy();
+    proxy.gatedPrefix = "people/a/";
+    proxy.gate = new CountDownLatch(3);
+
+    CollapsedMessage.Write root = write("people/a", null);
+    CollapsedMessage.Write pets = write("people/a/pets/1", root);
+    CollapsedMessage message = CollapsedMessage.of(List.of(
+      root,
+      pets,
+      write("people/a/pets/1/toys/1", pets),
+      write("people/a/cars/1", root),
+      write("people/a/homes/1", root)));
+
+    message.persist(null, proxy, executorService).get(10, TimeUnit.SECONDS);
+    assertEquals(5, proxy.written.size(), "every operation should be executed");
+    assertEquals("people/a", proxy.written.get(0), "root should be written before its children");
+    assertTrue(proxy.written.indexOf("people/a/pets/1") < proxy.written.indexOf("people/a/pets/1/toys/1"),
+      "each parent should be written before its children");
+  }
+
+  @Test void testParallelPersistSkipsDescendantsOfFailedWrite() {
+    RecordingProxy proxy = new RecordingProxy();
+    proxy.failing = "people/a/pets/1";
+
+    CollapsedMessage.Write root = write("people/a", null);
+    CollapsedMessage.Write pets = write("people/a/pets/1", root);
+    CollapsedMessage message = CollapsedMessage.of(List.of(
+      root, pets, write("people/a/pets/1/toys/1", pets), write("people/a/cars/1", root)));
+
+    ExecutionException err = assertThrows(ExecutionException.class,
+      () -> message.persist(null, proxy, executorService).get(10, TimeUnit.SECONDS),
+      "failed write should fail the persist future");
+    assertTrue(err.getCause() instanceof IllegalStateException, "failure should carry the write's error");
+    assertFalse(proxy.written.contains("people/a/pets/1/toys/1"), "descendants of a failed write should be skipped");
+  }
 }
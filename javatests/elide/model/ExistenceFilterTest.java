@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the existence filter which guards reads for missing records. */
+public final class ExistenceFilterTest {
+  @Test void testNotAuthoritativeUntilRebuilt() {
+    ExistenceFilter filter = ExistenceFilter.create();
+    assertFalse(filter.isAuthoritative(), "new filter should not be authoritative");
+    assertFalse(filter.definitelyAbsent("missing"), "non-authoritative filter should never rule out a record");
+    assertEquals(0L, filter.checkCount(), "non-authoritative filter should not count checks");
+
+    filter.rebuild(Collections.emptyList());
+    assertTrue(filter.isAuthoritative(), "rebuilt filter should be authoritative");
+    assertTrue(filter.definitelyAbsent("missing"), "rebuilt filter should rule out unknown records");
+    assertEquals(1L, filter.absentCount(), "ruled-out read should be counted");
+  }
+
+  @Test void testRecordsWrites() {
+    ExistenceFilter filter = ExistenceFilter.create();
+    filter.recordPresent("before-rebuild");
+    filter.rebuild(Arrays.asList("stored-1", "stored-2"));
+    assertTrue(filter.definitelyAbsent("before-rebuild"), "rebuild should start from the provided IDs only");
+    assertFalse(filter.definitelyAbsent("stored-1"), "stored IDs should be present after rebuild");
+    filter.recordPresent("written");
+    assertFalse(filter.definitelyAbsent("written"), "written IDs should be present");
+  }
+
+  @Test void testWritesDuringRebuildSurvive() {
+    ExistenceFilter filter = ExistenceFilter.create();
+    filter.rebuild(() -> new Iterator<Object>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < 3;
+      }
+
+      @Override
+      public Object next() {
+        // simulate a write which completes while the listing is being read.
+        if (index == 1) filter.recordPresent("concurrent");
+        return "stored-" + index++;
+      }
+    });
+    assertFalse(filter.definitelyAbsent("concurrent"), "writes during a rebuild should land in the new filter");
+  }
+
+  @Test void testDeletesMarkStale() {
+    ExistenceFilter filter = ExistenceFilter.create(1000, 0.01, 0.5);
+    filter.rebuild(Arrays.asList("a", "b", "c", "d"));
+    filter.recordDeleted("a");
+    assertFalse(filter.needsRebuild(), "few deletes should not trigger a rebuild");
+    assertFalse(filter.definitelyAbsent("a"), "deleted IDs remain in the filter as stale entries");
+    filter.recordDeleted("b");
+    assertTrue(filter.needsRebuild(), "enough deletes should trigger a rebuild");
+    filter.rebuild(Arrays.asList("c", "d"));
+    assertEquals(0L, filter.staleCount(), "rebuild should reset stale entries");
+    assertTrue(filter.definitelyAbsent("a"), "rebuild should drop deleted IDs");
+  }
+
+  @Test void testSnapshotRestore() {
+    ExistenceFilter filter = ExistenceFilter.create(100, 0.01, 0.25);
+    filter.rebuild(Arrays.asList("a", "b"));
+    ExistenceFilter restored = ExistenceFilter.create();
+    restored.restore(filter.toProto());
+    assertTrue(restored.isAuthoritative(), "restored filter should be authoritative");
+    assertFalse(restored.definitelyAbsent("a"), "restored filter should hold snapshot IDs");
+    assertTrue(restored.definitelyAbsent("z"), "restored filter should rule out unknown IDs");
+  }
+}
@@ -55,14 +55,14 @@ public abstract class GenericCacheDriverTest<Driver extends CacheDriver<PersonKe
   @TestFactory
   protected Iterable<DynamicTest> driverTests() {
     final String subcase = this.getClass().getSimpleName();
-    List<DynamicTest> tests = Arrays.asList(
+    List<DynamicTest> tests = new ArrayList<>(Arrays.asList(
       dynamicTest(format("%s: `acquireDriver`", subcase), this::acquireDriver),
       dynamicTest(format("%s: `testFetchMiss`", subcase), this::testFetchMiss),
       dynamicTest(format("%s: `testInjectFetchHit`", subcase), this::testInjectFetchHit),
       dynamicTest(format("%s: `testInjectHitEvictMiss`", subcase), this::testInjectHitEvictMiss),
       dynamicTest(format("%s: `testMultiEvict`", subcase), this::testMultiEvict),
       dynamicTest(format("%s: `testFlush`", subcase), this::testFlush)
-    );
+    ));
 
     tests.addAll(subclassTests().orElse(Collections.emptyList()));
     return tests;
@@ -52,7 +52,7 @@ public abstract class GenericPersistenceDriverTest<Driver extends PersistenceDri
   @TestFactory
   protected final Iterable<DynamicTest> driverTests() {
     final String subcase = this.getClass().getSimpleName();
-    List<DynamicTest> tests = this.supportedDriverTests();
+    List<DynamicTest> tests = new ArrayList<>(this.supportedDriverTests());
     Set<String> unsupported = this.unsupportedDriverTests()
             .orElse(Collections.emptyList())
             .stream()
@@ -85,6 +85,8 @@ public abstract class GenericPersistenceDriverTest<Driver extends PersistenceDri
       dynamicTest(format("%s: `createUpdateWithInvalidOptions`", subcase), this::createUpdateWithInvalidOptions),
       dynamicTest(format("%s: `createEntityThenDelete`", subcase), this::createEntityThenDelete),
       dynamicTest(format("%s: `createEntityThenDeleteByRecord`", subcase), this::createEntityThenDeleteByRecord),
+      dynamicTest(format("%s: `createEntityThenModify`", subcase), this::createEntityThenModify),
+      dynamicTest(format("%s: `createEntityThenUpdateMasked`", subcase), this::createEntityThenUpdateMasked),
       dynamicTest(format("%s: `storeEntityUpdateNotFound`", subcase), this::storeEntityUpdateNotFound),
       dynamicTest(format("%s: `storeEntityCollission`", subcase), this::storeEntityCollission)
     );
@@ -631,6 +633,130 @@ public abstract class GenericPersistenceDriverTest<Driver extends PersistenceDri
       "refetched-after-delete optional should present as not-present");
   }
 
+  /** Create a simple entity, then `modify` it in place, and make sure `modify` refuses records that do not exist. */
+  @SuppressWarnings("unchecked")
+  protected void createEntityThenModify() throws TimeoutException, ExecutionException, InterruptedException {
+    // persist the record
+    Person person = Person.newBuilder()
+      .setKey(PersonKey.newBuilder()
+          .setId("abc123createThenModify")
+          .build())
+      .setName("John Doe")
+      .setContactInfo(ContactInfo.newBuilder()
+        .setEmailAddress("john@doe.com")
+        .setPhoneE164("+12345679001"))
+      .build();
+
+    ReactiveFuture<Person> op = acquire().create(person);
+    Person record = op.get(timeout(), timeoutUnit());
+    Optional<PersonKey> recordKey = ModelMetadata.key(record);
+    assertTrue(recordKey.isPresent(), "record key should be present after create");
+    var key = recordKey.get();
+    touchedKeys.add(key);
+
+    // modify it, based on what is stored
+    ReactiveFuture<Person> modifyOp = acquire().modify(key, (current) ->
+      ((Person)current).toBuilder().setName(((Person)current).getName() + " Jr.").build(), WriteOptions.DEFAULTS);
+    assertNotNull(modifyOp, "should not get `null` from `modify`");
+    Person modified = modifyOp.get(timeout(), timeoutUnit());
+    assertEquals("John Doe Jr.", modified.getName(), "modified record should reflect the function's result");
+    assertEquals("john@doe.com", modified.getContactInfo().getEmailAddress(),
+      "fields not touched by the function should be preserved");
+
+    Optional<Person> refetched = (Optional<Person>)acquire().fetchAsync(key).get(timeout(), timeoutUnit());
+    assertTrue(refetched.isPresent(), "modified record should be present");
+    assertEquals(modified.toString(), refetched.get().toString(), "re-fetched record should match modified record");
+
+    // a function which returns its input should not write anything
+    Person unchanged = (Person)acquire().modify(key, (current) -> current, WriteOptions.DEFAULTS)
+      .get(timeout(), timeoutUnit());
+    assertEquals(modified.toString(), unchanged.toString(), "no-op modify should return the stored record");
+
+    // modifying a record which does not exist should fail
+    var genkey = acquire().generateKey(emptyInstance);
+    touchedKeys.add(genkey);
+    ReactiveFuture<Person> missingOp = acquire().modify(genkey, (current) -> current, WriteOptions.DEFAULTS);
+    ExecutionException err = assertThrows(ExecutionException.class, () -> missingOp.get(timeout(), timeoutUnit()));
+    assertTrue(err.getCause() instanceof ModelWriteConflict, "missing record should surface as a write conflict");
+
+    // clean up, so that other driver suites sharing the same storage can create the record again
+    acquire().delete(key).get(timeout(), timeoutUnit());
+  }
+
+  /** Create a simple entity, then apply partial updates to it, with top-level and nested update masks. */
+  @SuppressWarnings("unchecked")
+  protected void createEntityThenUpdateMasked() throws TimeoutException, ExecutionException, InterruptedException {
+    // persist the record
+    Person person = Person.newBuilder()
+      .setKey(PersonKey.newBuilder()
+          .setId("abc123createThenUpdateMasked")
+          .build())
+      .setName("John Doe")
+      .setContactInfo(ContactInfo.newBuilder()
+        .setEmailAddress("john@doe.com")
+        .setPhoneE164("+12345679001"))
+      .build();
+
+    ReactiveFuture<Person> op = acquire().create(person);
+    Person record = op.get(timeout(), timeoutUnit());
+    Optional<PersonKey> recordKey = ModelMetadata.key(record);
+    assertTrue(recordKey.isPresent(), "record key should be present after create");
+    var key = recordKey.get();
+    touchedKeys.add(key);
+
+    // update only the name: the contact info on the update should be ignored
+    Person nameOnly = Person.newBuilder()
+      .setKey(key)
+      .setName("Jane Doe")
+      .setContactInfo(ContactInfo.newBuilder().setEmailAddress("ignored@doe.com"))
+      .build();
+    Person renamed = (Person)acquire().update(key, nameOnly, new UpdateOptions() {
+      @Override
+      public @Nonnull Optional<FieldMask> updateMask() {
+        return Optional.of(FieldMask.newBuilder().addPaths("name").build());
+      }
+    }).get(timeout(), timeoutUnit());
+    assertEquals("Jane Doe", renamed.getName(), "masked field should be updated");
+    assertEquals("john@doe.com", renamed.getContactInfo().getEmailAddress(),
+      "fields outside the update mask should be preserved");
+    assertEquals("+12345679001", renamed.getContactInfo().getPhoneE164(),
+      "fields outside the update mask should be preserved");
+
+    // update a nested field only
+    Person emailOnly = Person.newBuilder()
+      .setKey(key)
+      .setContactInfo(ContactInfo.newBuilder().setEmailAddress("jane@doe.com"))
+      .build();
+    Person updated = (Person)acquire().update(key, emailOnly, new UpdateOptions() {
+      @Override
+      public @Nonnull Optional<FieldMask> updateMask() {
+        return Optional.of(FieldMask.newBuilder().addPaths("contact_info.email_address").build());
+      }
+    }).get(timeout(), timeoutUnit());
+    assertEquals("Jane Doe", updated.getName(), "fields outside the update mask should be preserved");
+    assertEquals("jane@doe.com", updated.getContactInfo().getEmailAddress(), "masked nested field should be updated");
+    assertEquals("+12345679001", updated.getContactInfo().getPhoneE164(),
+      "nested fields outside the update mask should be preserved");
+
+    Optional<Person> refetched = (Optional<Person>)acquire().fetchAsync(key).get(timeout(), timeoutUnit());
+    assertTrue(refetched.isPresent(), "updated record should be present");
+    assertEquals(updated.toString(), refetched.get().toString(), "re-fetched record should match updated record");
+
+    // a masked field which is not set on the update should be cleared
+    Person cleared = (Person)acquire().update(key, Person.newBuilder().setKey(key).build(), new UpdateOptions() {
+      @Override
+      public @Nonnull Optional<FieldMask> updateMask() {
+        return Optional.of(FieldMask.newBuilder().addPaths("name").build());
+      }
+    }).get(timeout(), timeoutUnit());
+    assertEquals("", cleared.getName(), "masked field absent from the update should be cleared");
+    assertEquals("jane@doe.com", cleared.getContactInfo().getEmailAddress(),
+      "fields outside the update mask should be preserved");
+
+    // clean up, so that other driver suites sharing the same storage can create the record again
+    acquire().delete(key).get(timeout(), timeoutUnit());
+  }
+
   /** Create a simple entity, then delete it, then try to re-fetch to make sure it was deleted. */
   protected void createEntityThenDeleteByRecord() throws TimeoutException, ExecutionException, InterruptedException {
     // persist the record
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for hot key detection and pinning. */
+public final class HotKeyTrackerTest {
+  private static final String RECORD = "record";
+
+  @Test void testPromotesHotKey() {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 256, 1000, 10, 4);
+    for (int i = 0; i < 9; i++) tracker.access("hot");
+    assertEquals(0, tracker.hotCount(), "key should not be hot before the threshold");
+    tracker.access("hot");
+    assertEquals(1, tracker.hotCount(), "key should be hot at the threshold");
+    assertTrue(tracker.hotKeys().containsKey("hot"), "hot key should be reported");
+    assertEquals(-1L, tracker.stamp("cold"), "cold key should have no stamp");
+  }
+
+  @Test void testPinsAndServesHotRecord() {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 256, 1000, 2, 4);
+    tracker.access("hot");
+    tracker.access("hot");
+    long stamp = tracker.stamp("hot");
+    assertTrue(stamp >= 0, "hot key should have a stamp");
+    tracker.fill("hot", stamp, RECORD);
+    assertEquals(Optional.of(RECORD), tracker.access("hot"), "pinned record should be served");
+    assertEquals(1L, tracker.pinnedHitCount(), "pinned hit should be counted");
+  }
+
+  @Test void testInvalidateBlocksStaleFill() {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 256, 1000, 1, 4);
+    tracker.access("hot");
+    long stamp = tracker.stamp("hot");
+    tracker.invalidate("hot");
+    tracker.fill("hot", stamp, RECORD);
+    assertFalse(tracker.access("hot").isPresent(), "a fill which started before an invalidation should be dropped");
+
+    tracker.fill("hot", tracker.stamp("hot"), RECORD);
+    tracker.invalidate("hot");
+    assertFalse(tracker.access("hot").isPresent(), "invalidation should drop the pinned record");
+  }
+
+  @Test void testPinnedRecordExpires() throws InterruptedException {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 256, 1000, 1, 4, 20, TimeUnit.MILLISECONDS);
+    tracker.access("hot");
+    tracker.fill("hot", tracker.stamp("hot"), RECORD);
+    assertEquals(Optional.of(RECORD), tracker.access("hot"), "pinned record should be served within its lifetime");
+
+    Thread.sleep(40);
+    assertFalse(tracker.access("hot").isPresent(), "pinned record should be dropped once its lifetime passes");
+    assertEquals(1L, tracker.expirationCount(), "expired pin should be counted");
+
+    tracker.fill("hot", tracker.stamp("hot"), RECORD, TimeUnit.SECONDS.toNanos(5));
+    Thread.sleep(40);
+    assertEquals(Optional.of(RECORD), tracker.access("hot"), "a fill's own lifetime should override the default");
+  }
+
+  @Test void testCapacityKeepsHottest() {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 1024, 100_000, 5, 2);
+    for (int i = 0; i < 5; i++) tracker.access("a");
+    for (int i = 0; i < 6; i++) tracker.access("b");
+    for (int i = 0; i < 20; i++) tracker.access("c");
+    Map<Object, Long> hot = tracker.hotKeys();
+    assertEquals(2, hot.size(), "hot set should be capped");
+    assertTrue(hot.containsKey("c") && hot.containsKey("b"), "hottest keys should win");
+    assertEquals("c", hot.keySet().iterator().next(), "hot keys should be reported hottest first");
+    assertEquals(1L, tracker.demotionCount(), "displaced key should be demoted");
+  }
+
+  @Test void testDecayDemotesCooledKeys() {
+    HotKeyTracker<String> tracker = HotKeyTracker.create(4, 1024, 50, 10, 4);
+    for (int i = 0; i < 12; i++) tracker.access("burst");
+    assertEquals(1, tracker.hotCount(), "burst key should be hot");
+    for (int i = 0; i < 38; i++) tracker.access("background-" + i);
+    assertEquals(1L, tracker.decayCount(), "sketch should decay once per window");
+    assertEquals(0, tracker.hotCount(), "cooled key should be demoted after decay");
+    assertTrue(tracker.estimate("burst") <= 6, "decay should halve estimates");
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import org.junit.jupiter.api.Test;
+import tools.elide.core.data.CompressionMode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for compressing and decompressing encoded model data via {@link ModelCompression}. */
+public final class ModelCompressionTest {
+  private static final byte[] sample = "{\"name\": \"Jane Doe\"} ".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+  @Test void testIdentity() throws IOException {
+    assertTrue(ModelCompression.isAvailable(CompressionMode.IDENTITY), "identity should always be available");
+    assertSame(sample, ModelCompression.compress(CompressionMode.IDENTITY, sample), "identity should not copy");
+    assertSame(sample, ModelCompression.decompress(CompressionMode.IDENTITY, sample), "identity should not copy");
+  }
+
+  @Test void testGzip() throws IOException {
+    assertTrue(ModelCompression.isAvailable(CompressionMode.GZIP), "gzip should always be available");
+    final byte[] compressed = ModelCompression.compress(CompressionMode.GZIP, sample);
+    assertTrue(compressed.length < sample.length / 4, "repetitive data should compress well with gzip");
+    assertArrayEquals(sample, ModelCompression.decompress(CompressionMode.GZIP, compressed),
+      "gzip should round-trip data intact");
+    assertThrows(IOException.class, () -> ModelCompression.decompress(CompressionMode.GZIP, sample),
+      "decompressing data which is not gzip should fail");
+  }
+
+  @Test void testBrotli() throws IOException {
+    if (ModelCompression.isAvailable(CompressionMode.BROTLI)) {
+      final byte[] compressed = ModelCompression.compress(CompressionMode.BROTLI, sample);
+      assertTrue(compressed.length < sample.length / 4, "repetitive data should compress well with brotli");
+      assertArrayEquals(sample, ModelCompression.decompress(CompressionMode.BROTLI, compressed),
+        "brotli should round-trip data intact");
+    } else {
+      assertThrows(IOException.class, () -> ModelCompression.compress(CompressionMode.BROTLI, sample),
+        "compressing with brotli should fail where it is unavailable");
+    }
+  }
+
+  @Test void testEncodingModes() {
+    for (EncodingMode mode : EncodingMode.values()) {
+      assertEquals(mode.compression() != CompressionMode.IDENTITY, mode.isCompressed(),
+        "mode should report compression consistently");
+      assertFalse(mode.format().isCompressed(), "format of a mode should be uncompressed");
+      assertEquals(mode, mode.format().withCompression(mode.compression()),
+        "mode should be recoverable from its format and compression");
+    }
+    assertEquals(EncodingMode.JSON, EncodingMode.JSON_BROTLI.format(), "format should keep JSON");
+    assertEquals(EncodingMode.BINARY_GZIP, EncodingMode.BINARY.withCompression(CompressionMode.GZIP),
+      "compression should apply to the format");
+  }
+}
@@ -83,6 +83,62 @@ public final class ModelOptionsTest {
       "default cache timeout should be greater than 0 secons");
   }
 
+  /** Test each cache write policy for general compliance. */
+  @Test void testCacheWritePolicies() {
+    for (CacheOptions.WritePolicy policy : CacheOptions.WritePolicy.values()) {
+      assertNotNull(policy.getLabel(),
+        "write policies should expose a label");
+      assertTrue(policy.toString().contains(policy.name()),
+        "policy description should contain the name");
+      assertTrue(policy.toString().contains(policy.getLabel()),
+        "policy description should contain the label");
+    }
+  }
+
+  /** Test the default cache write policy, which should invalidate rather than serve stale records. */
+  @Test void testDefaultCacheWritePolicy() {
+    assertEquals(CacheOptions.WritePolicy.INVALIDATE, WriteOptions.DEFAULTS.cacheWritePolicy(),
+      "writes should invalidate cached records by default");
+  }
+
+  /** Test the default cache timeout mode, which should apply the fixed timeout without hedging. */
+  @Test void testDefaultCacheTimeoutMode() {
+    assertEquals(CacheOptions.TimeoutMode.FIXED, FetchOptions.DEFAULTS.cacheTimeoutMode(),
+      "cache timeouts should be fixed by default");
+    CacheLatencyTracker tracker = CacheLatencyTracker.create(10, 5);
+    for (int i = 0; i < 10; i++) tracker.record(TimeUnit.MILLISECONDS.toNanos(10));
+    assertEquals(TimeUnit.SECONDS.toNanos(2), tracker.timeoutNanos(FetchOptions.DEFAULTS),
+      "fixed mode should ignore observed latency");
+    assertFalse(tracker.hedgeDelayNanos(FetchOptions.DEFAULTS).isPresent(), "fixed mode should not hedge");
+  }
+
+  /** Test adaptive and hedged cache timeouts, derived from observed latency. */
+  @Test void testAdaptiveCacheTimeout() {
+    FetchOptions hedged = new FetchOptions() {
+      @Override
+      public TimeoutMode cacheTimeoutMode() {
+        return TimeoutMode.HEDGED;
+      }
+    };
+    CacheLatencyTracker tracker = CacheLatencyTracker.create(100, 10);
+    for (int i = 0; i < 9; i++) tracker.record(TimeUnit.MILLISECONDS.toNanos(i + 1));
+    assertEquals(TimeUnit.SECONDS.toNanos(2), tracker.timeoutNanos(hedged),
+      "too few samples should fall back to the fixed timeout");
+    assertFalse(tracker.hedgeDelayNanos(hedged).isPresent(), "too few samples should not hedge");
+
+    for (int i = 9; i < 100; i++) tracker.record(TimeUnit.MILLISECONDS.toNanos(i + 1));
+    assertEquals(Optional.of(TimeUnit.MILLISECONDS.toNanos(95)), tracker.percentile(0.95),
+      "p95 should reflect the window");
+    assertEquals(Optional.of(TimeUnit.MILLISECONDS.toNanos(95)), tracker.hedgeDelayNanos(hedged),
+      "hedging should start at the observed p95");
+    assertEquals((long)(TimeUnit.MILLISECONDS.toNanos(99) * CacheLatencyTracker.ADAPTIVE_HEADROOM),
+      tracker.timeoutNanos(hedged), "adaptive timeout should derive from the observed p99");
+
+    for (int i = 0; i < 100; i++) tracker.record(TimeUnit.SECONDS.toNanos(10));
+    assertEquals(TimeUnit.SECONDS.toNanos(2), tracker.timeoutNanos(hedged),
+      "adaptive timeout should be capped at the fixed timeout");
+  }
+
   /** Test field masks when used with {@link FetchOptions}. */
   @Test void testDefaultFetchMask() {
     Optional<FieldMask> defaultMask = (new FetchOptions() {}).fieldMask();
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.firestore.v1.Document;
+import elide.model.PersonRecord.ContactInfo;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonAddress;
+import elide.model.PersonRecord.PersonKey;
+import elide.model.PersonRecord.TypeBuffet;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Throughput benchmark for {@link ObjectModelSerializer} and {@link ObjectModelDeserializer}, on a nested model with a
+ * key, a scalar field, and two levels of sub-messages. Each direction is warmed up, then measured in records/sec.
+ * Serialization is additionally measured on a wide model made up mostly of numeric fields, and both serialize passes
+ * report the bytes allocated per record, as counted by the JVM for the benchmark thread. Finally, encoding straight to
+ * Firestore {@link Document} protos is measured against building documents from serialized models; neither needs a
+ * connection to Firestore.
+ *
+ * <p>Run via {@code bazel run //javatests/elide/model:ObjectModelBenchmark}, optionally passing the count of records.
+ * To compare before and after a change to the object model codec, run the same target at both revisions.</p>
+ */
+public final class ObjectModelBenchmark {
+  /** Count of full passes to run before measuring. */
+  private static final int WARMUP_PASSES = 5;
+
+  /** Resource name given to each encoded document. */
+  private static final String DOCUMENT_NAME = "projects/benchmark/databases/(default)/documents/people/person";
+
+  private ObjectModelBenchmark() { /* Disallow construction. */ }
+
+  public static void main(String[] args) {
+    final int records = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    final Person[] people = new Person[records];
+    final Map<String, Object>[] documents = documents(records);
+    for (int i = 0; i < records; i++) people[i] = person(i);
+
+    final TypeBuffet[] buffets = new TypeBuffet[records];
+    for (int i = 0; i < records; i++) buffets[i] = buffet(i);
+
+    final ObjectModelSerializer<Person> serializer = ObjectModelSerializer.Companion.defaultInstance();
+    final ObjectModelSerializer<TypeBuffet> wideSerializer = ObjectModelSerializer.Companion.defaultInstance();
+    final ObjectModelDeserializer<Person> deserializer =
+      ObjectModelDeserializer.defaultInstance(Person.getDefaultInstance());
+
+    long sink = 0;
+    for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+      for (Person person : people) sink += serializer.serialize(person, null, false, false, null, null).size();
+      for (TypeBuffet buffet : buffets) sink += wideSerializer.serialize(buffet, null, false, false, null, null).size();
+      for (Map<String, Object> document : documents) sink += deserializer.inflate(document).getName().length();
+      sink += documentsViaModel(serializer, people) + documentsDirect(serializer, people);
+    }
+
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (Person person : people) sink += serializer.serialize(person, null, false, false, null, null).size();
+    final long serializeNanos = System.nanoTime() - start;
+    final long serializeBytes = allocatedBytes() - allocated;
+
+    allocated = allocatedBytes();
+    start = System.nanoTime();
+    for (TypeBuffet buffet : buffets) sink += wideSerializer.serialize(buffet, null, false, false, null, null).size();
+    final long numericNanos = System.nanoTime() - start;
+    final long numericBytes = allocatedBytes() - allocated;
+
+    start = System.nanoTime();
+    for (Map<String, Object> document : documents) sink += deserializer.inflate(document).getName().length();
+    final long inflateNanos = System.nanoTime() - start;
+
+    allocated = allocatedBytes();
+    start = System.nanoTime();
+    sink += documentsViaModel(serializer, people);
+    final long viaModelNanos = System.nanoTime() - start;
+    final long viaModelBytes = allocatedBytes() - allocated;
+
+    allocated = allocatedBytes();
+    start = System.nanoTime();
+    sink += documentsDirect(serializer, people);
+    final long directNanos = System.nanoTime() - start;
+    final long directBytes = allocatedBytes() - allocated;
+
+    System.out.println(String.format(
+      "serialize: %,10.0f records/sec, %,6d B/record | numeric: %,10.0f records/sec, %,6d B/record | " +
+        "inflate: %,10.0f records/sec | (checksum %d)",
+      records / (serializeNanos / 1e9),
+      serializeBytes / records,
+      records / (numericNanos / 1e9),
+      numericBytes / records,
+      records / (inflateNanos / 1e9),
+      sink));
+    System.out.println(String.format(
+      "document (via model): %,10.0f records/sec, %,6d B/record | " +
+        "document (direct): %,10.0f records/sec, %,6d B/record",
+      records / (viaModelNanos / 1e9),
+      viaModelBytes / records,
+      records / (directNanos / 1e9),
+      directBytes / records));
+  }
+
+  private static long documentsViaModel(ObjectModelSerializer<Person> serializer, Person[] people) {
+    long sink = 0;
+    for (Person person : people) {
+      sink += Document.newBuilder()
+        .setName(DOCUMENT_NAME)
+        .putAllFields(serializer.serialize(person, null, false, false, null, null))
+        .build()
+        .getFieldsCount();
+    }
+    return sink;
+  }
+
+  private static long documentsDirect(ObjectModelSerializer<Person> serializer, Person[] people) {
+    long sink = 0;
+    final Document.Builder builder = Document.newBuilder();
+    for (Person person : people) sink += serializer.encodeDocument(person, DOCUMENT_NAME, builder).getFieldsCount();
+    return sink;
+  }
+
+  /** @return Bytes allocated so far by the current thread, or {@code 0} if the JVM does not count allocations. */
+  private static long allocatedBytes() {
+    final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  private static TypeBuffet buffet(int i) {
+    return TypeBuffet.newBuilder()
+      .setKey(TypeBuffet.SampleKey.newBuilder().setId(i + 1))
+      .setIntNormal(i)
+      .setIntDouble(i * 31L)
+      .setUintNormal(i + 7)
+      .setUintDouble(i * 17L)
+      .setSintNormal(-i)
+      .setSintDouble(-i * 13L)
+      .setFixedNormal(i + 3)
+      .setFixedDouble(i * 5L)
+      .setSfixedNormal(-i - 1)
+      .setSfixedDouble(-i * 7L)
+      .setBoolField(i % 2 == 0)
+      .setFloatField(i / 3f)
+      .setDoubleField(i / 7d)
+      .build();
+  }
+
+  private static Person person(int i) {
+    return Person.newBuilder()
+      .setKey(PersonKey.newBuilder().setId("person-" + i))
+      .setName("Person " + i)
+      .setContactInfo(ContactInfo.newBuilder()
+        .setEmailAddress("person" + i + "@example.com")
+        .setPhoneE164("+1555" + (1_000_000 + i))
+        .setAddress(PersonAddress.newBuilder()
+          .setFirstLine(i + " Main Street")
+          .setSecondLine("Unit " + (i % 100))))
+      .build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object>[] documents(int count) {
+    final Map<String, Object>[] documents = new Map[count];
+    for (int i = 0; i < count; i++) {
+      final Map<String, Object> address = new HashMap<>();
+      address.put("first_line", i + " Main Street");
+      address.put("second_line", "Unit " + (i % 100));
+      final Map<String, Object> contact = new HashMap<>();
+      contact.put("email_address", "person" + i + "@example.com");
+      contact.put("phone_e164", "+1555" + (1_000_000 + i));
+      contact.put("address", address);
+      final Map<String, Object> key = new HashMap<>();
+      key.put("id", "person-" + i);
+      final Map<String, Object> document = new HashMap<>();
+      document.put("key", key);
+      document.put("name", "Person " + i);
+      document.put("contact_info", contact);
+      documents[i] = document;
+    }
+    return documents;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.MapValue;
+import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import elide.model.PersonRecord.Appointment;
+import elide.model.PersonRecord.ContactInfo;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonAddress;
+import elide.model.PersonRecord.PersonKey;
+import elide.model.PersonRecord.PetKey;
+import elide.model.PersonRecord.TypeBuffet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for {@link ObjectModelDeserializer}, and particularly inflating models directly from Firestore documents. */
+public final class ObjectModelDeserializerTest {
+  private static final String NAME = "projects/sample/databases/(default)/documents/people/abc123";
+
+  /** Nested models should survive a round-trip through a directly-encoded document. */
+  @Test void testInflateDocumentRoundTrip() {
+    Person person = Person.newBuilder()
+      .setKey(PersonKey.newBuilder().setId("abc123"))
+      .setName("Jane Doe")
+      .setContactInfo(ContactInfo.newBuilder()
+        .setEmailAddress("jane@example.com")
+        .setAddress(PersonAddress.newBuilder().setFirstLine("123 Main Street")))
+      .build();
+
+    ObjectModelSerializer<Person> serializer = ObjectModelSerializer.Companion.defaultInstance();
+    Document document = serializer.encodeDocument(person, NAME, Document.newBuilder());
+    Person inflated = ObjectModelDeserializer.defaultInstance(Person.getDefaultInstance()).inflate(document);
+    assertEquals(person, inflated, "inflated model should match the encoded one");
+  }
+
+  /** Every scalar type should be decoded to the width and form its field expects. */
+  @Test void testInflateDocumentScalars() {
+    TypeBuffet buffet = TypeBuffet.newBuilder()
+      .setKey(TypeBuffet.SampleKey.newBuilder().setId(42L))
+      .setIntNormal(-5)
+      .setIntDouble(1L << 40)
+      .setUintNormal(7)
+      .setSfixedDouble(-9L)
+      .setBoolField(true)
+      .setFloatField(1.5f)
+      .setDoubleField(2.25d)
+      .setStringField("hello")
+      .setBytesField(ByteString.copyFromUtf8("raw"))
+      .setEnumField(TypeBuffet.SampleEnumeration.ANOTHER_ENUM)
+      .addLabels("one")
+      .addLabels("two")
+      .setTimestamp(Timestamp.newBuilder().setSeconds(1_600_000_000L))
+      .build();
+
+    ObjectModelSerializer<TypeBuffet> serializer = ObjectModelSerializer.Companion.defaultInstance();
+    Document document = serializer.encodeDocument(buffet, NAME, Document.newBuilder());
+    TypeBuffet inflated = ObjectModelDeserializer.defaultInstance(TypeBuffet.getDefaultInstance()).inflate(document);
+    assertEquals(buffet, inflated, "every scalar type should survive a round-trip");
+  }
+
+  /** Alternate encodings (numeric enums, ISO-8601 instants, null values) should be decoded too. */
+  @Test void testInflateDocumentAlternateEncodings() {
+    Document document = Document.newBuilder()
+      .putFields("enum_field", Value.newBuilder().setIntegerValue(1).build())
+      .putFields("timestamp", Value.newBuilder().setStringValue("2020-09-13T12:26:40Z").build())
+      .putFields("string_field", Value.newBuilder().setNullValueValue(0).build())
+      .putFields("date", Value.newBuilder().setMapValue(MapValue.getDefaultInstance()).build())
+      .build();
+
+    TypeBuffet inflated = ObjectModelDeserializer.defaultInstance(TypeBuffet.getDefaultInstance()).inflate(document);
+    assertEquals(TypeBuffet.SampleEnumeration.ANOTHER_ENUM, inflated.getEnumField(), "enum should decode by number");
+    assertEquals(1_600_000_000L, inflated.getTimestamp().getSeconds(), "ISO-8601 instant should decode");
+    assertEquals("", inflated.getStringField(), "null value should leave the field unset");
+  }
+
+  /** Values of the wrong shape should be rejected. */
+  @Test void testInflateDocumentRejectsMismatchedValues() {
+    Document document = Document.newBuilder()
+      .putFields("contact_info", Value.newBuilder().setStringValue("not a map").build())
+      .build();
+    assertThrows(ModelDeserializer.DeserializationError.class,
+      () -> ObjectModelDeserializer.defaultInstance(Person.getDefaultInstance()).inflate(document),
+      "non-map value for a sub-message should fail");
+  }
+
+  /** References should be inflated through their key's parent chain, from full or root-relative paths. */
+  @Test void testInflateDocumentNestedReference() {
+    Document document = Document.newBuilder()
+      .putFields("person", Value.newBuilder().setReferenceValue("/people/abc123").build())
+      .putFields("pet", Value.newBuilder()
+        .setReferenceValue("projects/sample/databases/(default)/documents/people/abc123/pets/rex").build())
+      .build();
+
+    Appointment inflated = ObjectModelDeserializer.defaultInstance(Appointment.getDefaultInstance()).inflate(document);
+    assertEquals(PersonKey.newBuilder().setId("abc123").build(), inflated.getPerson(),
+      "leading slash should be ignored on a root-relative reference");
+    assertEquals(PetKey.newBuilder().setId("rex").setOwner(PersonKey.newBuilder().setId("abc123")).build(),
+      inflated.getPet(), "nested reference should fill the key's parent");
+  }
+
+  /** References nested deeper than their key's parent chain should be rejected. */
+  @Test void testInflateDocumentRejectsOverlyNestedReference() {
+    Document document = Document.newBuilder()
+      .putFields("person", Value.newBuilder().setReferenceValue("people/abc123/pets/rex").build())
+      .build();
+    assertThrows(ModelDeserializer.DeserializationError.class,
+      () -> ObjectModelDeserializer.defaultInstance(Appointment.getDefaultInstance()).inflate(document),
+      "reference deeper than the key's parents should fail");
+  }
+
+  /** Repeated enums held as a map should decode by name, and reject names they do not know. */
+  @Test void testInflateDocumentEnumMap() {
+    Value flag = Value.newBuilder().setBooleanValue(true).build();
+    Document known = Document.newBuilder()
+      .putFields("flags", Value.newBuilder().setMapValue(MapValue.newBuilder()
+        .putFields("another_enum", flag)).build())
+      .build();
+    Appointment inflated = ObjectModelDeserializer.defaultInstance(Appointment.getDefaultInstance()).inflate(known);
+    assertEquals(List.of(TypeBuffet.SampleEnumeration.ANOTHER_ENUM), inflated.getFlagsList(),
+      "enum map should decode by name");
+
+    Document unknown = Document.newBuilder()
+      .putFields("flags", Value.newBuilder().setMapValue(MapValue.newBuilder()
+        .putFields("another_enum", flag)
+        .putFields("no_such_enum", flag)).build())
+      .build();
+    assertThrows(ModelDeserializer.DeserializationError.class,
+      () -> ObjectModelDeserializer.defaultInstance(Appointment.getDefaultInstance()).inflate(unknown),
+      "unknown enum name should fail rather than add a null value");
+  }
+}
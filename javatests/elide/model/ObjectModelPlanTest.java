@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import elide.model.PersonRecord.ContactInfo;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonKey;
+import org.junit.jupiter.api.Test;
+import tools.elide.core.CollectionMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for {@link ObjectModelPlan}, which caches per-model serialization details. */
+public final class ObjectModelPlanTest {
+  /** Plans should be compiled once per model type, and then shared. */
+  @Test void testPlansAreCached() {
+    ObjectModelPlan plan = ObjectModelPlan.forDescriptor(Person.getDescriptor());
+    assertSame(plan, ObjectModelPlan.forDescriptor(Person.getDescriptor()), "plans should be cached by descriptor");
+    assertSame(Person.getDescriptor(), plan.getDescriptor(), "plan should keep the descriptor it was compiled for");
+    assertEquals(Person.getDescriptor().getFields().size(), plan.getFields().size(),
+      "plan should cover every field on the model");
+  }
+
+  /** Plans should resolve field kinds, annotations, and collection modes up front. */
+  @Test void testPlanResolvesFields() {
+    ObjectModelPlan plan = ObjectModelPlan.forDescriptor(Person.getDescriptor());
+    ObjectModelPlan.Field key = plan.getFields().get(0);
+    ObjectModelPlan.Field name = plan.getFields().get(1);
+    ObjectModelPlan.Field contact = plan.getFields().get(2);
+
+    assertEquals("key", key.getName(), "fields should be planned in declaration order");
+    assertEquals(ObjectModelPlan.Kind.MESSAGE, key.getKind(), "key should be planned as a sub-message");
+    assertEquals(tools.elide.core.FieldType.KEY, key.getRole(), "key annotation should be resolved");
+    assertEquals(CollectionMode.COLLECTION, key.getCollectionMode(),
+      "sub-message collection mode should fall back to the sub-message's annotation");
+    assertSame(ObjectModelPlan.forDescriptor(PersonKey.getDescriptor()), key.getMessagePlan(),
+      "sub-message plans should link to the cached plan for the sub-message type");
+
+    assertEquals(ObjectModelPlan.Kind.STRING, name.getKind(), "string field should be planned as a string");
+    assertNull(name.getMessagePlan(), "scalar fields should have no sub-message plan");
+    assertFalse(name.getEphemeral() || name.getRequired() || name.getConcrete(),
+      "unannotated field should carry no flags");
+    assertEquals(CollectionMode.NESTED, contact.getCollectionMode(), "nested sub-message should stay nested");
+    assertSame(ObjectModelPlan.forDescriptor(ContactInfo.getDescriptor()), contact.getMessagePlan(),
+      "nested sub-message should link to its own plan");
+  }
+
+  /** Plans should locate the model's ID, whether on the model or on its key. */
+  @Test void testPlanResolvesIdentity() {
+    ObjectModelPlan person = ObjectModelPlan.forDescriptor(Person.getDescriptor());
+    assertEquals(PersonKey.getDescriptor().findFieldByName("id"), person.getIdField(),
+      "ID should be resolved through the model's key");
+    assertEquals(Person.getDescriptor().findFieldByName("key"), person.getIdKeyField(),
+      "key field holding the ID should be resolved");
+    assertNull(person.getParentField(), "model without a parent should have no parent field");
+
+    ObjectModelPlan key = ObjectModelPlan.forDescriptor(PersonKey.getDescriptor());
+    assertEquals(PersonKey.getDescriptor().findFieldByName("id"), key.getIdField(),
+      "ID should be resolved directly on the key");
+    assertNull(key.getIdKeyField(), "ID on the model itself should have no key field");
+    assertNotNull(key.getPersistence(), "model-level persistence annotation should be resolved");
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.Value;
+import com.google.firestore.v1.Write;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import elide.model.PersonRecord.ContactInfo;
+import elide.model.PersonRecord.Person;
+import elide.model.PersonRecord.PersonAddress;
+import elide.model.PersonRecord.PersonKey;
+import elide.model.PersonRecord.TypeBuffet;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for {@link ObjectModelSerializer}, and particularly its delta mode and direct document encoding. */
+public final class ObjectModelSerializerTest {
+  private static final String NAME = "projects/sample/databases/(default)/documents/people/abc123";
+
+  private static Person person() {
+    return Person.newBuilder()
+      .setKey(PersonKey.newBuilder().setId("abc123"))
+      .setName("Jane Doe")
+      .setContactInfo(ContactInfo.newBuilder()
+        .setEmailAddress("jane@example.com")
+        .setAddress(PersonAddress.newBuilder()
+          .setFirstLine("123 Main Street")
+          .setSecondLine("Unit 4")))
+      .build();
+  }
+
+  private static ObjectModelSerializer<Person> serializer() {
+    return ObjectModelSerializer.Companion.defaultInstance();
+  }
+
+  /** Encode a message with map entries in a stable order, so that encodings may be compared byte-for-byte. */
+  private static byte[] deterministic(Message message) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CodedOutputStream coded = CodedOutputStream.newInstance(out);
+    coded.useDeterministicSerialization();
+    message.writeTo(coded);
+    coded.flush();
+    return out.toByteArray();
+  }
+
+  /** Identical records should produce an empty delta. */
+  @Test void testDeltaOfIdenticalRecordsIsEmpty() {
+    ObjectModelSerializer.Delta delta = serializer().serializeDelta(person(), person(), true);
+    assertTrue(delta.isEmpty(), "identical records should have no changes");
+    assertTrue(delta.getModel().isEmpty(), "identical records should serialize no fields");
+  }
+
+  /** A changed top-level scalar should be the only field serialized and masked. */
+  @Test void testDeltaOfScalarField() {
+    Person updated = person().toBuilder().setName("Jane Smith").build();
+    ObjectModelSerializer.Delta delta = serializer().serializeDelta(updated, person(), true);
+    assertEquals(List.of("name"), delta.getMask().getPathsList(), "only the changed field should be masked");
+    assertEquals(1, delta.getModel().size(), "only the changed field should be serialized");
+    assertEquals("Jane Smith", delta.getModel().get("name").getStringValue(), "changed value should be serialized");
+  }
+
+  /** A change deep in a nested record should produce a nested map holding only the changed leaf. */
+  @Test void testDeltaOfNestedField() {
+    Person base = person();
+    Person updated = base.toBuilder()
+      .setContactInfo(base.getContactInfo().toBuilder()
+        .setAddress(base.getContactInfo().getAddress().toBuilder().setFirstLine("456 Elm Street")))
+      .build();
+
+    ObjectModelSerializer.Delta delta = serializer().serializeDelta(updated, base, true);
+    assertEquals(List.of("contact_info.address.first_line"), delta.getMask().getPathsList(),
+      "nested change should be masked by its full path");
+    Value contact = delta.getModel().get("contact_info");
+    assertNotNull(contact, "nested change should be serialized under its parent");
+    Value address = contact.getMapValue().getFieldsOrThrow("address");
+    assertEquals(1, contact.getMapValue().getFieldsCount(), "unchanged nested fields should be omitted");
+    assertEquals(1, address.getMapValue().getFieldsCount(), "unchanged leaf fields should be omitted");
+    assertEquals("456 Elm Street", address.getMapValue().getFieldsOrThrow("first_line").getStringValue(),
+      "changed leaf should be serialized");
+  }
+
+  /** A cleared sub-message should be masked without a value, so that it is deleted. */
+  @Test void testDeltaOfClearedSubmessage() {
+    Person updated = person().toBuilder().clearContactInfo().build();
+    ObjectModelSerializer.Delta delta = serializer().serializeDelta(updated, person(), true);
+    assertEquals(List.of("contact_info"), delta.getMask().getPathsList(), "cleared field should be masked");
+    assertFalse(delta.getModel().containsKey("contact_info"), "cleared field should carry no value");
+  }
+
+  /** A cleared timestamp should be masked without a value, just like any other cleared sub-message. */
+  @Test void testDeltaOfClearedTimestamp() {
+    TypeBuffet base = TypeBuffet.newBuilder()
+      .setKey(TypeBuffet.SampleKey.newBuilder().setId(42))
+      .setTimestamp(Timestamp.newBuilder().setSeconds(1_600_000_000L))
+      .build();
+    TypeBuffet updated = base.toBuilder().clearTimestamp().build();
+    ObjectModelSerializer.Delta delta = ObjectModelSerializer.Companion.<TypeBuffet>defaultInstance()
+      .serializeDelta(updated, base, true);
+    assertEquals(List.of("timestamp"), delta.getMask().getPathsList(), "cleared timestamp should be masked");
+    assertFalse(delta.getModel().containsKey("timestamp"), "cleared timestamp should carry no value");
+  }
+
+  /** Deltas may only be computed between records of the same type. */
+  @Test void testDeltaRejectsForeignBase() {
+    assertThrows(ModelSerializer.SerializationError.class,
+      () -> serializer().serializeDelta(person(), PersonKey.getDefaultInstance(), true),
+      "delta against a foreign model type should fail");
+  }
+
+  /** Documents encoded directly should match documents built from the serialized model, byte-for-byte. */
+  @Test void testEncodeDocumentMatchesSerializedModel() throws IOException {
+    Person person = person();
+    Document expected = Document.newBuilder()
+      .setName(NAME)
+      .putAllFields(serializer().serialize(person, null, false, false, null, null))
+      .build();
+
+    Document.Builder builder = Document.newBuilder();
+    Document encoded = serializer().encodeDocument(person, NAME, builder);
+    assertEquals(expected, encoded, "direct encoding should match the serialized model");
+    assertArrayEquals(deterministic(expected), deterministic(encoded), "direct encoding should match byte-for-byte");
+    assertEquals(encoded, serializer().encodeDocument(person, NAME, builder),
+      "re-used builders should be cleared before encoding");
+  }
+
+  /** Writes without a base should replace the whole document, and writes with one should carry a delta mask. */
+  @Test void testEncodeWrite() {
+    Person base = person();
+    Write full = serializer().encodeWrite(base, NAME, null);
+    assertEquals(serializer().encodeDocument(base, NAME, Document.newBuilder()), full.getUpdate(),
+      "write without a base should carry the whole document");
+    assertFalse(full.hasUpdateMask(), "write without a base should not be masked");
+
+    Person updated = base.toBuilder().setName("Jane Smith").build();
+    Write partial = serializer().encodeWrite(updated, NAME, base);
+    ObjectModelSerializer.Delta delta = serializer().serializeDelta(updated, base, true);
+    assertEquals(delta.getMask().getPathsList(), partial.getUpdateMask().getFieldPathsList(),
+      "write with a base should be masked by the delta");
+    assertEquals(delta.getModel().getData(), partial.getUpdate().getFieldsMap(),
+      "write with a base should carry the delta");
+    assertEquals(NAME, partial.getUpdate().getName(), "write should name the document");
+  }
+}
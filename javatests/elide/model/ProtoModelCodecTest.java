@@ -14,8 +14,10 @@ package elide.model;
 
 import elide.model.PersonRecord.Person;
 import org.junit.jupiter.api.Test;
+import tools.elide.core.data.CompressionMode;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -97,4 +99,75 @@ public final class ProtoModelCodecTest {
     assertEquals(person.toString(), reloaded2.toString(), "re-loaded record 2 should be identical");
     assertEquals(person.toString(), reloaded3.toString(), "re-loaded record 3 should be identical");
   }
+
+  /** @return Person record with a large, highly-compressible name. */
+  private static Person largePerson() {
+    return Person.newBuilder().setName("Jane Doe ".repeat(400)).build();
+  }
+
+  /** Test that the codec compresses large records in compressed modes, and reads them back transparently. */
+  @Test void testCodecCompressed() throws IOException {
+    for (EncodingMode mode : new EncodingMode[]{EncodingMode.BINARY_GZIP, EncodingMode.JSON_GZIP}) {
+      ModelCodec<Person, EncodedModel, EncodedModel> personCodec = ProtoModelCodec.forModel(
+        Person.getDefaultInstance(), mode);
+      ModelCodec<Person, EncodedModel, EncodedModel> plainCodec = ProtoModelCodec.forModel(
+        Person.getDefaultInstance(), mode.format());
+      Person person = largePerson();
+
+      EncodedModel encodedPerson = personCodec.serialize(person);
+      EncodedModel plainPerson = plainCodec.serialize(person);
+      assertEquals(mode, encodedPerson.getDataMode(), "large record should be tagged with the compressed mode");
+      assertEquals(CompressionMode.GZIP, encodedPerson.getDataMode().compression(), "mode should report gzip");
+      assertTrue(encodedPerson.getRawBytes().size() < plainPerson.getRawBytes().size() / 4,
+        "compressed record should be much smaller than the uncompressed record");
+
+      // load model
+      Person reloaded = encodedPerson.inflate(Person.getDefaultInstance());
+      Person reloaded2 = personCodec.deserialize(encodedPerson);
+      Person reloaded3 = plainCodec.deserialize(encodedPerson);
+      assertEquals(person.toString(), reloaded.toString(), "re-loaded record should be identical");
+      assertEquals(person.toString(), reloaded2.toString(), "re-loaded record 2 should be identical");
+      assertEquals(person.toString(), reloaded3.toString(), "plain codec should detect and undo compression");
+      assertEquals(person.toString(), personCodec.deserialize(plainPerson).toString(),
+        "compressing codec should read uncompressed records");
+    }
+  }
+
+  /** Test that the codec skips compression for records below the compression threshold. */
+  @Test void testCodecCompressionThreshold() throws IOException {
+    ModelCodec<Person, EncodedModel, EncodedModel> personCodec = ProtoModelCodec.forModel(
+      Person.getDefaultInstance(), EncodingMode.BINARY_GZIP);
+    Person person = Person.newBuilder().setName("Jane Doe").build();
+
+    EncodedModel encodedPerson = personCodec.serialize(person);
+    assertEquals(EncodingMode.BINARY, encodedPerson.getDataMode(), "small record should not be compressed");
+    assertEquals(person.toString(), personCodec.deserialize(encodedPerson).toString(),
+      "re-loaded record should be identical");
+
+    ModelCodec<Person, EncodedModel, EncodedModel> eagerCodec = ProtoModelCodec.forModel(
+      Person.getDefaultInstance(), EncodingMode.BINARY_GZIP, Optional.empty(), 0);
+    EncodedModel eagerPerson = eagerCodec.serialize(person);
+    assertEquals(EncodingMode.BINARY_GZIP, eagerPerson.getDataMode(), "zero threshold should compress everything");
+    assertEquals(person.toString(), eagerCodec.deserialize(eagerPerson).toString(),
+      "re-loaded record should be identical");
+
+    assertThrows(IllegalArgumentException.class, () -> ProtoModelCodec.forModel(
+      Person.getDefaultInstance(), EncodingMode.BINARY_GZIP, Optional.empty(), -1),
+      "negative threshold should be rejected");
+  }
+
+  /** Test that Brotli modes compress with Brotli where available, and fall back to gzip otherwise. */
+  @Test void testCodecBrotli() throws IOException {
+    ModelCodec<Person, EncodedModel, EncodedModel> personCodec = ProtoModelCodec.forModel(
+      Person.getDefaultInstance(), EncodingMode.BINARY_BROTLI);
+    Person person = largePerson();
+
+    EncodedModel encodedPerson = personCodec.serialize(person);
+    assertEquals(
+      ModelCompression.isAvailable(CompressionMode.BROTLI) ? EncodingMode.BINARY_BROTLI : EncodingMode.BINARY_GZIP,
+      encodedPerson.getDataMode(),
+      "brotli mode should fall back to gzip where brotli is unavailable");
+    assertEquals(person.toString(), personCodec.deserialize(encodedPerson).toString(),
+      "re-loaded record should be identical");
+  }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.firestore.v1.Value;
+import com.google.protobuf.Descriptors;
+import elide.model.PersonRecord.TypeBuffet;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Benchmark comparing the two forms of {@link SerializedModel}: the default form, backed by a {@link TreeMap}, and the
+ * compact form, backed by a per-type field table and an array of values. Each record fills a model with one property
+ * per field of a wide model type, then iterates it in sorted order. Both forms are warmed up, then measured in
+ * records/sec, along with the bytes allocated per record, as counted by the JVM for the benchmark thread.
+ *
+ * <p>Run via {@code bazel run //javatests/elide/model:SerializedModelBenchmark}, optionally passing the count of
+ * records.</p>
+ */
+public final class SerializedModelBenchmark {
+  /** Count of full passes to run before measuring. */
+  private static final int WARMUP_PASSES = 5;
+
+  private SerializedModelBenchmark() { /* Disallow construction. */ }
+
+  public static void main(String[] args) {
+    final int records = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    final Descriptors.Descriptor descriptor = TypeBuffet.getDescriptor();
+
+    // fill properties in field-number order, as the serializer does, rather than in sorted order.
+    final String[] keys = descriptor.getFields().stream()
+      .map(Descriptors.FieldDescriptor::getName)
+      .toArray(String[]::new);
+    final Value[] values = new Value[keys.length];
+    for (int i = 0; i < keys.length; i++) values[i] = Value.newBuilder().setIntegerValue(i).build();
+
+    final Supplier<SerializedModel> tree = SerializedModel::factory;
+    final Supplier<SerializedModel> compact = () -> SerializedModel.compact(descriptor);
+
+    long sink = 0;
+    for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+      sink += run(tree, keys, values, records / 10) + run(compact, keys, values, records / 10);
+    }
+
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    sink += run(tree, keys, values, records);
+    final long treeNanos = System.nanoTime() - start;
+    final long treeBytes = allocatedBytes() - allocated;
+
+    allocated = allocatedBytes();
+    start = System.nanoTime();
+    sink += run(compact, keys, values, records);
+    final long compactNanos = System.nanoTime() - start;
+    final long compactBytes = allocatedBytes() - allocated;
+
+    System.out.println(String.format(
+      "tree: %,10.0f records/sec, %,6d B/record | compact: %,10.0f records/sec, %,6d B/record | (checksum %d)",
+      records / (treeNanos / 1e9),
+      treeBytes / records,
+      records / (compactNanos / 1e9),
+      compactBytes / records,
+      sink));
+  }
+
+  private static long run(Supplier<SerializedModel> factory, String[] keys, Value[] values, int records) {
+    long sink = 0;
+    for (int i = 0; i < records; i++) {
+      final SerializedModel model = factory.get();
+      for (int k = 0; k < keys.length; k++) model.put(keys[k], values[k]);
+      final SortedMap<String, Value> data = model.getData();
+      for (Map.Entry<String, Value> entry : data.entrySet()) sink += entry.getKey().length();
+    }
+    return sink;
+  }
+
+  /** @return Bytes allocated so far by the current thread, or {@code 0} if the JVM does not count allocations. */
+  private static long allocatedBytes() {
+    final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.firestore.v1.Value;
+import elide.model.PersonRecord.TypeBuffet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the compact, array-backed form of {@link SerializedModel}, against the equivalent {@link TreeMap}. */
+public final class SerializedModelTest {
+  private static Value string(String value) {
+    return Value.newBuilder().setStringValue(value).build();
+  }
+
+  /** Fill a compact model and a tree map with the same properties, in the same (unsorted) order. */
+  private static void fill(Map<String, Value> compact, Map<String, Value> tree) {
+    final String[] keys = {"string_field", "key", "double_field", "key.id", "bool_field", "__concrete__", "int_normal"};
+    for (String key : keys) {
+      compact.put(key, string(key));
+      tree.put(key, string(key));
+    }
+  }
+
+  @Test void testCompactModelMatchesTreeMap() {
+    final SerializedModel compact = SerializedModel.compact(TypeBuffet.getDescriptor());
+    final SortedMap<String, Value> tree = new TreeMap<>();
+    assertTrue(compact.isEmpty(), "new compact model should be empty");
+    fill(compact, tree);
+
+    assertEquals(tree.size(), compact.size(), "compact model should count declared and overflow properties");
+    assertEquals(new ArrayList<>(tree.keySet()), new ArrayList<>(compact.keySet()),
+      "compact model should iterate declared and overflow properties together, in sorted order");
+    assertEquals(tree, compact.getData(), "compact model should be equal to the equivalent tree map");
+    assertEquals(compact.getData(), tree, "tree map should be equal to the equivalent compact model");
+    assertEquals(tree.hashCode(), compact.getData().hashCode(), "compact model should hash like a tree map");
+    assertEquals(tree.firstKey(), compact.getData().firstKey(), "first key should match");
+    assertEquals(tree.lastKey(), compact.getData().lastKey(), "last key should match");
+    assertEquals(tree.headMap("int"), compact.getData().headMap("int"), "head map should match");
+    assertEquals(tree.tailMap("int"), compact.getData().tailMap("int"), "tail map should match");
+    assertEquals(tree.subMap("d", "l"), compact.getData().subMap("d", "l"), "sub map should match");
+    assertNull(compact.getData().comparator(), "compact model should use natural ordering");
+
+    assertTrue(compact.containsKey("string_field"), "declared property should be present");
+    assertTrue(compact.containsKey("key.id"), "overflow property should be present");
+    assertFalse(compact.containsKey("float_field"), "unset declared property should be absent");
+    assertFalse(compact.containsKey("unknown"), "unknown property should be absent");
+    assertNull(compact.get("float_field"), "unset declared property should have no value");
+  }
+
+  @Test void testCompactModelMutation() {
+    final SerializedModel compact = SerializedModel.compact(TypeBuffet.getDescriptor());
+    final SortedMap<String, Value> tree = new TreeMap<>();
+    fill(compact, tree);
+
+    assertEquals(tree.put("key", string("updated")), compact.put("key", string("updated")),
+      "replacing a declared property should return the previous value");
+    assertEquals(tree.remove("bool_field"), compact.remove("bool_field"),
+      "removing a declared property should return the previous value");
+    assertEquals(tree.remove("key.id"), compact.remove("key.id"),
+      "removing an overflow property should return the previous value");
+    assertNull(compact.remove("bool_field"), "removing an absent property should return null");
+    assertEquals(tree, compact.getData(), "compact model should track mutations like a tree map");
+
+    // remove through the iterator, and write through an entry
+    final Iterator<Map.Entry<String, Value>> it = compact.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<String, Value> entry = it.next();
+      if (entry.getKey().equals("double_field") || entry.getKey().equals("__concrete__")) it.remove();
+      else if (entry.getKey().equals("int_normal")) entry.setValue(string("written"));
+    }
+    tree.remove("double_field");
+    tree.remove("__concrete__");
+    tree.put("int_normal", string("written"));
+    assertEquals(tree, compact.getData(), "compact model should support removal and writes via its entries");
+
+    assertThrows(NullPointerException.class, () -> compact.put("string_field", null),
+      "compact model should reject null values");
+    compact.clear();
+    assertTrue(compact.isEmpty(), "cleared compact model should be empty");
+    assertFalse(compact.entrySet().iterator().hasNext(), "cleared compact model should have no entries");
+    assertThrows(NoSuchElementException.class, () -> compact.getData().lastKey(),
+      "empty compact model should have no last key");
+  }
+
+  @Test void testCompactModelRangeViewsAreLive() {
+    final SerializedModel compact = SerializedModel.compact(TypeBuffet.getDescriptor());
+    final SortedMap<String, Value> tree = new TreeMap<>();
+    fill(compact, tree);
+
+    final SortedMap<String, Value> compactView = compact.getData().subMap("d", "l");
+    final SortedMap<String, Value> treeView = tree.subMap("d", "l");
+    compact.put("enum_field", string("added"));
+    tree.put("enum_field", string("added"));
+    assertEquals(treeView, compactView, "sub map should see writes to the underlying model");
+
+    compactView.put("float_field", string("through"));
+    treeView.put("float_field", string("through"));
+    compactView.remove("double_field");
+    treeView.remove("double_field");
+    assertEquals(tree, compact.getData(), "writes to a sub map should reach the underlying model");
+    assertEquals(treeView.firstKey(), compactView.firstKey(), "first key of a sub map should match");
+    assertEquals(treeView.lastKey(), compactView.lastKey(), "last key of a sub map should match");
+    assertEquals(treeView.headMap("int"), compactView.headMap("int"), "narrowed sub map should match");
+    assertThrows(IllegalArgumentException.class, () -> compactView.put("string_field", string("out")),
+      "writes outside a sub map's range should be rejected");
+    assertThrows(IllegalArgumentException.class, () -> compactView.tailMap("a"),
+      "narrowing outside a sub map's range should be rejected");
+
+    final Iterator<Map.Entry<String, Value>> it = compact.getData().tailMap("key").entrySet().iterator();
+    while (it.hasNext()) if (it.next().getKey().equals("key.id")) it.remove();
+    tree.remove("key.id");
+    assertEquals(tree, compact.getData(), "removal through a tail map iterator should reach the underlying model");
+    assertNull(compact.getData().headMap("int").get("string_field"), "keys outside a head map should be absent");
+  }
+
+  @Test void testCompactModelSharesFieldTable() {
+    final SerializedModel first = SerializedModel.compact(TypeBuffet.getDescriptor());
+    final SerializedModel second = SerializedModel.compact(TypeBuffet.getDescriptor());
+    first.put("int_normal", string("first"));
+    second.put("int_normal", string("second"));
+    assertEquals(string("first"), first.get("int_normal"), "compact models should not share values");
+    assertEquals(string("second"), second.get("int_normal"), "compact models should not share values");
+
+    final List<String> keys = new ArrayList<>(first.keySet());
+    assertEquals(List.of("int_normal"), keys, "compact model should only hold properties which were set");
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.model;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import elide.runtime.jvm.ReactiveFuture;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for combining bursts of writes to the same record. */
+@SuppressWarnings("UnstableApiUsage")
+public final class WriteCombinerTest {
+  private static ListeningScheduledExecutorService executorService;
+
+  @BeforeAll
+  static void initExecutor() {
+    executorService = MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(2));
+  }
+
+  @AfterAll
+  static void shutdownExecutor() throws InterruptedException {
+    executorService.shutdownNow();
+    executorService.awaitTermination(5, TimeUnit.SECONDS);
+    executorService = null;
+  }
+
+  private static @Nonnull WriteOptions window(long millis, @Nonnull WriteOptions.WriteDisposition mode) {
+    return new WriteOptions() {
+      @Override
+      public @Nonnull Optional<Long> writeCombineWindow() {
+        return Optional.of(millis);
+      }
+
+      @Override
+      public @Nonnull Optional<WriteDisposition> writeMode() {
+        return Optional.of(mode);
+      }
+    };
+  }
+
+  @Test void testCombinesBurstIntoLatestValue() throws Exception {
+    WriteCombiner<String, String> combiner = WriteCombiner.create(executorService);
+    List<String> written = new ArrayList<>();
+    WriteCombiner.Writer<String, String> writer = (key, model, options) -> {
+      synchronized (written) {
+        written.add(model);
+      }
+      return Futures.immediateFuture(model);
+    };
+    WriteOptions options = window(50, WriteOptions.WriteDisposition.BLIND);
+    List<ReactiveFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < 5; i++) results.add(combiner.submit("id", "key", "v" + i, options, writer));
+
+    for (ReactiveFuture<String> result : results) {
+      assertEquals("v4", result.get(5, TimeUnit.SECONDS), "every combined write should see the final value");
+    }
+    assertEquals(List.of("v4"), written, "only the latest value should reach storage");
+    assertEquals(5, combiner.submittedCount(), "all writes should be counted");
+    assertEquals(1, combiner.writeCount(), "one storage write should be issued");
+    assertEquals(4, combiner.combinedCount(), "superseded writes should be counted");
+    assertEquals(0, combiner.openCount(), "window should be closed after the write");
+  }
+
+  @Test void testDifferentDispositionsAreWrittenInOrder() throws Exception {
+    WriteCombiner<String, String> combiner = WriteCombiner.create(executorService);
+    List<String> written = new ArrayList<>();
+    SettableFuture<String> first = SettableFuture.create();
+    WriteCombiner.Writer<String, String> writer = (key, model, options) -> {
+      synchronized (written) {
+        written.add(model);
+      }
+      return "blind".equals(model) ? first : Futures.immediateFuture(model);
+    };
+    ReactiveFuture<String> blind = combiner.submit(
+      "id", "key", "blind", window(60_000, WriteOptions.WriteDisposition.BLIND), writer);
+    ReactiveFuture<String> update = combiner.submit(
+      "id", "key", "update", window(0, WriteOptions.WriteDisposition.MUST_EXIST), writer);
+
+    Thread.sleep(50);
+    synchronized (written) {
+      assertEquals(List.of("blind"), written, "second write should wait for the first to complete");
+    }
+    first.set("blind");
+    assertEquals("blind", blind.get(5, TimeUnit.SECONDS), "first write should complete with its own value");
+    assertEquals("update", update.get(5, TimeUnit.SECONDS), "second write should complete with its own value");
+    assertEquals(List.of("blind", "update"), written, "writes should reach storage in order");
+    assertEquals(0, combiner.combinedCount(), "writes with different dispositions should not be combined");
+  }
+
+  @Test void testFailurePropagatesToCombinedWrites() {
+    WriteCombiner<String, String> combiner = WriteCombiner.create(executorService);
+    WriteCombiner.Writer<String, String> writer = (key, model, options) ->
+      Futures.immediateFailedFuture(new IllegalStateException("storage unavailable"));
+    WriteOptions options = window(20, WriteOptions.WriteDisposition.BLIND);
+    ReactiveFuture<String> a = combiner.submit("id", "key", "a", options, writer);
+    ReactiveFuture<String> b = combiner.submit("id", "key", "b", options, writer);
+    assertThrows(Exception.class, () -> a.get(5, TimeUnit.SECONDS), "superseded write should see the failure");
+    assertThrows(Exception.class, () -> b.get(5, TimeUnit.SECONDS), "latest write should see the failure");
+  }
+
+  @Test void testDeleteWaitsForCombinedWrite() throws Exception {
+    WriteCombiner<String, String> combiner = WriteCombiner.create(executorService);
+    List<String> applied = new ArrayList<>();
+    WriteCombiner.Writer<String, String> writer = (key, model, options) -> {
+      synchronized (applied) {
+        applied.add(model);
+      }
+      return Futures.immediateFuture(model);
+    };
+    ReactiveFuture<String> put = combiner.submit(
+      "id", "key", "put", window(60_000, WriteOptions.WriteDisposition.BLIND), writer);
+    ReactiveFuture<String> delete = combiner.exclusive("id", () -> {
+      synchronized (applied) {
+        applied.add("delete");
+      }
+      return Futures.immediateFuture("key");
+    });
+
+    assertEquals("key", delete.get(5, TimeUnit.SECONDS), "delete should complete");
+    assertTrue(put.isDone(), "combined write should complete before the delete is issued");
+    assertEquals(List.of("put", "delete"), applied, "combined write should reach storage before the delete");
+    assertEquals(0, combiner.openCount(), "delete should close the open window");
+  }
+
+  @Test void testWriteAfterDeleteIsNotCombinedAheadOfIt() throws Exception {
+    // a single busy thread holds back the early close of the open window, until after the later write is submitted.
+    ListeningScheduledExecutorService single = MoreExecutors.listeningDecorator(
+      Executors.newSingleThreadScheduledExecutor());
+    CountDownLatch busy = new CountDownLatch(1);
+    single.execute(() -> {
+      try {
+        busy.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    WriteCombiner<String, String> combiner = WriteCombiner.create(single);
+    List<String> applied = new ArrayList<>();
+    WriteCombiner.Writer<String, String> writer = (key, model, options) -> {
+      synchronized (applied) {
+        applied.add(model);
+      }
+      return Futures.immediateFuture(model);
+    };
+    ReactiveFuture<String> put = combiner.submit(
+      "id", "key", "put", window(60_000, WriteOptions.WriteDisposition.BLIND), writer);
+    ReactiveFuture<String> delete = combiner.exclusive("id", () -> {
+      synchronized (applied) {
+        applied.add("delete");
+      }
+      return Futures.immediateFuture("key");
+    });
+    assertEquals(0, combiner.openCount(), "delete should detach the open window right away");
+    ReactiveFuture<String> later = combiner.submit(
+      "id", "key", "later", window(0, WriteOptions.WriteDisposition.BLIND), writer);
+    busy.countDown();
+
+    assertEquals("put", put.get(5, TimeUnit.SECONDS), "earlier write should keep its own value");
+    assertEquals("key", delete.get(5, TimeUnit.SECONDS), "delete should complete");
+    assertEquals("later", later.get(5, TimeUnit.SECONDS), "later write should complete");
+    assertEquals(0, combiner.combinedCount(), "later write should not join the window closed by the delete");
+    assertEquals(List.of("put", "delete", "later"), applied, "later write should reach storage after the delete");
+    single.shutdownNow();
+  }
+
+  @Test void testPreconditionWriteWaitsForCombinedWrite() throws Exception {
+    WriteCombiner<String, String> combiner = WriteCombiner.create(executorService);
+    List<String> applied = new ArrayList<>();
+    SettableFuture<String> combined = SettableFuture.create();
+    WriteCombiner.Writer<String, String> writer = (key, model, options) -> {
+      synchronized (applied) {
+        applied.add(model);
+      }
+      return "combined".equals(model) ? combined : Futures.immediateFuture(model);
+    };
+    ReactiveFuture<String> put = combiner.submit(
+      "id", "key", "combined", window(60_000, WriteOptions.WriteDisposition.BLIND), writer);
+    ReactiveFuture<String> conditional = combiner.exclusive("id", () -> {
+      synchronized (applied) {
+        applied.add("conditional");
+      }
+      return Futures.immediateFuture("conditional");
+    });
+
+    Thread.sleep(50);
+    synchronized (applied) {
+      assertEquals(List.of("combined"), applied, "conditional write should wait for the combined write in flight");
+    }
+    combined.set("combined");
+    assertEquals("combined", put.get(5, TimeUnit.SECONDS), "combined write should complete with its own value");
+    assertEquals("conditional", conditional.get(5, TimeUnit.SECONDS), "conditional write should complete after it");
+    assertEquals(List.of("combined", "conditional"), applied, "writes should reach storage in the order issued");
+
+    ReactiveFuture<String> later = combiner.submit(
+      "id", "key", "later", window(0, WriteOptions.WriteDisposition.BLIND), writer);
+    assertEquals("later", later.get(5, TimeUnit.SECONDS), "later combined write should still be written");
+    assertEquals(List.of("combined", "conditional", "later"), applied, "later window should follow the exclusive write");
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the lock-free bit array backing Bloom filters. */
+public final class BitArrayTest {
+  @Test void testCreateRoundsUpToWords() {
+    BitArray bits = BitArray.create(65);
+    assertEquals(2, bits.wordCount(), "bit array should round up to whole words");
+    assertEquals(128L, bits.bitSize(), "bit size should reflect whole words");
+    assertEquals(0L, bits.bitCount(), "new bit array should be empty");
+  }
+
+  @Test void testSetAndGet() {
+    BitArray bits = BitArray.create(128);
+    assertFalse(bits.get(70), "bit should start clear");
+    assertTrue(bits.set(70), "setting a clear bit should report a change");
+    assertFalse(bits.set(70), "setting a set bit should not report a change");
+    assertTrue(bits.get(70), "bit should be set after setting it");
+    assertFalse(bits.get(71), "neighbouring bit should remain clear");
+    assertEquals(1L, bits.bitCount(), "bit count should track set bits");
+  }
+
+  @Test void testWordsRoundTrip() {
+    BitArray bits = BitArray.create(256);
+    for (long i = 0; i < 256; i += 7) bits.set(i);
+    BitArray copy = BitArray.wrap(bits.toWords());
+    assertEquals(bits.bitCount(), copy.bitCount(), "wrapped bit array should count the same bits");
+    for (long i = 0; i < 256; i++) assertEquals(bits.get(i), copy.get(i), "wrapped bit array should match");
+  }
+
+  @Test void testPutAll() {
+    BitArray left = BitArray.create(64);
+    BitArray right = BitArray.create(64);
+    left.set(1);
+    right.set(2);
+    right.set(1);
+    left.putAll(right);
+    assertTrue(left.get(1) && left.get(2), "merged bit array should hold bits from both sides");
+    assertEquals(2L, left.bitCount(), "merged bit array should count each bit once");
+    assertThrows(IllegalArgumentException.class, () -> left.putAll(BitArray.create(128)));
+  }
+
+  @Test void testConcurrentSetsCountEachBitOnce() throws InterruptedException {
+    BitArray bits = BitArray.create(4096);
+    AtomicInteger changes = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(() -> {
+        for (long i = 0; i < 4096; i++) {
+          if (bits.set(i)) changes.incrementAndGet();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertEquals(4096, changes.get(), "each bit should be reported as changed exactly once");
+    assertEquals(4096L, bits.bitCount(), "all bits should be set");
+  }
+}
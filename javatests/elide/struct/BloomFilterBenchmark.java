@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput benchmark for the Bloom filter variants in {@code elide.struct}. Each variant is warmed up, then measured
+ * for single-threaded adds and queries, and for concurrent mixed add/query load across all available cores.
+ *
+ * <p>Run via {@code bazel run //javatests/elide/struct:BloomFilterBenchmark}, optionally passing the count of items.</p>
+ */
+public final class BloomFilterBenchmark {
+  /** Count of full passes to run before measuring. */
+  private static final int WARMUP_PASSES = 3;
+
+  /** Describes a way to create a fresh filter, sized for a count of items. */
+  private interface FilterFactory {
+    MembershipFilter create(int items);
+  }
+
+  private BloomFilterBenchmark() { /* Disallow construction. */ }
+
+  public static void main(String[] args) throws InterruptedException {
+    final int items = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    final byte[][] present = keys("present-", items);
+    final byte[][] absent = keys("absent-", items);
+    run("standard", (n) -> StandardBloomFilter.create(n, 0.01), present, absent);
+    run("counting", (n) -> CountingBloomFilter.create(n, 0.01), present, absent);
+    run("layered", (n) -> LayeredBloomFilter.create(Math.max(1, n / 8), 0.01), present, absent);
+  }
+
+  private static byte[][] keys(String prefix, int count) {
+    final byte[][] keys = new byte[count][];
+    for (int i = 0; i < count; i++) keys[i] = (prefix + i).getBytes(StandardCharsets.UTF_8);
+    return keys;
+  }
+
+  private static void run(String name, FilterFactory factory, byte[][] present, byte[][] absent)
+      throws InterruptedException {
+    for (int i = 0; i < WARMUP_PASSES; i++) {
+      MembershipFilter warm = factory.create(present.length);
+      for (byte[] key : present) warm.put(key);
+      for (byte[] key : absent) warm.mightContain(key);
+    }
+
+    final MembershipFilter filter = factory.create(present.length);
+    long start = System.nanoTime();
+    for (byte[] key : present) filter.put(key);
+    final long putNanos = System.nanoTime() - start;
+
+    int falsePositives = 0;
+    start = System.nanoTime();
+    for (byte[] key : absent) {
+      if (filter.mightContain(key)) falsePositives++;
+    }
+    final long queryNanos = System.nanoTime() - start;
+
+    final long concurrentNanos = concurrent(factory.create(present.length), present, absent);
+    System.out.println(String.format(
+      "%-9s put: %7.1f ns/op | query: %7.1f ns/op | concurrent: %7.1f ns/op | fpp: %.4f (expected %.4f)",
+      name,
+      (double)putNanos / present.length,
+      (double)queryNanos / absent.length,
+      (double)concurrentNanos / (present.length + absent.length),
+      (double)falsePositives / absent.length,
+      filter.expectedFpp()));
+  }
+
+  private static long concurrent(MembershipFilter filter, byte[][] present, byte[][] absent)
+      throws InterruptedException {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    final CountDownLatch ready = new CountDownLatch(threads);
+    final CountDownLatch go = new CountDownLatch(1);
+    final List<Thread> workers = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      Thread worker = new Thread(() -> {
+        ready.countDown();
+        try {
+          go.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = offset; i < present.length; i += threads) {
+          filter.put(present[i]);
+          filter.mightContain(absent[i]);
+        }
+      });
+      workers.add(worker);
+      worker.start();
+    }
+    ready.await(1, TimeUnit.MINUTES);
+    final long start = System.nanoTime();
+    go.countDown();
+    for (Thread worker : workers) worker.join();
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import org.junit.jupiter.api.Test;
+import tools.elide.struct.BloomFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the counting Bloom filter. */
+public final class CountingBloomFilterTest {
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test void testPutAndRemove() {
+    CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01);
+    filter.put("hello");
+    assertTrue(filter.mightContain("hello"), "added item should be present");
+    assertTrue(filter.remove(bytes("hello")), "removing a present item should succeed");
+    assertFalse(filter.mightContain("hello"), "removed item should be absent");
+    assertFalse(filter.remove(bytes("hello")), "removing an absent item should be a no-op");
+    assertEquals(0L, filter.count(), "count should balance after remove");
+  }
+
+  @Test void testEstimateCount() {
+    CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01);
+    for (int i = 0; i < 3; i++) filter.put("hello");
+    assertEquals(3L, filter.estimateCount(bytes("hello")), "estimate should reflect repeat adds");
+    assertEquals(0L, filter.estimateCount(bytes("absent")), "estimate for an absent item should be zero");
+    filter.remove(bytes("hello"));
+    assertEquals(2L, filter.estimateCount(bytes("hello")), "estimate should reflect removals");
+  }
+
+  @Test void testBucketsAreWholeWords() {
+    CountingBloomFilter filter = CountingBloomFilter.create(10, 0.1);
+    assertEquals(0L, filter.bucketCount() % 64, "buckets should line up with whole bit set words");
+  }
+
+  @Test void testConcurrentPutAndRemove() throws InterruptedException {
+    CountingBloomFilter filter = CountingBloomFilter.create(1000, 0.01);
+    for (int i = 0; i < 1000; i++) filter.put("keep-" + i);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          filter.put("churn-" + i);
+          filter.remove(bytes("churn-" + i));
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    for (int i = 0; i < 1000; i++) assertTrue(filter.mightContain("keep-" + i), "untouched items should survive");
+  }
+
+  @Test void testProtoRoundTrip() {
+    CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01);
+    for (int i = 0; i < 50; i++) filter.put("item-" + i);
+    filter.put("item-0");
+    BloomFilter proto = filter.toProto();
+    MembershipFilter restored = BloomFilters.fromProto(proto);
+    assertTrue(restored instanceof CountingBloomFilter, "counting filter should restore as a counting filter");
+    assertEquals(proto, restored.toProto(), "restored filter should serialize identically");
+    assertEquals(2L, ((CountingBloomFilter)restored).estimateCount(bytes("item-0")), "counts should survive");
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import org.junit.jupiter.api.Test;
+import tools.elide.struct.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the layered (scalable) Bloom filter. */
+public final class LayeredBloomFilterTest {
+  @Test void testAddsLayerAtLimit() {
+    LayeredBloomFilter filter = LayeredBloomFilter.create(100, 0.01);
+    assertEquals(1, filter.layerCount(), "new filter should hold one layer");
+    for (int i = 0; i < 99; i++) filter.put("item-" + i);
+    assertEquals(1, filter.layerCount(), "filter should not grow before the limit");
+    for (int i = 99; i < 250; i++) filter.put("item-" + i);
+    assertTrue(filter.layerCount() >= 3, "filter should grow a layer each time the limit is reached");
+    for (int i = 0; i < 250; i++) assertTrue(filter.mightContain("item-" + i), "added item should be present");
+  }
+
+  @Test void testRepeatPutIsSkipped() {
+    LayeredBloomFilter filter = LayeredBloomFilter.create(10, 0.01);
+    for (int i = 0; i < 10; i++) filter.put("item-" + i);
+    assertEquals(2, filter.layerCount(), "filter should grow at the limit");
+    assertFalse(filter.put("item-0"), "item present in an older layer should not be added again");
+    assertEquals(10L, filter.count(), "count should not include repeat puts");
+  }
+
+  @Test void testConcurrentPuts() throws InterruptedException {
+    LayeredBloomFilter filter = LayeredBloomFilter.create(500, 0.01);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int offset = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) filter.put("item-" + offset + "-" + i);
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertTrue(filter.layerCount() >= 5, "filter should grow under concurrent puts");
+    for (int t = 0; t < 4; t++) {
+      for (int i = 0; i < 1000; i++)
+        assertTrue(filter.mightContain("item-" + t + "-" + i), "concurrently-added item should be present");
+    }
+  }
+
+  @Test void testProtoRoundTrip() {
+    LayeredBloomFilter filter = LayeredBloomFilter.create(20, 0.01);
+    for (int i = 0; i < 50; i++) filter.put("item-" + i);
+    BloomFilter proto = filter.toProto();
+    MembershipFilter restored = BloomFilters.fromProto(proto);
+    assertTrue(restored instanceof LayeredBloomFilter, "layered filter should restore as a layered filter");
+    assertEquals(proto, restored.toProto(), "restored filter should serialize identically");
+    assertEquals(filter.layerCount(), ((LayeredBloomFilter)restored).layerCount(), "layers should survive");
+    for (int i = 0; i < 50; i++) assertTrue(restored.mightContain("item-" + i), "restored filter should hold items");
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2022, The Elide Framework Authors. All rights reserved.
+ *
+ * The Gust/Elide framework and tools, and all associated source or object computer code, except where otherwise noted,
+ * are licensed under the Zero Prosperity license, which is enclosed in this repository, in the file LICENSE.txt. Use of
+ * this code in object or source form requires and implies consent and agreement to that license in principle and
+ * practice. Source or object code not listing this header, or unless specified otherwise, remain the property of
+ * Elide LLC and its suppliers, if any. The intellectual and technical concepts contained herein are proprietary to
+ * Elide LLC and its suppliers and may be covered by U.S. and Foreign Patents, or patents in process, and are protected
+ * by trade secret and copyright law. Dissemination of this information, or reproduction of this material, in any form,
+ * is strictly forbidden except in adherence with assigned license requirements.
+ */
+package elide.struct;
+
+import org.junit.jupiter.api.Test;
+import tools.elide.core.crypto.HashAlgorithm;
+import tools.elide.struct.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/** Tests for the regular (single-layer) Bloom filter. */
+public final class StandardBloomFilterTest {
+  @Test void testSizing() {
+    long bits = BloomMath.optimalBits(1000, 0.01);
+    assertEquals(9586L, bits, "optimal bit count should follow the standard formula");
+    assertEquals(7, BloomMath.optimalRounds(1000, bits), "optimal rounds should follow the standard formula");
+    assertThrows(IllegalArgumentException.class, () -> BloomMath.optimalBits(1000, 1.5));
+    assertThrows(IllegalArgumentException.class, () -> BloomMath.optimalBits(0, 0.01));
+  }
+
+  @Test void testNoFalseNegatives() {
+    StandardBloomFilter filter = StandardBloomFilter.create(1000, 0.01);
+    for (int i = 0; i < 1000; i++) filter.put("item-" + i);
+    for (int i = 0; i < 1000; i++) assertTrue(filter.mightContain("item-" + i), "added item should be present");
+  }
+
+  @Test void testFalsePositiveRate() {
+    StandardBloomFilter filter = StandardBloomFilter.create(1000, 0.01);
+    for (int i = 0; i < 1000; i++) filter.put("item-" + i);
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (filter.mightContain("other-" + i)) falsePositives++;
+    }
+    assertTrue(falsePositives < 300, "false-positive rate should be near target, got " + falsePositives);
+    assertTrue(filter.expectedFpp() < 0.03, "expected false-positive rate should be near target");
+  }
+
+  @Test void testDigestAlgorithms() {
+    for (HashAlgorithm algorithm : new HashAlgorithm[] {HashAlgorithm.MD5, HashAlgorithm.SHA256}) {
+      StandardBloomFilter filter = StandardBloomFilter.create(100, 0.01, algorithm);
+      assertEquals(algorithm, filter.algorithm(), "filter should report its algorithm");
+      for (int i = 0; i < 100; i++) filter.put("item-" + i);
+      for (int i = 0; i < 100; i++) assertTrue(filter.mightContain("item-" + i), "added item should be present");
+    }
+  }
+
+  @Test void testCountsChangingPuts() {
+    StandardBloomFilter filter = StandardBloomFilter.create(100, 0.01);
+    assertTrue(filter.put("hello"), "first put should change the filter");
+    assertFalse(filter.put("hello"), "repeat put should not change the filter");
+    assertEquals(1L, filter.count(), "count should only reflect changing puts");
+  }
+
+  @Test void testPutAll() {
+    StandardBloomFilter left = StandardBloomFilter.create(100, 0.01);
+    StandardBloomFilter right = StandardBloomFilter.create(100, 0.01);
+    left.put("left");
+    right.put("right");
+    left.putAll(right);
+    assertTrue(left.mightContain("left") && left.mightContain("right"), "merged filter should hold both items");
+    assertThrows(IllegalArgumentException.class, () -> left.putAll(StandardBloomFilter.create(5000, 0.01)));
+  }
+
+  @Test void testConcurrentPuts() throws InterruptedException {
+    StandardBloomFilter filter = StandardBloomFilter.create(8000, 0.01);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int offset = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 2000; i++) filter.put("item-" + offset + "-" + i);
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    for (int t = 0; t < 4; t++) {
+      for (int i = 0; i < 2000; i++)
+        assertTrue(filter.mightContain("item-" + t + "-" + i), "concurrently-added item should be present");
+    }
+  }
+
+  @Test void testProtoRoundTrip() {
+    StandardBloomFilter filter = StandardBloomFilter.create(100, 0.01, HashAlgorithm.SHA1);
+    for (int i = 0; i < 50; i++) filter.put("item-" + i);
+    BloomFilter proto = filter.toProto();
+    MembershipFilter restored = BloomFilters.fromProto(proto);
+    assertTrue(restored instanceof StandardBloomFilter, "regular filter should restore as a regular filter");
+    assertEquals(proto, restored.toProto(), "restored filter should serialize identically");
+    for (int i = 0; i < 50; i++) assertTrue(restored.mightContain("item-" + i), "restored filter should hold items");
+  }
+}